@@ -40,7 +40,6 @@ import static ome.formats.model.UnitsFactory.convertTemperature;
 import static ome.formats.model.UnitsFactory.convertTime;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -1823,10 +1822,6 @@ public class OMEROMetadataStoreClient
     {
         try
         {
-            Collection<IObjectContainer> containers = containerCache.values();
-            IObjectContainer[] containerArray =
-                containers.toArray(new IObjectContainer[containers.size()]);
-
             if (log.isDebugEnabled())
             {
                 log.debug("Starting containers....");
@@ -1854,51 +1849,56 @@ public class OMEROMetadataStoreClient
                           + " entries.");
             }
 
+            // Both caches are streamed to the server a batch at a time
+            // rather than copied as a whole.
             int maxBatchSize = getDefaultBatchSize();
             int containerBatchCount = 0;
-            int containerPointer = 0;
-            log.info("Handling # of containers: {}", containerArray.length);
-            while (containerPointer < containerArray.length)
+            List<IObjectContainer> containerBatch =
+                new ArrayList<IObjectContainer>(maxBatchSize);
+            log.info("Handling # of containers: {}", containerCache.size());
+            Iterator<IObjectContainer> containers =
+                containerCache.values().iterator();
+            while (containers.hasNext())
             {
-                int nObjects = (int) Math.min(
-                    maxBatchSize, containerArray.length - containerPointer);
-
-                IObjectContainer[] batch = Arrays.copyOfRange(
-                        containerArray, containerPointer, containerPointer+nObjects);
-
-                delegate.updateObjects(batch);
-                containerPointer += nObjects;
-
-                containerBatchCount += 1;
-                if (containerBatchCount > 1)
+                containerBatch.add(containers.next());
+                if (containerBatch.size() == maxBatchSize
+                    || !containers.hasNext())
                 {
-                    log.info("Starting containerBatch #{}", containerBatchCount);
+                    containerBatchCount += 1;
+                    if (containerBatchCount > 1)
+                    {
+                        log.info("Starting containerBatch #{}",
+                                 containerBatchCount);
+                    }
+                    delegate.updateObjects(containerBatch.toArray(
+                            new IObjectContainer[containerBatch.size()]));
+                    containerBatch.clear();
                 }
             }
 
             int referenceBatchCount = 0;
-            int referencePointer = 0;
-            String[] referenceKeys = referenceStringCache.keySet().toArray(
-              new String[referenceStringCache.size()]);
-
-            log.info("Handling # of references: {}", referenceKeys.length);
-            while (referencePointer < referenceKeys.length) {
-
-                referenceBatchCount += 1;
-                if (referenceBatchCount > 1)
+            Map<String, String[]> referenceBatch =
+                new HashMap<String, String[]>();
+            log.info("Handling # of references: {}",
+                     referenceStringCache.size());
+            Iterator<Entry<String, String[]>> references =
+                referenceStringCache.entrySet().iterator();
+            while (references.hasNext())
+            {
+                Entry<String, String[]> reference = references.next();
+                referenceBatch.put(reference.getKey(), reference.getValue());
+                if (referenceBatch.size() == maxBatchSize
+                    || !references.hasNext())
                 {
-                    log.info("Starting referenceBatch #{}", referenceBatchCount);
-                }
-
-                Map<String, String[]> referenceBatch = new HashMap<String, String[]>();
-                int batchSize = (int) Math.min(
-                    maxBatchSize, referenceKeys.length - referencePointer);
-                for (int i=0; i<batchSize; i++) {
-                    String key = referenceKeys[referencePointer + i];
-                    referenceBatch.put(key, referenceStringCache.get(key));
+                    referenceBatchCount += 1;
+                    if (referenceBatchCount > 1)
+                    {
+                        log.info("Starting referenceBatch #{}",
+                                 referenceBatchCount);
+                    }
+                    delegate.updateReferences(referenceBatch);
+                    referenceBatch.clear();
                 }
-                delegate.updateReferences(referenceBatch);
-                referencePointer += batchSize;
             }
 
             Map<String, List<IObject>> rv = delegate.saveToDB(link);
@@ -8,15 +8,23 @@
 package ome.formats.importer;
 
 import java.io.File;
-import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static omero.rtypes.rint;
 import static omero.rtypes.rstring;
@@ -122,11 +130,18 @@ public class ImportCandidates extends DirectoryWalker
 
     final private IObserver observer;
     final private OMEROWrapper reader;
-    final private Set<String> allFiles = new HashSet<String>();
+    final private Set<String> allFiles = Collections.newSetFromMap(
+            new ConcurrentHashMap<String, Boolean>());
     final private Map<String, List<String>> usedBy = new LinkedHashMap<String, List<String>>();
     final private List<ImportContainer> containers = new ArrayList<ImportContainer>();
     final private long start = System.currentTimeMillis();
 
+    /**
+     * Number of directory levels searched, as passed to
+     * {@link DirectoryWalker}.
+     */
+    final private int depth;
+
     /**
      * Time take for {@link IFormatReader#setId()}
      */
@@ -201,6 +216,7 @@ public class ImportCandidates extends DirectoryWalker
             IObserver observer)
     {
         super(TrueFileFilter.INSTANCE, depth);
+        this.depth = depth;
         this.reader = reader;
         this.observer = observer;
         log.info(String.format("Depth: %s Metadata Level: %s", depth,
@@ -221,12 +237,19 @@ public class ImportCandidates extends DirectoryWalker
             return;
         }
 
+        final int threads = reader == null ? 1
+                : Math.max(1, reader.getConfig().parallelScan.get());
+
         Groups g;
         try {
-            execute(paths);
-            total = count;
-            count = 0;
-            execute(paths);
+            if (threads > 1) {
+                executeParallel(paths, threads);
+            } else {
+                execute(paths);
+                total = count;
+                count = 0;
+                execute(paths);
+            }
             g = new Groups(usedBy);
             g.parse(containers);
             long totalElapsed = System.currentTimeMillis() - start;
@@ -361,25 +384,300 @@ public class ImportCandidates extends DirectoryWalker
     {
         for (String string : paths)
         {
-            try {
+            File f = new File(string);
+            if (f.isDirectory())
+            {
+                walk(f, 0);
+            } else
+            {
+                handleFile(f, 0, null);
+            }
+            // Forcing an event for each path, so that at least one
+            // event is raised per file despite the count of handlefile.
+            scanWithCancel(f, 0);
+        }
+    }
+
+    /**
+     * Walks the tree below a directory down to {@link #depth} levels like
+     * {@link #walk(File, Collection)}, but with the entries of each directory
+     * in name order as {@link #executeParallel(String[], int)} walks them,
+     * so that both find the same containers.
+     *
+     * @param directory - the directory to walk
+     * @param d - the depth of the directory
+     */
+    private void walk(File directory, int d)
+    {
+        final int childDepth = d + 1;
+        if (depth >= 0 && childDepth > depth) {
+            return;
+        }
+        final Listing listing = new Listing(directory).call();
+        if (listing.children == null) {
+            return; // Not readable
+        }
+        for (int i = 0; i < listing.children.length; i++) {
+            if (listing.directories[i]) {
+                walk(listing.children[i], childDepth);
+            } else {
+                handleFile(listing.children[i], childDepth, null);
+            }
+        }
+    }
+
+    /**
+     * Version of {@link #execute(String[])} performing both passes, which
+     * lists the directories and detects the readers of the files on a pool
+     * of <code>threads</code> threads, each with its own reader. The entries
+     * of each directory are walked in name order and the results of the
+     * detection are used in that same order, so that the containers found,
+     * and their grouping, do not depend on which thread finishes first.
+     *
+     * @param paths
+     * @param threads - number of threads listing and scanning files
+     */
+    protected void executeParallel(String[] paths, int threads)
+    {
+        final ImportConfig config = reader.getConfig();
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final ThreadLocal<OMEROWrapper> readers =
+            new ThreadLocal<OMEROWrapper>() {
+                @Override
+                protected OMEROWrapper initialValue() {
+                    return new OMEROWrapper(config);
+                }
+            };
+        try {
+            final List<List<Scan>> walks = new ArrayList<List<Scan>>();
+            for (String string : paths)
+            {
                 File f = new File(string);
+                List<Scan> files = new ArrayList<Scan>();
                 if (f.isDirectory())
                 {
-                    walk(f, null);
+                    walk(pool, f, files);
                 } else
                 {
-                    handleFile(f, 0, null);
+                    Scan scan = new Scan(f, 0);
+                    files.add(scan);
+                    countFile(scan);
                 }
-                // Forcing an event for each path, so that at least one
-                // event is raised per file despite the count of handlefile.
                 scanWithCancel(f, 0);
-            } catch (IOException e)
+                walks.add(files);
+            }
+            total = count;
+            count = 0;
+            for (int i = 0; i < paths.length; i++)
             {
-                throw new RuntimeException(e);
+                detect(pool, readers, config, walks.get(i), threads * 4);
+                scanWithCancel(new File(paths[i]), 0);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Lists the tree below a directory down to {@link #depth} levels like
+     * {@link #walk(File, Collection)}, reading the listings of subdirectories
+     * ahead on the pool.
+     *
+     * @param pool - pool listing the directories
+     * @param directory - the directory to walk
+     * @param files - receives the files found, in the order of the walk
+     */
+    private void walk(ExecutorService pool, File directory, List<Scan> files)
+    {
+        if (depth < 0 || depth >= 1) {
+            visit(pool, get(pool.submit(new Listing(directory))), 0, files);
+        }
+    }
+
+    private void visit(ExecutorService pool, Listing listing, int d,
+            List<Scan> files)
+    {
+        if (listing.children == null) {
+            return; // Not readable
+        }
+        final int childDepth = d + 1;
+        final boolean descend = depth < 0 || childDepth + 1 <= depth;
+        final Deque<Future<Listing>> subdirectories =
+            new ArrayDeque<Future<Listing>>();
+        if (descend) {
+            for (int i = 0; i < listing.children.length; i++) {
+                if (listing.directories[i]) {
+                    subdirectories.add(pool.submit(
+                            new Listing(listing.children[i])));
+                }
+            }
+        }
+        for (int i = 0; i < listing.children.length; i++) {
+            if (!listing.directories[i]) {
+                Scan scan = new Scan(listing.children[i], childDepth);
+                files.add(scan);
+                countFile(scan);
+            } else if (descend) {
+                visit(pool, get(subdirectories.removeFirst()), childDepth,
+                        files);
             }
         }
     }
 
+    /**
+     * Counts a file during the first pass as {@link #handleFile} does.
+     */
+    private void countFile(Scan scan)
+    {
+        count++;
+        if (scan.file.getName().startsWith(".")) {
+            return;
+        }
+        if (count%100 == 0) {
+            scanWithCancel(scan.file, scan.depth);
+        }
+    }
+
+    /**
+     * Detects the readers of files on the pool, keeping up to
+     * <code>window</code> files ahead of the one whose result is used next.
+     * A file is only scanned if no earlier container uses it yet; if one
+     * turns out to by the time its result is used, that result is dropped
+     * as the sequential walk would never have produced it.
+     *
+     * @param pool - pool scanning the files
+     * @param readers - the reader of each thread of the pool
+     * @param config - import configuration
+     * @param files - the files to scan, in order
+     * @param window - maximum number of files scanned ahead
+     */
+    private void detect(ExecutorService pool,
+            final ThreadLocal<OMEROWrapper> readers, final ImportConfig config,
+            List<Scan> files, int window)
+    {
+        final Deque<Future<Scan>> pending = new ArrayDeque<Future<Scan>>();
+        int next = 0;
+        while (next < files.size() || !pending.isEmpty())
+        {
+            while (next < files.size() && pending.size() < window)
+            {
+                final Scan scan = files.get(next++);
+                pending.add(pool.submit(new Callable<Scan>() {
+                    public Scan call() {
+                        if (!scan.file.getName().startsWith(".")
+                                && !allFiles.contains(
+                                        scan.file.getAbsolutePath())) {
+                            scan(readers.get(), config, scan);
+                        }
+                        return scan;
+                    }
+                }));
+            }
+            final Scan scan = get(pending.removeFirst());
+
+            // As in handleFile
+            count++;
+            if (scan.file.getName().startsWith(".")) {
+                continue;
+            }
+            if (count%100 == 0) {
+                scanWithCancel(scan.file, scan.depth);
+            }
+            if (allFiles.contains(scan.file.getAbsolutePath())) {
+                publish(scan, false);
+                continue;
+            }
+            publish(scan, true);
+            if (scan.container != null) {
+                add(scan.file, scan.container);
+            }
+        }
+    }
+
+    private static <T> T get(Future<T> future)
+    {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while scanning", e);
+        } catch (ExecutionException e) {
+            final Throwable t = e.getCause();
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw new RuntimeException("Unexpected exception thrown!", t);
+        }
+    }
+
+    /**
+     * Lists a directory, with its entries sorted by name.
+     */
+    private static class Listing implements Callable<Listing>
+    {
+        final File directory;
+
+        File[] children;
+
+        boolean[] directories;
+
+        Listing(File directory)
+        {
+            this.directory = directory;
+        }
+
+        public Listing call()
+        {
+            children = directory.listFiles((java.io.FileFilter)
+                    TrueFileFilter.INSTANCE);
+            if (children != null) {
+                Arrays.sort(children);
+                directories = new boolean[children.length];
+                for (int i = 0; i < children.length; i++) {
+                    directories[i] = children[i].isDirectory();
+                }
+            }
+            return this;
+        }
+    }
+
+    /**
+     * A file found by the walk and, once scanned, the container, events and
+     * time of the detection of its reader.
+     */
+    private static class Scan
+    {
+        final File file;
+
+        final int depth;
+
+        List<ImportEvent> events;
+
+        ImportContainer container;
+
+        boolean setId;
+
+        boolean unknown;
+
+        long time;
+
+        Scan(File file, int depth)
+        {
+            this.file = file;
+            this.depth = depth;
+        }
+
+        void event(ImportEvent event)
+        {
+            if (events == null) {
+                events = new ArrayList<ImportEvent>(1);
+            }
+            events.add(event);
+        }
+    }
+
     /**
      * Return an import container for a single file
      * @param file - single file
@@ -393,11 +691,28 @@ public class ImportCandidates extends DirectoryWalker
             return null;
         }
 
+        Scan scan = new Scan(file, 0);
+        scan(reader, config, scan);
+        publish(scan, true);
+        return scan.container;
+    }
+
+    /**
+     * Determines the import container for a single file with the given
+     * reader. Rather than being reported, any events and the time taken are
+     * kept in the {@link Scan} so that this may be called on any thread.
+     * @param reader - reader only used by the calling thread
+     * @param config - import configuration
+     * @param scan - the file to scan, receiving the results
+     */
+    private void scan(OMEROWrapper reader, ImportConfig config, Scan scan)
+    {
+        final File file = scan.file;
         final String path = file.getAbsolutePath();
         if (!file.exists() || !file.canRead()) {
-            safeUpdate(new ErrorHandler.UNREADABLE_FILE(path,
+            scan.event(new ErrorHandler.UNREADABLE_FILE(path,
                 new java.io.FileNotFoundException(path), this));
-            return null;
+            return;
         }
 
         String format = null;
@@ -406,14 +721,14 @@ public class ImportCandidates extends DirectoryWalker
         try {
 
             try {
-                setids++;
+                scan.setId = true;
                 reader.close();
                 reader.setMetadataStore(new ImageNameMetadataStore());
                 reader.setMetadataOptions(
                         new DefaultMetadataOptions(METADATA_LEVEL));
                 reader.setId(path);
                 format = reader.getFormat();
-                usedFiles = getOrderedFiles();
+                usedFiles = getOrderedFiles(reader);
                 String[] domains = reader.getReader().getDomains();
                 boolean isSPW = Arrays.asList(domains).contains(FormatTools.HCS_DOMAIN);
 
@@ -433,25 +748,25 @@ public class ImportCandidates extends DirectoryWalker
                 }
                 ic.setUserSpecifiedDescription(config.userSpecifiedDescription.get());
                 ic.setCustomAnnotationList(config.annotations.get());
-                return ic;
+                scan.container = ic;
             } finally
             {
-                readerTime += (System.currentTimeMillis() - start);
+                scan.time = System.currentTimeMillis() - start;
                 reader.close();
             }
 
         } catch (UnsupportedCompressionException uce)
         {
-            unknown++;
+            scan.unknown = true;
             // Handling as UNKNOWN_FORMAT for 4.3.0
-            safeUpdate(new ErrorHandler.UNKNOWN_FORMAT(path, uce, this));
+            scan.event(new ErrorHandler.UNKNOWN_FORMAT(path, uce, this));
         } catch (UnknownFormatException ufe)
         {
-            unknown++;
-            safeUpdate(new ErrorHandler.UNKNOWN_FORMAT(path, ufe, this));
+            scan.unknown = true;
+            scan.event(new ErrorHandler.UNKNOWN_FORMAT(path, ufe, this));
         } catch (MissingLibraryException mle)
         {
-            safeUpdate(new ErrorHandler.MISSING_LIBRARY(path, mle, usedFiles, format));
+            scan.event(new ErrorHandler.MISSING_LIBRARY(path, mle, usedFiles, format));
         } catch (Throwable t)
         {
             Exception e = null;
@@ -461,11 +776,31 @@ public class ImportCandidates extends DirectoryWalker
             else {
                 e = new Exception(t);
             }
-            safeUpdate(new ErrorHandler.FILE_EXCEPTION(path, e, usedFiles, format));
+            scan.event(new ErrorHandler.FILE_EXCEPTION(path, e, usedFiles, format));
         }
 
-        return null;
+    }
 
+    /**
+     * Adds the time taken by a scan to the totals and, if requested, raises
+     * its events. Only called by the thread which constructs this instance.
+     * @param scan - a completed scan
+     * @param report - whether the events of the scan are raised
+     */
+    private void publish(Scan scan, boolean report)
+    {
+        if (scan.setId) {
+            setids++;
+            readerTime += scan.time;
+        }
+        if (scan.unknown) {
+            unknown++;
+        }
+        if (report && scan.events != null) {
+            for (ImportEvent event : scan.events) {
+                safeUpdate(event);
+            }
+        }
     }
 
     /**
@@ -514,7 +849,7 @@ public class ImportCandidates extends DirectoryWalker
      * used files. All files which can be used to initialize a fileset are
      * returned first.
      */
-    private String[] getOrderedFiles() {
+    private String[] getOrderedFiles(OMEROWrapper reader) {
 
         FileInfo[] infos = reader.getAdvancedUsedFiles(false);
         String[] usedFiles = new String[infos.length];
@@ -598,6 +933,17 @@ public class ImportCandidates extends DirectoryWalker
             return;
         }
 
+        add(file, info);
+    }
+
+    /**
+     * Records a container found for a file, whose used files are then
+     * skipped.
+     *
+     * @param file - file for which the container was found
+     * @param info - the container
+     */
+    private void add(File file, ImportContainer info) {
         containers.add(info);
         allFiles.addAll(Arrays.asList(info.getUsedFiles()));
         for (String string : info.getUsedFiles()) {
@@ -616,7 +962,7 @@ public class ImportCandidates extends DirectoryWalker
      * These objects should never leave the outer class.
      *
      * It is important that the Groups keep their used files ordered.
-     * @see ImportCandidates#getOrderedFiles()
+     * @see ImportCandidates#getOrderedFiles(OMEROWrapper)
      */
     private static class Groups {
 
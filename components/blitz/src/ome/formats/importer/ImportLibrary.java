@@ -27,6 +27,13 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import loci.common.Location;
 import loci.formats.FormatException;
@@ -35,6 +42,7 @@ import ome.formats.OMEROMetadataStoreClient;
 import ome.formats.importer.transfers.FileTransfer;
 import ome.formats.importer.transfers.TransferState;
 import ome.formats.importer.transfers.UploadFileTransfer;
+import ome.formats.importer.util.ConcurrentTimeEstimatorImpl;
 import ome.formats.importer.util.ErrorHandler;
 import ome.formats.importer.util.ProportionalTimeEstimatorImpl;
 import ome.formats.importer.util.TimeEstimator;
@@ -216,13 +224,16 @@ public class ImportLibrary implements IObservable
 
     public boolean addObserver(IObserver object)
     {
-        return observers.add(object);
+        synchronized (observers) {
+            return observers.add(object);
+        }
     }
 
     public boolean deleteObserver(IObserver object)
     {
-        return observers.remove(object);
-
+        synchronized (observers) {
+            return observers.remove(object);
+        }
     }
 
     /* (non-Javadoc)
@@ -230,8 +241,12 @@ public class ImportLibrary implements IObservable
      */
     public void notifyObservers(ImportEvent event)
     {
-        for (IObserver observer : observers) {
-            observer.update(this, event);
+        // Filesets and their files may be imported concurrently, in which
+        // case observers are notified of one event at a time.
+        synchronized (observers) {
+            for (IObserver observer : observers) {
+                observer.update(this, event);
+            }
         }
     }
 
@@ -242,44 +257,37 @@ public class ImportLibrary implements IObservable
     /**
      * Primary user method for importing a number
      *
+     * Up to {@link ImportConfig#parallelFileset} filesets are imported at the
+     * same time, each uploading up to {@link ImportConfig#parallelUpload}
+     * files at the same time. If {@link ImportConfig#contOnError} is not set,
+     * no further filesets are started after the first failure, though those
+     * already in progress are allowed to complete.
+     *
      * @param config The configuration information.
      * @param candidates Hosts information about the files to import.
      */
-    public boolean importCandidates(ImportConfig config, ImportCandidates candidates)
+    public boolean importCandidates(final ImportConfig config, ImportCandidates candidates)
     {
-        List<ImportContainer> containers = candidates.getContainers();
-        if (containers != null) {
+        final List<ImportContainer> containers = candidates.getContainers();
+        if (containers == null) {
+            return true;
+        }
+        final int filesetThreads = Math.max(1, config.parallelFileset.get());
+        final int uploadThreads = Math.max(1, config.parallelUpload.get());
+        final boolean contOnError = config.contOnError.get();
+
+        if (filesetThreads == 1 || containers.size() == 1) {
             int numDone = 0;
             for (int index = 0; index < containers.size(); index++) {
                 ImportContainer ic = containers.get(index);
-                if (DATASET_CLASS.equals(config.targetClass.get()))
-                {
-                    ic.setTarget(store.getTarget(
-                            Dataset.class, config.targetId.get()));
-                }
-                else if (SCREEN_CLASS.equals(config.targetClass.get()))
-                {
-                    ic.setTarget(store.getTarget(
-                            Screen.class, config.targetId.get()));
-                }
-
-                if (config.checksumAlgorithm.get() != null) {
-                    ic.setChecksumAlgorithm(config.checksumAlgorithm.get());
-                }
-
+                prepareContainer(config, ic);
                 try {
-                    importImage(ic,index,numDone,containers.size());
+                    importImage(ic, index, numDone, containers.size(),
+                            uploadThreads);
                     numDone++;
                 } catch (Throwable t) {
-                    String message = "Error on import";
-                    if (t instanceof ServerError) {
-                        final ServerError se = (ServerError) t;
-                        if (StringUtils.isNotBlank(se.message)) {
-                            message += ": " + se.message;
-                        }
-                    }
-                    log.error(message, t);
-                    if (!config.contOnError.get()) {
+                    logImportError(t);
+                    if (!contOnError) {
                         log.info("Exiting on error");
                         return false;
                     } else {
@@ -287,10 +295,93 @@ public class ImportLibrary implements IObservable
                     }
                 }
             }
+            return true;
+        }
+
+        final AtomicInteger numDone = new AtomicInteger();
+        final AtomicBoolean failed = new AtomicBoolean();
+        final ExecutorService filesets = Executors.newFixedThreadPool(
+                Math.min(filesetThreads, containers.size()));
+        final List<Future<?>> futures = new ArrayList<Future<?>>();
+        try {
+            for (int i = 0; i < containers.size(); i++) {
+                final int index = i;
+                final ImportContainer ic = containers.get(index);
+                prepareContainer(config, ic);
+                futures.add(filesets.submit(new Runnable() {
+                    public void run() {
+                        if (failed.get() && !contOnError) {
+                            return; // Not started after an earlier failure
+                        }
+                        try {
+                            importImage(ic, index, numDone.get(),
+                                    containers.size(), uploadThreads);
+                            numDone.incrementAndGet();
+                        } catch (Throwable t) {
+                            failed.set(true);
+                            logImportError(t);
+                            if (contOnError) {
+                                log.info("Continuing after error");
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.info("Interrupted while importing");
+            return false;
+        } catch (ExecutionException e) {
+            // Unexpected as each import catches its own errors
+            logImportError(e.getCause());
+            failed.set(true);
+        } finally {
+            filesets.shutdownNow();
+        }
+        if (failed.get() && !contOnError) {
+            log.info("Exiting on error");
+            return false;
         }
         return true;
     }
 
+    /**
+     * Sets the target and checksum algorithm chosen in the configuration on
+     * the container before it is imported.
+     */
+    private void prepareContainer(ImportConfig config, ImportContainer ic)
+    {
+        if (DATASET_CLASS.equals(config.targetClass.get()))
+        {
+            ic.setTarget(store.getTarget(
+                    Dataset.class, config.targetId.get()));
+        }
+        else if (SCREEN_CLASS.equals(config.targetClass.get()))
+        {
+            ic.setTarget(store.getTarget(
+                    Screen.class, config.targetId.get()));
+        }
+
+        if (config.checksumAlgorithm.get() != null) {
+            ic.setChecksumAlgorithm(config.checksumAlgorithm.get());
+        }
+    }
+
+    private void logImportError(Throwable t)
+    {
+        String message = "Error on import";
+        if (t instanceof ServerError) {
+            final ServerError se = (ServerError) t;
+            if (StringUtils.isNotBlank(se.message)) {
+                message += ": " + se.message;
+            }
+        }
+        log.error(message, t);
+    }
+
     /**
      * Delete files from the managed repository.
      * @param container The current import container containing usedFiles to be
@@ -367,26 +458,99 @@ public class ImportLibrary implements IObservable
     public List<String> uploadFilesToRepository(
             final String[] srcFiles, final ImportProcessPrx proc)
     {
-        final byte[] buf = new byte[store.getDefaultBlockSize()];
-        final int fileTotal = srcFiles.length;
-        final List<String> checksums = new ArrayList<String>(fileTotal);
+        return uploadFilesToRepository(srcFiles, proc, 1);
+    }
+
+    /**
+     * Upload files to the managed repository, up to the given number of
+     * files at the same time.
+     *
+     * @param srcFiles The files to upload.
+     * @param proc The import process receiving the files.
+     * @param threads The maximum number of files uploaded at the same time.
+     * @return A list of the client-side (i.e. local) hashes for each file
+     * uploaded before the first failure.
+     * @see #uploadFilesToRepository(String[], ImportProcessPrx)
+     */
+    public List<String> uploadFilesToRepository(
+            final String[] srcFiles, final ImportProcessPrx proc, int threads)
+    {
+        final List<String> checksums = new ArrayList<String>(srcFiles.length);
         // TODO Fix with proper code instead of 10000L
-        final TimeEstimator estimator = new ProportionalTimeEstimatorImpl(10000L);
+        final TimeEstimator estimator = threads > 1
+                ? new ConcurrentTimeEstimatorImpl(10000L)
+                : new ProportionalTimeEstimatorImpl(10000L);
 
         log.debug("Used files created:");
-        for (int i = 0; i < fileTotal; i++) {
-            try {
+        try {
+            uploadFiles(proc, srcFiles, estimator, threads, checksums);
+        } catch (ServerError e) {
+            log.error("Server error uploading file.", e);
+        } catch (IOException e) {
+            log.error("I/O error uploading file.", e);
+        }
+        return checksums;
+    }
+
+    /**
+     * Uploads the files of a fileset, appending their checksums in file
+     * order. With more than one thread, each file being uploaded has its own
+     * buffer and the estimator must be thread safe.
+     *
+     * The first failure in file order is rethrown once the checksums of the
+     * files before it have been appended, and uploads not yet complete are
+     * then cancelled.
+     */
+    private void uploadFiles(final ImportProcessPrx proc,
+            final String[] srcFiles, final TimeEstimator estimator,
+            int threads, final List<String> checksums)
+            throws ServerError, IOException
+    {
+        final int blockSize = store.getDefaultBlockSize();
+        threads = Math.min(threads, srcFiles.length);
+        if (threads <= 1) {
+            final byte[] buf = new byte[blockSize];
+            for (int i = 0; i < srcFiles.length; i++) {
                 checksums.add(uploadFile(proc, srcFiles, i,
                         checksumProviderFactory, estimator, buf));
-            } catch (ServerError e) {
-                log.error("Server error uploading file.", e);
-                break;
-            } catch (IOException e) {
-                log.error("I/O error uploading file.", e);
-                break;
             }
+            return;
+        }
+
+        final ExecutorService uploads = Executors.newFixedThreadPool(threads);
+        final List<Future<String>> futures = new ArrayList<Future<String>>();
+        try {
+            for (int i = 0; i < srcFiles.length; i++) {
+                final int index = i;
+                futures.add(uploads.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        return uploadFile(proc, srcFiles, index,
+                                checksumProviderFactory, estimator,
+                                new byte[blockSize]);
+                    }
+                }));
+            }
+            for (Future<String> future : futures) {
+                checksums.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while uploading", e);
+        } catch (ExecutionException e) {
+            final Throwable t = e.getCause();
+            if (t instanceof ServerError) {
+                throw (ServerError) t;
+            } else if (t instanceof IOException) {
+                throw (IOException) t;
+            } else if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw new RuntimeException("Unexpected exception thrown!", t);
+        } finally {
+            uploads.shutdownNow();
         }
-        return checksums;
     }
 
     public String uploadFile(final ImportProcessPrx proc,
@@ -460,23 +624,37 @@ public class ImportLibrary implements IObservable
     public List<Pixels> importImage(final ImportContainer container, int index,
                                     int numDone, int total)
             throws FormatException, IOException, Throwable
+    {
+        return importImage(container, index, numDone, total, 1);
+    }
+
+    /**
+     * Perform an image import uploading files if necessary, up to the given
+     * number of files at the same time.
+     * @param uploadThreads The maximum number of files of the fileset
+     * uploaded at the same time.
+     * @see #importImage(ImportContainer, int, int, int)
+     * @since 5.1
+     */
+    public List<Pixels> importImage(final ImportContainer container, int index,
+                                    int numDone, int total, int uploadThreads)
+            throws FormatException, IOException, Throwable
     {
         HandlePrx handle;
         final ImportProcessPrx proc = createImport(container);
         final String[] srcFiles = container.getUsedFiles();
         final List<String> checksums = new ArrayList<String>();
-        final byte[] buf = new byte[store.getDefaultBlockSize()];
-        final TimeEstimator estimator = new ProportionalTimeEstimatorImpl(
-                container.getUsedFilesTotalSize());
+        final TimeEstimator estimator = uploadThreads > 1
+                ? new ConcurrentTimeEstimatorImpl(
+                        container.getUsedFilesTotalSize())
+                : new ProportionalTimeEstimatorImpl(
+                        container.getUsedFilesTotalSize());
         Map<Integer, String> failingChecksums = new HashMap<Integer, String>();
 
         notifyObservers(new ImportEvent.FILESET_UPLOAD_START(
                 null, index, srcFiles.length, null, null, null));
 
-        for (int i = 0; i < srcFiles.length; i++) {
-            checksums.add(uploadFile(proc, srcFiles, i, checksumProviderFactory,
-                    estimator, buf));
-        }
+        uploadFiles(proc, srcFiles, estimator, uploadThreads, checksums);
 
         try {
             handle = proc.verifyUpload(checksums);
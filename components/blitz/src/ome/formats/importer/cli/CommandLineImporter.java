@@ -337,6 +337,7 @@ public class CommandLineImporter {
             + "        General options:    \t\n"
             + "          upload          \t# Default\n"
             + "          upload_rm       \t# Caution! File upload followed by source deletion.\n"
+            + "          upload_pipelined\t# File upload keeping several writes in flight.\n"
             + "          some.class.Name \t# Use a class on the CLASSPATH.\n\n"
             + "        Server-side options:\t\n"
             + "          ln              \t# Use hard-link.\n"
@@ -372,6 +373,12 @@ public class CommandLineImporter {
             + "  e.g. $ bin/omero import -- --checksum_algorithm=CRC-32 foo.tiff\n"
             + "       $ ./importer-cli --checksum_algorithm=Murmur3-128 bar.tiff\n"
             + "\n"
+            + "    --parallel_fileset=ARG  \tNumber of filesets imported at the same time (default: 1).\n\n"
+            + "    --parallel_upload=ARG   \tNumber of files of a fileset uploaded at the same time (default: 1).\n\n"
+            + "    --parallel_scan=ARG     \tNumber of files scanned for import at the same time (default: 1).\n\n"
+            + "  e.g. $ bin/omero import -- --parallel_fileset=4 --parallel_upload=2 some_directory/\n"
+            + "       $ ./importer-cli --parallel_fileset=4 some_directory/\n"
+            + "\n"
             + "  Feedback:\n"
             + "  ---------\n\n"
             + "    --qa_baseurl=ARG\tSpecify the base URL for reporting feedback\n"
@@ -483,6 +490,12 @@ public class CommandLineImporter {
 
         LongOpt qaBaseURL = new LongOpt(
                 "qa_baseurl", LongOpt.REQUIRED_ARGUMENT, null, 20);
+        LongOpt parallelFileset = new LongOpt(
+                "parallel_fileset", LongOpt.REQUIRED_ARGUMENT, null, 23);
+        LongOpt parallelUpload = new LongOpt(
+                "parallel_upload", LongOpt.REQUIRED_ARGUMENT, null, 24);
+        LongOpt parallelScan = new LongOpt(
+                "parallel_scan", LongOpt.REQUIRED_ARGUMENT, null, 25);
 
         // DEPRECATED OPTIONS
         LongOpt plateName = new LongOpt(
@@ -497,7 +510,9 @@ public class CommandLineImporter {
                                 annotationLink, transferOpt, advancedHelp,
                                 checksumAlgorithm, minutesWait,
                                 closeCompleted, waitCompleted, autoClose,
-                                qaBaseURL, plateName, plateDescription});
+                                qaBaseURL, parallelFileset, parallelUpload,
+                                parallelScan,
+                                plateName, plateDescription});
         int a;
 
         boolean doCloseCompleted = false;
@@ -611,6 +626,24 @@ public class CommandLineImporter {
                 config.qaBaseURL.set(g.getOptarg());
                 break;
             }
+            case 23: {
+                int arg = Integer.parseInt(g.getOptarg());
+                log.info("Setting parallel filesets to {}", arg);
+                config.parallelFileset.set(arg);
+                break;
+            }
+            case 24: {
+                int arg = Integer.parseInt(g.getOptarg());
+                log.info("Setting parallel uploads to {}", arg);
+                config.parallelUpload.set(arg);
+                break;
+            }
+            case 25: {
+                int arg = Integer.parseInt(g.getOptarg());
+                log.info("Setting parallel scans to {}", arg);
+                config.parallelScan.set(arg);
+                break;
+            }
             // ADVANCED END ---------------------------------------------------
             // DEPRECATED OPTIONS
             case 21: {
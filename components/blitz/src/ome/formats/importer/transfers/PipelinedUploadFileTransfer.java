@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2014 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.formats.importer.transfers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import ome.util.checksum.ChecksumProvider;
+import omero.ServerError;
+import omero.api.RawFileStorePrx;
+
+import org.apache.commons.lang.ArrayUtils;
+
+import Ice.AsyncResult;
+
+/**
+ * Version of the {@link UploadFileTransfer} which keeps a window of
+ * asynchronous {@link RawFileStorePrx#begin_write(byte[], long, int) writes}
+ * outstanding rather than waiting for each block to be written before
+ * reading the next. Blocks are read ahead on a separate thread into two
+ * alternating buffers while the previous block is checksummed and sent, so
+ * that over high latency links throughput is no longer limited to one block
+ * per round trip. Since each write is marshaled before
+ * {@link RawFileStorePrx#begin_write(byte[], long, int)} returns, a buffer
+ * may be refilled as soon as its block has been sent.
+ *
+ * Progress is reported as writes are acknowledged by the server. The reads
+ * of all the files transferred by an instance share one pool of daemon
+ * threads, which is shut down by {@link #afterTransfer(int, List)}.
+ *
+ * @since 5.1
+ */
+public class PipelinedUploadFileTransfer extends AbstractFileTransfer {
+
+    /** Default maximum number of writes awaiting acknowledgement. */
+    public static final int DEFAULT_WINDOW = 8;
+
+    private final int window;
+
+    /** Reads blocks ahead; created on first use. */
+    private ExecutorService reader;
+
+    public PipelinedUploadFileTransfer() {
+        this(DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param window maximum number of writes awaiting acknowledgement,
+     * at least 1.
+     */
+    public PipelinedUploadFileTransfer(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be positive: "
+                    + window);
+        }
+        this.window = window;
+    }
+
+    public String transfer(TransferState state) throws IOException, ServerError {
+
+        final RawFileStorePrx rawFileStore = start(state);
+        final File file = state.getFile();
+        final ChecksumProvider cp = state.getChecksumProvider();
+        final byte[][] buffers = new byte[][] { state.getBuffer(),
+                new byte[state.getBuffer().length] };
+        final ExecutorService reader = getReader();
+        final Deque<PendingWrite> pending = new ArrayDeque<PendingWrite>();
+
+        FileInputStream stream = null;
+        Future<Block> next = null;
+
+        try {
+            stream = new FileInputStream(file);
+            long offset = 0;
+            long acknowledged = 0;
+            int turn = 0;
+
+            state.uploadStarted();
+
+            // "touch" the file otherwise zero-length files
+            pending.add(beginWrite(rawFileStore,
+                    ArrayUtils.EMPTY_BYTE_ARRAY, offset, 0));
+
+            next = reader.submit(
+                    new Read(stream, buffers[turn], state.getLength()));
+            while (true) {
+                final Block block = get(next);
+                if (block == null) {
+                    next = null;
+                    break;
+                }
+                turn = 1 - turn;
+                next = reader.submit(new Read(stream, buffers[turn],
+                        state.getLength() - offset - block.length));
+                cp.putBytes(block.data, 0, block.length);
+                pending.add(beginWrite(rawFileStore, block.toWrite(),
+                        offset, block.length));
+                offset += block.length;
+                while (pending.size() >= window) {
+                    acknowledged += acknowledge(state, pending, acknowledged);
+                }
+            }
+
+            while (!pending.isEmpty()) {
+                acknowledged += acknowledge(state, pending, acknowledged);
+            }
+
+            return finish(state, offset);
+        } finally {
+            if (next != null) {
+                // Do not close the stream while a block is being read.
+                next.cancel(false);
+                try {
+                    next.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    // already failing
+                }
+            }
+            cleanupUpload(rawFileStore, stream);
+        }
+    }
+
+    /**
+     * Returns the pool reading blocks ahead, creating it if needed.
+     */
+    private synchronized ExecutorService getReader() {
+        if (reader == null) {
+            reader = Executors.newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r,
+                            "PipelinedUploadFileTransfer-reader");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return reader;
+    }
+
+    /**
+     * Waits for the oldest outstanding write and reports its progress.
+     * @return the number of bytes acknowledged.
+     */
+    private int acknowledge(TransferState state, Deque<PendingWrite> pending,
+            long acknowledged) throws ServerError {
+        final PendingWrite write = pending.removeFirst();
+        write.end();
+        state.stop(write.length);
+        state.uploadBytes(acknowledged + write.length);
+        state.start();
+        return write.length;
+    }
+
+    /**
+     * Starts the asynchronous write of a block. Package-private so that
+     * tests need not create {@link AsyncResult}s.
+     */
+    PendingWrite beginWrite(final RawFileStorePrx rawFileStore, byte[] data,
+            long offset, int length) {
+        final AsyncResult result = rawFileStore.begin_write(data, offset,
+                length);
+        return new PendingWrite(length) {
+            @Override
+            void end() throws ServerError {
+                rawFileStore.end_write(result);
+            }
+        };
+    }
+
+    /**
+     * A write awaiting acknowledgement by the server.
+     */
+    abstract static class PendingWrite {
+
+        final int length;
+
+        PendingWrite(int length) {
+            this.length = length;
+        }
+
+        /**
+         * Waits for the write to be acknowledged.
+         * @throws ServerError if the write failed.
+         */
+        abstract void end() throws ServerError;
+    }
+
+    private Block get(Future<Block> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading");
+        } catch (ExecutionException e) {
+            final Throwable t = e.getCause();
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            } else if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            throw new RuntimeException("Unexpected exception thrown!", t);
+        }
+    }
+
+    /**
+     * A block of the file read into {@link #data}.
+     */
+    private static class Block {
+
+        final byte[] data;
+
+        final int length;
+
+        Block(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+
+        /**
+         * Returns the data trimmed to its length. Only copied if the file
+         * ended earlier than its expected length.
+         */
+        byte[] toWrite() {
+            if (length == data.length) {
+                return data;
+            }
+            return Arrays.copyOf(data, length);
+        }
+    }
+
+    /**
+     * Fills a buffer from the stream. The final block of the file is read
+     * into an array of its exact size so that it can be written as is.
+     */
+    private static class Read implements Callable<Block> {
+
+        private final InputStream stream;
+
+        private final byte[] data;
+
+        Read(InputStream stream, byte[] buffer, long remaining) {
+            this.stream = stream;
+            if (remaining > 0 && remaining < buffer.length) {
+                this.data = new byte[(int) remaining];
+            } else {
+                this.data = buffer;
+            }
+        }
+
+        public Block call() throws IOException {
+            int length = 0;
+            while (length < data.length) {
+                final int rlen = stream.read(data, length,
+                        data.length - length);
+                if (rlen == -1) {
+                    break;
+                }
+                length += rlen;
+            }
+            return length == 0 ? null : new Block(data, length);
+        }
+    }
+
+    /**
+     * Since the {@link RawFileStorePrx} instances are cleaned up after each
+     * transfer, there's no need to cleanup per {@link File}. Only the
+     * threads reading ahead are stopped.
+     */
+    public void afterTransfer(int errors, List<String> srcFiles) throws CleanupFailure {
+        final ExecutorService toStop;
+        synchronized (this) {
+            toStop = reader;
+            reader = null;
+        }
+        if (toStop != null) {
+            toStop.shutdown();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2014 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.formats.importer.util;
+
+/**
+ * Thread safe {@link TimeEstimator} for files of a fileset which are uploaded
+ * concurrently. The remaining time is estimated from the bytes uploaded by
+ * all threads over the time elapsed since the first chunk was started.
+ *
+ * @since 5.1
+ */
+public class ConcurrentTimeEstimatorImpl implements TimeEstimator {
+
+    private long remainingBytes, timeLeft = 0;
+
+    private long totalBytes = 0;
+
+    private long firstStart = -1;
+
+    /**
+     * Creates a new object of this class.
+     *
+     * @param imageContainerSize
+     *            The total size in bytes of the data container for which upload
+     *            time is being estimated.
+     */
+    public ConcurrentTimeEstimatorImpl(long imageContainerSize) {
+        this.remainingBytes = imageContainerSize;
+    }
+
+    /**
+     * @see TimeEstimator#start()
+     */
+    public void start() {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (firstStart < 0) {
+                firstStart = now;
+            }
+        }
+    }
+
+    /**
+     * @see TimeEstimator#stop()
+     */
+    public void stop() {
+    }
+
+    /**
+     * @see TimeEstimator#stop(long)
+     */
+    public void stop(long uploadedBytes) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            totalBytes += uploadedBytes;
+            remainingBytes -= uploadedBytes;
+            long elapsed = now - firstStart;
+            if (firstStart >= 0 && elapsed > 0) {
+                float averageBps = totalBytes / ((float) elapsed / 1000);
+                timeLeft = (long) Math
+                        .ceil((remainingBytes / averageBps) * 1000);
+            }
+        }
+    }
+
+    /**
+     * @see TimeEstimator#getUploadTimeLeft()
+     */
+    public synchronized long getUploadTimeLeft() {
+        return timeLeft;
+    }
+
+}
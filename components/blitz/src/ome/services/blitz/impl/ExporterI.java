@@ -12,6 +12,15 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -21,6 +30,7 @@ import javax.xml.transform.TransformerException;
 import loci.common.services.DependencyException;
 import loci.common.services.ServiceException;
 import loci.common.xml.XMLTools;
+import loci.formats.FormatException;
 import loci.formats.FormatTools;
 import loci.formats.IFormatWriter;
 import loci.formats.ImageWriter;
@@ -30,19 +40,19 @@ import loci.formats.meta.MetadataRetrieve;
 import loci.formats.out.OMETiffWriter;
 import loci.formats.services.OMEXMLService;
 import loci.formats.tiff.IFD;
-import ome.api.RawPixelsStore;
 import ome.conditions.ApiUsageException;
 import ome.conditions.InternalException;
+import ome.io.bioformats.BfPyramidPixelBuffer;
+import ome.io.nio.PixelBuffer;
 import ome.io.nio.PixelsService;
-import ome.io.nio.RomioPixelBuffer;
 import ome.services.blitz.util.BlitzExecutor;
 import ome.services.blitz.util.BlitzOnly;
 import ome.services.blitz.util.ServiceFactoryAware;
 import ome.services.blitz.util.UnregisterServantMessage;
 import ome.services.db.DatabaseIdentity;
-import ome.services.formats.OmeroReader;
 import ome.services.util.Executor;
 import ome.system.ServiceFactory;
+import ome.util.PixelData;
 import ome.util.messages.InternalMessage;
 import ome.xml.model.OME;
 import ome.xml.model.OMEModel;
@@ -95,12 +105,21 @@ public class ExporterI extends AbstractCloseableAmdServant implements
      * a normal tiff. This value is checked against the data size PLUS
      * various metadata sizes.
      *
-     * @see #getMetadataBytes(OmeroReader)
-     * @see #getDataBytes(OmeroReader)
+     * @see #getMetadataBytes(int)
+     * @see #getDataBytes(PixelBuffer)
      * @see ticket:6520
      */
     private final static long BIG_TIFF_SIZE = 2L * Integer.MAX_VALUE;
 
+    /**
+     * Upper bound on the memory held by tiles which have been read but not
+     * yet written.
+     */
+    private final static long MAX_READ_AHEAD_BYTES = 64L * 1024 * 1024;
+
+    /** Upper bound on the number of tiles read ahead of the writer. */
+    private final static int MAX_READ_AHEAD_TILES = 16;
+
 
     /**
      * Utility enum for asserting the state of Exporter instances.
@@ -141,14 +160,24 @@ public class ExporterI extends AbstractCloseableAmdServant implements
     /** LOCI OME-XML service for working with OME-XML. */
     private final OMEXMLService service;
 
-    /** Access to information about big images to prevent exporting large
-     * files since there is currently no generally readable tiff support
-     * for our tiles.
-     *
-     * @see ticket:6713
-     */
+    /** Access to the pixel buffers whose tiles are exported. */
     private final PixelsService pixelsService;
 
+    /** Width of the tiles written to the TIFF, a multiple of 16. */
+    private int tileWidth = 128;
+
+    /** Height of the tiles written to the TIFF, a multiple of 16. */
+    private int tileHeight = 128;
+
+    /** Bio-Formats compression type of the tiles written to the TIFF. */
+    private String compression = "Uncompressed";
+
+    /**
+     * Executor on which tiles are read ahead of the writer. If null, tiles
+     * are read on the calling thread.
+     */
+    private ExecutorService tileExecutor;
+
     public ExporterI(BlitzExecutor be, DatabaseIdentity databaseIdentity,
             PixelsService pixelsService)
         throws DependencyException {
@@ -165,6 +194,43 @@ public class ExporterI extends AbstractCloseableAmdServant implements
         this.factory = sf;
     }
 
+    /**
+     * Sets the width of the tiles written to the TIFF, which must be a
+     * positive multiple of 16 as required by the TIFF specification.
+     */
+    public void setTileWidth(int tileWidth) {
+        this.tileWidth = checkTileSize(tileWidth);
+    }
+
+    /**
+     * Sets the height of the tiles written to the TIFF, which must be a
+     * positive multiple of 16 as required by the TIFF specification.
+     */
+    public void setTileHeight(int tileHeight) {
+        this.tileHeight = checkTileSize(tileHeight);
+    }
+
+    private static int checkTileSize(int size) {
+        if (size <= 0 || size % 16 != 0) {
+            throw new IllegalArgumentException(
+                    "Tile size must be a positive multiple of 16: " + size);
+        }
+        return size;
+    }
+
+    /**
+     * Sets the compression of the tiles written to the TIFF, one of the
+     * compression types supported by {@link OMETiffWriter}, e.g.
+     * "Uncompressed", "LZW", "J2K", "J2K-Lossy" or "JPEG".
+     */
+    public void setCompression(String compression) {
+        this.compression = compression;
+    }
+
+    public void setTileExecutor(ExecutorService tileExecutor) {
+        this.tileExecutor = tileExecutor;
+    }
+
     // Interface methods
     // =========================================================================
 
@@ -356,37 +422,28 @@ public class ExporterI extends AbstractCloseableAmdServant implements
                                 return null;
                             }
 
-                            RawPixelsStore raw = null;
-                            OmeroReader reader = null;
+                            PixelBuffer buffer = null;
                             OMETiffWriter writer = null;
                             try {
 
                                 Image image = retrieve.getImage(0);
                                 Pixels pix = image.getPixels(0);
-                                if (requiresPyramid(sf, pix.getId().getValue())) {
-                                    long id = image.getId().getValue();
-                                    int x = pix.getSizeX().getValue();
-                                    int y = pix.getSizeY().getValue();
-                                    throw new omero.ApiUsageException(
-                                            null, null, String.format(
-                                            "Image:%s is too large for export (sizeX=%s, sizeY=%s)",
-                                            id, x, y));
-                                }
+                                ome.model.core.Pixels _p = sf.getPixelsService()
+                                    .retrievePixDescription(pix.getId().getValue());
 
                                 file = TempFileManager.create_path("__omero_export__",
                                         ".ome.tiff");
 
-                                raw = sf.createRawPixelsStore();
-                                raw.setPixelsId(pix.getId().getValue(), true);
-
-                                reader = new OmeroReader(raw, pix);
-                                reader.setId("OMERO");
+                                buffer = pixelsService.getPixelBuffer(_p, false);
+                                int planeCount = buffer.getSizeZ()
+                                    * buffer.getSizeC() * buffer.getSizeT();
 
                                 writer = new OMETiffWriter();
                                 writer.setMetadataRetrieve(retrieve);
                                 writer.setWriteSequentially(true); // ticket:6701
-                                long mSize = getMetadataBytes(reader);
-                                long dSize = getDataBytes(reader);
+                                writer.setCompression(compression);
+                                long mSize = getMetadataBytes(planeCount);
+                                long dSize = getDataBytes(buffer);
                                 final boolean bigtiff =
                                     ( ( mSize + dSize ) > BIG_TIFF_SIZE );
                                 if (bigtiff) {
@@ -394,31 +451,15 @@ public class ExporterI extends AbstractCloseableAmdServant implements
                                 }
                                 writer.setId(file.getAbsolutePath());
 
-                                int planeCount = reader.planes;
-                                int planeSize = RomioPixelBuffer.safeLongToInteger(
-                                        raw.getPlaneSize());
                                 log.info(String.format(
                                             "Using big TIFF? %s mSize=%d " +
                                             "dSize=%d planeCount=%d " +
-                                            "planeSize=%d",
+                                            "tile=%dx%d compression=%s",
                                             bigtiff, mSize, dSize,
-                                            planeCount, planeSize));
-                                byte[] plane = new byte[planeSize];
-                                for (int i = 0; i < planeCount; i++) {
-                                    int[] zct = FormatTools.getZCTCoords(
-                                        retrieve.getPixelsDimensionOrder(0).getValue(),
-                                        reader.getSizeZ(), reader.getSizeC(), reader.getSizeT(),
-                                        planeCount, i);
-                                    int readerIndex = reader.getIndex(zct[0], zct[1], zct[2]);
-                                    reader.openBytes(readerIndex, plane);
-
-
-                                    IFD ifd = new IFD();
-                                    ifd.put(IFD.TILE_WIDTH, 128);
-                                    ifd.put(IFD.TILE_LENGTH, 128);
-
-                                    writer.saveBytes(i, plane, ifd);
-                                }
+                                            planeCount, tileWidth, tileHeight,
+                                            compression));
+                                writeTiles(buffer, writer,
+                                    retrieve.getPixelsDimensionOrder(0).getValue());
                                 retrieve = null;
 
                                 try {
@@ -436,28 +477,21 @@ public class ExporterI extends AbstractCloseableAmdServant implements
                                     IceMapper.fillServerError(ie, e);
                                     __cb.ice_exception(ie);
                                 } finally {
-                                    cleanup(raw, reader, writer);
+                                    cleanup(buffer, writer);
                                 }
 
                             return null; // see calls to __cb above
                         }
 
-                        private void cleanup(RawPixelsStore raw,
-                                OmeroReader reader, IFormatWriter writer) {
+                        private void cleanup(PixelBuffer buffer,
+                                IFormatWriter writer) {
                             try {
-                                if (raw != null) {
-                                    raw.close();
+                                if (buffer != null) {
+                                    buffer.close();
                                 }
                             } catch (Exception e) {
                                 log.error("Error closing pix", e);
                             }
-                            try {
-                                if (reader != null) {
-                                    reader.close();
-                                }
-                            } catch (Exception e) {
-                                log.error("Error closing reader", e);
-                            }
                             try {
                                 if (writer != null) {
                                     writer.close();
@@ -474,6 +508,214 @@ public class ExporterI extends AbstractCloseableAmdServant implements
         }
     }
 
+    /**
+     * Writes every plane of the buffer tile by tile, in the order in which
+     * the sequential TIFF writer expects them. Up to {@link #readAhead()}
+     * tiles are read ahead on the {@link #tileExecutor} while earlier tiles
+     * are compressed and written, so that memory use is bounded by the tile
+     * size rather than the plane size.
+     */
+    private void writeTiles(PixelBuffer buffer, OMETiffWriter writer,
+            String dimensionOrder) throws FormatException, IOException {
+        final TileLayout layout = new TileLayout(buffer, dimensionOrder,
+                tileWidth, tileHeight);
+        // Pyramids read through their own pool of readers; other buffers
+        // are read one tile at a time.
+        final boolean exclusive = !(buffer instanceof BfPyramidPixelBuffer);
+        final int readAhead = readAhead(buffer);
+        final Deque<Future<byte[]>> reads = new ArrayDeque<Future<byte[]>>();
+        long submitted = 0;
+        IFD ifd = null;
+        try {
+            for (long n = 0; n < layout.tiles; n++) {
+                while (submitted < layout.tiles && submitted - n < readAhead) {
+                    reads.add(submit(new TileRead(buffer,
+                            layout.tile(submitted), exclusive)));
+                    submitted++;
+                }
+                final byte[] data = get(reads.removeFirst());
+                final int[] tile = layout.tile(n);
+                if (tile[TileLayout.X] == 0 && tile[TileLayout.Y] == 0) {
+                    ifd = new IFD();
+                    ifd.put(IFD.TILE_WIDTH, tileWidth);
+                    ifd.put(IFD.TILE_LENGTH, tileHeight);
+                }
+                writer.saveBytes(tile[TileLayout.PLANE], data, ifd,
+                        tile[TileLayout.X], tile[TileLayout.Y],
+                        tile[TileLayout.W], tile[TileLayout.H]);
+            }
+        } finally {
+            for (Future<byte[]> read : reads) {
+                read.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of tiles which may be read ahead of the writer,
+     * limited to {@link #MAX_READ_AHEAD_BYTES}.
+     */
+    private int readAhead(PixelBuffer buffer) {
+        long tileBytes = (long) tileWidth * tileHeight * buffer.getByteWidth();
+        return (int) Math.max(1, Math.min(MAX_READ_AHEAD_TILES,
+                MAX_READ_AHEAD_BYTES / tileBytes));
+    }
+
+    private <T> Future<T> submit(Callable<T> task) {
+        if (tileExecutor != null) {
+            return tileExecutor.submit(task);
+        }
+        FutureTask<T> future = new FutureTask<T>(task);
+        future.run();
+        return future;
+    }
+
+    private byte[] get(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalException("Interrupted reading tile");
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            } else if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            throw new InternalException("Error reading tile: " + t);
+        }
+    }
+
+    /**
+     * Position of the n-th tile written, planes being written in the
+     * dimension order of the exported metadata and the tiles of each plane
+     * row by row.
+     */
+    static class TileLayout {
+
+        static final int PLANE = 0, Z = 1, C = 2, T = 3, X = 4, Y = 5, W = 6,
+                H = 7;
+
+        final int sizeX, sizeY, sizeZ, sizeC, sizeT, planes;
+
+        final int tileWidth, tileHeight, tilesX, tilesPerPlane;
+
+        final String dimensionOrder;
+
+        final long tiles;
+
+        TileLayout(PixelBuffer buffer, String dimensionOrder, int tileWidth,
+                int tileHeight) {
+            this(buffer.getSizeX(), buffer.getSizeY(), buffer.getSizeZ(),
+                    buffer.getSizeC(), buffer.getSizeT(), dimensionOrder,
+                    tileWidth, tileHeight);
+        }
+
+        TileLayout(int sizeX, int sizeY, int sizeZ, int sizeC, int sizeT,
+                String dimensionOrder, int tileWidth, int tileHeight) {
+            this.sizeX = sizeX;
+            this.sizeY = sizeY;
+            this.sizeZ = sizeZ;
+            this.sizeC = sizeC;
+            this.sizeT = sizeT;
+            this.planes = sizeZ * sizeC * sizeT;
+            this.dimensionOrder = dimensionOrder;
+            this.tileWidth = tileWidth;
+            this.tileHeight = tileHeight;
+            this.tilesX = (sizeX + tileWidth - 1) / tileWidth;
+            this.tilesPerPlane = tilesX * ((sizeY + tileHeight - 1) / tileHeight);
+            this.tiles = (long) planes * tilesPerPlane;
+        }
+
+        int[] tile(long n) {
+            final int plane = (int) (n / tilesPerPlane);
+            final int index = (int) (n % tilesPerPlane);
+            final int[] zct = FormatTools.getZCTCoords(dimensionOrder,
+                    sizeZ, sizeC, sizeT, planes, plane);
+            final int x = (index % tilesX) * tileWidth;
+            final int y = (index / tilesX) * tileHeight;
+            return new int[] { plane, zct[0], zct[1], zct[2], x, y,
+                    Math.min(tileWidth, sizeX - x),
+                    Math.min(tileHeight, sizeY - y) };
+        }
+    }
+
+    /**
+     * Reads one tile in the big-endian byte order declared by
+     * {@link OmeroMetadata#getPixelsBinDataBigEndian(int, int)}. Pyramid
+     * tiles are read with the byte order of the pyramid, which is little
+     * endian for pyramids of little-endian sources, and swapped as needed;
+     * other pixel buffers are read directly since their pixels files are
+     * big endian.
+     */
+    private static class TileRead implements Callable<byte[]> {
+
+        private final PixelBuffer buffer;
+
+        private final int[] tile;
+
+        private final boolean exclusive;
+
+        TileRead(PixelBuffer buffer, int[] tile, boolean exclusive) {
+            this.buffer = buffer;
+            this.tile = tile;
+            this.exclusive = exclusive;
+        }
+
+        public byte[] call() throws IOException {
+            if (exclusive) {
+                synchronized (buffer) {
+                    return read();
+                }
+            }
+            return readPyramid();
+        }
+
+        private byte[] read() throws IOException {
+            final int w = tile[TileLayout.W];
+            final int h = tile[TileLayout.H];
+            final byte[] data = new byte[w * h * buffer.getByteWidth()];
+            return buffer.getTileDirect(tile[TileLayout.Z],
+                    tile[TileLayout.C], tile[TileLayout.T],
+                    tile[TileLayout.X], tile[TileLayout.Y], w, h, data);
+        }
+
+        private byte[] readPyramid() throws IOException {
+            final PixelData data = buffer.getTile(tile[TileLayout.Z],
+                    tile[TileLayout.C], tile[TileLayout.T],
+                    tile[TileLayout.X], tile[TileLayout.Y],
+                    tile[TileLayout.W], tile[TileLayout.H]);
+            try {
+                return toBigEndian(data);
+            } finally {
+                data.dispose();
+            }
+        }
+
+        /**
+         * Copies pixel data into a new array, swapping the bytes of each
+         * pixel if the data is little endian.
+         */
+        private static byte[] toBigEndian(PixelData data) {
+            final ByteBuffer source = data.getData().duplicate();
+            source.clear();
+            final byte[] bytes = new byte[source.remaining()];
+            source.get(bytes);
+            final int width = data.bytesPerPixel();
+            if (width > 1 && data.getOrder() == ByteOrder.LITTLE_ENDIAN) {
+                for (int i = 0; i + width <= bytes.length; i += width) {
+                    for (int lo = i, hi = i + width - 1; lo < hi; lo++, hi--) {
+                        final byte b = bytes[lo];
+                        bytes[lo] = bytes[hi];
+                        bytes[hi] = b;
+                    }
+                }
+            }
+            return bytes;
+        }
+    }
+
     /**
      * Read size bytes, and transition to "waiting" If any exception is thrown,
      * the offset for the current file will not be updated.
@@ -560,7 +802,7 @@ public class ExporterI extends AbstractCloseableAmdServant implements
     // Misc. helpers.
     // =========================================================================
 
-    private long getMetadataBytes(OmeroReader reader)
+    private long getMetadataBytes(int planes)
             throws DependencyException, ServiceException {
 
         String xml = service.getOMEXML(retrieve);
@@ -571,19 +813,14 @@ public class ExporterI extends AbstractCloseableAmdServant implements
         } catch (UnsupportedEncodingException e) {
             throw new RuntimeException("Failed to convert to UTF-8", e);
         }
-        long planebytes = reader.planes * 512;
+        long planebytes = planes * 512;
         return planebytes + xmlbytes;
     }
 
-    private long getDataBytes(OmeroReader reader) {
-        return (long) reader.planes * reader.sizeX * reader.sizeY *
-            FormatTools.getBytesPerPixel(reader.getPixelType());
-    }
-
-    private boolean requiresPyramid(ServiceFactory sf, long id) {
-        ome.model.core.Pixels _p =
-            sf.getQueryService().get(ome.model.core.Pixels.class, id);
-        return pixelsService.requiresPixelsPyramid(_p);
+    private long getDataBytes(PixelBuffer buffer) {
+        return (long) buffer.getSizeZ() * buffer.getSizeC()
+            * buffer.getSizeT() * buffer.getSizeX() * buffer.getSizeY()
+            * buffer.getByteWidth();
     }
 
 
@@ -12,6 +12,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import ome.api.ServiceInterface;
 import ome.system.OmeroContext;
@@ -65,13 +66,20 @@ public class IceMethodInvoker {
 
         Class<?> retType;
 
+        /** {@link IceMapper#inputKind(Class)} of each parameter. */
         int[] switches;
+
+        /** {@link IceMapper#outputKind(Class)} of {@link #retType}. */
+        int retSwitch;
     }
 
-    private final static Map<Class<?>, Map<String, Info>> staticmap = new HashMap<Class<?>, Map<String, Info>>();
+    private final static Map<Class<?>, Map<String, Info>> staticmap = new ConcurrentHashMap<Class<?>, Map<String, Info>>();
 
     private final Class<?> serviceClass;
 
+    /** The entry of {@link #serviceClass} in {@link #staticmap}. */
+    private final Map<String, Info> methods;
+
     private OmeroContext ctx;
 
     /**
@@ -116,16 +124,22 @@ public class IceMethodInvoker {
                         i.method = m;
                         i.params = m.getParameterTypes();
                         i.retType = m.getReturnType();
+                        i.switches = new int[i.params.length];
+                        for (int p = 0; p < i.params.length; p++) {
+                            i.switches[p] = IceMapper.inputKind(i.params[p]);
+                        }
+                        i.retSwitch = IceMapper.outputKind(i.retType);
                         map.put(m.getName(), i);
                     }
                     staticmap.put(this.serviceClass, map);
                 }
             }
         }
+        this.methods = staticmap.get(this.serviceClass);
     }
 
     Map<String, Info> map() {
-        return staticmap.get(serviceClass);
+        return methods;
     }
 
     /**
@@ -184,8 +198,10 @@ public class IceMethodInvoker {
         // Handling case of generics (.e.g Search.next())
         // in which case we cannot properly handle the mapping.
         Class<?> retType = info.retType;
+        int retSwitch = info.retSwitch;
         if (retType == Object.class && retVal != null) {
             retType = retVal.getClass();
+            retSwitch = IceMapper.outputKind(retType);
         }
 
         // If we have a returnValueMapper then it's that objects responsibility
@@ -193,7 +209,7 @@ public class IceMethodInvoker {
         if (mapper.canMapReturnValue()) {
             return mapper.mapReturnValue(retVal);
         } else {
-            return mapper.handleOutput(retType, retVal);
+            return mapper.handleOutput(retSwitch, retType, retVal);
         }
     }
 
@@ -226,7 +242,7 @@ public class IceMethodInvoker {
         for (int i = 0; i < params.length; i++) {
             Class<?> p = params[i];
             Object arg = args[i];
-            objs[i] = mapper.handleInput(p, arg);
+            objs[i] = mapper.handleInput(info.switches[i], p, arg);
             // This check duplicates what should be in handleInput
             // if (null != objs[i] && !isPrimitive(p) && // FIXME need way
             // to check autoboxing.
@@ -15,12 +15,19 @@ import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import ome.conditions.ApiUsageException;
+import ome.conditions.InternalException;
 import ome.io.nio.PixelBuffer;
 import ome.model.IObject;
 import ome.model.core.Pixels;
@@ -76,6 +83,9 @@ public class GeomTool {
 
     protected final String uuid;
 
+    /** Executor computing shape statistics, or <code>null</code>. */
+    protected ExecutorService statsExecutor;
+
     public GeomTool(PixelData data, SqlAction sql,
             SessionFactory factory) {
         this(data, sql, factory, null, null);
@@ -90,6 +100,15 @@ public class GeomTool {
         this.uuid = uuid;
     }
 
+    /**
+     * Sets the executor on which {@link #getStats(List)} rasterizes shapes
+     * and reads their planes. If not set, statistics are computed on the
+     * calling thread.
+     */
+    public void setStatsExecutor(ExecutorService statsExecutor) {
+        this.statsExecutor = statsExecutor;
+    }
+
     /**
      * Loads just the shape and no other relationships. This
      * 
@@ -238,6 +257,14 @@ public class GeomTool {
         return sp;
     }
 
+    /**
+     * Computes the statistics of the pixels under each shape. Each shape is
+     * rasterized once into a {@link ShapeMask} and each plane it covers is
+     * then read a tile at a time, rather than a row per point, channel,
+     * section and timepoint. Given a {@link #setStatsExecutor(ExecutorService)
+     * stats executor}, the shapes are rasterized and their planes read
+     * concurrently; all database access remains on the calling thread.
+     */
     public RoiStats getStats(List<Long> shapeIds) {
 
         if (shapeIds == null) {
@@ -248,120 +275,189 @@ public class GeomTool {
         final RoiStats rs = new RoiStats();
         rs.perShape = new ShapeStats[shapeIds.size()];
 
-        for (int i = 0; i < shapeIds.size(); i++) {
-
-            final long shapeId = shapeIds.get(i);
-
-            final ome.model.roi.Shape shape = (ome.model.roi.Shape) session
-                    .createQuery(
-                            "select s from Shape s "
-                                    + "left outer join fetch s.channels selected " // optional
-                                    + "join fetch s.roi r join fetch r.image i "
-                                    + "join fetch i.pixels p join fetch p.channels c "
-                                    + "join fetch c.logicalChannel lc "
-                                    + "where s.id = :id").setParameter("id",
-                            shapeId).uniqueResult();
-            final SmartShape smartShape = (SmartShape) new ShapeMapper()
-                    .map(shape);
-
-            final ome.model.roi.Roi roi = shape.getRoi();
-            final ome.model.core.Image img = roi.getImage();
-            final ome.model.core.Pixels pix = img.getPrimaryPixels();
-
-            final long roiId = roi.getId();
-            final long imgId = img.getId();
-            final long pixId = pix.getId();
-
-            final int maxZ = pix.getSizeZ();
-            final int maxT = pix.getSizeT();
-
-            // We only take the values for the first Shape. If this call is
-            // being made with different shapes, then the user will know as
-            // much.
-            if (rs.combined == null) {
-                rs.roiId = roiId;
-                rs.imageId = imgId;
-                rs.pixelsId = pixId;
-
-                int ch = pix.sizeOfChannels();
-                rs.combined = makeStats(ch);
-                rs.combined.shapeId = -1;
-                rs.combined.channelIds = new long[ch];
-                for (int w = 0; w < ch; w++) {
-                    rs.combined.channelIds[w] = pix.getChannel(w)
-                            .getLogicalChannel().getId();
-                }
-            }
-            ShapeStats agg = rs.combined;
-
-            final ShapeStats stats = makeStats(pix, shape);
-            stats.shapeId = shape.getId();
+        final Map<Long, PixelBuffer> buffers = new HashMap<Long, PixelBuffer>();
+        final List<Future<ShapeMask>> masks = new ArrayList<Future<ShapeMask>>();
+        final List<Future<ShapeMask.Stats>> planes =
+            new ArrayList<Future<ShapeMask.Stats>>();
+        final int[][] bounds = new int[shapeIds.size()][];
+        final PixelBuffer[] shapeBuffers = new PixelBuffer[shapeIds.size()];
 
-            final int ch = stats.channelIds.length;
-            final double[] sumOfSquares = new double[ch];
-
-            final Integer theZ = shape.getTheZ(); // May be null
-            final Integer theT = shape.getTheT(); // May be null
-
-            final int startZ = (theZ == null) ? 0 : theZ.intValue();
-            final int startT = (theT == null) ? 0 : theT.intValue();
+        try {
+            for (int i = 0; i < shapeIds.size(); i++) {
+
+                final long shapeId = shapeIds.get(i);
+
+                final ome.model.roi.Shape shape = (ome.model.roi.Shape) session
+                        .createQuery(
+                                "select s from Shape s "
+                                        + "left outer join fetch s.channels selected " // optional
+                                        + "join fetch s.roi r join fetch r.image i "
+                                        + "join fetch i.pixels p join fetch p.channels c "
+                                        + "join fetch c.logicalChannel lc "
+                                        + "where s.id = :id").setParameter("id",
+                                shapeId).uniqueResult();
+                final SmartShape smartShape = (SmartShape) new ShapeMapper()
+                        .map(shape);
+
+                final ome.model.roi.Roi roi = shape.getRoi();
+                final ome.model.core.Image img = roi.getImage();
+                final ome.model.core.Pixels pix = img.getPrimaryPixels();
+
+                final long roiId = roi.getId();
+                final long imgId = img.getId();
+                final long pixId = pix.getId();
+
+                final int maxZ = pix.getSizeZ();
+                final int maxT = pix.getSizeT();
+
+                // We only take the values for the first Shape. If this call is
+                // being made with different shapes, then the user will know as
+                // much.
+                if (rs.combined == null) {
+                    rs.roiId = roiId;
+                    rs.imageId = imgId;
+                    rs.pixelsId = pixId;
+
+                    int ch = pix.sizeOfChannels();
+                    rs.combined = makeStats(ch);
+                    rs.combined.shapeId = -1;
+                    rs.combined.channelIds = new long[ch];
+                    for (int w = 0; w < ch; w++) {
+                        rs.combined.channelIds[w] = pix.getChannel(w)
+                                .getLogicalChannel().getId();
+                    }
+                }
 
-            final int endZ = (theZ == null) ? (maxZ - 1) : theZ.intValue();
-            final int endT = (theT == null) ? (maxT - 1) : theT.intValue();
+                final ShapeStats stats = makeStats(pix, shape);
+                stats.shapeId = shape.getId();
+                rs.perShape[i] = stats;
 
-            final PixelBuffer buf = data.getBuffer(pixId);
-            try {
-                SmartShape.PointCallback cb = new SmartShape.PointCallback() {
+                final Integer theC = shape.getTheC(); // May be null
+                final Integer theZ = shape.getTheZ(); // May be null
+                final Integer theT = shape.getTheT(); // May be null
 
-                    public void handle(int x, int y) {
+                final int startC = (theC == null) ? 0 : theC.intValue();
+                final int startZ = (theZ == null) ? 0 : theZ.intValue();
+                final int startT = (theT == null) ? 0 : theT.intValue();
 
-                        for (int w = 0; w < ch; w++) {
+                final int endZ = (theZ == null) ? (maxZ - 1) : theZ.intValue();
+                final int endT = (theT == null) ? (maxT - 1) : theT.intValue();
 
-                            for (int z = startZ; z <= endZ; z++) {
-                                for (int t = startT; t <= endT; t++) {
+                bounds[i] = new int[] { startC, startZ, endZ, startT, endT };
 
-                                    // WHAT TO DO ABOUT THE CHANNELS IN AGGREGATION?
-                                    stats.pointsCount[w]++;
-                                    double value = data.get(buf, x, y, z, w, t);
-                                    stats.min[w] = Math.min(value, stats.min[w]);
-                                    stats.max[w] = Math.max(value, stats.max[w]);
-                                    stats.sum[w] += value;
-                                    sumOfSquares[w] += value * value;
+                PixelBuffer buf = buffers.get(pixId);
+                if (buf == null) {
+                    buf = data.getBuffer(pixId);
+                    buffers.put(pixId, buf);
+                }
+                shapeBuffers[i] = buf;
+
+                final int sizeX = pix.getSizeX();
+                final int sizeY = pix.getSizeY();
+                masks.add(submit(new Callable<ShapeMask>() {
+                    public ShapeMask call() {
+                        ShapeMask mask = new ShapeMask(sizeX, sizeY);
+                        smartShape.areaPoints(mask);
+                        return mask.build();
+                    }
+                }));
+            }
 
+            // One task per shape and plane, in the order in which the
+            // statistics are combined below.
+            for (int i = 0; i < rs.perShape.length; i++) {
+                final ShapeMask mask = get(masks.get(i));
+                final PixelBuffer buf = shapeBuffers[i];
+                final int[] b = bounds[i];
+                final int ch = rs.perShape[i].channelIds.length;
+                for (int w = 0; w < ch; w++) {
+                    final int c = b[0] + w;
+                    for (int z = b[1]; z <= b[2]; z++) {
+                        for (int t = b[3]; t <= b[4]; t++) {
+                            final int theZ = z, theT = t;
+                            planes.add(submit(new Callable<ShapeMask.Stats>() {
+                                public ShapeMask.Stats call() {
+                                    ShapeMask.Stats s = new ShapeMask.Stats();
+                                    mask.accumulate(buf, theZ, c, theT, s);
+                                    return s;
                                 }
-                            }
-
+                            }));
                         }
                     }
-                };
+                }
+            }
 
-                smartShape.areaPoints(cb);
-            } finally {
+            int plane = 0;
+            for (int i = 0; i < rs.perShape.length; i++) {
+                final ShapeStats stats = rs.perShape[i];
+                final int[] b = bounds[i];
+                final int perChannel = (b[2] - b[1] + 1) * (b[4] - b[3] + 1);
+                for (int w = 0; w < stats.channelIds.length; w++) {
+                    ShapeMask.Stats s = new ShapeMask.Stats();
+                    for (int p = 0; p < perChannel; p++) {
+                        s.merge(get(planes.get(plane++)));
+                    }
+                    stats.pointsCount[w] = s.count;
+                    stats.min[w] = s.min;
+                    stats.max[w] = s.max;
+                    stats.sum[w] = s.sum;
+                    stats.mean[w] = stats.sum[w] / stats.pointsCount[w];
+                    if (stats.pointsCount[w] > 1) {
+                        double sigmaSquare = (s.sumOfSquares - stats.sum[w]
+                                * stats.sum[w] / stats.pointsCount[w])
+                                / (stats.pointsCount[w] - 1);
+                        if (sigmaSquare > 0) {
+                            stats.stdDev[w] = Math.sqrt(sigmaSquare);
+                        }
+                    }
+                }
+            }
+        } finally {
+            for (Future<?> future : masks) {
+                future.cancel(true);
+            }
+            for (Future<?> future : planes) {
+                future.cancel(true);
+            }
+            for (PixelBuffer buf : buffers.values()) {
                 try {
                     buf.close();
                 } catch (IOException e) {
                     log.error("Error closing " + buf, e);
                 }
             }
+        }
 
-            for (int w = 0; w < ch; w++) {
+        return rs;
 
-                stats.mean[w] = stats.sum[w] / stats.pointsCount[w];
-                if (stats.pointsCount[w] > 1) {
-                    double sigmaSquare = (sumOfSquares[w] - stats.sum[w]
-                            * stats.sum[w] / stats.pointsCount[w])
-                            / (stats.pointsCount[w] - 1);
-                    if (sigmaSquare > 0) {
-                        stats.stdDev[w] = Math.sqrt(sigmaSquare);
-                    }
-                }
-            }
+    }
 
-            rs.perShape[i] = stats;
+    /**
+     * Runs the task on the {@link #statsExecutor}, or immediately on the
+     * calling thread if there is none.
+     */
+    private <T> Future<T> submit(Callable<T> task) {
+        if (statsExecutor != null) {
+            return statsExecutor.submit(task);
         }
+        FutureTask<T> future = new FutureTask<T>(task);
+        future.run();
+        return future;
+    }
 
-        return rs;
-
+    private <T> T get(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalException("Interrupted computing statistics");
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            throw new InternalException("Error computing statistics: " + t);
+        }
     }
 
     /**
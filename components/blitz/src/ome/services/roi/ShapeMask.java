@@ -0,0 +1,222 @@
+/*
+ *   Copyright 2014 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.roi;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import ome.conditions.ApiUsageException;
+import ome.conditions.ResourceError;
+import ome.conditions.ValidationException;
+import ome.io.nio.DimensionsOutOfBoundsException;
+import ome.io.nio.PixelBuffer;
+import omero.model.SmartShape;
+
+/**
+ * Rasterized form of a shape, collected once from
+ * {@link SmartShape#areaPoints(SmartShape.PointCallback)} and stored as
+ * horizontal spans of pixels sorted by row. The pixels under the mask can
+ * then be {@link #accumulate(PixelBuffer, int, int, int, Stats) accumulated}
+ * for any plane by reading the bounding box of the shape in tiles, rather
+ * than reading one row per point.
+ *
+ * Points reported more than once by the shape are counted once per report,
+ * as they were when reading point by point.
+ *
+ * @since 5.1
+ */
+public class ShapeMask implements SmartShape.PointCallback {
+
+    /** Maximum number of pixels read from the buffer at a time. */
+    public static final int MAX_TILE_PIXELS = 1024 * 1024;
+
+    private final int sizeX;
+
+    private final int sizeY;
+
+    /** Points collected so far as <code>y &lt;&lt; 32 | x</code>. */
+    private long[] points = new long[64];
+
+    private int size;
+
+    /** Row, first column and length of each span, once {@link #build()}. */
+    private int[] spanY, spanX, spanLength;
+
+    private int minX, minY, maxX, maxY;
+
+    /**
+     * Creates an empty mask for planes of the given size.
+     * @param sizeX The width of the planes.
+     * @param sizeY The height of the planes.
+     */
+    public ShapeMask(int sizeX, int sizeY) {
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+    }
+
+    /**
+     * Adds a point to the mask.
+     * @throws ApiUsageException if the row is outside of the plane.
+     * @throws ValidationException if the column is outside of the plane.
+     */
+    public void handle(int x, int y) {
+        if (spanY != null) {
+            throw new IllegalStateException("Mask already built");
+        }
+        if (y < 0 || y >= sizeY) {
+            throw new ApiUsageException("DimensionsOutOfBounds: "
+                    + "Y '" + y + "' outside of sizeY '" + sizeY + "'.");
+        }
+        if (x < 0 || x >= sizeX) {
+            throw new ValidationException("IndexOutOfBounds: "
+                    + "X '" + x + "' outside of sizeX '" + sizeX + "'.");
+        }
+        if (size == points.length) {
+            points = Arrays.copyOf(points, size * 2);
+        }
+        points[size++] = ((long) y << 32) | x;
+    }
+
+    /**
+     * Sorts the collected points into spans. Must be called once all points
+     * have been {@link #handle(int, int) handled}.
+     * @return this instance.
+     */
+    public ShapeMask build() {
+        Arrays.sort(points, 0, size);
+        int[] ys = new int[Math.max(1, size)];
+        int[] xs = new int[ys.length];
+        int[] lengths = new int[ys.length];
+        int spans = 0;
+        minX = minY = Integer.MAX_VALUE;
+        maxX = maxY = -1;
+        for (int i = 0; i < size; i++) {
+            int y = (int) (points[i] >>> 32);
+            int x = (int) points[i];
+            int last = spans - 1;
+            if (last >= 0 && ys[last] == y
+                    && xs[last] + lengths[last] == x) {
+                lengths[last]++;
+            } else {
+                ys[spans] = y;
+                xs[spans] = x;
+                lengths[spans] = 1;
+                spans++;
+            }
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+        spanY = Arrays.copyOf(ys, spans);
+        spanX = Arrays.copyOf(xs, spans);
+        spanLength = Arrays.copyOf(lengths, spans);
+        points = null;
+        return this;
+    }
+
+    /**
+     * Returns the number of points of the mask.
+     * @return See above.
+     */
+    public long getCount() {
+        long count = 0;
+        for (int length : spanLength) {
+            count += length;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of spans of the mask.
+     * @return See above.
+     */
+    public int getSpanCount() {
+        return spanY.length;
+    }
+
+    /**
+     * Accumulates the pixels of a plane which lie under the mask. Only the
+     * bounding box of the mask is read, in tiles of whole rows of at most
+     * {@link #MAX_TILE_PIXELS} pixels. Reads are synchronized on the buffer,
+     * which may therefore be shared by several threads.
+     * @param buf The pixel buffer to read from.
+     * @param z The optical section.
+     * @param c The channel.
+     * @param t The timepoint.
+     * @param stats The statistics to accumulate into.
+     */
+    public void accumulate(PixelBuffer buf, int z, int c, int t,
+            Stats stats) {
+        if (spanY.length == 0) {
+            return;
+        }
+        final int w = maxX - minX + 1;
+        final int rows = Math.max(1, MAX_TILE_PIXELS / w);
+        int span = 0;
+        for (int y0 = minY; y0 <= maxY; y0 += rows) {
+            final int h = Math.min(rows, maxY - y0 + 1);
+            ome.util.PixelData tile = null;
+            try {
+                synchronized (buf) {
+                    tile = buf.getTile(z, c, t, minX, y0, w, h);
+                }
+                while (span < spanY.length && spanY[span] < y0 + h) {
+                    int offset = (spanY[span] - y0) * w + spanX[span] - minX;
+                    for (int i = 0; i < spanLength[span]; i++) {
+                        stats.add(tile.getPixelValue(offset + i));
+                    }
+                    span++;
+                }
+            } catch (IOException e) {
+                throw new ResourceError("IOException: " + e);
+            } catch (DimensionsOutOfBoundsException e) {
+                throw new ApiUsageException("DimensionsOutOfBounds: " + e);
+            } catch (IndexOutOfBoundsException iobe) {
+                throw new ValidationException("IndexOutOfBounds: " + iobe);
+            } finally {
+                if (tile != null) {
+                    tile.dispose();
+                }
+            }
+        }
+    }
+
+    /**
+     * Count, minimum, maximum, sum and sum of squares of pixel values.
+     * Partial statistics accumulated on separate threads are combined with
+     * {@link #merge(Stats)}.
+     */
+    public static class Stats {
+
+        public long count;
+
+        public double min = Double.MAX_VALUE;
+
+        public double max = 0;
+
+        public double sum;
+
+        public double sumOfSquares;
+
+        public void add(double value) {
+            count++;
+            min = Math.min(value, min);
+            max = Math.max(value, max);
+            sum += value;
+            sumOfSquares += value * value;
+        }
+
+        public void merge(Stats other) {
+            count += other.count;
+            min = Math.min(other.min, min);
+            max = Math.max(other.max, max);
+            sum += other.sum;
+            sumOfSquares += other.sumOfSquares;
+        }
+    }
+
+}
@@ -1059,6 +1059,16 @@ public class IceMapper extends ome.util.ModelMapper implements
         return IceMap.OMEtoOMERO;
     }
 
+    /**
+     * Uses the generated {@link IceMap#newInstance(Class)} rather than
+     * reflection to create the omero.model objects.
+     */
+    @Override
+    protected Object newTarget(Class targetType) throws Exception {
+        Object target = IceMap.newInstance(targetType);
+        return target != null ? target : super.newTarget(targetType);
+    }
+
     private void fillTarget(Filterable source, ModelBased target) {
         if (source != null && target != null) {
             target.copyObject(source, this);
@@ -1095,7 +1105,7 @@ public class IceMapper extends ome.util.ModelMapper implements
     // ~ Methods from IceMethodInvoker
     // =========================================================================
 
-    protected boolean isPrimitive(Class<?> p) {
+    protected static boolean isPrimitive(Class<?> p) {
         if (p.equals(byte.class) || p.equals(byte[].class)
                 || p.equals(int.class) || p.equals(int[].class)
                 || p.equals(long.class) || p.equals(long[].class)
@@ -1129,89 +1139,196 @@ public class IceMapper extends ome.util.ModelMapper implements
         return false;
     }
 
+    // Kinds of conversion chosen by inputKind() and outputKind()
+    private static final int KIND_UNKNOWN = -1, KIND_UNCHANGED = 0,
+            KIND_WRAPPER_ARRAY = 1, KIND_CLASS = 2, KIND_MODEL = 3,
+            KIND_FILTER = 4, KIND_PRINCIPAL = 5, KIND_PARAMETERS = 6,
+            KIND_LIST = 7, KIND_SET = 8, KIND_COLLECTION = 9,
+            KIND_TIMESTAMP = 10, KIND_MAP = 11, KIND_PLANEDEF = 12,
+            KIND_ARRAY = 13, KIND_INTERNAL = 14, KIND_RTYPE = 15,
+            KIND_RGBBUFFER = 16, KIND_ROLES = 17, KIND_DATE = 18,
+            KIND_EVENTCONTEXT = 19, KIND_FILTERABLE = 20,
+            KIND_FILTERABLE_ARRAY = 21, KIND_VOID = 22;
+
     public Object handleInput(Class<?> p, Object arg) throws ServerError {
-        if (arg instanceof RType) {
-            RType rt = (RType) arg;
-            return fromRType(rt);
-        } else if (isPrimitive(p) || isNullablePrimitive(p)) {
+        return handleInput(inputKind(p), p, arg);
+    }
+
+    /**
+     * Returns the conversion which {@link #handleInput(Class, Object)} applies
+     * to arguments of the given type, so that the arguments of a method can
+     * be mapped by {@link #handleInput(int, Class, Object)} without checking
+     * their types again on each call.
+     */
+    public static int inputKind(Class<?> p) {
+        if (isPrimitive(p) || isNullablePrimitive(p)) {
             // FIXME use findTarget for Immutable.
-            return arg;
+            return KIND_UNCHANGED;
         } else if (isWrapperArray(p)) {
-            return reverseArray((List) arg, p);
+            return KIND_WRAPPER_ARRAY;
         } else if (p.equals(Class.class)) {
-            return omeroClass((String) arg, true);
+            return KIND_CLASS;
         } else if (ome.model.internal.Details.class.isAssignableFrom(p)) {
-            return reverse((ModelBased) arg);
+            return KIND_MODEL;
         } else if (ome.model.IObject.class.isAssignableFrom(p)) {
-            return reverse((ModelBased) arg);
+            return KIND_MODEL;
         } else if (p.equals(ome.parameters.Filter.class)) {
-            return convert((omero.sys.Filter) arg);
+            return KIND_FILTER;
         } else if (p.equals(ome.system.Principal.class)) {
-            return convert((omero.sys.Principal) arg);
+            return KIND_PRINCIPAL;
         } else if (p.equals(ome.parameters.Parameters.class)) {
-            return convert((omero.sys.Parameters) arg);
+            return KIND_PARAMETERS;
         } else if (List.class.isAssignableFrom(p)) {
-            return reverse((Collection) arg);
+            return KIND_LIST;
         } else if (Set.class.isAssignableFrom(p)) {
-            return reverse(new HashSet((Collection) arg)); // Necessary
-            // since Ice
-            // doesn't
-            // support
-            // Sets.
+            return KIND_SET;
         } else if (Collection.class.isAssignableFrom(p)) {
-            return reverse((Collection) arg);
+            return KIND_COLLECTION;
         } else if (Timestamp.class.isAssignableFrom(p)) {
-            if (arg != null) {
-                throw new RuntimeException("This must be null here");
-            }
-            return null;
+            return KIND_TIMESTAMP;
         } else if (Map.class.isAssignableFrom(p)) {
-            return reverse((Map) arg);
+            return KIND_MAP;
         } else if (PlaneDef.class.isAssignableFrom(p)) {
-            return convert((omero.romio.PlaneDef) arg);
+            return KIND_PLANEDEF;
         } else if (Object[].class.isAssignableFrom(p)) {
-            return reverseArray((List) arg, p);
+            return KIND_ARRAY;
         } else {
-            throw new ApiUsageException(null, null, "Can't handle input " + p);
+            return KIND_UNKNOWN;
+        }
+    }
+
+    /**
+     * Maps an argument as {@link #handleInput(Class, Object)} does.
+     *
+     * @param kind the value returned by {@link #inputKind(Class)} for p.
+     */
+    public Object handleInput(int kind, Class<?> p, Object arg)
+            throws ServerError {
+        if (arg instanceof RType) {
+            RType rt = (RType) arg;
+            return fromRType(rt);
+        }
+        switch (kind) {
+            case KIND_UNCHANGED:
+                return arg;
+            case KIND_WRAPPER_ARRAY:
+            case KIND_ARRAY:
+                return reverseArray((List) arg, p);
+            case KIND_CLASS:
+                return omeroClass((String) arg, true);
+            case KIND_MODEL:
+                return reverse((ModelBased) arg);
+            case KIND_FILTER:
+                return convert((omero.sys.Filter) arg);
+            case KIND_PRINCIPAL:
+                return convert((omero.sys.Principal) arg);
+            case KIND_PARAMETERS:
+                return convert((omero.sys.Parameters) arg);
+            case KIND_LIST:
+            case KIND_COLLECTION:
+                return reverse((Collection) arg);
+            case KIND_SET:
+                // Necessary since Ice doesn't support Sets.
+                return reverse(new HashSet((Collection) arg));
+            case KIND_TIMESTAMP:
+                if (arg != null) {
+                    throw new RuntimeException("This must be null here");
+                }
+                return null;
+            case KIND_MAP:
+                return reverse((Map) arg);
+            case KIND_PLANEDEF:
+                return convert((omero.romio.PlaneDef) arg);
+            default:
+                throw new ApiUsageException(null, null, "Can't handle input " + p);
         }
     }
 
     public Object handleOutput(Class type, Object o) throws ServerError {
-        if (o == null) {
-            return null;
-        } else if (RType.class.isAssignableFrom(type)) {
-            return o;
+        return handleOutput(outputKind(type), type, o);
+    }
+
+    /**
+     * Returns the conversion which {@link #handleOutput(Class, Object)}
+     * applies to return values of the given type. See
+     * {@link #inputKind(Class)}.
+     */
+    public static int outputKind(Class type) {
+        if (RType.class.isAssignableFrom(type)) {
+            return KIND_UNCHANGED;
         } else if (omero.Internal.class.isAssignableFrom(type)) {
-            return rinternal((omero.Internal) o);
+            return KIND_INTERNAL;
         } else if (void.class.isAssignableFrom(type)) {
-            assert o == null;
-            return null;
+            return KIND_VOID;
         } else if (isPrimitive(type)) {
-            return o;
+            return KIND_UNCHANGED;
         } else if (isNullablePrimitive(type)) {
-            return toRType(o);
+            return KIND_RTYPE;
         } else if (RGBBuffer.class.isAssignableFrom(type)) {
-            return convert((RGBBuffer) o);
+            return KIND_RGBBUFFER;
         } else if (Roles.class.isAssignableFrom(type)) {
-            return convert((Roles) o);
+            return KIND_ROLES;
         } else if (Date.class.isAssignableFrom(type)) {
-            return convert((Date) o);
+            return KIND_DATE;
         } else if (ome.system.EventContext.class.isAssignableFrom(type)) {
-            return convert((ome.system.EventContext) o);
+            return KIND_EVENTCONTEXT;
         } else if (Set.class.isAssignableFrom(type)) {
-            return map(new ArrayList((Set) o)); // Necessary since Ice
-            // doesn't support Sets.
+            return KIND_SET;
         } else if (Collection.class.isAssignableFrom(type)) {
-            return map((Collection) o);
+            return KIND_COLLECTION;
         } else if (IObject.class.isAssignableFrom(type)) {
-            return map((Filterable) o);
+            return KIND_FILTERABLE;
         } else if (Map.class.isAssignableFrom(type)) {
-            return map((Map) o);
+            return KIND_MAP;
         } else if (Filterable[].class.isAssignableFrom(type)) {
-            return map((Filterable[]) o);
+            return KIND_FILTERABLE_ARRAY;
         } else {
-            throw new ApiUsageException(null, null, "Can't handle output "
-                    + type);
+            return KIND_UNKNOWN;
+        }
+    }
+
+    /**
+     * Maps a return value as {@link #handleOutput(Class, Object)} does.
+     *
+     * @param kind the value returned by {@link #outputKind(Class)} for type.
+     */
+    public Object handleOutput(int kind, Class type, Object o)
+            throws ServerError {
+        if (o == null) {
+            return null;
+        }
+        switch (kind) {
+            case KIND_UNCHANGED:
+                return o;
+            case KIND_INTERNAL:
+                return rinternal((omero.Internal) o);
+            case KIND_VOID:
+                assert o == null;
+                return null;
+            case KIND_RTYPE:
+                return toRType(o);
+            case KIND_RGBBUFFER:
+                return convert((RGBBuffer) o);
+            case KIND_ROLES:
+                return convert((Roles) o);
+            case KIND_DATE:
+                return convert((Date) o);
+            case KIND_EVENTCONTEXT:
+                return convert((ome.system.EventContext) o);
+            case KIND_SET:
+                // Necessary since Ice doesn't support Sets.
+                return map(new ArrayList((Set) o));
+            case KIND_COLLECTION:
+                return map((Collection) o);
+            case KIND_FILTERABLE:
+                return map((Filterable) o);
+            case KIND_MAP:
+                return map((Map) o);
+            case KIND_FILTERABLE_ARRAY:
+                return map((Filterable[]) o);
+            default:
+                throw new ApiUsageException(null, null, "Can't handle output "
+                        + type);
         }
     }
 
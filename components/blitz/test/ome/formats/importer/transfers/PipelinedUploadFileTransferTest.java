@@ -0,0 +1,207 @@
+/*
+ *   Copyright 2014 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+package ome.formats.importer.transfers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import ome.formats.importer.util.ProportionalTimeEstimatorImpl;
+import ome.util.checksum.ChecksumProviderFactoryImpl;
+import ome.util.checksum.ChecksumType;
+import omero.ServerError;
+import omero.api.RawFileStorePrx;
+
+import org.jmock.Mock;
+import org.jmock.MockObjectTestCase;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Uploads a file through {@link PipelinedUploadFileTransfer} to a mock
+ * {@link RawFileStorePrx}, checking the number of writes in flight and the
+ * order in which they are sent and acknowledged.
+ *
+ * @since 5.1
+ */
+@Test
+public class PipelinedUploadFileTransferTest extends MockObjectTestCase {
+
+    static final int BLOCK = 16, WINDOW = 3;
+
+    /** Not a multiple of {@link #BLOCK} so that the last block is short. */
+    static final int SIZE = BLOCK * 10 + 5;
+
+    File file;
+
+    Mock rawFileStoreMock;
+
+    RawFileStorePrx rawFileStore;
+
+    /** Offsets of the writes, in the order they were begun. */
+    final List<Long> begun = new ArrayList<Long>();
+
+    /** Offsets of the writes, in the order they were acknowledged. */
+    final List<Long> ended = new ArrayList<Long>();
+
+    /** Progress reported to the observers. */
+    final List<Long> progress = new ArrayList<Long>();
+
+    long written;
+
+    int inFlight, maxInFlight;
+
+    boolean completed;
+
+    @Override
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        file = File.createTempFile("PipelinedUploadFileTransferTest", ".bin");
+        final byte[] data = new byte[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            data[i] = (byte) i;
+        }
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        rawFileStoreMock = mock(RawFileStorePrx.class);
+        rawFileStore = (RawFileStorePrx) rawFileStoreMock.proxy();
+        begun.clear();
+        ended.clear();
+        progress.clear();
+        written = 0;
+        inFlight = maxInFlight = 0;
+        completed = false;
+    }
+
+    @Override
+    @AfterMethod
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    /**
+     * Transfer whose writes are recorded, failing the acknowledgement of the
+     * given write.
+     */
+    PipelinedUploadFileTransfer transfer(final int failingWrite) {
+        return new PipelinedUploadFileTransfer(WINDOW) {
+            @Override
+            PendingWrite beginWrite(RawFileStorePrx rfs, byte[] data,
+                    final long offset, int length) {
+                assertSame(rawFileStore, rfs);
+                assertEquals(length, data.length);
+                final int index = begun.size();
+                begun.add(offset);
+                written += length;
+                maxInFlight = Math.max(maxInFlight, ++inFlight);
+                return new PendingWrite(length) {
+                    @Override
+                    void end() throws ServerError {
+                        inFlight--;
+                        ended.add(offset);
+                        if (index == failingWrite) {
+                            throw new ServerError();
+                        }
+                    }
+                };
+            }
+        };
+    }
+
+    TransferState state() throws IOException, ServerError {
+        return new TransferState(file, 0, 1, null, null,
+                new ProportionalTimeEstimatorImpl(SIZE),
+                new ChecksumProviderFactoryImpl().getProvider(
+                        ChecksumType.SHA1), new byte[BLOCK]) {
+            @Override
+            public RawFileStorePrx getUploader(String mode) {
+                return rawFileStore;
+            }
+            @Override
+            public void save() {
+            }
+            @Override
+            public void uploadStarted() {
+            }
+            @Override
+            public void uploadBytes(long offset) {
+                progress.add(offset);
+            }
+            @Override
+            public void uploadComplete(long offset) {
+                assertEquals(SIZE, offset);
+                completed = true;
+            }
+        };
+    }
+
+    public void testWindowAndOrder() throws Exception {
+        rawFileStoreMock.expects(once()).method("close");
+        final PipelinedUploadFileTransfer transfer = transfer(-1);
+        transfer.transfer(state());
+        transfer.afterTransfer(0, Collections.<String>emptyList());
+
+        assertTrue(completed);
+        assertEquals(SIZE, written);
+        assertEquals(WINDOW, maxInFlight);
+        assertEquals(0, inFlight);
+        // the empty write which creates the file, then each block in order
+        assertEquals(12, begun.size());
+        assertEquals(Long.valueOf(0), begun.get(0));
+        for (int i = 1; i < begun.size(); i++) {
+            assertEquals(Long.valueOf((i - 1) * BLOCK), begun.get(i));
+        }
+        assertEquals(begun, ended);
+        for (int i = 1; i < progress.size(); i++) {
+            assertTrue(progress.get(i) >= progress.get(i - 1));
+        }
+        assertEquals(Long.valueOf(SIZE), progress.get(progress.size() - 1));
+        rawFileStoreMock.verify();
+    }
+
+    public void testFailedWriteStopsTransfer() throws Exception {
+        rawFileStoreMock.expects(once()).method("close");
+        final PipelinedUploadFileTransfer transfer = transfer(4);
+        try {
+            transfer.transfer(state());
+            fail("the failed write must be reported");
+        } catch (ServerError e) {
+            // expected
+        } finally {
+            transfer.afterTransfer(1, Collections.<String>emptyList());
+        }
+
+        assertFalse(completed);
+        // acknowledged in order up to the failed write, at most a window
+        // of later writes having been sent
+        assertEquals(begun.subList(0, 5), ended);
+        assertTrue(begun.size() <= 5 + WINDOW);
+        for (long offset : progress) {
+            assertTrue(offset <= 4 * BLOCK);
+        }
+        rawFileStoreMock.verify();
+    }
+
+    public void testReusedAfterTransfer() throws Exception {
+        rawFileStoreMock.expects(atLeastOnce()).method("close");
+        final PipelinedUploadFileTransfer transfer = transfer(-1);
+        transfer.transfer(state());
+        transfer.afterTransfer(0, Collections.<String>emptyList());
+        completed = false;
+        transfer.transfer(state());
+        transfer.afterTransfer(0, Collections.<String>emptyList());
+        assertTrue(completed);
+        assertEquals(2 * SIZE, written);
+        rawFileStoreMock.verify();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ *   Copyright 2014 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+package ome.formats.utests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+import ome.formats.importer.util.ConcurrentTimeEstimatorImpl;
+import ome.formats.importer.util.TimeEstimator;
+
+import org.testng.annotations.Test;
+
+/**
+ * Times chunks uploaded from several threads at once.
+ *
+ * @since 5.1
+ */
+public class ConcurrentTimeEstimatorTest extends TestCase {
+
+    @Test
+    public void testChunksFromSeveralThreads() throws Exception {
+        final TimeEstimator estimator = new ConcurrentTimeEstimatorImpl(8000);
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(threads.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        estimator.start();
+                        Thread.sleep(20);
+                        estimator.stop(1000);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Object> future : futures) {
+                future.get();
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+        // Half of the bytes are left, so about as long again is left.
+        long left = estimator.getUploadTimeLeft();
+        assertTrue("left: " + left, left > 0 && left < 1000);
+        estimator.start();
+        estimator.stop(4000);
+        assertEquals(0, estimator.getUploadTimeLeft());
+    }
+
+    @Test
+    public void testStopWithoutBytes() {
+        TimeEstimator estimator = new ConcurrentTimeEstimatorImpl(100);
+        estimator.start();
+        estimator.stop();
+        assertEquals(0, estimator.getUploadTimeLeft());
+    }
+}
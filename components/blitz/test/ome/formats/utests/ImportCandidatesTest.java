@@ -107,6 +107,37 @@ public class ImportCandidatesTest extends TestCase {
         assertTrue(c.wasCancelled());
     }
 
+    @Test
+    public void testParallelScanFindsSameFiles() throws Exception {
+        basic(o);
+        final int total = scannings.get(scannings.size() - 1).totalFiles;
+        final List<String> paths = c.getPaths();
+        config.parallelScan.set(4);
+        try {
+            scannings.clear();
+            basic(o);
+        } finally {
+            config.parallelScan.set(1);
+        }
+        assertTrue(scannings.size() > 0);
+        assertEquals(total, scannings.get(scannings.size() - 1).totalFiles);
+        assertEquals(paths, c.getPaths());
+    }
+
+    @Test
+    public void testParallelScanCancels() throws Exception {
+        Canceler cancel = new Canceler();
+        config.parallelScan.set(4);
+        try {
+            basic(cancel);
+        } finally {
+            config.parallelScan.set(1);
+        }
+        assertEquals(0, c.size());
+        assertEquals(1, cancel.count);
+        assertTrue(c.wasCancelled());
+    }
+
     @Test
     public void testOrderedReturns() {
         c = new ImportCandidates(w, new String[]{"a","b"}, o) {
@@ -1114,6 +1114,16 @@ public class IceMethodInvokerUnitTest extends MockObjectTestCase {
         }
     }
 
+    @Test
+    public void testIceMapCreatesEachMappedClass() throws Exception {
+        for (Class<?> k : IceMap.OMEtoOMERO.values()) {
+            Object o = IceMap.newInstance(k);
+            assertNotNull(k.getName(), o);
+            assertEquals(k, o.getClass());
+        }
+        assertNull(IceMap.newInstance(String.class));
+    }
+
     // ~ RoiResults
     // =========================================================================
 
@@ -0,0 +1,143 @@
+/*
+ *   Copyright 2014 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.roi.test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import ome.conditions.ApiUsageException;
+import ome.conditions.ValidationException;
+import ome.io.nio.PixelBuffer;
+import ome.services.roi.ShapeMask;
+import ome.util.PixelData;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test(groups = { "rois" })
+public class ShapeMaskUnitTest extends TestCase {
+
+    static final int SIZE_X = 2000, SIZE_Y = 600;
+
+    final AtomicInteger tiles = new AtomicInteger();
+
+    @BeforeMethod
+    public void resetTiles() {
+        tiles.set(0);
+    }
+
+    static double value(int x, int y, int z, int c, int t) {
+        return (x * 7 + y * 13 + z * 3 + c * 5 + t) % 1000;
+    }
+
+    /**
+     * Buffer returning {@link #value(int, int, int, int, int)} for each
+     * pixel of the requested tiles.
+     */
+    PixelBuffer buffer() {
+        return (PixelBuffer) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] { PixelBuffer.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method,
+                            Object[] args) {
+                        if (!method.getName().equals("getTile")) {
+                            throw new UnsupportedOperationException(
+                                    method.getName());
+                        }
+                        tiles.incrementAndGet();
+                        int z = (Integer) args[0], c = (Integer) args[1];
+                        int t = (Integer) args[2], x = (Integer) args[3];
+                        int y = (Integer) args[4], w = (Integer) args[5];
+                        int h = (Integer) args[6];
+                        PixelData tile = new PixelData("uint16",
+                                ByteBuffer.wrap(new byte[w * h * 2]));
+                        for (int j = 0; j < h; j++) {
+                            for (int i = 0; i < w; i++) {
+                                tile.setPixelValue(j * w + i,
+                                        value(x + i, y + j, z, c, t));
+                            }
+                        }
+                        return tile;
+                    }
+                });
+    }
+
+    @Test
+    public void testStatsMatchPointByPoint() {
+        int[][] points = { { 5, 3 }, { 6, 3 }, { 7, 3 }, { 6, 3 },
+                { 2, 4 }, { 9, 4 }, { 3, 2 } };
+        ShapeMask mask = new ShapeMask(SIZE_X, SIZE_Y);
+        ShapeMask.Stats expected = new ShapeMask.Stats();
+        for (int[] p : points) {
+            mask.handle(p[0], p[1]);
+            expected.add(value(p[0], p[1], 1, 2, 3));
+        }
+        mask.build();
+        assertEquals(points.length, mask.getCount());
+        ShapeMask.Stats stats = new ShapeMask.Stats();
+        mask.accumulate(buffer(), 1, 2, 3, stats);
+        assertEquals(expected.count, stats.count);
+        assertEquals(expected.min, stats.min);
+        assertEquals(expected.max, stats.max);
+        assertEquals(expected.sum, stats.sum);
+        assertEquals(expected.sumOfSquares, stats.sumOfSquares);
+        assertEquals(1, tiles.get());
+    }
+
+    @Test
+    public void testLargeBoundsAreReadInSeveralTiles() {
+        ShapeMask mask = new ShapeMask(SIZE_X, SIZE_Y);
+        mask.handle(0, 0);
+        mask.handle(SIZE_X - 1, SIZE_Y - 1);
+        mask.build();
+        assertEquals(2, mask.getSpanCount());
+        ShapeMask.Stats stats = new ShapeMask.Stats();
+        mask.accumulate(buffer(), 0, 0, 0, stats);
+        assertEquals(2, tiles.get());
+        assertEquals(2, stats.count);
+        assertEquals(value(0, 0, 0, 0, 0)
+                + value(SIZE_X - 1, SIZE_Y - 1, 0, 0, 0), stats.sum);
+    }
+
+    @Test
+    public void testEmptyMask() {
+        ShapeMask mask = new ShapeMask(SIZE_X, SIZE_Y).build();
+        ShapeMask.Stats stats = new ShapeMask.Stats();
+        mask.accumulate(buffer(), 0, 0, 0, stats);
+        assertEquals(0, stats.count);
+        assertEquals(Double.MAX_VALUE, stats.min);
+        assertEquals(0, tiles.get());
+    }
+
+    @Test
+    public void testMerge() {
+        ShapeMask.Stats a = new ShapeMask.Stats();
+        ShapeMask.Stats b = new ShapeMask.Stats();
+        a.add(4);
+        b.add(2);
+        b.add(9);
+        a.merge(b);
+        assertEquals(3, a.count);
+        assertEquals(2.0, a.min);
+        assertEquals(9.0, a.max);
+        assertEquals(15.0, a.sum);
+        assertEquals(101.0, a.sumOfSquares);
+    }
+
+    @Test(expectedExceptions = ApiUsageException.class)
+    public void testRowOutOfBounds() {
+        new ShapeMask(SIZE_X, SIZE_Y).handle(0, SIZE_Y);
+    }
+
+    @Test(expectedExceptions = ValidationException.class)
+    public void testColumnOutOfBounds() {
+        new ShapeMask(SIZE_X, SIZE_Y).handle(-1, 0);
+    }
+}
@@ -140,6 +140,20 @@ class NavigationHistory
         return null;
     }
     
+    /**
+     * Returns <code>true</code> if the two plane definitions have the same
+     * z and t coordinates, <code>false</code> otherwise.  We don't rely on
+     * {@link PlaneDef#equals(Object)} as it is the identity.
+     * 
+     * @param pd1 The first plane definition. Mustn't be <code>null</code>.
+     * @param pd2 The second plane definition or <code>null</code>.
+     * @return See above.
+     */
+    private static boolean sameMove(PlaneDef pd1, PlaneDef pd2)
+    {
+        return pd2 != null && pd1.z == pd2.z && pd1.t == pd2.t;
+    }
+    
     /**
      * Creates a new instance.
      * 
@@ -196,7 +210,7 @@ class NavigationHistory
         
         //Check if pd is the current move.  If so, return as we haven't moved
         //at all from the previous point.
-        if (pd.equals(curMove())) return;  //curMove can be null, but pd is not.
+        if (sameMove(pd, curMove())) return;  //curMove can be null.
         
         //Now make a copy to avoid caller changing entry after we added.
         pd = new PlaneDef();
@@ -273,12 +287,13 @@ class NavigationHistory
             pd = new PlaneDef();
             pd.slice = omero.romio.XY.value;
             pd.t = (int) p.x2;
-            pd.y = (int) p.x1;
+            pd.z = (int) p.x1;
             
             //Even though dir.getPoint is monotonic, we could be getting a pd
             //equal to the previous one b/c of the above casts to int.  However,
             //this shouldn't happen if navigation is || to the z or t axis.
-            if (!nextMoves.contains(pd))  //Never allow duplicates.
+            if (nextMoves.isEmpty() ||  //Never allow duplicates.
+                    !sameMove(pd, (PlaneDef) nextMoves.get(nextMoves.size()-1)))
                 nextMoves.add(pd);
         }
         return (PlaneDef[]) nextMoves.toArray(new PlaneDef[0]);
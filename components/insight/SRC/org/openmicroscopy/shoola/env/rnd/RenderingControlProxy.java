@@ -38,6 +38,12 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 
 
@@ -54,7 +60,6 @@ import omero.model.RenderingModel;
 import omero.romio.PlaneDef;
 
 import org.openmicroscopy.shoola.env.LookupNames;
-import org.openmicroscopy.shoola.env.cache.CacheService;
 import org.openmicroscopy.shoola.env.config.Registry;
 import org.openmicroscopy.shoola.env.data.ConnectionExceptionHandler;
 import org.openmicroscopy.shoola.env.data.DSOutOfServiceException;
@@ -106,6 +111,15 @@ class RenderingControlProxy
 	/** The maximum number of retry.*/
 	private static final int MAX_RETRY = 2;
 	
+	/** The number of XY planes prefetched ahead of the navigation. */
+	private static final int PREFETCH_PLANES = 4;
+	
+	/** The number of moves kept in the navigation history. */
+	private static final int MAX_MOVES = 8;
+	
+	/** The time, in seconds, an idle prefetching thread is kept alive. */
+	private static final long PREFETCH_KEEP_ALIVE = 30;
+	
     /** List of supported families. */
     private List families;
     
@@ -118,8 +132,29 @@ class RenderingControlProxy
     /** Reference to service to render pixels set. */
     private RenderingEnginePrx servant;
 
-    /** The id of the cache associated to this proxy. */
-    private int cacheID;
+    /** 
+     * Caches the rendered XY planes. Created when the first XY plane is
+     * rendered.
+     */
+    private XYCache xyCache;
+    
+    /** Keeps track of the XY planes rendered to guess the next ones. */
+    private NavigationHistory navigHistory;
+    
+    /** Renders the XY planes ahead of the navigation, created when needed. */
+    private ThreadPoolExecutor prefetcher;
+    
+    /** The XY planes being prefetched. Only accessed by the Swing thread. */
+    private Map<XYCache.Key, Future<?>> prefetching;
+    
+    /** 
+     * Incremented when the settings change so that planes rendered with
+     * the previous settings aren't cached anymore.
+     */
+    private volatile int generation;
+    
+    /** Identifies the settings of the last XY plane looked up. */
+    private String settingsKey;
     
     /** The channel metadata. */
     private ChannelData[] metadata;
@@ -133,12 +168,9 @@ class RenderingControlProxy
     /** Helper reference to the registry. */
     private Registry context;
     
-    /** The size of the cache. */
+    /** The size, in bytes, of the cache. */
     private int cacheSize;
     
-    /** The size of the image. */
-    private int imageSize;
-    
     /** The rendering settings. */
     private Map<String, List<RndProxyDef>> settings;
     
@@ -253,21 +285,134 @@ class RenderingControlProxy
 	}
 
     /**
-     * Retrieves from the cache the buffered image representing the specified
-     * plane definition. Note that only the images corresponding to an XY-plane
-     * are cached.
+     * Prefetches an XY plane and caches it if the settings haven't changed
+     * in the meantime.
+     */
+    private class Prefetch
+        implements Runnable
+    {
+        
+        /** The plane to render. */
+        private final PlaneDef pd;
+        
+        /** Identifies the settings the plane is rendered with. */
+        private final String settings;
+        
+        /** The value of {@link #generation} when the plane was requested. */
+        private final int requested;
+        
+        /** The rendering engine. */
+        private final RenderingEnginePrx re;
+        
+        /** Whether the plane is rendered compressed. */
+        private final boolean compressed;
+        
+        Prefetch(PlaneDef pd, String settings)
+        {
+            this.pd = pd;
+            this.settings = settings;
+            requested = generation;
+            re = servant;
+            compressed = isCompressed();
+        }
+        
+        public void run()
+        {
+            if (requested != generation) return;
+            try {
+                Object object;
+                if (compressed) object = re.renderCompressed(pd);
+                else {
+                    Point p = getSize(pd);
+                    object = Factory.createImage(re.renderAsPackedInt(pd), 32,
+                            p.x, p.y);
+                }
+                synchronized (xyCache) {
+                    if (requested == generation)
+                        xyCache.add(pd, settings, object, true);
+                }
+            } catch (Throwable e) {
+                log("Failed to prefetch plane z="+pd.z+" t="+pd.t+": "+e);
+            }
+        }
+    }
+    
+    /**
+     * Returns <code>true</code> if the specified plane can be cached, 
+     * <code>false</code> otherwise. Only whole XY planes of images which
+     * aren't big images are cached.
+     * 
+     * @param pd The plane definition.
+     * @return See above.
+     */
+    private boolean isCacheable(PlaneDef pd)
+    {
+        return pd.slice == omero.romio.XY.value && pd.region == null &&
+            !isBigImage();
+    }
+    
+    /**
+     * Returns a string identifying the settings an XY plane is rendered with,
+     * built from the local copy of the rendering settings and the compression
+     * level. Settings which aren't kept locally, e.g. the overlays, are
+     * handled by {@link #invalidateCache()}.
+     * 
+     * @return See above.
+     */
+    private String getSettingsKey()
+    {
+        StringBuilder b = new StringBuilder();
+        b.append(compression).append(';').append(rndDef.getColorModel());
+        b.append(';').append(rndDef.getBitResolution());
+        b.append(';').append(rndDef.getCdStart());
+        b.append(';').append(rndDef.getCdEnd());
+        ChannelBindingsProxy cb;
+        int[] rgba;
+        for (int i = 0; i < rndDef.getNumberOfChannels(); i++) {
+            cb = rndDef.getChannel(i);
+            if (cb == null || !cb.isActive()) {
+                b.append(";-");
+                continue;
+            }
+            b.append(';').append(cb.getInputStart());
+            b.append(',').append(cb.getInputEnd());
+            b.append(',').append(cb.getFamily());
+            b.append(',').append(cb.getCurveCoefficient());
+            b.append(',').append(cb.isNoiseReduction());
+            rgba = cb.getRGBA();
+            for (int j = 0; j < rgba.length; j++)
+                b.append(',').append(rgba[j]);
+        }
+        return b.toString();
+    }
+    
+    /**
+     * Retrieves from the cache the buffered image or the bytes array
+     * representing the specified plane definition, waiting for it if it is 
+     * being prefetched. Note that only the images corresponding to an
+     * XY-plane are cached.
      * 
      * @param pd The specified {@link PlaneDef plane definition}.
-     * @return The corresponding bufferedImage.
+     * @return The corresponding bufferedImage or bytes array.
      */
     private Object getFromCache(PlaneDef pd)
     {
         // We only cache XY images.
-    	if (pd.slice == omero.romio.XY.value && cacheID >= 0) {
-    		int index = pd.z+getPixelsDimensionsZ()*pd.t;
-    		return context.getCacheService().getElement(cacheID, index);
+    	if (xyCache == null || !isCacheable(pd)) return null;
+    	settingsKey = getSettingsKey();
+    	Object object = xyCache.extract(pd, settingsKey);
+    	if (object != null) return object;
+    	Future<?> future = prefetching.get(new XYCache.Key(pd, settingsKey));
+    	if (future == null) return null;
+    	try {
+    		future.get();
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		return null;
+    	} catch (Exception e) {
+    		return null;
     	}
-        return null;
+        return xyCache.extract(pd, settingsKey);
     }
     
     /**
@@ -278,73 +423,123 @@ class RenderingControlProxy
      */
     private void cache(PlaneDef pd, Object object)
     {
-    	if (isBigImage()) return;
-        if (pd.slice == omero.romio.XY.value) {
-            //We only cache XY images.
-            //if (xyCache != null) xyCache.add(pd, object);
-        	if (cacheID >= 0) {
-        		int index = pd.z+getPixelsDimensionsZ()*pd.t;
-        		//context.getCacheService().addElement(cacheID,
-        			//	Integer.valueOf(index), object);
-        	}
-        }
+    	//We only cache XY images.
+    	if (xyCache == null || !isCacheable(pd)) return;
+    	xyCache.add(pd, getSettingsKey(), object, false);
+    }
+    
+    /**
+     * Records the specified plane as the current move and prefetches the
+     * XY planes expected next along the navigation direction. Planes being
+     * prefetched which are not expected anymore are cancelled.
+     * 
+     * @param pd The plane which has just been rendered.
+     */
+    private void prefetch(PlaneDef pd)
+    {
+    	if (xyCache == null || !isCacheable(pd)) return;
+    	navigHistory.addMove(pd);
+    	String key = getSettingsKey();
+    	PlaneDef[] moves = navigHistory.guessNextMoves(PREFETCH_PLANES);
+    	Map<XYCache.Key, PlaneDef> next = new HashMap<XYCache.Key, PlaneDef>();
+    	for (int i = 0; i < moves.length; i++)
+    		next.put(new XYCache.Key(moves[i], key), moves[i]);
+    	Iterator<Map.Entry<XYCache.Key, Future<?>>> i =
+    		prefetching.entrySet().iterator();
+    	Map.Entry<XYCache.Key, Future<?>> e;
+    	while (i.hasNext()) {
+    		e = i.next();
+    		if (e.getValue().isDone() || !next.containsKey(e.getKey())) {
+    			e.getValue().cancel(false);
+    			i.remove();
+    		}
+    	}
+    	XYCache.Key k;
+    	for (int j = 0; j < moves.length; j++) {
+    		k = new XYCache.Key(moves[j], key);
+    		if (prefetching.containsKey(k) || xyCache.contains(k)) continue;
+    		prefetching.put(k, getPrefetcher().submit(
+    				new Prefetch(moves[j], key)));
+    	}
+    }
+    
+    /**
+     * Returns the executor prefetching the planes, creating it if needed.
+     * Its thread is stopped when idle.
+     * 
+     * @return See above.
+     */
+    private ExecutorService getPrefetcher()
+    {
+    	if (prefetcher == null) {
+    		final String name = "Prefetch-"+pixs.getId().getValue();
+    		prefetcher = new ThreadPoolExecutor(1, 1, PREFETCH_KEEP_ALIVE,
+    				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+    				new ThreadFactory() {
+    			public Thread newThread(Runnable r) {
+    				Thread t = new Thread(r, name);
+    				t.setDaemon(true);
+    				return t;
+    			}
+    		});
+    		prefetcher.allowCoreThreadTimeOut(true);
+    	}
+    	return prefetcher;
     }
     
-    /** Clears the cache. */
+    /** Cancels the planes being prefetched. */
+    private void cancelPrefetching()
+    {
+    	Iterator<Future<?>> i = prefetching.values().iterator();
+    	while (i.hasNext())
+    		i.next().cancel(false);
+    	prefetching.clear();
+    }
+    
+    /** 
+     * Invalidates the cache after a change of the settings. The planes 
+     * prefetched but not displayed yet are discarded since they may have
+     * been rendered while the settings were changing. The other planes are
+     * kept under the settings they were rendered with, unless the settings
+     * identified by {@link #getSettingsKey()} haven't changed: the change
+     * was then to settings not kept locally, and all the planes are removed.
+     */
     private void invalidateCache()
     {
-    	if (isBigImage()) return;
-    	if (cacheID >= 0) context.getCacheService().clearCache(cacheID);
+    	if (xyCache == null) return;
+    	cancelPrefetching();
+    	String key = getSettingsKey();
+    	synchronized (xyCache) {
+    		generation++;
+    		xyCache.discardPrefetched();
+    		if (key.equals(settingsKey)) xyCache.clear();
+    	}
+    	settingsKey = key;
     }
     
     /** Clears the cache and releases memory. */
     private void eraseCache()
     {
-    	if (isBigImage()) return;
-    	invalidateCache();
-    	if (cacheID >=0)
-    		context.getCacheService().removeCache(cacheID);
+    	if (xyCache == null) return;
+    	cancelPrefetching();
+    	synchronized (xyCache) {
+    		generation++;
+    		xyCache.clear();
+    	}
     }
     
     /**
      * Initializes the cache for the specified plane.
+     * Until an XY plane is requested it's pointless to have a cache.
      * 
      * @param pDef The plane of reference.
      */
     private void initializeCache(PlaneDef pDef)
     {
-    	if (isBigImage()) return;
-    	//if (xyCache != null) return;
-    	if (cacheID >= 0) return;
-    	/*
-    	if (pDef.getSlice() == PlaneDef.XY && xyCache == null) {
-    		//    		Okay, let's see if we can activate the xyCache.
-            //In order to 
-            //do that, the dimensions of the pixels array and the 
-            //xyImgSize have to be available. 
-            //This happens if at least one XY plane has been rendered.
-            //Note that doing remote calls upfront to eagerly 
-            //instantiate the xyCache is in most cases a total waste:
-            //the client is  likely to call getPixelsDims() before an
-            //image is ever  rendered and until an XY plane is 
-            //not requested it's pointless to have a cache.
-            xyCache = CachingService.createXYCache(pixs.getId(), length,
-            				getPixelsDimensionsZ(), getPixelsDimensionsT());
-    	}
-    	*/
-    	if (pDef.slice == omero.romio.XY.value) {
-    		try {
-    			cacheID = context.getCacheService().createCache(
-    					CacheService.IN_MEMORY, cacheSize/imageSize);
-			} catch (Exception e) {
-				//log the error for example if the cache manager could not
-				//be initialized.
-				LogMessage msg = new LogMessage();
-				msg.print("Initialize cache");
-				msg.print(e);
-				context.getLogger().error(this, msg);
-			}
-    	}
+    	if (xyCache != null || !isCacheable(pDef)) return;
+    	navigHistory = new NavigationHistory(MAX_MOVES,
+    			getPixelsDimensionsZ(), getPixelsDimensionsT());
+    	xyCache = new XYCache(cacheSize, navigHistory);
     }
   
     /**
@@ -534,11 +729,15 @@ class RenderingControlProxy
 	private BufferedImage renderCompressedBI(PlaneDef pDef)
 		throws RenderingServiceException, DSOutOfServiceException
 	{
-		//Need to adjust the cache.
-		//Object array = getFromCache(pDef);
+		//See if the requested image is in cache.
+		byte[] values = (byte[]) getFromCache(pDef);
 		try {
-			byte[] values = servant.renderCompressed(pDef);
-			imageSize = values.length;
+			if (values == null) {
+				values = servant.renderCompressed(pDef);
+				initializeCache(pDef);
+				cache(pDef, values);
+			}
+			prefetch(pDef);
 			return WriterImage.bytesToImage(values);
 		} catch (Throwable e) {
 			if (e instanceof LockTimeout && retry < MAX_RETRY) { //retry
@@ -565,14 +764,15 @@ class RenderingControlProxy
 	{
 		//See if the requested image is in cache.
         BufferedImage img = (BufferedImage) getFromCache(pDef);
-        //if (img != null) return img;
         try {
-        	int[] buf = servant.renderAsPackedInt(pDef);
-            Point p = getSize(pDef);
-            imageSize = 3*buf.length;
-            initializeCache(pDef);
-            img = Factory.createImage(buf, 32, p.x, p.y);
-            cache(pDef, img);
+        	if (img == null) {
+        		int[] buf = servant.renderAsPackedInt(pDef);
+        		Point p = getSize(pDef);
+        		initializeCache(pDef);
+        		img = Factory.createImage(buf, 32, p.x, p.y);
+        		cache(pDef, img);
+        	}
+        	prefetch(pDef);
 		} catch (Throwable e) {
 			if (e instanceof LockTimeout && retry < MAX_RETRY) { //retry
 				retry++;
@@ -724,11 +924,10 @@ class RenderingControlProxy
         pixs = pixels;
         families = null;
         models = null;
+        prefetching = new HashMap<XYCache.Key, Future<?>>();
         try {
         	families = servant.getAvailableFamilies();
             models = servant.getAvailableModels();
-            cacheID = -1;
-            imageSize = 1;
             this.compression = compression;
             metadata = new ChannelData[m.size()];
             Iterator<ChannelData> j = m.iterator();
@@ -909,8 +1108,12 @@ class RenderingControlProxy
     {
     	if (shutDown) return shutDown;
     	try {
-    		if (!keepCache && cacheID >= 0)
-    			context.getCacheService().removeCache(cacheID);
+    		if (!keepCache) eraseCache();
+    		else if (xyCache != null) cancelPrefetching();
+    		if (prefetcher != null) {
+    			prefetcher.shutdownNow();
+    			prefetcher = null;
+    		}
     		Iterator<RenderingControl> j = slaves.iterator();
 			while (j.hasNext())
 				((RenderingControlProxy) j.next()).shutDown();
@@ -931,9 +1134,8 @@ class RenderingControlProxy
 	 */
 	void setCacheSize(int size)
 	{
-		if (imageSize == 0) imageSize = 1;
-		if (cacheID >= 0)
-			context.getCacheService().setCacheEntries(cacheID, size/imageSize);
+		cacheSize = size;
+		if (xyCache != null) xyCache.resetCacheSize(size);
 	}
 	
     /** 
@@ -1636,7 +1838,7 @@ class RenderingControlProxy
 			Iterator<RenderingControl> i = slaves.iterator();
 			while (i.hasNext())
 				i.next().setCompression(compression);
-			eraseCache();
+			invalidateCache();
 		} catch (Exception e) {}
 	}
 
@@ -28,11 +28,9 @@ package org.openmicroscopy.shoola.env.rnd;
 
 //Java imports
 import java.awt.image.BufferedImage;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.List;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 
@@ -46,23 +44,23 @@ import org.openmicroscopy.shoola.util.math.geom2D.PlanePoint;
 
 /** 
  * Caches XY images, within a given pixels set, that have been rendered.
- * <p>The number of entries in the cache at any given time is  
- * <code>max_entries</code> at most, being <code>max_entries</code> the greatest
- * integer such that <nobr>
- * <code>max_entries</code>*<code>image_size</code> &lt;= 
- * <code>cache_size</code>
- * </nobr>.</p>
- * <p>If <code>max_entries</code> is reached and an entry has to be added, we 
- * discard a previous entry to make room for the new one.  The removal policy
- * is based on the current navigation direction maintained by the 
- * {@link NavigationHistory} and is as follows.  Let <code>C</code> be the set
- * of all entries in the cache and be <code>n</code> its cardinality.  It's a
+ * <p>Each entry is keyed by the z and t coordinates of the plane and by a
+ * string identifying the rendering settings the plane was rendered with, so
+ * that going back to previous settings doesn't require the planes to be
+ * rendered again. The total size, in bytes, of the cached images is 
+ * <code>cache_size</code> at most.</p>
+ * <p>If an image has to be added and doesn't fit, we discard previous
+ * entries to make room for the new one.  Entries rendered with settings 
+ * other than those of the new entry are discarded first, oldest first.
+ * Among the remaining entries, the removal policy is based on the current 
+ * navigation direction maintained by the {@link NavigationHistory} and is as
+ * follows.  Let <code>C</code> be the set of those entries.  It's a
  * trivial observation that we can identify an element of <code>C</code> with
  * a point in the <i>zOt</i> cartesian plane. Now if a point <code>p</code> is
- * to be added to <code>C</code> and <code>n=max_entries</code>, we consider
- * the set <code>C'</code> of all elements of <code>C</code> ordered such that
- * the first element is the farthest away from <code>p</code> and the last 
- * element is the closest to <code>p</code>.  That is:</p>
+ * to be added to <code>C</code>, we consider the set <code>C'</code> of all 
+ * elements of <code>C</code> ordered such that the first element is the 
+ * farthest away from <code>p</code> and the last element is the closest to
+ * <code>p</code>.  That is:</p>
  * <p><code>
  * C' = {c<sub>1</sub>, .. , c<sub>n</sub>} <br>
  * d(c<sub>i</sub>, p) &gt;= d(c<sub>i+i</sub>, p) </code><br>
@@ -83,6 +81,14 @@ import org.openmicroscopy.shoola.util.math.geom2D.PlanePoint;
  *  to the next step.</li>
  *  <li>Remove <code>c<sub>1</sub></code>.</li>
  * </ol>
+ * <p>The first element of each step is found in a single pass over the
+ * entries, without ordering <code>C</code>.</p>
+ * <p>Images may be added by a thread prefetching planes while others are
+ * extracted, so all the methods are synchronized. Entries which were
+ * {@link #add(PlaneDef, String, Object, boolean) prefetched} and haven't
+ * been {@link #extract(PlaneDef, String) extracted} yet can be
+ * {@link #discardPrefetched() discarded} when the settings change, as they
+ * may have been rendered while the change was under way.</p>
  *
  * @author  Jean-Marie Burel &nbsp;&nbsp;&nbsp;&nbsp;
  * 				<a href="mailto:j.burel@dundee.ac.uk">j.burel@dundee.ac.uk</a>
@@ -97,8 +103,80 @@ import org.openmicroscopy.shoola.util.math.geom2D.PlanePoint;
 public class XYCache
 {
 
-    /** The size, in bytes, of a rendered XY image. */
-    private final int           			image_size;
+    /** Identifies an XY plane rendered with given settings. */
+    static final class Key
+    {
+        
+        /** The plane, as a point in the <i>zOt</i> cartesian plane. */
+        final PlanePoint    point;
+        
+        /** Identifies the rendering settings. */
+        final String        settings;
+        
+        /**
+         * Creates a new instance.
+         * 
+         * @param pd        The plane. Mustn't be <code>null</code> and must
+         *                  define an XY plane.
+         * @param settings  Identifies the rendering settings.
+         *                  Mustn't be <code>null</code>.
+         */
+        Key(PlaneDef pd, String settings)
+        {
+            if (pd == null)
+                throw new NullPointerException("No plane def.");
+            if (pd.slice != omero.romio.XY.value)
+                throw new IllegalArgumentException(
+                        "Can only accept XY planes: "+pd.slice+".");
+            if (settings == null)
+                throw new NullPointerException("No settings.");
+            point = new PlanePoint(pd.z, pd.t);
+            this.settings = settings;
+        }
+        
+        /**
+         * Overridden to compare the plane and the settings.
+         * @see Object#equals(Object)
+         */
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return point.equals(k.point) && settings.equals(k.settings);
+        }
+        
+        /**
+         * Overridden to be consistent with {@link #equals(Object)}.
+         * @see Object#hashCode()
+         */
+        public int hashCode()
+        {
+            return 31*point.hashCode()+settings.hashCode();
+        }
+    }
+    
+    /** A cached image along with its size. */
+    private static final class Entry
+    {
+        
+        /** The XY image or byte array. */
+        final Object    image;
+        
+        /** The size, in bytes, of {@link #image}. */
+        final long      size;
+        
+        /** 
+         * Whether the image was prefetched and hasn't been extracted since.
+         */
+        boolean         prefetched;
+        
+        Entry(Object image, long size, boolean prefetched)
+        {
+            this.image = image;
+            this.size = size;
+            this.prefetched = prefetched;
+        }
+    }
     
     /** 
      * The size, in bytes, of the image cache.
@@ -106,24 +184,17 @@ public class XYCache
      * requests to cache an image will result in the removal of some already
      * cached images.
      */
-    private int                 			cache_size;
+    private long                 			cache_size;
     
-    /** 
-     * Maximum number of entries allowed in the cache.
-     * This is the greatest integer <code>M</code> such that 
-     * <nobr><code>
-     * M*{@link #image_size} &lt;= {@link #cache_size}</code></nobr>.
-     */
-    private int                 			max_entries;
+    /** The total size, in bytes, of the cached images. */
+    private long                            used_size;
     
     /**
-     * Maps {@link PlanePoint}s onto {@link BufferedImage}s or 
-     * <code>byte</code> array.
-     * The <code>add</code> method identifies a {@link PlaneDef} object with
-     * a point in the <i>zOt</i> cartesian plane, hence with an instance of
-     * {@link PlanePoint}. 
+     * Maps {@link Key}s onto {@link Entry entries} holding 
+     * {@link BufferedImage}s or <code>byte</code> arrays, in the order they
+     * were added.
      */
-    private Map<PlanePoint, Object>			cache;
+    private Map<Key, Entry>			        cache;
     
     /**
      * Refers to the {@link NavigationHistory} serving the pixels set this 
@@ -132,92 +203,107 @@ public class XYCache
     private NavigationHistory   			navigHistory;
     
     /**
-     * Makes enough room in {@link #cache} for a new entry to be added.
+     * Returns the size, in bytes, of an XY image or a byte array.
+     * 
+     * @param object The image or byte array.
+     * @return See above.
+     */
+    static long sizeOf(Object object)
+    {
+        if (object instanceof byte[]) return ((byte[]) object).length;
+        if (object instanceof BufferedImage) {
+            DataBuffer buffer = 
+                ((BufferedImage) object).getRaster().getDataBuffer();
+            return ((long) buffer.getSize())*buffer.getNumBanks()*
+                DataBuffer.getDataTypeSize(buffer.getDataType())/8;
+        }
+        throw new IllegalArgumentException("Not an image: "+object+".");
+    }
+    
+    /**
+     * Removes one entry from {@link #cache} to make room for a new entry.
      * We remove an existing entry according to the removal algorithm 
      * specified by this class.  It is assumed that this method will
-     * only be invoked when the cache size equals {@link #max_entries}
-     * and is one at least.
+     * only be invoked when the cache holds one entry at least.
      * 
-     * @param p The key for the new entry that has to be added.
-     *          It's assumed the caller will never pass <code>null</code>.
+     * @param key The key for the new entry that has to be added.
+     *            It's assumed the caller will never pass <code>null</code>.
      */
-    private void ensureCapacity(final PlanePoint p)
+    private void evict(Key key)
     {
-        //First off, build the C' sequence.
-        PlanePoint[] orderedCache = cache.keySet().toArray(new PlanePoint[0]);
-        Arrays.sort(orderedCache, new Comparator() {
-            public int compare(Object o1, Object o2) {
-                PlanePoint c1 = (PlanePoint) o1, c2 = (PlanePoint) o2;
-                return -Double.compare(c1.distance(p), c2.distance(p));
-                //Note the minus above: we want descending order.
-            }
-        });
-        
-        //Now get the current navigation direction and set the default
-        //candidate for removal: the farthest point away from p. 
+        PlanePoint p = key.point;
         Line curDir = navigHistory.currentDirection();
-        PlanePoint candidate = orderedCache[0];  //We assume cache size > 0.
         
-        //Start the removal algorithm if the navigation direction is defined.
-        if (curDir != null) {
-            List negativeHalf = new ArrayList(orderedCache.length);
-            int i = 0;
-            for (; i < orderedCache.length; ++i) {
-                //Does candidate lie on curDir at all?
-                if (!curDir.lies(orderedCache[i])) { 
-                    //No.  This is the farthest point away from p not on curDir.
-                    candidate = orderedCache[i];
-                    break;
+        //The farthest entry away from p, the farthest one not on curDir
+        //and the farthest one on the negative half of curDir.
+        Key farthest = null, offDir = null, behind = null;
+        double dFarthest = -1, dOffDir = -1, dBehind = -1;
+        Iterator<Key> i = cache.keySet().iterator();
+        Key k;
+        double d;
+        while (i.hasNext()) {
+            k = i.next();
+            if (!k.settings.equals(key.settings)) {
+                //Rendered with other settings, the oldest one goes first.
+                remove(k);
+                return;
+            }
+            d = k.point.distance(p);
+            if (d > dFarthest) {
+                farthest = k;
+                dFarthest = d;
+            }
+            if (curDir == null) continue;
+            if (!curDir.lies(k.point)) {
+                if (d > dOffDir) {
+                    offDir = k;
+                    dOffDir = d;
                 }
-                //Then orderedCache[i] lies on curDir, which half though?
-                if (curDir.lies(orderedCache[i], false))
-                    //It lies on the negative half.  This means it sits behind
-                    //the current move w/r/t movement orientation.  Collect it.
-                    //Notice that points in this list are such that:
-                    //  d(negativeHalf(i), p) >= d(negativeHalf(i+1), p) 
-                    negativeHalf.add(orderedCache[i]);
+            } else if (curDir.lies(k.point, false) && d > dBehind) {
+                //It sits behind the current move w/r/t movement orientation.
+                behind = k;
+                dBehind = d;
             }
-            if (i == orderedCache.length  //All cached points lie on curDir. 
-                    && !negativeHalf.isEmpty())  //But some in neg half.
-                //Get farthest point away from p that sits behind current move.
-                candidate = (PlanePoint) negativeHalf.get(0);
         }
-        
-        //Finally remove.
-        cache.remove(candidate);
+        if (offDir != null) remove(offDir);
+        else if (behind != null) remove(behind);
+        else remove(farthest);
+    }
+    
+    /**
+     * Removes the specified entry.
+     * 
+     * @param key The key of the entry to remove.
+     */
+    private void remove(Key key)
+    {
+        Entry entry = cache.remove(key);
+        if (entry != null) used_size -= entry.size;
     }
     
     /**
      * Creates a new instance.
-     * An <code>ImageCache</code> works with a given pixels set and
+     * An <code>XYCache</code> works with a given pixels set and
      * with the {@link NavigationHistory} serving that pixels set.  The
-     * <code>cacheSize</code> and <code>imageSize</code> parameters determine
-     * how many {@link #max_entries entries} the cache will allow before
-     * purging old entries.  In particular, if the <code>imageSize</code> is
-     * greater than the <code>cacheSize</code>, no element will ever be
-     * cached.
+     * <code>cacheSize</code> parameter determines how many bytes of images
+     * the cache will hold before purging old entries.  In particular, images
+     * greater than <code>cacheSize</code> will never be cached.
      * 
      * @param cacheSize The size, in bytes, of the cache. Must be positive.
-     * @param imageSize The size, in bytes, of an XY image. Must be positive.
      * @param nh        Reference to the {@link NavigationHistory} serving 
      *                  the pixels set this cache was associated to.  
      *                  Mustn't be <code>null</code>.  
      */
-    XYCache(int cacheSize, int imageSize, NavigationHistory nh)
+    XYCache(long cacheSize, NavigationHistory nh)
     {
         if (cacheSize < 0)
             throw new IllegalArgumentException(
                     "Cache size must be positive: "+cacheSize+".");
-        if (imageSize <= 0) 
-            throw new IllegalArgumentException(
-                    "Image size must be positive: "+imageSize+".");
         if (nh == null)
             throw new NullPointerException("No navigation history.");
         
         cache_size = cacheSize;
-        image_size = imageSize;
-        max_entries = cache_size/image_size;
-        cache = new HashMap<PlanePoint, Object>(max_entries);
+        cache = new LinkedHashMap<Key, Entry>();
         navigHistory = nh;
     }
     
@@ -226,86 +312,104 @@ public class XYCache
      * 
      * @param pd    	The key. Mustn't be <code>null</code> and must define
      *              	an XY plane.
+     * @param settings  Identifies the settings the image was rendered with.
+     *                  Mustn't be <code>null</code>.
      * @param object  	An XY image or a byte array.
      * 					Mustn't be <code>null</code>.
+     * @param prefetched Pass <code>true</code> if the image was rendered
+     *                  ahead of being requested, <code>false</code>
+     *                  otherwise.
      */
-    void add(PlaneDef pd, Object object)
+    synchronized void add(PlaneDef pd, String settings, Object object, 
+            boolean prefetched)
     {
-        if (max_entries == 0) return;  //Caching disabled.
-        
-        //Sanity checks.
-        if (pd == null)
-            throw new NullPointerException("No plane def.");
-        if (pd.slice != omero.romio.XY.value)
-            throw new IllegalArgumentException(
-                    "Can only accept XY planes: "+pd.slice+".");
+        Key key = new Key(pd, settings);
         if (object == null)
             throw new NullPointerException("No image.");
+        long size = sizeOf(object);
+        if (size > cache_size) return;  //Caching disabled or too big.
         
-        //Will the next entry fit into the cache?
-        PlanePoint key = new PlanePoint(pd.z, pd.t);
-        if (max_entries <= cache.size())  //Nope, make room for it.
-            ensureCapacity(key);
-        //Once we're here we have enough room for the new element.
-        cache.put(key, object);
+        //Make room for the next entry if it doesn't fit into the cache.
+        remove(key);
+        while (used_size+size > cache_size)
+            evict(key);
+        cache.put(key, new Entry(object, size, prefetched));
+        used_size += size;
     }
    
     /**
      * Extracts the image (if any) associated to <code>pd</code>.
      * 
-     * @param pd    The key. Mustn't be <code>null</code> and must define
-     *              an XY plane.
+     * @param pd        The key. Mustn't be <code>null</code> and must define
+     *                  an XY plane.
+     * @param settings  Identifies the rendering settings.
      * @return 		The image or byte array associated to <code>pd</code> or 
      * 				<code>null</code> if the cache doesn't contain such an
      * 				entry.
      */
-    Object extract(PlaneDef pd)
+    synchronized Object extract(PlaneDef pd, String settings)
     {
-        if (pd == null)
-            throw new NullPointerException("No plane def.");
-        if (pd.slice != omero.romio.XY.value)
-            throw new IllegalArgumentException(
-                    "Can only accept XY planes: "+pd.slice+".");
-        PlanePoint key = new PlanePoint(pd.z, pd.t);
-        return cache.get(key);
+        Entry entry = cache.get(new Key(pd, settings));
+        if (entry == null) return null;
+        entry.prefetched = false;
+        return entry.image;
     }
     
     /**
      * Tells whether or not the cache contains an entry for the specified
-     * plane definition.
+     * key.
      * 
-     * @param pd The key.
+     * @param key The key.
      * @return <code>true</code> if the cache contains an entry for 
-     *         <code>pd</code>, <code>false</code> otherwise.
-     * @see #add(PlaneDef, BufferedImage)
+     *         <code>key</code>, <code>false</code> otherwise.
+     * @see #add(PlaneDef, String, Object, boolean)
      */
-    boolean contains(PlaneDef pd)
+    synchronized boolean contains(Key key)
     {
-        if (pd == null) return false;
-        PlanePoint key = new PlanePoint(pd.z, pd.t);
-        return (cache.get(key) != null);
+        return cache.containsKey(key);
+    }
+    
+    /** 
+     * Removes the entries which were prefetched and haven't been extracted
+     * since.
+     */
+    synchronized void discardPrefetched()
+    {
+        Iterator<Entry> i = cache.values().iterator();
+        Entry entry;
+        while (i.hasNext()) {
+            entry = i.next();
+            if (entry.prefetched) {
+                i.remove();
+                used_size -= entry.size;
+            }
+        }
     }
     
     /** Removes all the entries from the cache. */
-    void clear()
+    synchronized void clear()
     {
-        int oldSize = cache.size();
-        cache = new HashMap<PlanePoint, Object>(oldSize);
+        cache.clear();
+        used_size = 0;
     }
     
     /**
-     * Resets the size of the cache.
+     * Resets the size of the cache, removing the oldest entries which don't
+     * fit anymore.
      * 
-     * @param size
+     * @param size The size, in bytes, of the cache.
      */
-    void resetCacheSize(int size)
+    synchronized void resetCacheSize(long size)
     {
         if (size < 0)
             throw new IllegalArgumentException(
                     "Cache size must be positive: "+size+".");
         cache_size = size;
-        max_entries = cache_size/image_size;
-        cache = new HashMap<PlanePoint, Object>(max_entries);
+        Iterator<Entry> i = cache.values().iterator();
+        while (used_size > cache_size && i.hasNext()) {
+            used_size -= i.next().size;
+            i.remove();
+        }
     }
     
 /* 
@@ -321,6 +425,13 @@ public class XYCache
      */
     Map getCache() { return cache; }
     
+    /**
+     * Returns the total size, in bytes, of the cached images.
+     * 
+     * @return See above.
+     */
+    synchronized long getUsedSize() { return used_size; }
+    
     /**
      * Returns the navigation history.
      * 
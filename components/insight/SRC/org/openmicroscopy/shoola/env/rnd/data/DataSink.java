@@ -35,7 +35,6 @@ import org.openmicroscopy.shoola.env.cache.CacheService;
 import org.openmicroscopy.shoola.env.config.Registry;
 import org.openmicroscopy.shoola.env.data.OmeroImageService;
 import org.openmicroscopy.shoola.env.data.util.SecurityContext;
-import org.openmicroscopy.shoola.util.mem.ReadOnlyByteArray;
 
 import pojos.PixelsData;
 
@@ -107,9 +106,6 @@ public class DataSink
     /** The number of bytes per pixel. */
     private int bytesPerPixels;
 
-    /** Strategy used to transform the raw data. */
-    private BytesConverter strategy;
-
     /** The id of the cache. */
     private int cacheID;
 
@@ -134,7 +130,6 @@ public class DataSink
                 cacheSize/(source.getSizeX()*source.getSizeY()*bytesPerPixels);
         cacheID = context.getCacheService().createCache(
                 CacheService.IN_MEMORY, maxEntries);
-        strategy = BytesConverter.getConverter(type);
     }
 
     /**
@@ -186,13 +181,14 @@ public class DataSink
      * @param z The z-section at which data is to be fetched.
      * @param t The timepoint at which data is to be fetched.
      * @param w The wavelength at which data is to be fetched.
-     * @param strategy To transform bytes into pixels values.
+     * @param close Pass <code>true</code> to close the pixels store after
+     *              retrieving the plane, <code>false</code> otherwise.
      * @return A plane 2D object that encapsulates the actual plane pixels.
      * @throws DataSourceException If an error occurs while retrieving the
      *                              plane data from the pixels source.
      */
     private Plane2D createPlane(SecurityContext ctx, int z, int t, int w,
-            BytesConverter strategy, boolean close)
+            boolean close)
             throws DataSourceException
     {
         //Retrieve data
@@ -218,9 +214,8 @@ public class DataSink
                 store = null;
             }
         }
-        ReadOnlyByteArray array = new ReadOnlyByteArray(data, 0, data.length);
-        plane = new Plane2D(array, source.getSizeX(), source.getSizeY(), 
-                bytesPerPixels, strategy);
+        plane = new Plane2D(data, source.getSizeX(), source.getSizeY(),
+                source.getPixelType());
         //cache.add(planeIndex, plane);
         cache.addElement(cacheID, planeIndex, plane);
         return plane;
@@ -240,7 +235,7 @@ public class DataSink
     public Plane2D getPlane(SecurityContext ctx, int z, int t, int w)
             throws DataSourceException
     {
-        return createPlane(ctx, z, t, w, strategy, true);
+        return createPlane(ctx, z, t, w, true);
     }
 
     /**
@@ -258,7 +253,7 @@ public class DataSink
             close)
             throws DataSourceException
     {
-        return createPlane(ctx, z, t, w, strategy, close);
+        return createPlane(ctx, z, t, w, close);
     }
     
     /**
@@ -2,7 +2,7 @@
  * org.openmicroscopy.shoola.env.rnd.data.Plane2D 
  *
  *------------------------------------------------------------------------------
- *  Copyright (C) 2006-2007 University of Dundee. All rights reserved.
+ *  Copyright (C) 2006-2014 University of Dundee. All rights reserved.
  *
  *
  * 	This program is free software; you can redistribute it and/or modify
@@ -23,15 +23,20 @@
 package org.openmicroscopy.shoola.env.rnd.data;
 
 
+
+
 //Java imports
+import java.nio.ByteBuffer;
 
 //Third-party libraries
 
 //Application-internal dependencies
-import org.openmicroscopy.shoola.util.mem.ReadOnlyByteArray;
 
 /** 
  * Holds structure used to mapped the raw pixels data.
+ * The values are decoded from the raw big-endian bytes of the plane when
+ * they are requested rather than being converted upfront, so a plane takes
+ * no more memory than its raw data.
  *
  * @author  Jean-Marie Burel &nbsp;&nbsp;&nbsp;&nbsp;
  * <a href="mailto:j.burel@dundee.ac.uk">j.burel@dundee.ac.uk</a>
@@ -46,70 +51,136 @@ import org.openmicroscopy.shoola.util.mem.ReadOnlyByteArray;
 public class Plane2D
 {
 	
+	/** Identifies the signed types stored on 1 byte. */
+	private static final int 	BYTE = 0;
+	
+	/** Identifies the unsigned types stored on 1 byte. */
+	private static final int 	UBYTE = 1;
+	
+	/** Identifies the signed types stored on 2 bytes. */
+	private static final int 	SHORT = 2;
+	
+	/** Identifies the unsigned types stored on 2 bytes. */
+	private static final int 	USHORT = 3;
+	
+	/** Identifies the signed types stored on 4 bytes. */
+	private static final int 	INT = 4;
+	
+	/** Identifies the unsigned types stored on 4 bytes. */
+	private static final int 	UINT = 5;
+	
+	/** Identifies the <code>float</code> type. */
+	private static final int 	FLOAT = 6;
+	
+	/** Identifies the <code>double</code> type. */
+	private static final int 	DOUBLE = 7;
+	
 	/** The number of bytes per pixel. */
-	private int 				bytesPerPixel;
+	private final int 			bytesPerPixel;
 	
-	/** The number of timepoint along the x-axis. */
-	private int					sizeX;
+	/** The number of pixels along the x-axis. */
+	private final int			sizeX;
 	
-	/** The original array. */
-	private ReadOnlyByteArray	data;
+	/** The number of pixels along the y-axis. */
+	private final int			sizeY;
 	
-	/** Strategy used to transform original data. */
-	private BytesConverter		strategy;
+	/** The raw data, big-endian. */
+	private final ByteBuffer	data;
 	
-	/** The converted raw data. */
-	private double[][]			mappedData;
+	/** One of the constants defined by this class. */
+	private final int			type;
 	
-	/** 
-	 * Determines the offset value.
+	/**
+	 * Returns the constant defined by this class corresponding to the
+	 * specified pixels type.
 	 * 
-	 * @param x	The x-coordinate.
-	 * @param y	The y-coordinate.
+	 * @param pixelsType The pixels type.
 	 * @return See above.
 	 */
-	private int calculateOffset(int x, int y)
+	private static int getType(String pixelsType)
 	{
-		return bytesPerPixel*(sizeX*y+x);
+		if (DataSink.INT_8.equals(pixelsType)) return BYTE;
+		if (DataSink.UINT_8.equals(pixelsType)) return UBYTE;
+		if (DataSink.INT_16.equals(pixelsType)) return SHORT;
+		if (DataSink.UINT_16.equals(pixelsType)) return USHORT;
+		if (DataSink.INT_32.equals(pixelsType)) return INT;
+		if (DataSink.UINT_32.equals(pixelsType)) return UINT;
+		if (DataSink.FLOAT.equals(pixelsType)) return FLOAT;
+		if (DataSink.DOUBLE.equals(pixelsType)) return DOUBLE;
+		throw new IllegalArgumentException("Pixels type not supported: "+
+				pixelsType);
 	}
 	
 	/**
-	 * Converts the raw data.
+	 * Returns the number of bytes per pixel of the specified type.
 	 * 
-	 * @param sizeY The number of pixels along the y-axis.
+	 * @param type One of the constants defined by this class.
+	 * @return See above.
 	 */
-	private void mappedData(int sizeY)
+	private static int getBytesPerPixel(int type)
 	{
-		mappedData = new double[sizeX][sizeY];
-		int offset;
-		for (int x = 0; x < sizeX; x++) {
-			for (int y = 0; y < sizeY; y++) {
-				offset = calculateOffset(x, y);
-				mappedData[x][y] = strategy.pack(data, offset, bytesPerPixel);
-			}
+		switch (type) {
+			case BYTE:
+			case UBYTE:
+				return 1;
+			case SHORT:
+			case USHORT:
+				return 2;
+			case DOUBLE:
+				return 8;
+			default:
+				return 4;
 		}
 	}
 	
+	/** 
+	 * Determines the offset value.
+	 * 
+	 * @param x	The x-coordinate.
+	 * @param y	The y-coordinate.
+	 * @return See above.
+	 */
+	private int calculateOffset(int x, int y)
+	{
+		return bytesPerPixel*(sizeX*y+x);
+	}
+	
 	/**
 	 * Creates a new instance.
 	 * 
-	 * @param data			The array of byte.
+	 * @param data			The raw data of the plane, big-endian.
 	 * @param sizeX			The number of pixels along the x-axis.
 	 * @param sizeY			The number of pixels along the y-axis.
-	 * @param bytesPerPixel	The number of bytes per pixel.
-	 * @param strategy		Strategy to transform pixel.
+	 * @param pixelsType	The pixels type, one of the types defined by
+	 * 						{@link DataSink}.
 	 */
-	public Plane2D(ReadOnlyByteArray data, int sizeX, int sizeY, 
-						int bytesPerPixel,
-						BytesConverter strategy)
+	public Plane2D(byte[] data, int sizeX, int sizeY, String pixelsType)
 	{
-		this.bytesPerPixel = bytesPerPixel;
-		this.data = data;
-		this.strategy = strategy;
+		if (data == null) throw new NullPointerException("No data.");
+		this.type = getType(pixelsType);
+		this.bytesPerPixel = getBytesPerPixel(type);
+		if (data.length < ((long) sizeX)*sizeY*bytesPerPixel)
+			throw new IllegalArgumentException("Expected "+sizeX+"x"+sizeY+
+					" pixels of "+bytesPerPixel+" bytes: "+data.length+".");
+		this.data = ByteBuffer.wrap(data);
 		this.sizeX = sizeX;
-		mappedData(sizeY);
+		this.sizeY = sizeY;
 	}
 	
+	/**
+	 * Returns the number of pixels along the x-axis.
+	 * 
+	 * @return See above.
+	 */
+	public int getSizeX() { return sizeX; }
+	
+	/**
+	 * Returns the number of pixels along the y-axis.
+	 * 
+	 * @return See above.
+	 */
+	public int getSizeY() { return sizeY; }
+	
 	/**
 	 * Returns the pixels value at the point specified by the x-coordinate
 	 * and y-coordinate.
@@ -120,7 +191,80 @@ public class Plane2D
 	 */
 	public double getPixelValue(int x, int y)
 	{
-		return mappedData[x][y];
+		int offset = calculateOffset(x, y);
+		switch (type) {
+			case BYTE:
+				return data.get(offset);
+			case UBYTE:
+				return data.get(offset)&0xFF;
+			case SHORT:
+				return data.getShort(offset);
+			case USHORT:
+				return data.getShort(offset)&0xFFFF;
+			case INT:
+				return data.getInt(offset);
+			case UINT:
+				return data.getInt(offset)&0xFFFFFFFFL;
+			case FLOAT:
+				return data.getFloat(offset);
+			default:
+				return data.getDouble(offset);
+		}
+	}
+	
+	/**
+	 * Reads the values of consecutive pixels along a row, starting at the
+	 * point specified by the x-coordinate and y-coordinate.
+	 * 
+	 * @param x			The x-coordinate of the first pixel.
+	 * @param y			The y-coordinate of the row.
+	 * @param length	The number of pixels to read. The pixels must be 
+	 * 					within the row.
+	 * @param values	The array receiving the values.
+	 * @param start		The index in <code>values</code> of the first value.
+	 */
+	public void getPixelValues(int x, int y, int length, double[] values,
+			int start)
+	{
+		if (x < 0 || length < 0 || sizeX < x+length || y < 0 || sizeY <= y)
+			throw new IndexOutOfBoundsException("Pixels ["+x+", "+
+					(x+length)+") not in row "+y+".");
+		int offset = calculateOffset(x, y);
+		int end = start+length;
+		int i;
+		switch (type) {
+			case BYTE:
+				for (i = start; i < end; i++, offset++)
+					values[i] = data.get(offset);
+				break;
+			case UBYTE:
+				for (i = start; i < end; i++, offset++)
+					values[i] = data.get(offset)&0xFF;
+				break;
+			case SHORT:
+				for (i = start; i < end; i++, offset += 2)
+					values[i] = data.getShort(offset);
+				break;
+			case USHORT:
+				for (i = start; i < end; i++, offset += 2)
+					values[i] = data.getShort(offset)&0xFFFF;
+				break;
+			case INT:
+				for (i = start; i < end; i++, offset += 4)
+					values[i] = data.getInt(offset);
+				break;
+			case UINT:
+				for (i = start; i < end; i++, offset += 4)
+					values[i] = data.getInt(offset)&0xFFFFFFFFL;
+				break;
+			case FLOAT:
+				for (i = start; i < end; i++, offset += 4)
+					values[i] = data.getFloat(offset);
+				break;
+			default:
+				for (i = start; i < end; i++, offset += 8)
+					values[i] = data.getDouble(offset);
+		}
 	}
 	
 }
@@ -267,20 +267,31 @@ class PointIterator
             if (z >= 0 && z < sizeZ && t >= 0 && t < sizeT) {
                 notifyPlaneStart(z, w, t, points.size());
                 Plane2D data = source.getPlane(ctx, z, t, w, close);
-                double value;
+                //Values of the current span of the row.
+                double[] values = new double[sizeX];
+                Point[] array = points.toArray(new Point[points.size()]);
                 int length = 0;
-                int x1, x2;
-                Iterator<Point> i = points.iterator();
+                int k = 0, end, n;
                 Point p;
-                while (i.hasNext()) {
-                    p = i.next();
-                    x1 = p.x;
-                    x2 = p.y;
-                    if (isValidPoint(x1, x2)) {
-                        value = data.getPixelValue(x1, x2);
-                        notifyValue(value, z, w, t, p);
-                        length++;
+                while (k < array.length) {
+                    p = array[k];
+                    if (!isValidPoint(p.x, p.y)) {
+                        k++;
+                        continue;
                     }
+                    //Points are usually listed row by row, so read the
+                    //values of consecutive points along a row at once.
+                    end = k+1;
+                    while (end < array.length && array[end].y == p.y &&
+                            array[end].x == array[end-1].x+1 &&
+                            array[end].x < sizeX)
+                        end++;
+                    n = end-k;
+                    data.getPixelValues(p.x, p.y, n, values, 0);
+                    for (int j = 0; j < n; j++)
+                        notifyValue(values[j], z, w, t, array[k+j]);
+                    length += n;
+                    k = end;
                 }
                 notifyPlaneEnd(z, w, t, length);
             }
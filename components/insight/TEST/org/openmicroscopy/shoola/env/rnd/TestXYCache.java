@@ -0,0 +1,144 @@
+/*
+ * org.openmicroscopy.shoola.env.rnd.TestXYCache
+ *
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2014 University of Dundee. All rights reserved.
+ *
+ *
+ * 	This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package org.openmicroscopy.shoola.env.rnd;
+
+
+//Java imports
+
+//Third-party libraries
+import junit.framework.TestCase;
+
+//Application-internal dependencies
+import omero.romio.PlaneDef;
+
+/** 
+ * Unit test for {@link XYCache}.
+ * Verifies that the cache is bounded by the size of the images, that
+ * entries are kept per settings and that the removal policy follows the
+ * navigation direction.
+ *
+ * @since 5.1
+ */
+public class TestXYCache
+    extends TestCase
+{
+
+    private static final int    IMAGE_SIZE = 100;  //Size of each image.
+    
+    private NavigationHistory   history;
+    
+    private XYCache             target;  //Object under test.
+    
+    private static PlaneDef plane(int z, int t)
+    {
+        PlaneDef pd = new PlaneDef();
+        pd.slice = omero.romio.XY.value;
+        pd.z = z;
+        pd.t = t;
+        return pd;
+    }
+    
+    protected void setUp()
+    {
+        history = new NavigationHistory(4, 10, 10);
+        target = new XYCache(3*IMAGE_SIZE, history);
+    }
+    
+    public void testBoundedBySize()
+    {
+        for (int z = 0; z < 5; z++)
+            target.add(plane(z, 0), "a", new byte[IMAGE_SIZE], false);
+        assertEquals(3, target.getCache().size());
+        assertEquals(3*IMAGE_SIZE, target.getUsedSize());
+        target.add(plane(5, 0), "a", new byte[3*IMAGE_SIZE+1], false);
+        assertNull("Shouldn't cache an image bigger than the cache.",
+                target.extract(plane(5, 0), "a"));
+        target.add(plane(6, 0), "a", new byte[3*IMAGE_SIZE], false);
+        assertEquals(1, target.getCache().size());
+        target.resetCacheSize(0);
+        assertEquals(0, target.getUsedSize());
+    }
+    
+    public void testKeyedBySettings()
+    {
+        byte[] a = new byte[IMAGE_SIZE], b = new byte[IMAGE_SIZE];
+        target.add(plane(0, 0), "a", a, false);
+        target.add(plane(0, 0), "b", b, false);
+        assertSame(a, target.extract(plane(0, 0), "a"));
+        assertSame(b, target.extract(plane(0, 0), "b"));
+        assertNull(target.extract(plane(0, 0), "c"));
+        
+        //Entries with other settings are removed first.
+        target.add(plane(1, 0), "b", new byte[IMAGE_SIZE], false);
+        target.add(plane(2, 0), "b", new byte[IMAGE_SIZE], false);
+        assertNull(target.extract(plane(0, 0), "a"));
+        assertSame(b, target.extract(plane(0, 0), "b"));
+    }
+    
+    public void testRemovesBehindNavigation()
+    {
+        //Moving up the z-axis.
+        for (int z = 2; z < 5; z++) {
+            history.addMove(plane(z, 0));
+            target.add(plane(z, 0), "a", new byte[IMAGE_SIZE], false);
+        }
+        history.addMove(plane(5, 0));
+        target.add(plane(5, 0), "a", new byte[IMAGE_SIZE], false);
+        assertNull("Should remove the farthest point behind.",
+                target.extract(plane(2, 0), "a"));
+        
+        //A point off the navigation direction goes first.
+        target.add(plane(4, 3), "a", new byte[IMAGE_SIZE], false);
+        history.addMove(plane(6, 0));
+        target.add(plane(6, 0), "a", new byte[IMAGE_SIZE], false);
+        assertNull(target.extract(plane(4, 3), "a"));
+        assertNotNull(target.extract(plane(5, 0), "a"));
+    }
+    
+    public void testDiscardPrefetched()
+    {
+        target.add(plane(0, 0), "a", new byte[IMAGE_SIZE], true);
+        target.add(plane(1, 0), "a", new byte[IMAGE_SIZE], true);
+        target.add(plane(2, 0), "a", new byte[IMAGE_SIZE], false);
+        assertNotNull(target.extract(plane(1, 0), "a"));
+        target.discardPrefetched();
+        assertNull(target.extract(plane(0, 0), "a"));
+        assertNotNull(target.extract(plane(1, 0), "a"));
+        assertNotNull(target.extract(plane(2, 0), "a"));
+        assertEquals(2*IMAGE_SIZE, target.getUsedSize());
+    }
+    
+    public void testGuessNextMoves()
+    {
+        history.addMove(plane(1, 0));
+        history.addMove(plane(2, 0));
+        PlaneDef[] moves = history.guessNextMoves(3);
+        assertEquals(3, moves.length);
+        for (int i = 0; i < moves.length; i++) {
+            assertEquals(3+i, moves[i].z);
+            assertEquals(0, moves[i].t);
+        }
+    }
+    
+}
@@ -0,0 +1,131 @@
+/*
+ * org.openmicroscopy.shoola.env.rnd.data.TestPlane2D
+ *
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2014 University of Dundee. All rights reserved.
+ *
+ *
+ * 	This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package org.openmicroscopy.shoola.env.rnd.data;
+
+
+//Java imports
+import java.nio.ByteBuffer;
+
+//Third-party libraries
+import junit.framework.TestCase;
+
+//Application-internal dependencies
+
+/** 
+ * Unit test for {@link Plane2D}.
+ * Verifies that values are decoded from the big-endian raw data for each
+ * pixels type, one by one and by span.
+ *
+ * @since 5.1
+ */
+public class TestPlane2D
+    extends TestCase
+{
+
+    private static final int    SIZE_X = 3;
+    
+    private static final int    SIZE_Y = 2;
+    
+    /** The values written, row by row. */
+    private static final double[] VALUES = { 0, 1, -1, 127, -128, 5 };
+    
+    private Plane2D plane(String type, int bytesPerPixel)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(
+                SIZE_X*SIZE_Y*bytesPerPixel);
+        for (int i = 0; i < VALUES.length; i++) {
+            switch (bytesPerPixel) {
+                case 1:
+                    buffer.put((byte) VALUES[i]);
+                    break;
+                case 2:
+                    buffer.putShort((short) VALUES[i]);
+                    break;
+                case 4:
+                    if (DataSink.FLOAT.equals(type))
+                        buffer.putFloat((float) VALUES[i]);
+                    else buffer.putInt((int) VALUES[i]);
+                    break;
+                default:
+                    buffer.putDouble(VALUES[i]);
+            }
+        }
+        return new Plane2D(buffer.array(), SIZE_X, SIZE_Y, type);
+    }
+    
+    private void assertValues(Plane2D plane, double[] expected)
+    {
+        double[] row = new double[SIZE_X+1];
+        for (int y = 0; y < SIZE_Y; y++) {
+            plane.getPixelValues(0, y, SIZE_X, row, 1);
+            for (int x = 0; x < SIZE_X; x++) {
+                assertEquals(expected[y*SIZE_X+x], plane.getPixelValue(x, y),
+                        0);
+                assertEquals(expected[y*SIZE_X+x], row[x+1], 0);
+            }
+        }
+    }
+    
+    public void testSignedTypes()
+    {
+        assertValues(plane(DataSink.INT_8, 1), VALUES);
+        assertValues(plane(DataSink.INT_16, 2), VALUES);
+        assertValues(plane(DataSink.INT_32, 4), VALUES);
+        assertValues(plane(DataSink.FLOAT, 4), VALUES);
+        assertValues(plane(DataSink.DOUBLE, 8), VALUES);
+    }
+    
+    public void testUnsignedTypes()
+    {
+        assertValues(plane(DataSink.UINT_8, 1),
+                new double[] { 0, 1, 255, 127, 128, 5 });
+        assertValues(plane(DataSink.UINT_16, 2),
+                new double[] { 0, 1, 65535, 127, 65408, 5 });
+        assertValues(plane(DataSink.UINT_32, 4),
+                new double[] { 0, 1, 4294967295L, 127, 4294967168L, 5 });
+    }
+    
+    public void testSpanOutsideRow()
+    {
+        Plane2D plane = plane(DataSink.UINT_8, 1);
+        try {
+            plane.getPixelValues(1, 0, SIZE_X, new double[SIZE_X], 0);
+            fail("Shouldn't read past the end of the row.");
+        } catch (IndexOutOfBoundsException e) {
+            //Ok, expected.
+        }
+    }
+    
+    public void testDataTooShort()
+    {
+        try {
+            new Plane2D(new byte[SIZE_X*SIZE_Y], SIZE_X, SIZE_Y,
+                    DataSink.UINT_16);
+            fail("Shouldn't accept less data than the plane size.");
+        } catch (IllegalArgumentException e) {
+            //Ok, expected.
+        }
+    }
+    
+}
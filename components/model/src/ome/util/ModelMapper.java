@@ -14,6 +14,7 @@ import java.lang.reflect.Array;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
@@ -48,6 +49,12 @@ public abstract class ModelMapper extends ContextFilter {
 
     protected Map model2target = new IdentityHashMap();
 
+    /**
+     * The target class of each source class seen, including the proxy
+     * classes which {@link Utils#trueClass(Class)} resolves by name.
+     */
+    private final Map<Class, Class> classes = new HashMap<Class, Class>();
+
     public ModelBased map(Filterable source) {
         Filterable o = this.filter("MAPPING...", source);
         return (ModelBased) model2target.get(o);
@@ -88,7 +95,20 @@ public abstract class ModelMapper extends ContextFilter {
     }
 
     protected Class findClass(Class source) {
-        return (Class) c2c().get(Utils.trueClass(source));
+        Class target = classes.get(source);
+        if (target == null && !classes.containsKey(source)) {
+            target = (Class) c2c().get(Utils.trueClass(source));
+            classes.put(source, target);
+        }
+        return target;
+    }
+
+    /**
+     * extension point which subclasses can override to create instances of
+     * the target types without reflection.
+     */
+    protected Object newTarget(Class targetType) throws Exception {
+        return targetType.newInstance();
     }
 
     /**
@@ -154,7 +174,7 @@ public abstract class ModelMapper extends ContextFilter {
                 }
 
                 try {
-                    target = targetType.newInstance();
+                    target = newTarget(targetType);
                 } catch (Exception e) {
                     log.error("Error creating new instance of target type"
                             + current, e);
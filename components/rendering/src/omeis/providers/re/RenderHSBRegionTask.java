@@ -143,19 +143,28 @@ class RenderHSBRegionTask implements RenderingTask {
         byte[] r = dataBuffer.getRedBand();
         byte[] g = dataBuffer.getGreenBand();
         byte[] b = dataBuffer.getBlueBand();
+        byte[] row = new byte[width];
         for (Plane2D plane : wData) {
             int[] color = colors.get(i);
             QuantumStrategy qs = strategies.get(i);
             int rColor = color[ColorsFactory.RED_INDEX];
             int gColor = color[ColorsFactory.GREEN_INDEX];
             int bColor = color[ColorsFactory.BLUE_INDEX];
+            boolean isXYPlanar = plane.isXYPlanar();
+            PixelData data = plane.getData();
 
             float alpha = new Float(
             		color[ColorsFactory.ALPHA_INDEX]).floatValue() / 65025;// 255*255
             for (int x2 = x2Start; x2 < x2End; ++x2) {
+                if (isXYPlanar)
+                    qs.quantize(data, width * x2 + x1Start, width, row, 0);
                 for (int x1 = x1Start; x1 < x1End; ++x1) {
                     pix = width * x2 + x1;
-                    discreteValue = qs.quantize(plane.getPixelValue(x1, x2));
+                    if (isXYPlanar)
+                        discreteValue = row[x1 - x1Start] & 0xFF;
+                    else
+                        discreteValue =
+                            qs.quantize(plane.getPixelValue(x1, x2));
                     discreteValue = cc.transform(discreteValue);
 
                     // Pre-multiply the alpha component and add the existing
@@ -204,6 +213,7 @@ class RenderHSBRegionTask implements RenderingTask {
         int width = x1End - x1Start;
         int i = 0;
         int[] buf = ((RGBIntBuffer) dataBuffer).getDataBuffer();
+        byte[] row = new byte[width];
         boolean isPrimaryColor = optimizations.isPrimaryColorEnabled();
         boolean isAlphaless = optimizations.isAlphalessRendering();
         for (Plane2D plane : wData) {
@@ -218,7 +228,6 @@ class RenderHSBRegionTask implements RenderingTask {
             		color[ColorsFactory.BLUE_INDEX] / 255.0 : 0.0;
             boolean isXYPlanar = plane.isXYPlanar();
             PixelData data = plane.getData();
-            int bytesPerPixel = data.bytesPerPixel();
 
             // Get our color offset if we've got the primary color optimization
             // enabled.
@@ -228,12 +237,12 @@ class RenderHSBRegionTask implements RenderingTask {
             float alpha = new Integer(
             		color[ColorsFactory.ALPHA_INDEX]).floatValue() / 255;
             for (int x2 = x2Start; x2 < x2End; ++x2) {
+                if (isXYPlanar)
+                    qs.quantize(data, width * x2 + x1Start, width, row, 0);
                 for (int x1 = x1Start; x1 < x1End; ++x1) {
                     pix = width * x2 + x1;
                     if (isXYPlanar)
-                    	discreteValue = 
-                    		qs.quantize(
-                    			data.getPixelValueDirect(pix * bytesPerPixel));
+                        discreteValue = row[x1 - x1Start] & 0xFF;
                     else
                     	discreteValue = 
                     		qs.quantize(plane.getPixelValue(x1, x2));
@@ -326,6 +335,7 @@ class RenderHSBRegionTask implements RenderingTask {
         int width = x1End - x1Start;
         int i = 0;
         int[] buf = ((RGBAIntBuffer) dataBuffer).getDataBuffer();
+        byte[] row = new byte[width];
         boolean isPrimaryColor = optimizations.isPrimaryColorEnabled();
         boolean isAlphaless = optimizations.isAlphalessRendering();
         for (Plane2D plane : wData) {
@@ -339,7 +349,6 @@ class RenderHSBRegionTask implements RenderingTask {
             		color[ColorsFactory.BLUE_INDEX] / 255.0 : 0.0;
             boolean isXYPlanar = plane.isXYPlanar();
             PixelData data = plane.getData();
-            int bytesPerPixel = data.bytesPerPixel();
 
             // Get our color offset if we've got the primary color optimization
             // enabled.
@@ -348,12 +357,12 @@ class RenderHSBRegionTask implements RenderingTask {
 
             float alpha = new Integer(color[ColorsFactory.ALPHA_INDEX]).floatValue() / 255;
             for (int x2 = x2Start; x2 < x2End; ++x2) {
+                if (isXYPlanar)
+                    qs.quantize(data, width * x2 + x1Start, width, row, 0);
                 for (int x1 = x1Start; x1 < x1End; ++x1) {
                     pix = width * x2 + x1;
                     if (isXYPlanar)
-                    	discreteValue = 
-                    		qs.quantize(
-                    			data.getPixelValueDirect(pix * bytesPerPixel));
+                        discreteValue = row[x1 - x1Start] & 0xFF;
                     else
                     	discreteValue = 
                     		qs.quantize(plane.getPixelValue(x1, x2));
@@ -17,6 +17,7 @@ import java.awt.Dimension;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ome.io.nio.IntensityHistogram;
 import ome.io.nio.PixelBuffer;
 import ome.io.nio.TileLoopIteration;
 import ome.io.nio.Utils;
@@ -97,7 +98,7 @@ public class StatsFactory {
      */
     private void computeBins(Plane2D p2D, double gMin, int sizeX2,
             int sizeX1) {
-    	int[] totals = new int[NB_BIN];
+    	long[] totals = new long[NB_BIN];
         /*
          * Segment[] segments = new Segment[NB_BIN]; for (int i = 0; i < NB_BIN;
          * i++) { segments[i] = new Segment( gMin + i * sizeBin, 0, gMin + (i +
@@ -201,7 +202,7 @@ public class StatsFactory {
      * @param total The total value.
      * @param epsilon The error value.
      */
-    private double accumulateCloseToMin(int[] totals, BasicSegment[] segments,
+    private double accumulateCloseToMin(long[] totals, BasicSegment[] segments,
             double total, double epsilon) {
         double e = segments[NB_BIN - 1].x2, sum = 0;
         for (int i = 1; i < totals.length - 1; i++) {
@@ -223,7 +224,7 @@ public class StatsFactory {
      * @param total The total value.
      * @param epsilon The error value.
      */
-    private double accumulateCloseToMax(int[] totals, BasicSegment[] segments,
+    private double accumulateCloseToMax(long[] totals, BasicSegment[] segments,
             double total, double epsilon) {
         double s = segments[0].x2, sum = 0;
         for (int i = totals.length - 2; i > 0; i--) {
@@ -307,6 +308,65 @@ public class StatsFactory {
         }
     }
 
+    /**
+     * Determines the inputWindow and the noiseReduction flag of a channel
+     * from the distribution of its intensities, persisted when the
+     * statistics of the pixels set were computed, rather than from its
+     * pixel data. The range between the global minimum and maximum is split
+     * into bins and the window is narrowed on the side away from the bin
+     * in which the intensities accumulate. Without a histogram, the window
+     * is determined as by
+     * {@link #computeLocationStats(Pixels, PixelBuffer, PlaneDef, int)}.
+     *
+     * @param metadata The pixels to parse.
+     * @param histogram The histogram of the channel or <code>null</code>.
+     * @param index The channel index.
+     */
+    public void computeLocationStats(final Pixels metadata,
+            final IntensityHistogram histogram, final int index) {
+        computeLocationStats(metadata, null, null, index);
+        noiseReduction = false;
+        if (histogram == null || histogram.getTotal() == 0) {
+            return;
+        }
+        double gMin = inputStart;
+        double gMax = inputEnd;
+        if (metadata.getChannel(index).getStatsInfo() == null) {
+            gMin = histogram.getOffset();
+            gMax = histogram.getOffset() + histogram.getLength() - 1;
+        }
+        sizeBin = (gMax - gMin) / NB_BIN;
+        if (sizeBin <= 0) {
+            return;
+        }
+        epsilon = sizeBin / EPSILON;
+        BasicSegment[] segments = new BasicSegment[NB_BIN];
+        long[] totals = new long[NB_BIN];
+        locationStats = new double[NB_BIN];
+        double total = histogram.getTotal();
+        for (int i = 0; i < NB_BIN; i++) {
+            segments[i] = new BasicSegment(gMin + i * sizeBin, gMin + (i + 1)
+                    * sizeBin);
+            // The last bin includes the global maximum
+            totals[i] = histogram.count(segments[i].x1, i == NB_BIN - 1 ?
+                    Math.nextUp(segments[i].x2) : segments[i].x2);
+            locationStats[i] = totals[i] / total;
+        }
+        inputStart = gMin;
+        inputEnd = gMax;
+        total = total - totals[0] - totals[NB_BIN - 1];
+        if (total > 0) {
+            if (totals[0] >= totals[NB_BIN - 1]) {
+                inputEnd = accumulateCloseToMin(totals, segments, total,
+                        epsilon);
+            } else {
+                inputStart = accumulateCloseToMax(totals, segments, total,
+                        epsilon);
+            }
+        }
+        noiseReduction = noiseReduction();
+    }
+
     /**
      * Returns the statistics.
      * 
@@ -8,12 +8,15 @@
 package omeis.providers.re.quantum;
 
 // Java imports
+import java.nio.ByteBuffer;
 
 // Third-party libraries
 
 // Application-internal dependencies
 import ome.model.display.QuantumDef;
 import ome.model.enums.PixelsType;
+import ome.util.PixelData;
+import omeis.providers.re.data.PlaneFactory;
 
 /**
  * Quantization process. In charge of building a look-up table for each active
@@ -39,6 +42,14 @@ public class Quantization_8_16_bit extends QuantumStrategy {
     /** The look-up table. */
     private byte[] LUT;
 
+    /**
+     * The look-up table indexed by the raw bits of a sample i.e.
+     * <code>sample &amp; 0xFF</code> or <code>sample &amp; 0xFFFF</code>.
+     * Covers every value of the pixels type so that bulk quantization does
+     * not need any range check.
+     */
+    private byte[] rawLUT;
+
     /** The lowest pixel intensity value. */
     private int min;
 
@@ -271,6 +282,31 @@ public class Quantization_8_16_bit extends QuantumStrategy {
         for (; x <= lutMax; ++x) {
             LUT[x - lutMin] = (byte) cdEnd;
         }
+        buildRawLUT();
+    }
+
+    /**
+     * Builds the look-up table indexed by the raw bits of a sample. This is
+     * only possible when the LUT covers the whole range of the pixels type,
+     * otherwise the bulk quantization falls back to {@link #quantize(double)}.
+     */
+    private void buildRawLUT() {
+        int bits = PixelData.getBitDepth(type.getValue());
+        if (bits > 16 || lutMax == 0 || lutMax - lutMin + 1 != 1 << bits) {
+            rawLUT = null;
+            return;
+        }
+        boolean signed = PlaneFactory.isTypeSigned(type);
+        byte[] table = new byte[1 << bits];
+        int value;
+        for (int i = 0; i < table.length; i++) {
+            value = i;
+            if (signed) {
+                value = bits == 8 ? (byte) i : (short) i;
+            }
+            table[i] = LUT[value - lutMin];
+        }
+        rawLUT = table;
     }
 
     /** The input window size changed, rebuild the LUT. */
@@ -298,7 +334,51 @@ public class Quantization_8_16_bit extends QuantumStrategy {
      */
     @Override
     public int quantize(double value) throws QuantizationException {
-        int x = (int) value;
+        return quantizeValue((int) value);
+    }
+
+    /**
+     * Implemented as specified in {@link QuantumStrategy}. Reads the
+     * <code>byte</code> or <code>short</code> samples straight from the
+     * backing buffer and maps them through the raw look-up table.
+     * 
+     * @see QuantumStrategy#quantize(PixelData, int, int, byte[], int)
+     */
+    @Override
+    public void quantize(PixelData data, int offset, int count, byte[] out,
+            int outOffset) throws QuantizationException {
+        byte[] lut = rawLUT;
+        if (lut == null || lut.length != 1 << (8 * data.bytesPerPixel())) {
+            super.quantize(data, offset, count, out, outOffset);
+            return;
+        }
+        ByteBuffer buf = data.getData();
+        int end = outOffset + count;
+        switch (data.javaType()) {
+            case PixelData.BYTE:
+                for (int i = outOffset, pos = offset; i < end; i++, pos++) {
+                    out[i] = lut[buf.get(pos) & 0xFF];
+                }
+                break;
+            case PixelData.SHORT:
+                for (int i = outOffset, pos = 2 * offset; i < end;
+                        i++, pos += 2) {
+                    out[i] = lut[buf.getShort(pos) & 0xFFFF];
+                }
+                break;
+            default:
+                super.quantize(data, offset, count, out, outOffset);
+        }
+    }
+
+    /**
+     * Maps the specified value to a value in the codomain interval using the
+     * look-up table.
+     * 
+     * @param x The pixel intensity value.
+     * @return See above.
+     */
+    private int quantizeValue(int x) {
         if (x < lutMin) {
             double r = getOriginalGlobalMax()-getOriginalGlobalMin();
             if (r != 0) {
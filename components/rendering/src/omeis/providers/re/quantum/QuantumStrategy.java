@@ -17,6 +17,7 @@ import com.google.common.collect.Range;
 import ome.model.display.QuantumDef;
 import ome.model.enums.Family;
 import ome.model.enums.PixelsType;
+import ome.util.PixelData;
 import omeis.providers.re.data.PlaneFactory;
 import omeis.providers.re.metadata.StatsFactory;
 
@@ -459,4 +460,34 @@ public abstract class QuantumStrategy {
      */
     public abstract int quantize(double value) throws QuantizationException;
 
+    /**
+     * Maps a run of consecutive pixel intensity values to values in the
+     * codomain interval. The default implementation delegates to
+     * {@link #quantize(double)} for each value; subclasses able to work on
+     * the raw samples directly should override it.
+     * 
+     * @param data
+     *            The pixel data to read the values from.
+     * @param offset
+     *            The relative offset (taking into account the number of bytes
+     *            per pixel) of the first value to map.
+     * @param count
+     *            The number of values to map.
+     * @param out
+     *            The buffer receiving the values in the codomain interval i.e.
+     *            sub-interval of [0, 255], one unsigned <code>byte</code> per
+     *            value.
+     * @param outOffset
+     *            The offset within <code>out</code> of the first value.
+     * @throws QuantizationException
+     *             If one of the values is not in the interval [globalMin,
+     *             globalMax].
+     */
+    public void quantize(PixelData data, int offset, int count, byte[] out,
+            int outOffset) throws QuantizationException {
+        for (int i = 0; i < count; i++) {
+            out[outOffset + i] = (byte) quantize(data.getPixelValue(offset + i));
+        }
+    }
+
 }
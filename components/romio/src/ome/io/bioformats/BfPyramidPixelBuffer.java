@@ -18,6 +18,7 @@ import java.nio.channels.OverlappingFileLockException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import loci.formats.FormatException;
 import loci.formats.FormatTools;
@@ -54,16 +55,15 @@ public class BfPyramidPixelBuffer implements PixelBuffer {
 
     private final static Logger log = LoggerFactory.getLogger(BfPyramidPixelBuffer.class);
 
-    private BfPixelBuffer delegate;
+    /**
+     * Default maximum number of Bio-Formats readers which may read pixels
+     * from the backing TIFF concurrently.
+     */
+    public static final int DEFAULT_READERS = 4;
 
     /** Bio-Formats implementation used to write to the backing TIFF. */
     protected OmeroPixelsPyramidWriter writer;
 
-    /**
-     * Bio-Formats implementation the delegate uses to read the backing TIFF.
-     */
-    protected OmeroPixelsPyramidReader reader;
-
     /**
      * File's who absolute path will be passed to
      * {@link TiffReader#setId(String)} for reading.
@@ -103,7 +103,7 @@ public class BfPyramidPixelBuffer implements PixelBuffer {
      * non-null, then a move from this location to the {@link #filePath} (the
      * reader path) will be attempted.
      */
-    private File writerFile;
+    private volatile File writerFile;
 
     /**
      * Lock file used both for the {@link TiffReader} and {@link TiffWriter}
@@ -126,6 +126,34 @@ public class BfPyramidPixelBuffer implements PixelBuffer {
 
     public static final String PYR_LOCK_EXT = ".pyr_lock";
 
+    // READER POOL
+
+    /**
+     * Reads, including those of the metadata, hold the read lock for their
+     * duration so that any number of them may proceed in parallel, each using
+     * its own pooled reader. Tile writes and {@link #close()} hold the write
+     * lock and are therefore exclusive. The lock is always acquired before
+     * the monitor of this instance.
+     */
+    private final ReentrantReadWriteLock readWriteLock =
+        new ReentrantReadWriteLock();
+
+    /** The registry from which {@link #readers} is obtained. */
+    private final PyramidReaderPool.Registry registry;
+
+    /**
+     * Readers of the backing TIFF, shared with the other instances reading
+     * it. <code>null</code> while in write mode or once closed.
+     */
+    private volatile PyramidReaderPool readers;
+
+    /**
+     * Resolution level requested via {@link #setResolutionLevel(int)}, which
+     * pooled readers are brought to before being used, or <code>-1</code> to
+     * use the full resolution.
+     */
+    private volatile int resolutionLevel = -1;
+
     /**
      * We may want a constructor that takes the id of an imported file
      * or that takes a File object?
@@ -160,13 +188,41 @@ public class BfPyramidPixelBuffer implements PixelBuffer {
         this(sizes, pixels, filePath, write, true); // init!
     }
 
+    /**
+     * Constructor reading the pyramid with readers shared with the other
+     * instances created with the same registry.
+     *
+     * @param sizes
+     * @param pixels
+     * @param filePath
+     * @param write
+     * @param registry The registry of the reader pools of the pyramids.
+     * @throws IOException
+     * @throws FormatException
+     */
+    public BfPyramidPixelBuffer(TileSizes sizes, Pixels pixels, String filePath,
+            boolean write, PyramidReaderPool.Registry registry)
+            throws IOException, FormatException
+    {
+        this(sizes, pixels, filePath, write, true, registry);
+    }
+
     protected BfPyramidPixelBuffer(TileSizes sizes, Pixels pixels, String filePath,
             boolean write, boolean init)
             throws IOException, FormatException
+    {
+        this(sizes, pixels, filePath, write, init,
+                new PyramidReaderPool.Registry(DEFAULT_READERS));
+    }
+
+    protected BfPyramidPixelBuffer(TileSizes sizes, Pixels pixels, String filePath,
+            boolean write, boolean init, PyramidReaderPool.Registry registry)
+            throws IOException, FormatException
     {
         this.sizes = sizes;
         this.readerFile = new File(filePath);
         this.pixels = pixels;
+        this.registry = registry;
         if (init) {
             init(filePath, write);
         }
@@ -207,9 +263,8 @@ public class BfPyramidPixelBuffer implements PixelBuffer {
             // note: we double checked readerFile exists just in case.
             lockFile.delete();
         }
-        reader = new OmeroPixelsPyramidReader();
-        delegate = new BfPixelBuffer(readerFile.getAbsolutePath(), reader);
-        byteOrder = delegate.isLittleEndian()? ByteOrder.LITTLE_ENDIAN
+        readers = registry.acquire(readerFile);
+        byteOrder = readers.isLittleEndian()? ByteOrder.LITTLE_ENDIAN
                 : ByteOrder.BIG_ENDIAN;
     }
 
@@ -464,7 +519,12 @@ public class BfPyramidPixelBuffer implements PixelBuffer {
         return writerFile != null;
     }
 
-    private BfPixelBuffer delegate()
+    /**
+     * Returns the readers of the backing TIFF, closing the writer first if
+     * this instance is still in write mode. Must be called with the
+     * exclusive lock held.
+     */
+    private PyramidReaderPool readers()
     {
         if (isWrite())
         {
@@ -479,7 +539,7 @@ public class BfPyramidPixelBuffer implements PixelBuffer {
                 throw new RuntimeException(e1);
             }
         }
-        else if (delegate == null)
+        else if (readers == null)
         {
             try {
                 initializeReader();
@@ -489,13 +549,120 @@ public class BfPyramidPixelBuffer implements PixelBuffer {
                 throw new RuntimeException(e);
             }
         }
-        return delegate;
+        return readers;
+    }
+
+    /**
+     * Returns the readers of the backing TIFF, taking the exclusive lock to
+     * open them if this instance is still in write mode or has been closed.
+     * @return See above.
+     */
+    private PyramidReaderPool openReaders()
+    {
+        PyramidReaderPool pool = readers;
+        if (pool != null && !isWrite())
+        {
+            return pool;
+        }
+        readWriteLock.writeLock().lock();
+        try
+        {
+            synchronized (this)
+            {
+                return readers();
+            }
+        }
+        finally
+        {
+            readWriteLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of readers of the backing TIFF currently open,
+     * including those opened for other instances reading the same pyramid.
+     * @return See above.
+     */
+    public int getReaderCount()
+    {
+        PyramidReaderPool pool = readers;
+        return pool == null ? 0 : pool.getReaderCount();
+    }
+
+    /**
+     * Takes a reader from the pool of the backing TIFF for the duration of a
+     * read, opening the pool first if required. On successful return the
+     * caller holds the shared lock and must pass the reader to
+     * {@link #releaseReader(BfPixelBuffer)}.
+     * @return A reader set to the resolution level of this instance.
+     */
+    private BfPixelBuffer borrowReader()
+    {
+        while (true)
+        {
+            openReaders();
+            readWriteLock.readLock().lock();
+            PyramidReaderPool pool = readers;
+            if (pool == null)
+            {
+                // Closed before the shared lock was taken; open again.
+                readWriteLock.readLock().unlock();
+                continue;
+            }
+            try
+            {
+                return pool.borrow(resolutionLevel);
+            }
+            catch (RuntimeException e)
+            {
+                readWriteLock.readLock().unlock();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Returns a reader taken by {@link #borrowReader()} to the pool and
+     * releases the shared lock.
+     * @param buffer The borrowed reader.
+     */
+    private void releaseReader(BfPixelBuffer buffer)
+    {
+        try
+        {
+            readers.release(buffer);
+        }
+        finally
+        {
+            readWriteLock.readLock().unlock();
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.io.bioformats.BfPixelBuffer#setTile(byte[], java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer)
      */
-    public synchronized void setTile(byte[] buffer, Integer z, Integer c,
+    public void setTile(byte[] buffer, Integer z, Integer c,
+            Integer t, Integer x, Integer y, Integer w, Integer h)
+        throws IOException, BufferOverflowException
+    {
+        readWriteLock.writeLock().lock();
+        try
+        {
+            synchronized (this)
+            {
+                writeTile(buffer, z, c, t, x, y, w, h);
+            }
+        }
+        finally
+        {
+            readWriteLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes a tile. Must be called with the exclusive lock held.
+     */
+    private void writeTile(byte[] buffer, Integer z, Integer c,
             Integer t, Integer x, Integer y, Integer w, Integer h)
         throws IOException, BufferOverflowException
     {
@@ -599,7 +766,7 @@ public class BfPyramidPixelBuffer implements PixelBuffer {
      * @throws IOException If there is a problem with the parameters or a
      * problem checking them.
      */
-    private synchronized void checkTileParameters(int x, int y, int w, int h)
+    private void checkTileParameters(int x, int y, int w, int h)
         throws IOException
     {
         // No-op.
@@ -626,48 +793,78 @@ public class BfPyramidPixelBuffer implements PixelBuffer {
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#calculateMessageDigest()
      */
-    public synchronized byte[] calculateMessageDigest() throws IOException
+    public byte[] calculateMessageDigest() throws IOException
     {
-        return delegate().calculateMessageDigest();
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            return pooled.calculateMessageDigest();
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#checkBounds(java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer)
      */
-    public synchronized void checkBounds(Integer x, Integer y, Integer z,
+    public void checkBounds(Integer x, Integer y, Integer z,
             Integer c, Integer t) throws DimensionsOutOfBoundsException
     {
         t = getRasterizedT(z, c, t);
         c = 0;
         z = 0;
-        delegate().checkBounds(x, y, z, c, t);
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            pooled.checkBounds(x, y, z, c, t);
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#close()
      */
-    public synchronized void close() throws IOException
+    public void close() throws IOException
     {
+        readWriteLock.writeLock().lock();
         try
         {
-            if (delegate != null)
+            synchronized (this)
             {
-                delegate.close();
+                closeReaders();
             }
         }
-        catch (IOException e)
+        finally
         {
-            log.error("Failure to close delegate.", e);
+            readWriteLock.writeLock().unlock();
         }
-        delegate = null;
+    }
 
-        if (reader != null) {
-            try {
-                reader.close();
-            } catch (Exception e) {
-                log.warn("Failed to close reader", e);
-            } finally {
-                reader = null;
+    /**
+     * Hands the readers back to the registry, which closes them unless other
+     * instances are reading the same pyramid, and closes the writer. Must be
+     * called with the exclusive lock held.
+     */
+    private void closeReaders() throws IOException
+    {
+        if (readers != null)
+        {
+            try
+            {
+                registry.release(readers);
+            }
+            catch (RuntimeException e)
+            {
+                log.warn("Failed to release readers", e);
+            }
+            finally
+            {
+                readers = null;
             }
         }
 
@@ -678,45 +875,77 @@ public class BfPyramidPixelBuffer implements PixelBuffer {
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getByteWidth()
      */
-    public synchronized int getByteWidth()
+    public int getByteWidth()
     {
-        return delegate().getByteWidth();
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            return pooled.getByteWidth();
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getCol(java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer)
      */
-    public synchronized PixelData getCol(Integer x, Integer z, Integer c,
+    public PixelData getCol(Integer x, Integer z, Integer c,
                                          Integer t)
             throws IOException, DimensionsOutOfBoundsException
     {
         t = getRasterizedT(z, c, t);
         c = 0;
         z = 0;
-        PixelData data = delegate().getCol(x, z, c, t);
-        data.setOrder(byteOrder);
-        return data;
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            PixelData data = pooled.getCol(x, z, c, t);
+            data.setOrder(byteOrder);
+            return data;
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getColDirect(java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer, byte[])
      */
-    public synchronized byte[] getColDirect(Integer x, Integer z, Integer c,
+    public byte[] getColDirect(Integer x, Integer z, Integer c,
             Integer t, byte[] buffer)
         throws IOException, DimensionsOutOfBoundsException
     {
         t = getRasterizedT(z, c, t);
         c = 0;
         z = 0;
-        return delegate().getColDirect(x, z, c, t, buffer);
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            return pooled.getColDirect(x, z, c, t, buffer);
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getColSize()
      */
-    public synchronized Integer getColSize()
+    public Integer getColSize()
     {
-        return delegate().getColSize();
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            return pooled.getColSize();
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
@@ -752,62 +981,102 @@ public class BfPyramidPixelBuffer implements PixelBuffer {
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getId()
      */
-    public synchronized long getId()
+    public long getId()
     {
-        return delegate().getId();
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            return pooled.getId();
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getPath()
      */
-    public synchronized String getPath()
+    public String getPath()
     {
-        return delegate().getPath();
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            return pooled.getPath();
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getPlane(java.lang.Integer, java.lang.Integer, java.lang.Integer)
      */
-    public synchronized PixelData getPlane(Integer z, Integer c, Integer t)
+    public PixelData getPlane(Integer z, Integer c, Integer t)
             throws IOException, DimensionsOutOfBoundsException
     {
         t = getRasterizedT(z, c, t);
         c = 0;
         z = 0;
-        PixelData data = delegate().getPlane(z, c, t);
-        data.setOrder(byteOrder);
-        return data;
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            PixelData data = pooled.getPlane(z, c, t);
+            data.setOrder(byteOrder);
+            return data;
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getPlaneDirect(java.lang.Integer, java.lang.Integer, java.lang.Integer, byte[])
      */
-    public synchronized byte[] getPlaneDirect(Integer z, Integer c, Integer t,
+    public byte[] getPlaneDirect(Integer z, Integer c, Integer t,
                                               byte[] buffer)
             throws IOException, DimensionsOutOfBoundsException
     {
         t = getRasterizedT(z, c, t);
         c = 0;
         z = 0;
-        return delegate().getPlaneDirect(z, c, t, buffer);
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            return pooled.getPlaneDirect(z, c, t, buffer);
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getPlaneOffset(java.lang.Integer, java.lang.Integer, java.lang.Integer)
      */
-    public synchronized Long getPlaneOffset(Integer z, Integer c, Integer t)
+    public Long getPlaneOffset(Integer z, Integer c, Integer t)
             throws DimensionsOutOfBoundsException
     {
         t = getRasterizedT(z, c, t);
         c = 0;
         z = 0;
-        return delegate().getPlaneOffset(z, c, t);
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            return pooled.getPlaneOffset(z, c, t);
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getPlaneRegion(java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer)
      */
-    public synchronized PixelData getPlaneRegion(Integer x, Integer y,
+    public PixelData getPlaneRegion(Integer x, Integer y,
             Integer width, Integer height, Integer z, Integer c, Integer t,
             Integer stride)
             throws IOException, DimensionsOutOfBoundsException
@@ -815,31 +1084,55 @@ public class BfPyramidPixelBuffer implements PixelBuffer {
         t = getRasterizedT(z, c, t);
         c = 0;
         z = 0;
-        PixelData data =
-            delegate().getPlaneRegion(x, y, width, height, z, c, t, stride);
-        data.setOrder(byteOrder);
-        return data;
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            PixelData data =
+                pooled.getPlaneRegion(x, y, width, height, z, c, t, stride);
+            data.setOrder(byteOrder);
+            return data;
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getPlaneRegionDirect(java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer, byte[])
      */
-    public synchronized byte[] getPlaneRegionDirect(Integer z, Integer c,
+    public byte[] getPlaneRegionDirect(Integer z, Integer c,
             Integer t, Integer count, Integer offset, byte[] buffer)
         throws IOException, DimensionsOutOfBoundsException
     {
         t = getRasterizedT(z, c, t);
         c = 0;
         z = 0;
-        return getPlaneRegionDirect(z, c, t, count, offset, buffer);
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            return pooled.getPlaneRegionDirect(z, c, t, count, offset, buffer);
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getPlaneSize()
      */
-    public synchronized Long getPlaneSize()
+    public Long getPlaneSize()
     {
-        return delegate().getPlaneSize();
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            return pooled.getPlaneSize();
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
@@ -862,50 +1155,82 @@ public class BfPyramidPixelBuffer implements PixelBuffer {
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getRow(java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer)
      */
-    public synchronized PixelData getRow(Integer y, Integer z, Integer c,
+    public PixelData getRow(Integer y, Integer z, Integer c,
                                          Integer t)
             throws IOException, DimensionsOutOfBoundsException
     {
         t = getRasterizedT(z, c, t);
         c = 0;
         z = 0;
-        PixelData data = delegate().getRow(y, z, c, t);
-        data.setOrder(byteOrder);
-        return data;
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            PixelData data = pooled.getRow(y, z, c, t);
+            data.setOrder(byteOrder);
+            return data;
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getRowDirect(java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer, byte[])
      */
-    public synchronized byte[] getRowDirect(Integer y, Integer z, Integer c,
+    public byte[] getRowDirect(Integer y, Integer z, Integer c,
             Integer t, byte[] buffer)
         throws IOException, DimensionsOutOfBoundsException
     {
         t = getRasterizedT(z, c, t);
         c = 0;
         z = 0;
-        return delegate().getRowDirect(y, z, c, t, buffer);
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            return pooled.getRowDirect(y, z, c, t, buffer);
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getRowOffset(java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer)
      */
-    public synchronized Long getRowOffset(Integer y, Integer z, Integer c,
+    public Long getRowOffset(Integer y, Integer z, Integer c,
                                           Integer t)
             throws DimensionsOutOfBoundsException
     {
         t = getRasterizedT(z, c, t);
         c = 0;
         z = 0;
-        return delegate().getRowOffset(y, z, c, t);
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            return pooled.getRowOffset(y, z, c, t);
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getRowSize()
      */
-    public synchronized Integer getRowSize()
+    public Integer getRowSize()
     {
-        return delegate().getRowSize();
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            return pooled.getRowSize();
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
@@ -931,31 +1256,47 @@ public class BfPyramidPixelBuffer implements PixelBuffer {
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getSizeX()
      */
-    public synchronized int getSizeX()
+    public int getSizeX()
     {
-        if (delegate == null || delegate.reader.get() == null)
+        if (readers == null)
         {
-            // The downstream reader has not been initialized, we don't need to
-            // delegate and can't even if we wanted to because no data has
-            // actually been written yet.
+            // The pyramid is not being read, we don't need to delegate and
+            // can't even if we wanted to because no data has actually been
+            // written yet.
             return pixels.getSizeX();
         }
-        return delegate.getSizeX();
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            return pooled.getSizeX();
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getSizeY()
      */
-    public synchronized int getSizeY()
+    public int getSizeY()
     {
-        if (delegate == null || delegate.reader.get() == null)
+        if (readers == null)
         {
-            // The downstream reader has not been initialized, we don't need to
-            // delegate and can't even if we wanted to because no data has
-            // actually been written yet.
+            // The pyramid is not being read, we don't need to delegate and
+            // can't even if we wanted to because no data has actually been
+            // written yet.
             return pixels.getSizeY();
         }
-        return delegate.getSizeY();
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            return pooled.getSizeY();
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
@@ -998,30 +1339,46 @@ public class BfPyramidPixelBuffer implements PixelBuffer {
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getStackSize()
      */
-    public synchronized Long getStackSize()
+    public Long getStackSize()
     {
-        return delegate().getStackSize();
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            return pooled.getStackSize();
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getTile(java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer)
      */
-    public synchronized PixelData getTile(Integer z, Integer c, Integer t,
+    public PixelData getTile(Integer z, Integer c, Integer t,
             Integer x, Integer y, Integer w, Integer h) throws IOException
     {
         checkTileParameters(x, y, w, h);
         t = getRasterizedT(z, c, t);
         c = 0;
         z = 0;
-        PixelData data = delegate().getTile(z, c, t, x, y, w, h);
-        data.setOrder(byteOrder);
-        return data;
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            PixelData data = pooled.getTile(z, c, t, x, y, w, h);
+            data.setOrder(byteOrder);
+            return data;
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getTileDirect(java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer, java.lang.Integer, byte[])
      */
-    public synchronized byte[] getTileDirect(Integer z, Integer c, Integer t,
+    public byte[] getTileDirect(Integer z, Integer c, Integer t,
             Integer x, Integer y, Integer w, Integer h, byte[] buffer)
         throws IOException
     {
@@ -1029,7 +1386,15 @@ public class BfPyramidPixelBuffer implements PixelBuffer {
         t = getRasterizedT(z, c, t);
         c = 0;
         z = 0;
-        return delegate().getTileDirect(z, c, t, x, y, w, h, buffer);
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            return pooled.getTileDirect(z, c, t, x, y, w, h, buffer);
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
@@ -1062,33 +1427,65 @@ public class BfPyramidPixelBuffer implements PixelBuffer {
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getTimepointSize()
      */
-    public synchronized Long getTimepointSize()
+    public Long getTimepointSize()
     {
-        return delegate().getTimepointSize();
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            return pooled.getTimepointSize();
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getTotalSize()
      */
-    public synchronized Long getTotalSize()
+    public Long getTotalSize()
     {
-        return delegate().getTotalSize();
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            return pooled.getTotalSize();
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#isFloat()
      */
-    public synchronized boolean isFloat()
+    public boolean isFloat()
     {
-        return delegate().isFloat();
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            return pooled.isFloat();
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#isSigned()
      */
-    public synchronized boolean isSigned()
+    public boolean isSigned()
     {
-        return delegate().isSigned();
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            return pooled.isSigned();
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
@@ -1189,57 +1586,83 @@ public class BfPyramidPixelBuffer implements PixelBuffer {
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getResolutionLevel()
      */
-    public synchronized int getResolutionLevel()
+    public int getResolutionLevel()
     {
         if (isWrite())
         {
             throw new ApiUsageException("In write mode!");
         }
-        return delegate().getResolutionLevel();
+        int levels = openReaders().getResolutionLevels();
+        int level = resolutionLevel;
+        return level < 0 ? levels - 1 : level;
     }
 
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getResolutionLevels()
      */
-    public synchronized int getResolutionLevels()
+    public int getResolutionLevels()
     {
         if (isWrite())
         {
             throw new ApiUsageException("In write mode!");
         }
-        return delegate().getResolutionLevels();
+        return openReaders().getResolutionLevels();
     }
 
-    public synchronized List<List<Integer>> getResolutionDescriptions()
+    public List<List<Integer>> getResolutionDescriptions()
     {
         if (isWrite())
         {
             throw new ApiUsageException("In write mode!");
         }
-        return delegate().getResolutionDescriptions();
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            return pooled.getResolutionDescriptions();
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#getTileSize()
      */
-    public synchronized Dimension getTileSize()
+    public Dimension getTileSize()
     {
         if (isWrite())
         {
             return new Dimension(sizes.getTileWidth(), sizes.getTileHeight());
         }
-        return delegate().getTileSize();
+        BfPixelBuffer pooled = borrowReader();
+        try
+        {
+            return pooled.getTileSize();
+        }
+        finally
+        {
+            releaseReader(pooled);
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.io.nio.PixelBuffer#setResolutionLevel(int)
      */
-    public synchronized void setResolutionLevel(int resolutionLevel)
+    public void setResolutionLevel(int resolutionLevel)
     {
         if (isWrite())
         {
             throw new ApiUsageException("In write mode!");
         }
-        delegate().setResolutionLevel(resolutionLevel);
+        int levels = openReaders().getResolutionLevels();
+        if (resolutionLevel < 0 || resolutionLevel >= levels)
+        {
+            throw new ApiUsageException(String.format(
+                    "Resolution level %d not in [0, %d)",
+                    resolutionLevel, levels));
+        }
+        // Pooled readers are brought to this level when next borrowed.
+        this.resolutionLevel = resolutionLevel;
     }
 }
@@ -0,0 +1,375 @@
+/*
+ *   Copyright 2014 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+package ome.io.bioformats;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import loci.formats.FormatException;
+import ome.conditions.ApiUsageException;
+import ome.conditions.ResourceError;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bio-Formats readers of one pyramid file, shared by all of the
+ * {@link BfPyramidPixelBuffer} instances reading that file so that
+ * concurrent viewers of the same image do not each open their own. Each
+ * reader is used by one pixel read at a time; further readers are only
+ * opened, up to a maximum, while all of those already open are in use.
+ *
+ * Pools are obtained from a {@link Registry}, keyed by the path of the
+ * pyramid, and handed back to it once the pixel buffer is closed. The
+ * readers are closed when the last pixel buffer using the pool is.
+ *
+ * @since 5.1
+ */
+public class PyramidReaderPool {
+
+    private final static Logger log =
+        LoggerFactory.getLogger(PyramidReaderPool.class);
+
+    /** The pyramid file. */
+    private final File file;
+
+    /** Modification time of the pyramid when the pool was opened. */
+    private final long lastModified;
+
+    /** Length of the pyramid when the pool was opened. */
+    private final long length;
+
+    /** Maximum number of readers. */
+    private final int maxReaders;
+
+    /** Readers which are not currently in use. */
+    private final BlockingQueue<BfPixelBuffer> idle =
+        new LinkedBlockingQueue<BfPixelBuffer>();
+
+    /** All readers opened so far, guarded by itself. */
+    private final List<BfPixelBuffer> readers = new ArrayList<BfPixelBuffer>();
+
+    /** Byte order of the pyramid, read by the first reader. */
+    private final boolean littleEndian;
+
+    /** Number of resolution levels of the pyramid. */
+    private final int resolutionLevels;
+
+    /** Number of pixel buffers using the pool, guarded by the registry. */
+    private int references;
+
+    private volatile boolean closed;
+
+    /**
+     * Opens the first reader of a pyramid file.
+     * @param file The pyramid file.
+     * @param maxReaders The maximum number of readers, at least one.
+     */
+    PyramidReaderPool(File file, int maxReaders)
+        throws IOException, FormatException
+    {
+        this.file = file;
+        this.lastModified = file.lastModified();
+        this.length = file.length();
+        this.maxReaders = maxReaders;
+        BfPixelBuffer first = open();
+        try
+        {
+            littleEndian = first.isLittleEndian();
+            resolutionLevels = first.getResolutionLevels();
+        }
+        catch (RuntimeException e)
+        {
+            close();
+            throw e;
+        }
+        idle.offer(first);
+    }
+
+    /**
+     * Opens a reader of the pyramid and adds it to the pool. Must be called
+     * holding the lock on {@link #readers}, or from the constructor.
+     */
+    private BfPixelBuffer open() throws IOException, FormatException
+    {
+        BfPixelBuffer buffer = new BfPixelBuffer(
+                file.getAbsolutePath(), new OmeroPixelsPyramidReader());
+        readers.add(buffer);
+        if (log.isDebugEnabled())
+        {
+            log.debug(String.format("Opened reader %d of %d for %s",
+                    readers.size(), maxReaders, file));
+        }
+        return buffer;
+    }
+
+    /**
+     * Opens another reader unless the pool has reached its maximum size.
+     * @return See above or <code>null</code> if the pool is full.
+     */
+    private BfPixelBuffer openIfNotFull()
+    {
+        synchronized (readers)
+        {
+            if (readers.size() >= maxReaders)
+            {
+                return null;
+            }
+            try
+            {
+                return open();
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException(e);
+            }
+            catch (FormatException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Takes a reader for the duration of a read, waiting for one to be
+     * {@link #release(BfPixelBuffer) released} if all of them are in use and
+     * the pool is full.
+     * @param resolutionLevel The resolution level to bring the reader to or
+     * <code>-1</code> for the full resolution.
+     * @return See above.
+     */
+    public BfPixelBuffer borrow(int resolutionLevel)
+    {
+        if (closed)
+        {
+            throw new ApiUsageException("Pyramid readers closed: " + file);
+        }
+        BfPixelBuffer buffer = null;
+        boolean borrowed = false;
+        try
+        {
+            buffer = idle.poll();
+            if (buffer == null)
+            {
+                buffer = openIfNotFull();
+            }
+            if (buffer == null)
+            {
+                buffer = idle.take();
+            }
+            int level = resolutionLevel < 0 ?
+                    resolutionLevels - 1 : resolutionLevel;
+            if (buffer.getResolutionLevel() != level)
+            {
+                buffer.setResolutionLevel(level);
+            }
+            borrowed = true;
+            return buffer;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ResourceError(
+                    "Interrupted waiting for a reader of " + file);
+        }
+        finally
+        {
+            if (!borrowed && buffer != null)
+            {
+                idle.offer(buffer);
+            }
+        }
+    }
+
+    /**
+     * Returns a reader taken by {@link #borrow(int)}.
+     * @param buffer The borrowed reader.
+     */
+    public void release(BfPixelBuffer buffer)
+    {
+        idle.offer(buffer);
+    }
+
+    /**
+     * Returns whether or not the pixels of the pyramid are little endian.
+     * @return See above.
+     */
+    public boolean isLittleEndian()
+    {
+        return littleEndian;
+    }
+
+    /**
+     * Returns the number of resolution levels of the pyramid.
+     * @return See above.
+     */
+    public int getResolutionLevels()
+    {
+        return resolutionLevels;
+    }
+
+    /**
+     * Returns the number of readers currently open.
+     * @return See above.
+     */
+    public int getReaderCount()
+    {
+        synchronized (readers)
+        {
+            return readers.size();
+        }
+    }
+
+    /**
+     * Whether the pyramid file is still the one the readers were opened on,
+     * rather than one written since in its place.
+     */
+    private boolean isCurrent()
+    {
+        return file.lastModified() == lastModified
+            && file.length() == length;
+    }
+
+    /**
+     * Closes all of the readers. Called once no pixel buffer uses the pool.
+     */
+    private void close()
+    {
+        closed = true;
+        synchronized (readers)
+        {
+            for (BfPixelBuffer buffer : readers)
+            {
+                try
+                {
+                    buffer.close();
+                }
+                catch (Exception e)
+                {
+                    log.warn("Failed to close reader of " + file, e);
+                }
+            }
+            readers.clear();
+            idle.clear();
+        }
+    }
+
+    /**
+     * The reader pools of the pyramid files currently being read, keyed by
+     * their path. A pool replaced because its pyramid was written again is
+     * closed once the pixel buffers still using it are.
+     */
+    public static class Registry
+    {
+        private final Map<String, PyramidReaderPool> pools =
+            new HashMap<String, PyramidReaderPool>();
+
+        private final int maxReaders;
+
+        /**
+         * @param maxReaders The maximum number of readers of each pyramid,
+         * at least one.
+         */
+        public Registry(int maxReaders)
+        {
+            if (maxReaders < 1)
+            {
+                throw new ApiUsageException(
+                        "At least one reader is required.");
+            }
+            this.maxReaders = maxReaders;
+        }
+
+        /**
+         * Returns the pool of a pyramid file, opening it if no pixel buffer
+         * is reading that file. Must be handed back to
+         * {@link #release(PyramidReaderPool)} once no longer used.
+         * @param file The pyramid file.
+         * @return See above.
+         */
+        public PyramidReaderPool acquire(File file)
+            throws IOException, FormatException
+        {
+            String key = file.getAbsolutePath();
+            synchronized (this)
+            {
+                PyramidReaderPool pool = current(key);
+                if (pool != null)
+                {
+                    pool.references++;
+                    return pool;
+                }
+            }
+            // Opened without holding the lock so that pyramids are opened
+            // concurrently.
+            PyramidReaderPool opened = new PyramidReaderPool(file, maxReaders);
+            synchronized (this)
+            {
+                PyramidReaderPool pool = current(key);
+                if (pool == null)
+                {
+                    pool = opened;
+                    pools.put(key, pool);
+                }
+                else
+                {
+                    opened.close();
+                }
+                pool.references++;
+                return pool;
+            }
+        }
+
+        /**
+         * Returns the registered pool of a file if its pyramid has not been
+         * written again since, unregistering it otherwise. Must be called
+         * holding the lock.
+         */
+        private PyramidReaderPool current(String key)
+        {
+            PyramidReaderPool pool = pools.get(key);
+            if (pool != null && !pool.isCurrent())
+            {
+                pools.remove(key);
+                return null;
+            }
+            return pool;
+        }
+
+        /**
+         * Hands back a pool obtained from {@link #acquire(File)}, closing it
+         * if no other pixel buffer is using it.
+         * @param pool The pool.
+         */
+        public synchronized void release(PyramidReaderPool pool)
+        {
+            if (--pool.references > 0)
+            {
+                return;
+            }
+            String key = pool.file.getAbsolutePath();
+            if (pools.get(key) == pool)
+            {
+                pools.remove(key);
+            }
+            pool.close();
+        }
+
+        /**
+         * Returns the maximum number of readers of each pyramid.
+         * @return See above.
+         */
+        public int getMaxReaders()
+        {
+            return maxReaders;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * ome.io.nio.ChannelStatistics
+ *
+ *   Copyright 2014 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+package ome.io.nio;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+import ome.util.PixelData;
+
+/**
+ * Accumulates the minimum and maximum pixel intensity of a channel over
+ * blocks of pixel data, such as planes or tiles. The values are reduced in
+ * the primitive type of the pixels rather than through
+ * {@link PixelData#getPixelValue(int)}. Instances are not thread safe but
+ * partial results computed on separate threads may be combined with
+ * {@link #merge(ChannelStatistics)}.
+ *
+ * Optionally, the number of pixels at each intensity is also counted for
+ * 8 and 16 bit integer pixels, over the range of intensities actually
+ * found, and may be retrieved as an {@link IntensityHistogram}.
+ *
+ * @since 5.1
+ */
+public class ChannelStatistics {
+
+    private double min = Double.POSITIVE_INFINITY;
+
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /** Whether or not the intensities are counted. */
+    private boolean counting;
+
+    /** Number of pixels at each intensity from {@link #offset}, or null. */
+    private long[] counts;
+
+    /** The intensity counted by the first element of {@link #counts}. */
+    private int offset;
+
+    /**
+     * Creates new statistics which only accumulate the minimum and maximum.
+     */
+    public ChannelStatistics() {
+        this(false);
+    }
+
+    /**
+     * Creates new statistics.
+     *
+     * @param histogram whether or not to also count the pixels at each
+     * intensity.
+     */
+    public ChannelStatistics(boolean histogram) {
+        this.counting = histogram;
+    }
+
+    /**
+     * Adds a block of pixel data to the statistics. NaN values of floating
+     * point pixels are ignored.
+     *
+     * @param data the pixel data, in its byte order.
+     */
+    public void add(PixelData data) {
+        ByteBuffer buf = data.getData().duplicate();
+        buf.order(data.getOrder());
+        buf.clear();
+        switch (data.javaType()) {
+            case PixelData.BIT:
+                stopCounting();
+                addBits(buf);
+                break;
+            case PixelData.BYTE:
+                addBytes(buf, data.isSigned());
+                break;
+            case PixelData.SHORT:
+                addShorts(buf.asShortBuffer(), data.isSigned());
+                break;
+            case PixelData.INT:
+                stopCounting();
+                addInts(buf.asIntBuffer(), data.isSigned());
+                break;
+            case PixelData.FLOAT:
+                stopCounting();
+                addFloats(buf.asFloatBuffer());
+                break;
+            case PixelData.DOUBLE:
+                stopCounting();
+                addDoubles(buf.asDoubleBuffer());
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "Unsupported Java type: " + data.javaType());
+        }
+    }
+
+    private void addBits(ByteBuffer buf) {
+        boolean set = false;
+        boolean clear = false;
+        while (buf.hasRemaining() && !(set && clear)) {
+            int b = buf.get() & 0xFF;
+            set |= b != 0;
+            clear |= b != 0xFF;
+        }
+        if (clear) {
+            update(0, 0);
+        }
+        if (set) {
+            update(1, 1);
+        }
+    }
+
+    private void addBytes(ByteBuffer buf, boolean signed) {
+        int lo = Integer.MAX_VALUE;
+        int hi = Integer.MIN_VALUE;
+        int mask = signed ? -1 : 0xFF;
+        int n = buf.limit();
+        for (int i = 0; i < n; i++) {
+            int v = buf.get(i) & mask;
+            if (v < lo) lo = v;
+            if (v > hi) hi = v;
+        }
+        if (n > 0) {
+            update(lo, hi);
+            if (counting) {
+                long[] counts = counts(lo, hi);
+                for (int i = 0; i < n; i++) {
+                    counts[(buf.get(i) & mask) - offset]++;
+                }
+            }
+        }
+    }
+
+    private void addShorts(ShortBuffer buf, boolean signed) {
+        int lo = Integer.MAX_VALUE;
+        int hi = Integer.MIN_VALUE;
+        int mask = signed ? -1 : 0xFFFF;
+        int n = buf.limit();
+        for (int i = 0; i < n; i++) {
+            int v = buf.get(i) & mask;
+            if (v < lo) lo = v;
+            if (v > hi) hi = v;
+        }
+        if (n > 0) {
+            update(lo, hi);
+            if (counting) {
+                long[] counts = counts(lo, hi);
+                for (int i = 0; i < n; i++) {
+                    counts[(buf.get(i) & mask) - offset]++;
+                }
+            }
+        }
+    }
+
+    private void addInts(IntBuffer buf, boolean signed) {
+        long lo = Long.MAX_VALUE;
+        long hi = Long.MIN_VALUE;
+        long mask = signed ? -1L : 0xFFFFFFFFL;
+        int n = buf.limit();
+        for (int i = 0; i < n; i++) {
+            long v = buf.get(i) & mask;
+            if (v < lo) lo = v;
+            if (v > hi) hi = v;
+        }
+        if (n > 0) {
+            update(lo, hi);
+        }
+    }
+
+    private void addFloats(FloatBuffer buf) {
+        float lo = Float.POSITIVE_INFINITY;
+        float hi = Float.NEGATIVE_INFINITY;
+        int n = buf.limit();
+        for (int i = 0; i < n; i++) {
+            float v = buf.get(i);
+            if (v < lo) lo = v;
+            if (v > hi) hi = v;
+        }
+        if (lo <= hi) {
+            update(lo, hi);
+        }
+    }
+
+    private void addDoubles(DoubleBuffer buf) {
+        double lo = Double.POSITIVE_INFINITY;
+        double hi = Double.NEGATIVE_INFINITY;
+        int n = buf.limit();
+        for (int i = 0; i < n; i++) {
+            double v = buf.get(i);
+            if (v < lo) lo = v;
+            if (v > hi) hi = v;
+        }
+        if (lo <= hi) {
+            update(lo, hi);
+        }
+    }
+
+    private void update(double lo, double hi) {
+        if (lo < min) {
+            min = lo;
+        }
+        if (hi > max) {
+            max = hi;
+        }
+    }
+
+    /**
+     * Combines the statistics accumulated by another instance into these.
+     *
+     * @param other the statistics of other blocks of the same channel.
+     */
+    public void merge(ChannelStatistics other) {
+        if (!other.isEmpty()) {
+            update(other.min, other.max);
+            if (other.counts == null) {
+                stopCounting();
+            } else if (counting) {
+                long[] counts = counts(other.offset,
+                        other.offset + other.counts.length - 1);
+                int shift = other.offset - offset;
+                for (int i = 0; i < other.counts.length; i++) {
+                    counts[shift + i] += other.counts[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the counts, grown if needed to cover the given intensities.
+     */
+    private long[] counts(int lo, int hi) {
+        if (counts == null) {
+            counts = new long[hi - lo + 1];
+            offset = lo;
+        } else if (lo < offset || hi >= offset + counts.length) {
+            int from = Math.min(lo, offset);
+            int to = Math.max(hi, offset + counts.length - 1);
+            long[] grown = new long[to - from + 1];
+            System.arraycopy(counts, 0, grown, offset - from, counts.length);
+            counts = grown;
+            offset = from;
+        }
+        return counts;
+    }
+
+    /**
+     * Stops counting the intensities, which can only be counted for 8 and
+     * 16 bit integer pixels.
+     */
+    private void stopCounting() {
+        counting = false;
+        counts = null;
+    }
+
+    /**
+     * Returns the number of pixels added at each intensity.
+     *
+     * @return See above or <code>null</code> if the intensities were not
+     * counted, no pixels were added, or pixels other than 8 or 16 bit
+     * integers were added.
+     */
+    public IntensityHistogram getHistogram() {
+        if (counts == null) {
+            return null;
+        }
+        return new IntensityHistogram(offset, counts);
+    }
+
+    /**
+     * Returns <code>true</code> if no pixel value has been added yet.
+     *
+     * @return See above.
+     */
+    public boolean isEmpty() {
+        return min > max;
+    }
+
+    /**
+     * Returns the minimum intensity added.
+     *
+     * @return See above or {@link Double#POSITIVE_INFINITY} if
+     * {@link #isEmpty() empty}.
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Returns the maximum intensity added.
+     *
+     * @return See above or {@link Double#NEGATIVE_INFINITY} if
+     * {@link #isEmpty() empty}.
+     */
+    public double getMax() {
+        return max;
+    }
+}
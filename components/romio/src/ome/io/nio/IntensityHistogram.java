@@ -0,0 +1,191 @@
+/*
+ * ome.io.nio.IntensityHistogram
+ *
+ *   Copyright 2014 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+package ome.io.nio;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Number of pixels of a channel at each integer intensity between a lowest
+ * and a highest value, as accumulated by {@link ChannelStatistics} for
+ * pixels of up to 16 bits. The histograms of all the channels of a Pixels
+ * set are persisted together next to its pixels file, so that the
+ * distribution of the intensities can be used without reading any pixel
+ * data.
+ *
+ * Instances are immutable.
+ *
+ * @since 5.1
+ */
+public class IntensityHistogram {
+
+    /** Identifies files written by {@link #write(File, IntensityHistogram[])}. */
+    private static final int MAGIC = 0x4f484953;
+
+    private static final int VERSION = 1;
+
+    private final int offset;
+
+    private final long[] counts;
+
+    private final long total;
+
+    /**
+     * Creates a new histogram.
+     *
+     * @param offset the intensity counted by the first element of
+     * <code>counts</code>.
+     * @param counts the number of pixels at each intensity, copied.
+     */
+    public IntensityHistogram(int offset, long[] counts) {
+        this.offset = offset;
+        this.counts = counts.clone();
+        long sum = 0;
+        for (long count : counts) {
+            sum += count;
+        }
+        this.total = sum;
+    }
+
+    /**
+     * Returns the lowest intensity counted.
+     *
+     * @return See above.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the number of intensities counted.
+     *
+     * @return See above.
+     */
+    public int getLength() {
+        return counts.length;
+    }
+
+    /**
+     * Returns the number of pixels counted.
+     *
+     * @return See above.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the number of pixels at the given intensity.
+     *
+     * @param value the intensity.
+     * @return See above.
+     */
+    public long getCount(int value) {
+        int i = value - offset;
+        if (i < 0 || i >= counts.length) {
+            return 0;
+        }
+        return counts[i];
+    }
+
+    /**
+     * Returns the number of pixels whose intensity <code>v</code> satisfies
+     * <code>from &lt;= v &lt; to</code>.
+     *
+     * @param from the lower bound, inclusive.
+     * @param to the upper bound, exclusive.
+     * @return See above.
+     */
+    public long count(double from, double to) {
+        // Index of the first intensity >= from and of the first >= to
+        long start = (long) Math.ceil(from) - offset;
+        long end = (long) Math.ceil(to) - offset;
+        start = Math.max(0, start);
+        end = Math.min(counts.length, end);
+        long sum = 0;
+        for (long i = start; i < end; i++) {
+            sum += counts[(int) i];
+        }
+        return sum;
+    }
+
+    /**
+     * Writes the histograms of the channels of a Pixels set to a file.
+     * Channels without a histogram are written as <code>null</code>.
+     *
+     * @param file the file to write to, replaced if it exists.
+     * @param histograms the histogram of each channel.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(File file, IntensityHistogram[] histograms)
+        throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(file))));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(histograms.length);
+            for (IntensityHistogram histogram : histograms) {
+                if (histogram == null) {
+                    out.writeInt(-1);
+                    continue;
+                }
+                out.writeInt(histogram.counts.length);
+                out.writeInt(histogram.offset);
+                for (long count : histogram.counts) {
+                    out.writeLong(count);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads the histograms written by {@link #write(File, IntensityHistogram[])}.
+     *
+     * @param file the file to read.
+     * @return the histogram of each channel, <code>null</code> for the
+     * channels without one.
+     * @throws IOException if the file cannot be read or is not a file of
+     * histograms.
+     */
+    public static IntensityHistogram[] read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a histogram file: " + file);
+            }
+            IntensityHistogram[] histograms =
+                new IntensityHistogram[in.readInt()];
+            for (int c = 0; c < histograms.length; c++) {
+                int length = in.readInt();
+                if (length < 0) {
+                    continue;
+                }
+                int offset = in.readInt();
+                long[] counts = new long[length];
+                for (int i = 0; i < length; i++) {
+                    counts[i] = in.readLong();
+                }
+                histograms[c] = new IntensityHistogram(offset, counts);
+            }
+            return histograms;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -12,8 +12,20 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import loci.formats.ChannelFiller;
 import loci.formats.ChannelSeparator;
@@ -29,6 +41,7 @@ import ome.conditions.MissingPyramidException;
 import ome.conditions.ResourceError;
 import ome.io.bioformats.BfPixelBuffer;
 import ome.io.bioformats.BfPyramidPixelBuffer;
+import ome.io.bioformats.PyramidReaderPool;
 import ome.io.messages.MissingPyramidMessage;
 import ome.io.messages.MissingStatsInfoMessage;
 import ome.parameters.Parameters;
@@ -65,6 +78,13 @@ public class PixelsService extends AbstractFileSystemService
 	/** Suffix for an the image pyramid of a given pixels set. */
 	public static final String PYRAMID_SUFFIX = "_pyramid";
 
+	/**
+	 * Suffix for the intensity histograms of the channels of a given
+	 * pixels set.
+	 * @see IntensityHistogram
+	 */
+	public static final String HISTOGRAM_SUFFIX = "_histogram";
+
 	/** Null plane size constant. */
 	public static final int NULL_PLANE_SIZE = 64;
 
@@ -96,6 +116,16 @@ public class PixelsService extends AbstractFileSystemService
 	
 	private IQuery iQuery;
 
+	/**
+	 * Readers of the pyramids, shared by all of the pixel buffers reading the
+	 * same pyramid.
+	 */
+	private volatile PyramidReaderPool.Registry pyramidReaderPools =
+	    new PyramidReaderPool.Registry(BfPyramidPixelBuffer.DEFAULT_READERS);
+
+	/** Number of threads reading the source tiles of a pyramid. */
+	private int pyramidThreads = 1;
+
 	/** Null plane byte array. */
 	public static final byte[] nullPlane = new byte[] { -128, 127, -128, 127,
 			-128, 127, -128, 127, -128, 127, // 10
@@ -188,6 +218,26 @@ public class PixelsService extends AbstractFileSystemService
         this.minmaxTimes = metrics.timer(this, "minmaxTimes");
     }
 
+    /**
+     * Sets the maximum number of Bio-Formats readers with which the
+     * {@link BfPyramidPixelBuffer}s reading the same pyramid serve tile
+     * requests concurrently. The readers of a pyramid are shared by all of
+     * the pixel buffers reading it at the same time.
+     * @param pyramidReaders The maximum number of readers, at least one.
+     */
+    public void setPyramidReaders(int pyramidReaders) {
+        this.pyramidReaderPools = new PyramidReaderPool.Registry(pyramidReaders);
+    }
+
+    /**
+     * Sets the number of threads, each with its own source reader, which read
+     * the tiles of an image while its pyramid is being written.
+     * @param pyramidThreads The number of threads, at least one.
+     */
+    public void setPyramidThreads(int pyramidThreads) {
+        this.pyramidThreads = pyramidThreads;
+    }
+
     public long getMemoizerWait() {
         return memoizerWait;
     }
@@ -250,33 +300,9 @@ public class PixelsService extends AbstractFileSystemService
         if (!requirePyramid)
         {
             log.debug("Creating only StatsInfo.");
-            int series = getSeries(pixels);
-            final PixelsPyramidMinMaxStore minMaxStore =
-                new PixelsPyramidMinMaxStore(pixels.getSizeC());
-            BfPixelBuffer bfPixelBuffer = createMinMaxBfPixelBuffer(
-                    originalFilePath, series, minMaxStore);
-
             try
             {
-                for (int t = 0; t < pixels.getSizeT(); t++)
-                {
-                    for (int c = 0; c < pixels.getSizeC(); c++)
-                    {
-                        for (int z = 0; z < pixels.getSizeZ(); z++)
-                        {
-                            Timer.Context ctx = minmaxTimes == null ?
-                                null : minmaxTimes.time();
-                            try {
-                                bfPixelBuffer.getPlane(z, c, t);
-                            } finally {
-                                if (ctx != null) {
-                                    ctx.stop();
-                                }
-                            }
-                        }
-                    }
-                }
-                return minMaxStore.createStatsInfo();
+                return computeStatsInfo(pixels, originalFilePath);
             }
             catch (IOException e)
             {
@@ -337,6 +363,7 @@ public class PixelsService extends AbstractFileSystemService
         final PixelBuffer source;
         final Dimension tileSize;
         final PixelsPyramidMinMaxStore minMaxStore;
+        final int series = getSeries(pixels);
 
         if (pixelsFile.exists())
         {
@@ -349,10 +376,10 @@ public class PixelsService extends AbstractFileSystemService
         }
         else
         {
+            // Min/max are computed from the tiles as they are read.
             minMaxStore = new PixelsPyramidMinMaxStore(pixels.getSizeC());
-            int series = getSeries(pixels);
-            BfPixelBuffer bfPixelBuffer = createMinMaxBfPixelBuffer(
-                    originalFilePath, series, minMaxStore);
+            BfPixelBuffer bfPixelBuffer = createBfPixelBuffer(
+                    originalFilePath, series);
             pixelsPyramid.setByteOrder(
                     bfPixelBuffer.isLittleEndian()? ByteOrder.LITTLE_ENDIAN
                             : ByteOrder.BIG_ENDIAN);
@@ -392,13 +419,34 @@ public class PixelsService extends AbstractFileSystemService
         }
         log.info("Destination pyramid tile size: " + tileSize);
 
+        // Tiles are read, and their min/max computed, by a pool of workers,
+        // each with its own source. The pyramid writer requires the tiles in
+        // order, so they are written by this thread as they complete, with
+        // a bounded number of tiles read ahead.
+        final int threads = Math.max(1, pyramidThreads);
+        final BlockingQueue<PixelBuffer> sources =
+            new LinkedBlockingQueue<PixelBuffer>();
+        sources.add(source);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
         try
         {
+            for (int i = 1; i < threads; i++)
+            {
+                sources.add(pixelsFile.exists()?
+                        createRomioPixelBuffer(pixelsFilePath, pixels, false)
+                        : createBfPixelBuffer(originalFilePath, series));
+            }
+            final Map<PixelBuffer, ChannelStatistics[]> sourceStatistics =
+                minMaxStore == null? null
+                        : newStatistics(sources, pixels.getSizeC());
             final double totalTiles =
                 source.getSizeZ() * source.getSizeC() * source.getSizeT() *
                 (Math.ceil(source.getSizeX() / tileSize.getWidth())) *
                 (Math.ceil(source.getSizeY() / tileSize.getHeight()));
             final int tenPercent = Math.max((int) totalTiles / 10, 1);
+            final Deque<Future<SourceTile>> pending =
+                new ArrayDeque<Future<SourceTile>>();
+            final int readAhead = threads * 2;
             Utils.forEachTile(new TileLoopIteration() {
                 public void run(int z, int c, int t, int x, int y, int w,
                             int h, int tileCount)
@@ -411,57 +459,425 @@ public class PixelsService extends AbstractFileSystemService
                             pixels.getId(), tileCount + 1, (int) totalTiles,
                             (int) (tileCount / totalTiles * 100)));
                 }
-                try
+                SourceTile tile = new SourceTile(sources, tileTimes,
+                        sourceStatistics, true, z, c, t, x, y, w, h);
+                pending.add(executor.submit(tile));
+                if (pending.size() >= readAhead)
                 {
-                    Timer.Context ctx = tileTimes == null ? null : tileTimes.time();
-                    try {
-                        PixelData tile = source.getTile(z, c, t, x, y, w, h);
-                        pixelsPyramid.setTile(
-                            tile.getData().array(), z, c, t, x, y, w, h);
-                        tile.dispose();
-                    } finally {
-                        if (ctx != null) {
-                            ctx.stop();
-                        }
-                    }
+                    writeTile(pending.remove(), pixelsPyramid,
+                            pixelsPyramidFile);
                 }
-                catch (IOException e1)
+            }
+            }, source, (int) tileSize.getWidth(), (int) tileSize.getHeight());
+            while (!pending.isEmpty())
+            {
+                writeTile(pending.remove(), pixelsPyramid, pixelsPyramidFile);
+            }
+
+            if (minMaxStore != null)
+            {
+                final ChannelStatistics[] statistics = mergeStatistics(
+                        sourceStatistics, pixels.getSizeC());
+                for (int c = 0; c < statistics.length; c++)
                 {
-                    log.error("FAIL -- Error during tile population", e1);
-                    try
+                    if (!statistics[c].isEmpty())
                     {
-                        pixelsPyramidFile.delete();
-                        FileUtils.touch(pixelsPyramidFile); // ticket:5189
+                        minMaxStore.setChannelGlobalMinMax(c,
+                                statistics[c].getMin(),
+                                statistics[c].getMax(), series);
                     }
-                    catch (Exception e2)
+                }
+                writeHistograms(pixels.getId(), statistics);
+            }
+            log.info("SUCCESS -- Pyramid created for pixels id:" + pixels.getId());
+
+        }
+
+        finally
+        {
+            shutdown(executor, sources);
+        }
+        return minMaxStore;
+    }
+
+    /**
+     * Waits for a tile to be read and writes it to the pixels pyramid.
+     * @param future Tile being read.
+     * @param pixelsPyramid Destination pyramid.
+     * @param pixelsPyramidFile Pyramid file, cleared on failure.
+     */
+    private void writeTile(Future<SourceTile> future,
+            BfPyramidPixelBuffer pixelsPyramid, File pixelsPyramidFile)
+    {
+        try
+        {
+            SourceTile tile = future.get();
+            try
+            {
+                pixelsPyramid.setTile(tile.data.getData().array(), tile.z,
+                        tile.c, tile.t, tile.x, tile.y, tile.w, tile.h);
+            }
+            finally
+            {
+                tile.data.dispose();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ResourceError("Interrupted during pyramid creation.");
+        }
+        catch (Exception e)
+        {
+            Throwable cause = e instanceof ExecutionException?
+                    e.getCause() : e;
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            log.error("FAIL -- Error during tile population", cause);
+            try
+            {
+                pixelsPyramidFile.delete();
+                FileUtils.touch(pixelsPyramidFile); // ticket:5189
+            }
+            catch (Exception e2)
+            {
+                log.warn("Error clearing empty or incomplete pixel " +
+                         "buffer.", e2);
+            }
+        }
+    }
+
+    /**
+     * Computes the min/max of each channel of an image which does not require
+     * a pyramid, reading its planes in parallel from the original file.
+     * @param pixels Pixels set to compute the statistics of.
+     * @param originalFilePath Original file backing the pixels set.
+     * @return The statistics of each channel.
+     * @throws IOException If a plane cannot be read.
+     */
+    private StatsInfo[] computeStatsInfo(Pixels pixels,
+            String originalFilePath) throws IOException
+    {
+        final int series = getSeries(pixels);
+        final int threads = Math.max(1, pyramidThreads);
+        final BlockingQueue<PixelBuffer> sources =
+            new LinkedBlockingQueue<PixelBuffer>();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            for (int i = 0; i < threads; i++)
+            {
+                sources.add(createBfPixelBuffer(originalFilePath, series));
+            }
+            final Map<PixelBuffer, ChannelStatistics[]> sourceStatistics =
+                newStatistics(sources, pixels.getSizeC());
+            final Deque<Future<SourceTile>> pending =
+                new ArrayDeque<Future<SourceTile>>();
+            for (int t = 0; t < pixels.getSizeT(); t++)
+            {
+                for (int c = 0; c < pixels.getSizeC(); c++)
+                {
+                    for (int z = 0; z < pixels.getSizeZ(); z++)
                     {
-                        log.warn("Error clearing empty or incomplete pixel " +
-                                 "buffer.", e2);
+                        pending.add(executor.submit(new SourceTile(sources,
+                                minmaxTimes, sourceStatistics, false, z, c, t,
+                                0, 0, pixels.getSizeX(), pixels.getSizeY())));
+                        if (pending.size() >= threads * 2)
+                        {
+                            waitForPlane(pending.remove());
+                        }
                     }
-                    return;
                 }
             }
-            }, source, (int) tileSize.getWidth(), (int) tileSize.getHeight());
+            while (!pending.isEmpty())
+            {
+                waitForPlane(pending.remove());
+            }
+            final ChannelStatistics[] statistics =
+                mergeStatistics(sourceStatistics, pixels.getSizeC());
+            final PixelsPyramidMinMaxStore minMaxStore =
+                new PixelsPyramidMinMaxStore(pixels.getSizeC());
+            for (int c = 0; c < statistics.length; c++)
+            {
+                if (!statistics[c].isEmpty())
+                {
+                    minMaxStore.setChannelGlobalMinMax(c,
+                            statistics[c].getMin(), statistics[c].getMax(),
+                            series);
+                }
+            }
+            writeHistograms(pixels.getId(), statistics);
+            return minMaxStore.createStatsInfo();
+        }
+        finally
+        {
+            shutdown(executor, sources);
+        }
+    }
 
-            log.info("SUCCESS -- Pyramid created for pixels id:" + pixels.getId());
+    /**
+     * Waits for the statistics of a plane to be added to those of its
+     * source.
+     * @param future Plane being read.
+     * @throws IOException If the plane could not be read.
+     */
+    private void waitForPlane(Future<SourceTile> future) throws IOException
+    {
+        try
+        {
+            future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ResourceError("Interrupted during min/max calculation.");
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
 
+    /**
+     * Persists the intensity histograms of the channels of a pixels set
+     * next to its pixels file. Failing to do so is not fatal since they are
+     * only used to choose default rendering settings.
+     * @param pixelsId Pixels set the statistics were computed for.
+     * @param statistics Statistics of each channel.
+     */
+    private void writeHistograms(long pixelsId,
+            ChannelStatistics[] statistics)
+    {
+        IntensityHistogram[] histograms =
+            new IntensityHistogram[statistics.length];
+        boolean any = false;
+        for (int c = 0; c < statistics.length; c++)
+        {
+            histograms[c] = statistics[c].getHistogram();
+            any |= histograms[c] != null;
+        }
+        if (!any)
+        {
+            return;
         }
+        File file = new File(getPixelsPath(pixelsId) + HISTOGRAM_SUFFIX);
+        try
+        {
+            file.getParentFile().mkdirs();
+            IntensityHistogram.write(file, histograms);
+        }
+        catch (IOException e)
+        {
+            log.warn("Error writing histograms of Pixels:" + pixelsId, e);
+            file.delete();
+        }
+    }
 
-        finally
+    /**
+     * Returns the intensity histograms of the channels of a pixels set,
+     * computed along with the minimum and maximum of each channel when its
+     * pyramid or statistics were generated.
+     * @param pixelsId Pixels set to retrieve the histograms for.
+     * @return See above or <code>null</code> if no histograms have been
+     * persisted. Channels whose pixel type cannot be counted have a
+     * <code>null</code> histogram.
+     * @since 5.1
+     */
+    public IntensityHistogram[] getHistograms(long pixelsId)
+    {
+        File file = new File(getPixelsPath(pixelsId) + HISTOGRAM_SUFFIX);
+        if (!file.exists())
+        {
+            return null;
+        }
+        try
+        {
+            return IntensityHistogram.read(file);
+        }
+        catch (IOException e)
+        {
+            log.warn("Error reading histograms of Pixels:" + pixelsId, e);
+            return null;
+        }
+    }
+
+    private static ChannelStatistics[] newStatistics(int sizeC)
+    {
+        ChannelStatistics[] statistics = new ChannelStatistics[sizeC];
+        for (int c = 0; c < sizeC; c++)
+        {
+            statistics[c] = new ChannelStatistics(true);
+        }
+        return statistics;
+    }
+
+    /**
+     * Creates the statistics of each channel for each of the given sources,
+     * into which the tiles read from that source are accumulated. As a
+     * source is only used by one worker at a time, its statistics need no
+     * further locking.
+     * @param sources Sources the tiles are read from.
+     * @param sizeC Number of channels.
+     * @return The statistics of each channel, by source.
+     */
+    private static Map<PixelBuffer, ChannelStatistics[]> newStatistics(
+            Iterable<PixelBuffer> sources, int sizeC)
+    {
+        Map<PixelBuffer, ChannelStatistics[]> statistics =
+            new IdentityHashMap<PixelBuffer, ChannelStatistics[]>();
+        for (PixelBuffer source : sources)
+        {
+            statistics.put(source, newStatistics(sizeC));
+        }
+        return statistics;
+    }
+
+    /**
+     * Combines the statistics accumulated from each source once all the
+     * tiles have been read.
+     * @param sourceStatistics The statistics of each channel, by source.
+     * @param sizeC Number of channels.
+     * @return The statistics of each channel.
+     */
+    private static ChannelStatistics[] mergeStatistics(
+            Map<PixelBuffer, ChannelStatistics[]> sourceStatistics, int sizeC)
+    {
+        ChannelStatistics[] statistics = newStatistics(sizeC);
+        for (ChannelStatistics[] partial : sourceStatistics.values())
         {
-            if (source != null)
+            for (int c = 0; c < sizeC; c++)
             {
-                try
+                statistics[c].merge(partial[c]);
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Stops the workers reading from the sources and closes the sources.
+     * @param executor Workers to stop.
+     * @param sources Sources to close once the workers have returned them.
+     */
+    private void shutdown(ExecutorService executor,
+            BlockingQueue<PixelBuffer> sources)
+    {
+        executor.shutdownNow();
+        try
+        {
+            // Let in-flight reads return their sources before closing.
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        for (PixelBuffer buffer : sources)
+        {
+            try
+            {
+                buffer.close();
+            }
+            catch (IOException e)
+            {
+                log.error("Error closing pixel buffer.", e);
+            }
+        }
+    }
+
+    /**
+     * Reads a tile using any of the available sources and optionally
+     * adds it to the statistics of that source.
+     */
+    private static class SourceTile implements Callable<SourceTile>
+    {
+        final BlockingQueue<PixelBuffer> sources;
+
+        final Timer timer;
+
+        final boolean retain;
+
+        final int z, c, t, x, y, w, h;
+
+        /** Statistics of each channel by source, or <code>null</code>. */
+        final Map<PixelBuffer, ChannelStatistics[]> statistics;
+
+        /** The tile, if retained. */
+        PixelData data;
+
+        /**
+         * @param sources Sources to read the tile from.
+         * @param timer Timer of the reads, may be <code>null</code>.
+         * @param statistics Statistics of each channel by source, to which
+         * the tile is added, or <code>null</code> not to compute any.
+         * @param retain Whether or not to keep the tile once read.
+         */
+        SourceTile(BlockingQueue<PixelBuffer> sources, Timer timer,
+                Map<PixelBuffer, ChannelStatistics[]> statistics,
+                boolean retain,
+                int z, int c, int t, int x, int y, int w, int h)
+        {
+            this.sources = sources;
+            this.timer = timer;
+            this.retain = retain;
+            this.z = z;
+            this.c = c;
+            this.t = t;
+            this.x = x;
+            this.y = y;
+            this.w = w;
+            this.h = h;
+            this.statistics = statistics;
+        }
+
+        public SourceTile call() throws Exception
+        {
+            PixelBuffer source = sources.take();
+            Timer.Context ctx = timer == null ? null : timer.time();
+            try
+            {
+                PixelData tile = source.getTile(z, c, t, x, y, w, h);
+                if (statistics != null)
                 {
-                    source.close();
+                    statistics.get(source)[c].add(tile);
                 }
-                catch (IOException e)
+                if (retain)
                 {
-                    log.error("Error closing pixel pyramid.", e);
+                    data = tile;
                 }
+                else
+                {
+                    tile.dispose();
+                }
+                return this;
+            }
+            finally
+            {
+                if (ctx != null)
+                {
+                    ctx.stop();
+                }
+                sources.add(source);
             }
         }
-        return minMaxStore;
     }
 
     /**
@@ -836,7 +1252,8 @@ public class PixelsService extends AbstractFileSystemService
                 // #5159. Creating the path if we need to write.
                 createSubpath(filePath);
             }
-            return new BfPyramidPixelBuffer(pixels, filePath, write);
+            return new BfPyramidPixelBuffer(new ConfiguredTileSizes(),
+                    pixels, filePath, write, pyramidReaderPools);
         }
         catch (Exception e)
         {
@@ -48,6 +48,12 @@ public class RomioPixelBuffer extends AbstractBuffer implements PixelBuffer {
     /** Default maximum buffer size for planar data transfer. (1MB) */
     public static final int MAXIMUM_BUFFER_SIZE = 1048576;
 
+    /**
+     * Runs of contiguous bytes at least this long are gathered with
+     * positional reads rather than through a memory mapped window. (8KB)
+     */
+    private static final int GATHER_READ_SIZE = 8192;
+
     /** Reference to the pixels. */
     private Pixels pixels;
 
@@ -380,22 +386,10 @@ public class RomioPixelBuffer extends AbstractBuffer implements PixelBuffer {
 	 */
     public PixelData getCol(Integer x, Integer z, Integer c, Integer t)
             throws IOException, DimensionsOutOfBoundsException {
-    	//Dimension check in plane.
-        PixelData plane = getPlane(z, c, t);
-        Integer sizeY = getSizeY();
-        Integer sizeX = getSizeX();
-        Integer colSize = getColSize();
-        ByteBuffer buf = ByteBuffer.wrap(new byte[colSize]);
-        PixelData column = new PixelData(pixels.getPixelsType().getValue(), buf);
-        int offset;
-        double value;
-        for (int i = 0; i < sizeY; i++) {
-            offset = (i * sizeX) + x;
-            value = plane.getPixelValue(offset);
-            column.setPixelValue(i, value);
-        }
-        plane.dispose();
-        return column;
+        byte[] buffer = new byte[getColSize()];
+        getColDirect(x, z, c, t, buffer);
+        return new PixelData(pixels.getPixelsType().getValue(),
+                ByteBuffer.wrap(buffer));
     }
     
     /**
@@ -420,19 +414,12 @@ public class RomioPixelBuffer extends AbstractBuffer implements PixelBuffer {
     public byte[] getColDirect(Integer x, Integer z, Integer c, Integer t, 
             byte[] buffer) throws IOException, DimensionsOutOfBoundsException
     {
-        PixelData plane = getPlane(z, c, t);
-        Integer sizeY = getSizeY();
-        Integer sizeX = getSizeX();
-        ByteBuffer buf = ByteBuffer.wrap(buffer);
-        PixelData column = new PixelData(pixels.getPixelsType().getValue(), buf);
-        int offset;
-        double value;
-        for (int i = 0; i < sizeY; i++) {
-            offset = (i * sizeX) + x;
-            value = plane.getPixelValue(offset);
-            column.setPixelValue(i, value);
-        }
-        plane.dispose();
+        checkBounds(x, null, z, c, t);
+        if (buffer.length < getColSize())
+            throw new ApiUsageException("Buffer size incorrect.");
+        int pixelSize = getByteWidth();
+        long offset = getPlaneOffset(z, c, t) + (long) x * pixelSize;
+        gather(offset, pixelSize, getRowSize(), getSizeY(), 0, 1, buffer, 0);
         return buffer;
     }
 
@@ -472,11 +459,13 @@ public class RomioPixelBuffer extends AbstractBuffer implements PixelBuffer {
 			Integer count, Integer offset, byte[] buffer)
 		throws IOException, DimensionsOutOfBoundsException
 	{
-		final PixelData pd = getPlane(z, c, t);
-		final ByteBuffer b = pd.getData();
-		b.position(offset * getByteWidth());
-		b.get(buffer, 0, count * getByteWidth());
-		pd.dispose();
+		final int pixelSize = getByteWidth();
+		if (offset < 0 || count < 0
+				|| (long) (offset + count) * pixelSize > getPlaneSize())
+			throw new DimensionsOutOfBoundsException(
+					"Region exceeds the plane size.");
+		readFully(getPlaneOffset(z, c, t) + (long) offset * pixelSize,
+				buffer, 0, count * pixelSize);
 		return buffer;
 	}
 
@@ -984,50 +973,124 @@ public class RomioPixelBuffer extends AbstractBuffer implements PixelBuffer {
      * This code is repeated in bfPixelWrapper and so needs refactoring.
      */
     private byte[] getWholeHypercube(List<Integer> offset, List<Integer> size,
-            List<Integer> step, byte[] cube) throws IOException {
+            List<Integer> step, byte[] cube)
+            throws IOException, DimensionsOutOfBoundsException {
         int cubeOffset = 0;
         int xStripes = (size.get(0) + step.get(0) - 1) / step.get(0);
+        int yStripes = (size.get(1) + step.get(1) - 1) / step.get(1);
         int pixelSize = getByteWidth();
-        int tileRowSize = pixelSize * xStripes;
-        byte[] plane = new byte[safeLongToInteger(getPlaneSize())];
+        long rowSize = getRowSize();
         for(int t = offset.get(4); t < size.get(4)+offset.get(4); t += step.get(4))
         {
             for(int c = offset.get(3); c < size.get(3)+offset.get(3); c += step.get(3))
             {
                 for(int z = offset.get(2); z < size.get(2)+offset.get(2); z += step.get(2))
                 {
-                    getPlaneDirect(z,c,t,plane);
-                    int rowOffset = offset.get(1)*getRowSize();
+                    long position = getPlaneOffset(z, c, t)
+                        + offset.get(1) * rowSize
+                        + (long) offset.get(0) * pixelSize;
                     if(step.get(0)==1)
                     {
-                        int byteOffset = rowOffset + offset.get(0)*pixelSize;
-                        for(int y = offset.get(1); y < size.get(1)+offset.get(1); y += step.get(1))
-                        {
-                            System.arraycopy(plane, byteOffset, cube, cubeOffset, tileRowSize);
-                            cubeOffset += tileRowSize;
-                            byteOffset += getRowSize()*step.get(1);
-                        }
+                        // Each row of the selection is a contiguous run.
+                        cubeOffset = gather(position, pixelSize * xStripes,
+                                0, 1, rowSize * step.get(1), yStripes,
+                                cube, cubeOffset);
                     }
                     else
                     {
-                        for(int y = offset.get(1); y < size.get(1)+offset.get(1); y += step.get(1))
-                        {
-                            int byteOffset = offset.get(0)*pixelSize;
-                            for(int x = offset.get(0); x < size.get(0)+offset.get(0); x += step.get(0))
-                            {
-                                System.arraycopy(plane, rowOffset+byteOffset, cube, cubeOffset, pixelSize);
-                                cubeOffset += pixelSize;
-                                byteOffset += step.get(0)*pixelSize;
-                            }
-                            rowOffset += getRowSize()*step.get(1);
-                        }
+                        cubeOffset = gather(position, pixelSize,
+                                (long) pixelSize * step.get(0), xStripes,
+                                rowSize * step.get(1), yStripes,
+                                cube, cubeOffset);
                     }
-
                 }
             }
         }
         return cube;
     }
+
+    /**
+     * Reads <code>length</code> bytes of the pixels file at
+     * <code>position</code> into <code>buffer</code> with positional reads,
+     * leaving the position of the channel untouched.
+     *
+     * @param position The offset into the pixels file.
+     * @param buffer The destination buffer.
+     * @param offset The offset into the destination buffer.
+     * @param length The number of bytes to read.
+     * @throws IOException If the file ends before all bytes have been read.
+     */
+    private void readFully(long position, byte[] buffer, int offset,
+            int length) throws IOException {
+        FileChannel fileChannel = getFileChannel();
+        ByteBuffer dst = ByteBuffer.wrap(buffer, offset, length);
+        while (dst.hasRemaining()) {
+            int read = fileChannel.read(dst, position + dst.position() - offset);
+            if (read < 0) {
+                throw new IOException("Unexpected end of " + getPath());
+            }
+        }
+    }
+
+    /**
+     * Copies a strided selection of the pixels file contiguously into
+     * <code>buffer</code>, without converting the pixel values. The selection
+     * is made of <code>rows</code> rows <code>rowStride</code> bytes apart,
+     * starting at <code>position</code>, each made of <code>count</code> runs
+     * of <code>length</code> bytes <code>stride</code> bytes apart. Long runs
+     * are read with positional reads, short ones are picked out of a memory
+     * mapped window so that only the pages which hold them are read.
+     *
+     * @param position The offset into the pixels file of the first run.
+     * @param length The length of each run in bytes.
+     * @param stride The distance between runs of a row in bytes.
+     * @param count The number of runs per row.
+     * @param rowStride The distance between rows in bytes.
+     * @param rows The number of rows.
+     * @param buffer The destination buffer.
+     * @param offset The offset into the destination buffer.
+     * @return The offset into the destination buffer after the last run.
+     * @throws IOException If an I/O error occurs.
+     */
+    private int gather(long position, int length, long stride, int count,
+            long rowStride, int rows, byte[] buffer, int offset)
+            throws IOException {
+        if (count < 1 || rows < 1) {
+            return offset;
+        }
+        if (count == 1 || stride == length) {
+            // The runs of a row are contiguous.
+            int rowLength = length * count;
+            if (rows == 1 || rowStride == rowLength) {
+                readFully(position, buffer, offset, rowLength * rows);
+                return offset + rowLength * rows;
+            }
+            if (rowLength >= GATHER_READ_SIZE) {
+                for (int i = 0; i < rows; i++) {
+                    readFully(position + i * rowStride, buffer, offset,
+                            rowLength);
+                    offset += rowLength;
+                }
+                return offset;
+            }
+        }
+        long span = rowStride * (rows - 1) + stride * (count - 1) + length;
+        PixelData window = getRegion(safeLongToInteger(span), position);
+        try {
+            ByteBuffer b = window.getData();
+            for (int i = 0; i < rows; i++) {
+                long rowPosition = i * rowStride;
+                for (int j = 0; j < count; j++) {
+                    b.position((int) (rowPosition + j * stride));
+                    b.get(buffer, offset, length);
+                    offset += length;
+                }
+            }
+        } finally {
+            window.dispose();
+        }
+        return offset;
+    }
     
     private void checkCubeBounds(List<Integer> offset, List<Integer> size, List<Integer> step)
             throws DimensionsOutOfBoundsException {
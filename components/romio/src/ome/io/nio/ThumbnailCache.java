@@ -0,0 +1,383 @@
+/*
+ * ome.io.nio.ThumbnailCache
+ *
+ *   Copyright 2014 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+package ome.io.nio;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ome.model.display.RenderingDef;
+import ome.model.display.Thumbnail;
+import ome.model.meta.Event;
+import ome.system.metrics.Counter;
+import ome.system.metrics.Metrics;
+import ome.system.metrics.NullMetrics;
+
+/**
+ * Server-wide, size-bounded, least recently used cache of compressed
+ * thumbnails sitting in front of the {@link ThumbnailService} file system
+ * reads. The thumbnail bytes are held in direct buffers so that a large
+ * cache does not add to the pressure on the Java heap.
+ *
+ * Entries are keyed by the identity of the thumbnail metadata, the Pixels
+ * set, the thumbnail size and the version of the thumbnail metadata, which
+ * is incremented each time the thumbnail is regenerated after a change of
+ * the rendering settings. Writing or removing a thumbnail invalidates all of
+ * its entries.
+ *
+ * A cached thumbnail may also be found from the rendering settings it was
+ * rendered with, identified by their id and update event, so that callers
+ * which already hold the settings of a Pixels set can be served without
+ * loading its thumbnail metadata from the database.
+ *
+ * @since 5.1
+ */
+public class ThumbnailCache {
+
+    private final static Logger log =
+        LoggerFactory.getLogger(ThumbnailCache.class);
+
+    /**
+     * Identifies a version of a thumbnail.
+     */
+    static final class Key {
+
+        final long thumbnailId;
+
+        final long pixelsId;
+
+        final int sizeX;
+
+        final int sizeY;
+
+        final int version;
+
+        Key(Thumbnail thumbnail) {
+            thumbnailId = thumbnail.getId();
+            pixelsId = thumbnail.getPixels().getId();
+            sizeX = thumbnail.getSizeX();
+            sizeY = thumbnail.getSizeY();
+            Integer v = thumbnail.getVersion();
+            version = v == null ? 0 : v;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = (int) (thumbnailId ^ (thumbnailId >>> 32));
+            h = 31 * h + (int) (pixelsId ^ (pixelsId >>> 32));
+            h = 31 * h + sizeX;
+            h = 31 * h + sizeY;
+            return 31 * h + version;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return thumbnailId == other.thumbnailId
+                && pixelsId == other.pixelsId
+                && sizeX == other.sizeX
+                && sizeY == other.sizeY
+                && version == other.version;
+        }
+    }
+
+    /**
+     * Identifies the thumbnail of a Pixels set of a given size rendered with
+     * a version of its rendering settings.
+     */
+    static final class RenderedKey {
+
+        final long pixelsId;
+
+        final long settingsId;
+
+        final long settingsEventId;
+
+        final int sizeX;
+
+        final int sizeY;
+
+        RenderedKey(long pixelsId, long settingsId, long settingsEventId,
+                int sizeX, int sizeY) {
+            this.pixelsId = pixelsId;
+            this.settingsId = settingsId;
+            this.settingsEventId = settingsEventId;
+            this.sizeX = sizeX;
+            this.sizeY = sizeY;
+        }
+
+        /**
+         * Returns the key for the given settings or <code>null</code> if
+         * they are not saved or their update event is unknown.
+         */
+        static RenderedKey of(long pixelsId, RenderingDef settings,
+                int sizeX, int sizeY) {
+            if (settings == null || settings.getId() == null) {
+                return null;
+            }
+            Event updateEvent = settings.getDetails().getUpdateEvent();
+            if (updateEvent == null || updateEvent.getId() == null) {
+                return null;
+            }
+            return new RenderedKey(pixelsId, settings.getId(),
+                    updateEvent.getId(), sizeX, sizeY);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = (int) (pixelsId ^ (pixelsId >>> 32));
+            h = 31 * h + (int) (settingsId ^ (settingsId >>> 32));
+            h = 31 * h + (int) (settingsEventId ^ (settingsEventId >>> 32));
+            h = 31 * h + sizeX;
+            return 31 * h + sizeY;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof RenderedKey)) {
+                return false;
+            }
+            RenderedKey other = (RenderedKey) obj;
+            return pixelsId == other.pixelsId
+                && settingsId == other.settingsId
+                && settingsEventId == other.settingsEventId
+                && sizeX == other.sizeX
+                && sizeY == other.sizeY;
+        }
+    }
+
+    /** The entries in access order, least recently used first. */
+    private final LinkedHashMap<Key, ByteBuffer> entries =
+        new LinkedHashMap<Key, ByteBuffer>(16, 0.75f, true);
+
+    /** The cached thumbnails by the settings they were rendered with. */
+    private final Map<RenderedKey, Key> rendered =
+        new HashMap<RenderedKey, Key>();
+
+    /** The settings each cached thumbnail was rendered with, if known. */
+    private final Map<Key, RenderedKey> renderedWith =
+        new HashMap<Key, RenderedKey>();
+
+    /** The maximum number of bytes held by the cache. */
+    private final long maxBytes;
+
+    /** The number of bytes currently held by the cache. */
+    private long bytes;
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    private final Counter evictions;
+
+    /**
+     * Creates a new cache which does not report any metrics.
+     *
+     * @param maxBytes the maximum number of bytes held by the cache. A value
+     * of <code>0</code> or lower disables the cache.
+     */
+    public ThumbnailCache(long maxBytes) {
+        this(maxBytes, new NullMetrics());
+    }
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxBytes the maximum number of bytes held by the cache. A value
+     * of <code>0</code> or lower disables the cache.
+     * @param metrics the metrics receiving the hit, miss and eviction counts.
+     */
+    public ThumbnailCache(long maxBytes, Metrics metrics) {
+        this.maxBytes = maxBytes;
+        this.hits = metrics.counter(this, "hits");
+        this.misses = metrics.counter(this, "misses");
+        this.evictions = metrics.counter(this, "evictions");
+        log.info("ThumbnailCache(maxBytes=" + maxBytes + ")");
+    }
+
+    /**
+     * Returns the cached bytes of a thumbnail.
+     *
+     * @param thumbnail the thumbnail metadata.
+     * @return See above or <code>null</code> if the thumbnail is not cached.
+     */
+    public byte[] get(Thumbnail thumbnail) {
+        ByteBuffer buf;
+        synchronized (this) {
+            buf = entries.get(new Key(thumbnail));
+        }
+        return copy(buf);
+    }
+
+    /**
+     * Returns the cached bytes of the thumbnail of a Pixels set rendered with
+     * the given version of its rendering settings, as recorded by
+     * {@link #setRenderedWith(Thumbnail, RenderingDef)}.
+     *
+     * @param pixelsId the id of the Pixels set.
+     * @param settings the current rendering settings of the Pixels set.
+     * @param sizeX the width of the thumbnail.
+     * @param sizeY the height of the thumbnail.
+     * @return See above or <code>null</code> if no such thumbnail is cached.
+     */
+    public byte[] get(long pixelsId, RenderingDef settings, int sizeX,
+            int sizeY) {
+        RenderedKey renderedKey =
+            RenderedKey.of(pixelsId, settings, sizeX, sizeY);
+        ByteBuffer buf = null;
+        if (renderedKey != null) {
+            synchronized (this) {
+                Key key = rendered.get(renderedKey);
+                if (key != null) {
+                    buf = entries.get(key);
+                }
+            }
+        }
+        return copy(buf);
+    }
+
+    /**
+     * Records that a cached thumbnail is up to date with the given version of
+     * the rendering settings of its Pixels set. Ignored if the thumbnail is
+     * not cached.
+     *
+     * @param thumbnail the thumbnail metadata.
+     * @param settings the rendering settings it was rendered with.
+     */
+    public synchronized void setRenderedWith(Thumbnail thumbnail,
+            RenderingDef settings) {
+        Key key = new Key(thumbnail);
+        RenderedKey renderedKey = RenderedKey.of(key.pixelsId, settings,
+                key.sizeX, key.sizeY);
+        if (renderedKey == null || !entries.containsKey(key)) {
+            return;
+        }
+        RenderedKey old = renderedWith.put(key, renderedKey);
+        if (old != null) {
+            rendered.remove(old);
+        }
+        Key previous = rendered.put(renderedKey, key);
+        if (previous != null && !previous.equals(key)) {
+            renderedWith.remove(previous);
+        }
+    }
+
+    /**
+     * Copies the bytes of an entry, counting the hit or miss.
+     */
+    private byte[] copy(ByteBuffer buf) {
+        if (buf == null) {
+            misses.inc();
+            return null;
+        }
+        hits.inc();
+        byte[] data = new byte[buf.capacity()];
+        buf.duplicate().get(data);
+        return data;
+    }
+
+    /**
+     * Returns whether or not a thumbnail is cached, without affecting its
+     * position in the eviction order.
+     *
+     * @param thumbnail the thumbnail metadata.
+     * @return See above.
+     */
+    public synchronized boolean contains(Thumbnail thumbnail) {
+        return entries.containsKey(new Key(thumbnail));
+    }
+
+    /**
+     * Caches the bytes of a thumbnail, evicting the least recently used
+     * thumbnails as required. Thumbnails larger than the cache are ignored.
+     *
+     * @param thumbnail the thumbnail metadata.
+     * @param data the compressed thumbnail.
+     */
+    public void put(Thumbnail thumbnail, byte[] data) {
+        if (data.length == 0 || data.length > maxBytes) {
+            return;
+        }
+        Key key = new Key(thumbnail);
+        ByteBuffer buf = ByteBuffer.allocateDirect(data.length);
+        buf.put(data);
+        buf.flip();
+        synchronized (this) {
+            ByteBuffer old = entries.put(key, buf);
+            if (old != null) {
+                bytes -= old.capacity();
+                forgetRenderedWith(key);
+            }
+            bytes += buf.capacity();
+            Iterator<Map.Entry<Key, ByteBuffer>> it =
+                entries.entrySet().iterator();
+            while (bytes > maxBytes && it.hasNext()) {
+                Map.Entry<Key, ByteBuffer> entry = it.next();
+                bytes -= entry.getValue().capacity();
+                forgetRenderedWith(entry.getKey());
+                it.remove();
+                evictions.inc();
+            }
+        }
+    }
+
+    /**
+     * Removes all versions of a thumbnail from the cache.
+     *
+     * @param thumbnailId the id of the thumbnail metadata.
+     */
+    public synchronized void invalidate(long thumbnailId) {
+        Iterator<Map.Entry<Key, ByteBuffer>> it =
+            entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, ByteBuffer> entry = it.next();
+            if (entry.getKey().thumbnailId == thumbnailId) {
+                bytes -= entry.getValue().capacity();
+                forgetRenderedWith(entry.getKey());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Forgets the settings a thumbnail was rendered with, as its entry is
+     * replaced or removed. Must be called holding the lock.
+     */
+    private void forgetRenderedWith(Key key) {
+        RenderedKey renderedKey = renderedWith.remove(key);
+        if (renderedKey != null) {
+            rendered.remove(renderedKey);
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the cache may hold thumbnails,
+     * <code>false</code> if it has been disabled.
+     *
+     * @return See above.
+     */
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Returns the number of bytes currently held by the cache.
+     *
+     * @return See above.
+     */
+    public synchronized long getSize() {
+        return bytes;
+    }
+}
@@ -11,11 +11,13 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ome.conditions.ResourceError;
+import ome.model.display.RenderingDef;
 import ome.model.display.Thumbnail;
 import ome.util.Utils;
 
@@ -29,6 +31,24 @@ public class ThumbnailService extends AbstractFileSystemService {
 	private transient static Logger log = LoggerFactory
 			.getLogger(ThumbnailService.class);
 
+	/* The in-memory tier in front of the thumbnail reads, may be null. */
+	private ThumbnailCache cache;
+
+	/* Number of stripes of the thumbnail ids counting the writes. */
+	private static final int WRITE_STRIPES = 64;
+
+	/*
+	 * Writes of the thumbnails of each stripe opened and closed so far. A
+	 * thumbnail read is only cached if no write of its stripe was in progress
+	 * or started while it was read, so that a partially written file is
+	 * never cached.
+	 */
+	private final AtomicLongArray writesOpened =
+			new AtomicLongArray(WRITE_STRIPES);
+
+	private final AtomicLongArray writesClosed =
+			new AtomicLongArray(WRITE_STRIPES);
+
 	/**
 	 * Constructor
 	 * @param path
@@ -37,6 +57,19 @@ public class ThumbnailService extends AbstractFileSystemService {
 		super(path);
 	}
 
+	/**
+	 * Sets the in-memory cache serving thumbnails without reading them from
+	 * disk.
+	 * 
+	 * @param cache the cache or <code>null</code> to disable caching.
+	 */
+	public void setCache(ThumbnailCache cache) {
+		if (cache != null && !cache.isEnabled()) {
+			cache = null;
+		}
+		this.cache = cache;
+	}
+
 	/**
 	 * Creates thumbnail on disk using byte array
 	 * 
@@ -46,12 +79,12 @@ public class ThumbnailService extends AbstractFileSystemService {
 	 */
 	public void createThumbnail(Thumbnail thumbnail, byte[] buf)
 			throws IOException {
-		String path = getThumbnailPath(thumbnail.getId());
-		createSubpath(path);
-
-		FileOutputStream stream = new FileOutputStream(path);
-		stream.write(buf);
-		stream.close();
+		FileOutputStream stream = getThumbnailOutputStream(thumbnail);
+		try {
+			stream.write(buf);
+		} finally {
+			stream.close();
+		}
 	}
 
 	/**
@@ -73,8 +106,55 @@ public class ThumbnailService extends AbstractFileSystemService {
 	 * @throws IOException
 	 */
 	public byte[] getThumbnail(Thumbnail thumbnail) throws IOException {
+		if (cache != null) {
+			byte[] buf = cache.get(thumbnail);
+			if (buf != null) {
+				return buf;
+			}
+		}
+		int stripe = stripe(thumbnail.getId());
+		long opened = writesOpened.get(stripe);
+		boolean cacheable = opened == writesClosed.get(stripe);
 		byte[] buf = new byte[(int) getThumbnailLength(thumbnail)];
-		return getThumbnail(thumbnail, buf);
+		getThumbnail(thumbnail, buf);
+		if (cache != null && cacheable
+				&& opened == writesOpened.get(stripe)) {
+			cache.put(thumbnail, buf);
+		}
+		return buf;
+	}
+
+	/**
+	 * Returns the thumbnail of a Pixels set rendered with the given version
+	 * of its rendering settings if it is held by the in-memory cache, so that
+	 * it can be served without loading its metadata.
+	 * 
+	 * @param pixelsId the id of the Pixels set.
+	 * @param settings the current rendering settings of the Pixels set.
+	 * @param sizeX the width of the thumbnail.
+	 * @param sizeY the height of the thumbnail.
+	 * @return See above or <code>null</code> if it is not cached.
+	 */
+	public byte[] getCachedThumbnail(long pixelsId, RenderingDef settings,
+			int sizeX, int sizeY) {
+		if (cache == null) {
+			return null;
+		}
+		return cache.get(pixelsId, settings, sizeX, sizeY);
+	}
+
+	/**
+	 * Records that a thumbnail is up to date with the given rendering
+	 * settings, so that {@link #getCachedThumbnail(long, RenderingDef, int,
+	 * int)} finds it while it stays cached.
+	 * 
+	 * @param thumbnail the thumbnail metadata.
+	 * @param settings the rendering settings it was rendered with.
+	 */
+	public void setRenderedWith(Thumbnail thumbnail, RenderingDef settings) {
+		if (cache != null) {
+			cache.setRenderedWith(thumbnail, settings);
+		}
 	}
 
 	/**
@@ -98,7 +178,9 @@ public class ThumbnailService extends AbstractFileSystemService {
 	}
 
 	/**
-	 * Return FileOutputStream of Thumbnail
+	 * Return FileOutputStream of Thumbnail. The cached versions of the
+	 * thumbnail are removed when the stream is opened and again when it is
+	 * closed, so the stream must be closed.
 	 * 
 	 * @param thumbnail
 	 * @return
@@ -106,9 +188,35 @@ public class ThumbnailService extends AbstractFileSystemService {
 	 */
 	public FileOutputStream getThumbnailOutputStream(Thumbnail thumbnail)
 			throws IOException {
-		String path = getThumbnailPath(thumbnail.getId());
+		final long thumbnailId = thumbnail.getId();
+		final int stripe = stripe(thumbnailId);
+		String path = getThumbnailPath(thumbnailId);
 		createSubpath(path);
-		return new FileOutputStream(path);
+		writesOpened.incrementAndGet(stripe);
+		invalidate(thumbnailId);
+		try {
+			return new FileOutputStream(path) {
+				private boolean closed = false;
+
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						synchronized (this) {
+							if (!closed) {
+								closed = true;
+								invalidate(thumbnailId);
+								writesClosed.incrementAndGet(stripe);
+							}
+						}
+					}
+				}
+			};
+		} catch (IOException e) {
+			writesClosed.incrementAndGet(stripe);
+			throw e;
+		}
 	}
 
     /**
@@ -119,6 +227,9 @@ public class ThumbnailService extends AbstractFileSystemService {
      */
     public boolean getThumbnailExists(Thumbnail thumbnail)
             throws IOException {
+        if (cache != null && cache.contains(thumbnail)) {
+            return true;
+        }
         String path = getThumbnailPath(thumbnail.getId());
         return new File(path).exists();
     }
@@ -137,6 +248,7 @@ public class ThumbnailService extends AbstractFileSystemService {
 
 		for (Long id : thumbnailIds)
 		{
+			invalidate(id);
 			String thumbnailPath = getThumbnailPath(id);
 			file = new File(thumbnailPath);
 			if (file.exists())
@@ -158,4 +270,25 @@ public class ThumbnailService extends AbstractFileSystemService {
 			}
 		}
 	}
+
+	/**
+	 * Returns the stripe counting the writes of a thumbnail.
+	 * 
+	 * @param thumbnailId the id of the thumbnail metadata.
+	 * @return See above.
+	 */
+	private static int stripe(long thumbnailId) {
+		return (int) (thumbnailId & (WRITE_STRIPES - 1));
+	}
+
+	/**
+	 * Removes all cached versions of a thumbnail from the in-memory cache.
+	 * 
+	 * @param thumbnailId the id of the thumbnail metadata.
+	 */
+	private void invalidate(long thumbnailId) {
+		if (cache != null) {
+			cache.invalidate(thumbnailId);
+		}
+	}
 }
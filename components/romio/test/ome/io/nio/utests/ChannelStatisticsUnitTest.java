@@ -0,0 +1,139 @@
+/*
+ *   Copyright 2014 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+package ome.io.nio.utests;
+
+import static org.testng.AssertJUnit.*;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import ome.io.nio.ChannelStatistics;
+import ome.io.nio.IntensityHistogram;
+import ome.util.PixelData;
+
+import org.testng.annotations.Test;
+
+public class ChannelStatisticsUnitTest {
+
+    private PixelData data(String type, ByteOrder order, double... values) {
+        PixelData data = new PixelData(type, ByteBuffer.wrap(
+                new byte[values.length * PixelData.getBitDepth(type) / 8]));
+        data.setOrder(order);
+        for (int i = 0; i < values.length; i++) {
+            data.setPixelValue(i, values[i]);
+        }
+        return data;
+    }
+
+    private void assertMinMax(double min, double max, PixelData data) {
+        ChannelStatistics statistics = new ChannelStatistics();
+        statistics.add(data);
+        assertEquals(min, statistics.getMin());
+        assertEquals(max, statistics.getMax());
+    }
+
+    @Test
+    public void testIntegerTypes() {
+        assertMinMax(3, 250, data("uint8", ByteOrder.BIG_ENDIAN, 7, 250, 3));
+        assertMinMax(-100, 90, data("int8", ByteOrder.BIG_ENDIAN, 90, -100));
+        assertMinMax(2, 65000,
+                data("uint16", ByteOrder.LITTLE_ENDIAN, 65000, 2, 300));
+        assertMinMax(-32000, 5,
+                data("int16", ByteOrder.BIG_ENDIAN, 5, -32000));
+        PixelData uint32 = data("uint32", ByteOrder.LITTLE_ENDIAN, 1, 0);
+        uint32.getData().putInt(4, (int) 4000000000L);
+        assertMinMax(1, 4000000000L, uint32);
+        assertMinMax(-70000, 70000,
+                data("int32", ByteOrder.BIG_ENDIAN, 70000, -70000));
+    }
+
+    @Test
+    public void testFloatingPointTypesIgnoreNaN() {
+        assertMinMax(-1.5, 2.25, data("float", ByteOrder.LITTLE_ENDIAN,
+                2.25, Double.NaN, -1.5));
+        assertMinMax(-0.125, 1e10, data("double", ByteOrder.BIG_ENDIAN,
+                Double.NaN, 1e10, -0.125));
+    }
+
+    @Test
+    public void testMerge() {
+        ChannelStatistics a = new ChannelStatistics();
+        ChannelStatistics b = new ChannelStatistics();
+        ChannelStatistics empty = new ChannelStatistics();
+        assertTrue(empty.isEmpty());
+        a.add(data("uint16", ByteOrder.BIG_ENDIAN, 10, 20));
+        b.add(data("uint16", ByteOrder.BIG_ENDIAN, 5, 15));
+        a.merge(b);
+        a.merge(empty);
+        assertFalse(a.isEmpty());
+        assertEquals(5.0, a.getMin());
+        assertEquals(20.0, a.getMax());
+    }
+
+    @Test
+    public void testHistogramMergedAcrossBlocks() {
+        ChannelStatistics a = new ChannelStatistics(true);
+        ChannelStatistics b = new ChannelStatistics(true);
+        a.add(data("uint16", ByteOrder.BIG_ENDIAN, 300, 310, 300));
+        a.add(data("uint16", ByteOrder.LITTLE_ENDIAN, 60000, 305));
+        b.add(data("uint16", ByteOrder.BIG_ENDIAN, 7, 300));
+        a.merge(b);
+        IntensityHistogram histogram = a.getHistogram();
+        assertEquals(7, histogram.getOffset());
+        assertEquals(60000 - 7 + 1, histogram.getLength());
+        assertEquals(7, histogram.getTotal());
+        assertEquals(3, histogram.getCount(300));
+        assertEquals(1, histogram.getCount(60000));
+        assertEquals(0, histogram.getCount(6));
+        assertEquals(5, histogram.count(300, 310.5));
+        assertEquals(4, histogram.count(299.5, 310));
+    }
+
+    @Test
+    public void testHistogramOfSignedBytes() {
+        ChannelStatistics statistics = new ChannelStatistics(true);
+        statistics.add(data("int8", ByteOrder.BIG_ENDIAN, -100, 90, -100));
+        IntensityHistogram histogram = statistics.getHistogram();
+        assertEquals(-100, histogram.getOffset());
+        assertEquals(2, histogram.getCount(-100));
+        assertEquals(1, histogram.getCount(90));
+    }
+
+    @Test
+    public void testNoHistogramUnlessCountable() {
+        ChannelStatistics minMax = new ChannelStatistics();
+        minMax.add(data("uint8", ByteOrder.BIG_ENDIAN, 1, 2));
+        assertNull(minMax.getHistogram());
+        ChannelStatistics floats = new ChannelStatistics(true);
+        floats.add(data("uint8", ByteOrder.BIG_ENDIAN, 1, 2));
+        floats.add(data("float", ByteOrder.BIG_ENDIAN, 1.5));
+        assertNull(floats.getHistogram());
+        ChannelStatistics merged = new ChannelStatistics(true);
+        merged.add(data("uint8", ByteOrder.BIG_ENDIAN, 1, 2));
+        merged.merge(minMax);
+        assertNull(merged.getHistogram());
+    }
+
+    @Test
+    public void testHistogramsWrittenAndRead() throws Exception {
+        ChannelStatistics statistics = new ChannelStatistics(true);
+        statistics.add(data("uint16", ByteOrder.BIG_ENDIAN, 12, 4000, 12));
+        File file = File.createTempFile("histograms", ".gz");
+        try {
+            IntensityHistogram.write(file, new IntensityHistogram[] {
+                    statistics.getHistogram(), null });
+            IntensityHistogram[] read = IntensityHistogram.read(file);
+            assertEquals(2, read.length);
+            assertNull(read[1]);
+            assertEquals(12, read[0].getOffset());
+            assertEquals(2, read[0].getCount(12));
+            assertEquals(1, read[0].getCount(4000));
+            assertEquals(3, read[0].getTotal());
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -7,11 +7,16 @@
 package ome.io.nio.utests;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import ome.io.bioformats.BfPyramidPixelBuffer;
 import ome.io.nio.TileLoopIteration;
@@ -137,4 +142,68 @@ public class PyramidPixelBufferUnitTest extends AbstractPyramidPixelBufferUnitTe
         assertEquals(tileCount, 192);
     }
 
+    @Test(dependsOnMethods={"testPyramidWriteTiles"}, enabled=true)
+    public void testPyramidReadTilesConcurrently() throws Exception {
+        pixelBuffer.setResolutionLevel(pixelBuffer.getResolutionLevels() - 2);
+        final int sizeX = pixelBuffer.getSizeX();
+        final int sizeY = pixelBuffer.getSizeY();
+        // Uncontended reads use the reader opened with the pyramid
+        pixelBuffer.getTile(0, 0, 0, 0, 0, tileWidth, tileHeight);
+        final BfPyramidPixelBuffer pyramid = (BfPyramidPixelBuffer) pixelBuffer;
+        assertEquals(pyramid.getReaderCount(), 1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int y = 0; y < sizeY; y += tileHeight) {
+                for (int x = 0; x < sizeX; x += tileWidth) {
+                    final int tileX = x;
+                    final int tileY = y;
+                    final int w = Math.min(tileWidth, sizeX - x);
+                    final int h = Math.min(tileHeight, sizeY - y);
+                    results.add(executor.submit(new Callable<Integer>() {
+                        public Integer call() throws Exception {
+                            PixelData tile = pixelBuffer.getTile(
+                                    0, 0, 0, tileX, tileY, w, h);
+                            assertEquals(tile.size(), w * h);
+                            return tile.size();
+                        }
+                    }));
+                }
+            }
+            int total = 0;
+            for (Future<Integer> result : results) {
+                total += result.get();
+            }
+            assertEquals(total, sizeX * sizeY);
+            assertTrue(pyramid.getReaderCount()
+                    <= BfPyramidPixelBuffer.DEFAULT_READERS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(dependsOnMethods={"testPyramidWriteTiles"}, enabled=true)
+    public void testReadersSharedByPixelBuffers() throws Exception {
+        final BfPyramidPixelBuffer pyramid = (BfPyramidPixelBuffer) pixelBuffer;
+        pyramid.setResolutionLevel(pyramid.getResolutionLevels() - 1);
+        final BfPyramidPixelBuffer other =
+            (BfPyramidPixelBuffer) service._getPixelBuffer(pixels, false);
+        try {
+            assertEquals(other.getReaderCount(), pyramid.getReaderCount());
+            // Each buffer reads at its own resolution level
+            other.setResolutionLevel(0);
+            assertTrue(other.getSizeX() < sizeX);
+            assertEquals(pyramid.getSizeX(), sizeX);
+            assertEquals(other.getResolutionLevel(), 0);
+            other.getTile(0, 0, 0, 0, 0, 1, 1);
+            pyramid.getTile(0, 0, 0, 0, 0, tileWidth, tileHeight);
+        } finally {
+            other.close();
+        }
+        // Still open for the remaining buffer
+        assertTrue(pyramid.getReaderCount() > 0);
+        assertEquals(pyramid.getTile(0, 0, 0, 0, 0, tileWidth, tileHeight)
+                .size(), tileWidth * tileHeight);
+    }
+
 }
@@ -0,0 +1,161 @@
+/*
+ *   Copyright 2014 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+package ome.io.nio.utests;
+
+import static org.testng.AssertJUnit.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import ome.io.nio.RomioPixelBuffer;
+import ome.model.core.Pixels;
+import ome.model.enums.PixelsType;
+import ome.util.PixelData;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks the column, plane region and hypercube reads of
+ * {@link RomioPixelBuffer} against selections made from whole planes.
+ */
+public class StridedReadUnitTest {
+
+    private static final String ROOT =
+        PathUtil.getInstance().getTemporaryDataFilePath();
+
+    private RomioPixelBuffer pixelBuffer;
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        if (pixelBuffer != null) {
+            pixelBuffer.close();
+            pixelBuffer = null;
+        }
+        FileUtils.deleteDirectory(new File(ROOT));
+    }
+
+    /**
+     * Creates a pixel buffer whose bytes all differ from their neighbours.
+     */
+    private void createPixelBuffer(int sizeX, int sizeY, int sizeZ,
+            int sizeC, int sizeT) throws Exception {
+        Pixels pixels = new Pixels();
+        pixels.setId(1L);
+        pixels.setSizeX(sizeX);
+        pixels.setSizeY(sizeY);
+        pixels.setSizeZ(sizeZ);
+        pixels.setSizeC(sizeC);
+        pixels.setSizeT(sizeT);
+        PixelsType type = new PixelsType();
+        type.setValue("uint16");
+        pixels.setPixelsType(type);
+        new File(ROOT).mkdirs();
+        pixelBuffer = new RomioPixelBuffer(
+                new File(ROOT, "strided").getAbsolutePath(), pixels, true);
+        byte[] plane = new byte[pixelBuffer.getPlaneSize().intValue()];
+        int seed = 0;
+        for (int t = 0; t < sizeT; t++) {
+            for (int c = 0; c < sizeC; c++) {
+                for (int z = 0; z < sizeZ; z++) {
+                    for (int i = 0; i < plane.length; i++) {
+                        plane[i] = (byte) (i * 7 + seed);
+                    }
+                    seed += 13;
+                    pixelBuffer.setPlane(plane, z, c, t);
+                }
+            }
+        }
+    }
+
+    private byte[] plane(int z, int c, int t) throws Exception {
+        byte[] plane = new byte[pixelBuffer.getPlaneSize().intValue()];
+        return pixelBuffer.getPlaneDirect(z, c, t, plane);
+    }
+
+    private byte[] expectedHypercube(List<Integer> offset, List<Integer> size,
+            List<Integer> step) throws Exception {
+        byte[] cube = new byte[pixelBuffer.getHypercubeSize(
+                offset, size, step).intValue()];
+        int pixelSize = pixelBuffer.getByteWidth();
+        int rowSize = pixelBuffer.getRowSize();
+        int k = 0;
+        for (int t = offset.get(4); t < offset.get(4) + size.get(4); t += step.get(4)) {
+            for (int c = offset.get(3); c < offset.get(3) + size.get(3); c += step.get(3)) {
+                for (int z = offset.get(2); z < offset.get(2) + size.get(2); z += step.get(2)) {
+                    byte[] plane = plane(z, c, t);
+                    for (int y = offset.get(1); y < offset.get(1) + size.get(1); y += step.get(1)) {
+                        for (int x = offset.get(0); x < offset.get(0) + size.get(0); x += step.get(0)) {
+                            System.arraycopy(plane, y * rowSize + x * pixelSize,
+                                    cube, k, pixelSize);
+                            k += pixelSize;
+                        }
+                    }
+                }
+            }
+        }
+        return cube;
+    }
+
+    private void assertHypercube(List<Integer> offset, List<Integer> size,
+            List<Integer> step) throws Exception {
+        byte[] expected = expectedHypercube(offset, size, step);
+        byte[] actual = new byte[expected.length];
+        pixelBuffer.getHypercubeDirect(offset, size, step, actual);
+        assertTrue(Arrays.equals(expected, actual));
+    }
+
+    @Test
+    public void testGetCol() throws Exception {
+        createPixelBuffer(37, 23, 3, 2, 2);
+        for (int x : new int[] { 0, 18, 36 }) {
+            byte[] plane = plane(2, 1, 1);
+            PixelData col = pixelBuffer.getCol(x, 2, 1, 1);
+            assertEquals(pixelBuffer.getColSize().intValue(), col.size() * 2);
+            for (int y = 0; y < 23; y++) {
+                int i = y * 37 * 2 + x * 2;
+                assertEquals(plane[i], col.getData().get(y * 2));
+                assertEquals(plane[i + 1], col.getData().get(y * 2 + 1));
+            }
+            col.dispose();
+        }
+    }
+
+    @Test
+    public void testGetPlaneRegionDirect() throws Exception {
+        createPixelBuffer(37, 23, 3, 2, 2);
+        byte[] plane = plane(1, 0, 1);
+        byte[] region = new byte[100 * 2];
+        pixelBuffer.getPlaneRegionDirect(1, 0, 1, 100, 50, region);
+        assertTrue(Arrays.equals(
+                Arrays.copyOfRange(plane, 100, 300), region));
+    }
+
+    @Test
+    public void testGetHypercubeContiguousRows() throws Exception {
+        createPixelBuffer(37, 23, 3, 2, 2);
+        assertHypercube(Arrays.asList(3, 2, 0, 0, 0),
+                Arrays.asList(30, 20, 3, 2, 2), Arrays.asList(1, 1, 1, 1, 1));
+        assertHypercube(Arrays.asList(0, 0, 0, 0, 0),
+                Arrays.asList(37, 23, 3, 2, 2), Arrays.asList(1, 1, 1, 1, 1));
+    }
+
+    @Test
+    public void testGetHypercubeStrided() throws Exception {
+        createPixelBuffer(37, 23, 3, 2, 2);
+        assertHypercube(Arrays.asList(1, 2, 0, 1, 0),
+                Arrays.asList(35, 19, 3, 1, 2), Arrays.asList(3, 4, 2, 1, 1));
+    }
+
+    @Test
+    public void testGetHypercubeWideRows() throws Exception {
+        createPixelBuffer(5000, 5, 2, 1, 1);
+        assertHypercube(Arrays.asList(10, 0, 0, 0, 0),
+                Arrays.asList(4990, 5, 2, 1, 1), Arrays.asList(1, 2, 1, 1, 1));
+    }
+}
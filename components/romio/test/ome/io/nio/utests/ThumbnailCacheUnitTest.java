@@ -0,0 +1,165 @@
+/*
+ *   Copyright 2014 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+package ome.io.nio.utests;
+
+import static org.testng.AssertJUnit.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import ome.io.nio.ThumbnailCache;
+import ome.io.nio.ThumbnailService;
+import ome.model.core.Pixels;
+import ome.model.display.RenderingDef;
+import ome.model.display.Thumbnail;
+import ome.model.meta.Event;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+
+public class ThumbnailCacheUnitTest {
+
+    private Thumbnail thumbnail(long id, int version) {
+        Thumbnail thumbnail = new Thumbnail();
+        thumbnail.setId(id);
+        thumbnail.setVersion(version);
+        thumbnail.setPixels(new Pixels(1L, false));
+        thumbnail.setSizeX(96);
+        thumbnail.setSizeY(96);
+        return thumbnail;
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        ThumbnailCache cache = new ThumbnailCache(1024);
+        Thumbnail t = thumbnail(1L, 0);
+        assertNull(cache.get(t));
+        cache.put(t, new byte[] { 1, 2, 3 });
+        assertTrue(cache.contains(t));
+        byte[] data = cache.get(t);
+        assertEquals(3, data.length);
+        assertEquals(3, data[2]);
+        assertEquals(3, cache.getSize());
+    }
+
+    @Test
+    public void testNewVersionMisses() {
+        ThumbnailCache cache = new ThumbnailCache(1024);
+        cache.put(thumbnail(1L, 0), new byte[] { 1 });
+        assertNull(cache.get(thumbnail(1L, 1)));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() {
+        ThumbnailCache cache = new ThumbnailCache(20);
+        Thumbnail a = thumbnail(1L, 0);
+        Thumbnail b = thumbnail(2L, 0);
+        Thumbnail c = thumbnail(3L, 0);
+        cache.put(a, new byte[8]);
+        cache.put(b, new byte[8]);
+        assertNotNull(cache.get(a));
+        cache.put(c, new byte[8]);
+        assertTrue(cache.contains(a));
+        assertFalse(cache.contains(b));
+        assertTrue(cache.contains(c));
+        assertEquals(16, cache.getSize());
+    }
+
+    @Test
+    public void testInvalidate() {
+        ThumbnailCache cache = new ThumbnailCache(1024);
+        cache.put(thumbnail(1L, 0), new byte[4]);
+        cache.put(thumbnail(1L, 1), new byte[4]);
+        cache.put(thumbnail(2L, 0), new byte[4]);
+        cache.invalidate(1L);
+        assertFalse(cache.contains(thumbnail(1L, 0)));
+        assertFalse(cache.contains(thumbnail(1L, 1)));
+        assertTrue(cache.contains(thumbnail(2L, 0)));
+        assertEquals(4, cache.getSize());
+    }
+
+    private RenderingDef settings(long id, long eventId) {
+        RenderingDef settings = new RenderingDef(id, true);
+        settings.getDetails().setUpdateEvent(new Event(eventId, false));
+        return settings;
+    }
+
+    @Test
+    public void testRenderedWith() {
+        ThumbnailCache cache = new ThumbnailCache(1024);
+        Thumbnail t = thumbnail(1L, 0);
+        RenderingDef settings = settings(5L, 10L);
+        cache.setRenderedWith(t, settings);
+        assertNull("Recorded before being cached",
+                cache.get(1L, settings, 96, 96));
+        cache.put(t, new byte[] { 1, 2 });
+        cache.setRenderedWith(t, settings);
+        assertEquals(2, cache.get(1L, settings, 96, 96).length);
+        assertNull(cache.get(1L, settings, 64, 64));
+        assertNull(cache.get(2L, settings, 96, 96));
+        assertNull("Settings saved since",
+                cache.get(1L, settings(5L, 11L), 96, 96));
+        cache.invalidate(1L);
+        assertNull(cache.get(1L, settings, 96, 96));
+        cache.put(t, new byte[] { 1, 2 });
+        assertNull("Cached again but not yet known to be up to date",
+                cache.get(1L, settings, 96, 96));
+    }
+
+    @Test
+    public void testRenderedWithEvicted() {
+        ThumbnailCache cache = new ThumbnailCache(10);
+        Thumbnail a = thumbnail(1L, 0);
+        RenderingDef settings = settings(5L, 10L);
+        cache.put(a, new byte[8]);
+        cache.setRenderedWith(a, settings);
+        cache.put(thumbnail(2L, 0), new byte[8]);
+        assertNull(cache.get(1L, settings, 96, 96));
+        cache.put(a, new byte[8]);
+        assertNull(cache.get(1L, settings, 96, 96));
+    }
+
+    @Test
+    public void testDisabled() {
+        ThumbnailCache cache = new ThumbnailCache(0);
+        assertFalse(cache.isEnabled());
+        cache.put(thumbnail(1L, 0), new byte[4]);
+        assertNull(cache.get(thumbnail(1L, 0)));
+    }
+
+    @Test
+    public void testPartialWriteNotCached() throws Exception {
+        File root = File.createTempFile("ThumbnailCacheUnitTest", "");
+        root.delete();
+        root.mkdir();
+        try {
+            ThumbnailService service =
+                new ThumbnailService(root.getPath() + File.separator);
+            ThumbnailCache cache = new ThumbnailCache(1024);
+            service.setCache(cache);
+            Thumbnail t = thumbnail(1L, 0);
+            service.createThumbnail(t, new byte[] { 1, 2, 3, 4 });
+            assertEquals(4, service.getThumbnail(t).length);
+            assertTrue(cache.contains(t));
+
+            FileOutputStream stream = service.getThumbnailOutputStream(t);
+            assertFalse(cache.contains(t));
+            stream.write(new byte[] { 5, 6 });
+            stream.flush();
+            assertEquals(2, service.getThumbnail(t).length);
+            assertFalse("Read during a write cached", cache.contains(t));
+            stream.write(new byte[] { 7, 8, 9 });
+            stream.close();
+
+            assertFalse(cache.contains(t));
+            byte[] data = service.getThumbnail(t);
+            assertEquals(5, data.length);
+            assertEquals(9, data[4]);
+            assertTrue(cache.contains(t));
+        } finally {
+            FileUtils.deleteDirectory(root);
+        }
+    }
+}
@@ -134,8 +134,12 @@ public class OMEROMetadataStore
     private Map<Instrument, Map<Integer, OTF>> otfList =
         new LinkedHashMap<Instrument, Map<Integer, OTF>>();
 
-    /** A list of all objects we've received from the client and their LSIDs. */
-    private Map<LSID, IObject> lsidMap = new HashMap<LSID, IObject>();
+    /**
+     * A list of all objects we've received from the client keyed by their
+     * LSID strings. {@link LSID} instances are not kept as keys since each
+     * carries its own collator.
+     */
+    private Map<String, IObject> lsidMap = new HashMap<String, IObject>();
 
     /**
      * Updates a given model object in our object graph.
@@ -147,7 +151,7 @@ public class OMEROMetadataStore
     public void updateObject(String lsid, IObject sourceObject,
     		                 Map<String, Integer> indexes)
     {
-    	lsidMap.put(new LSID(lsid), sourceObject);
+    	lsidMap.put(lsid, sourceObject);
     	if (sourceObject instanceof Image)
     	{
     		handle(lsid, (Image) sourceObject, indexes);
@@ -297,11 +301,10 @@ public class OMEROMetadataStore
         {
             for (String reference : referenceCache.get(target))
             {
-                LSID targetLSID = new LSID(target);
-                IObject targetObject = lsidMap.get(targetLSID);
+                IObject targetObject = lsidMap.get(target);
                 LSID referenceLSID = new LSID(reference);
                 IObject referenceObject = lsidMap.get(
-                        new LSID(stripCustomSuffix(reference)));
+                        stripCustomSuffix(reference));
 
                 log.debug(String.format(
                         "Updating reference handler for %s(%s) --> %s(%s).",
@@ -1718,7 +1721,7 @@ public class OMEROMetadataStore
      */
     public IObject getObjectByLSID(LSID lsid)
     {
-    	return lsidMap.get(lsid);
+    	return lsidMap.get(lsid.toString());
     }
     
     /**
@@ -1875,7 +1878,7 @@ public class OMEROMetadataStore
         instrumentList = new LinkedHashMap<Integer, Instrument>();
         experimentList = new LinkedHashMap<Integer, Experiment>();
         otfList = new LinkedHashMap<Instrument, Map<Integer, OTF>>();
-        lsidMap = new LinkedHashMap<LSID, IObject>();
+        lsidMap = new LinkedHashMap<String, IObject>();
     }
     
     /**
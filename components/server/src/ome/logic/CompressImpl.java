@@ -11,44 +11,53 @@ import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.OutputStream;
 
-import javax.imageio.IIOImage;
-import javax.imageio.ImageIO;
-import javax.imageio.ImageWriteParam;
-import javax.imageio.ImageWriter;
-import javax.imageio.stream.ImageOutputStream;
-
 import ome.api.local.LocalCompress;
 
 public class CompressImpl implements LocalCompress {
 
+	/**
+	 * Encoders used when none have been set, shared by all instances.
+	 * Created lazily so that instances configured with a pool never
+	 * create it.
+	 */
+	private static JpegEncoderPool defaultEncoders;
+
 	/** The default compression quality in fractional percent. */
     private float quality = 0.85F;
-	
+
+    /** The pooled JPEG encoders, shared by all instances. */
+    private JpegEncoderPool encoders;
+
+    /**
+     * Sets the pool of JPEG encoders shared by all instances.
+     * @param encoders The pool of encoders.
+     */
+    public void setEncoders(JpegEncoderPool encoders)
+    {
+        this.encoders = encoders;
+    }
+
     /* (non-Javadoc)
      * @see ome.api.ICompress#compressToStream(java.awt.image.BufferedImage, java.io.OutputStream)
      */
     public void compressToStream(BufferedImage image, OutputStream outputStream)
     	throws IOException
     {
-        // Get a JPEG image writer
-        ImageWriter jpegWriter =
-        	ImageIO.getImageWritersByFormatName("jpeg").next();
-
-        // Setup the compression value from (0.05, 0.75 and 0.95)
-        ImageWriteParam iwp = jpegWriter.getDefaultWriteParam();
-        iwp.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-        iwp.setCompressionQuality(quality);
+        getEncoders().compress(image, quality, outputStream);
+    }
 
-        // Write the JPEG to our ByteArray stream
-    	ImageOutputStream imageOutputStream = null;
-        try {
-        	imageOutputStream = ImageIO.createImageOutputStream(outputStream);
-        	jpegWriter.setOutput(imageOutputStream);
-        	jpegWriter.write(null, new IIOImage(image, null, null), iwp);
-        } finally {
-        	if (imageOutputStream != null)
-        		imageOutputStream.close();
+    private JpegEncoderPool getEncoders()
+    {
+        if (encoders == null) {
+            synchronized (CompressImpl.class) {
+                if (defaultEncoders == null) {
+                    defaultEncoders = new JpegEncoderPool(
+                            Runtime.getRuntime().availableProcessors());
+                }
+                encoders = defaultEncoders;
+            }
         }
+        return encoders;
     }
 
 	/* (non-Javadoc)
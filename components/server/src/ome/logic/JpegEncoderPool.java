@@ -0,0 +1,272 @@
+/*
+ *   Copyright 2014 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.logic;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStreamImpl;
+
+import ome.system.metrics.Counter;
+import ome.system.metrics.Metrics;
+import ome.system.metrics.NullMetrics;
+import ome.system.metrics.Timer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Server-wide pool of JPEG encoders shared by all {@link CompressImpl}
+ * instances. Looking up a writer through the {@link ImageIO} service
+ * registry and opening an {@link ImageIO#createImageOutputStream(Object)
+ * image output stream}, which is backed by a temporary file when the
+ * {@link ImageIO#getUseCache() ImageIO cache} is enabled, is expensive
+ * compared to compressing a single tile. Encoders are therefore created
+ * once, kept with their write parameters and an in-memory stream which is
+ * rewound for each image and copied to the caller's stream.
+ *
+ * At most <code>maxIdle</code> encoders are kept between calls; encoders
+ * needed beyond that by concurrent calls are created and disposed of.
+ *
+ * @since 5.1
+ */
+public class JpegEncoderPool {
+
+    private final static Logger log =
+        LoggerFactory.getLogger(JpegEncoderPool.class);
+
+    /**
+     * A JPEG writer along with its write parameters, which are only updated
+     * when the requested quality changes.
+     */
+    private static final class Encoder {
+
+        final ImageWriter writer;
+
+        final ImageWriteParam param;
+
+        final BufferImageOutputStream stream = new BufferImageOutputStream();
+
+        float quality = Float.NaN;
+
+        Encoder() {
+            writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+            param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        }
+
+        void write(BufferedImage image, float quality,
+                OutputStream outputStream) throws IOException {
+            if (quality != this.quality) {
+                param.setCompressionQuality(quality);
+                this.quality = quality;
+            }
+            stream.rewind();
+            try {
+                writer.setOutput(stream);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.setOutput(null);
+            }
+            stream.writeTo(outputStream);
+            stream.trim();
+        }
+    }
+
+    /**
+     * Seekable in-memory image output stream whose buffer is kept between
+     * images, unless it has grown beyond {@link #MAX_RETAINED} bytes.
+     */
+    private static final class BufferImageOutputStream
+        extends ImageOutputStreamImpl {
+
+        static final int INITIAL = 1 << 13;
+
+        static final int MAX_RETAINED = 1 << 20;
+
+        private byte[] buf = new byte[INITIAL];
+
+        private int length;
+
+        /** Empties the stream so that it can be written from the start. */
+        void rewind() {
+            streamPos = 0;
+            flushedPos = 0;
+            bitOffset = 0;
+            length = 0;
+        }
+
+        /** Drops the buffer if it has grown too large to keep idle. */
+        void trim() {
+            if (buf.length > MAX_RETAINED) {
+                buf = new byte[INITIAL];
+            }
+            length = 0;
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            out.write(buf, 0, length);
+        }
+
+        /** Makes room to write up to the given position. */
+        private void reserve(long end) throws IOException {
+            if (end > Integer.MAX_VALUE) {
+                throw new IOException("Image too large for memory stream");
+            }
+            if (end > buf.length) {
+                buf = Arrays.copyOf(buf,
+                        (int) Math.min(Integer.MAX_VALUE,
+                                Math.max(end, 2L * buf.length)));
+            }
+            if (streamPos > length) {
+                // Seeked past the end; do not expose an earlier image
+                Arrays.fill(buf, length, (int) streamPos, (byte) 0);
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            flushBits();
+            reserve(streamPos + 1);
+            buf[(int) streamPos++] = (byte) b;
+            length = Math.max(length, (int) streamPos);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            flushBits();
+            reserve(streamPos + len);
+            System.arraycopy(b, off, buf, (int) streamPos, len);
+            streamPos += len;
+            length = Math.max(length, (int) streamPos);
+        }
+
+        @Override
+        public int read() throws IOException {
+            bitOffset = 0;
+            if (streamPos >= length) {
+                return -1;
+            }
+            return buf[(int) streamPos++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            bitOffset = 0;
+            if (streamPos >= length) {
+                return -1;
+            }
+            final int n = (int) Math.min(len, length - streamPos);
+            System.arraycopy(buf, (int) streamPos, b, off, n);
+            streamPos += n;
+            return n;
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+    }
+
+    /** The idle encoders, most recently released first. */
+    private final Deque<Encoder> idle = new ArrayDeque<Encoder>();
+
+    /** The maximum number of idle encoders kept. */
+    private final int maxIdle;
+
+    private final Timer compress;
+
+    private final Counter created;
+
+    /**
+     * Creates a new pool which does not report any metrics.
+     *
+     * @param maxIdle the maximum number of encoders kept between calls.
+     */
+    public JpegEncoderPool(int maxIdle) {
+        this(maxIdle, new NullMetrics());
+    }
+
+    /**
+     * Creates a new pool.
+     *
+     * @param maxIdle the maximum number of encoders kept between calls.
+     * @param metrics the metrics receiving the compression times and the
+     * number of encoders created.
+     */
+    public JpegEncoderPool(int maxIdle, Metrics metrics) {
+        this.maxIdle = Math.max(0, maxIdle);
+        this.compress = metrics.timer(this, "compress");
+        this.created = metrics.counter(this, "created");
+        log.info("JpegEncoderPool(maxIdle=" + maxIdle + ")");
+    }
+
+    /**
+     * Compresses an image to a stream as a JPEG.
+     *
+     * @param image the image to compress.
+     * @param quality the compression quality from 0.0 to 1.0.
+     * @param outputStream the stream to write to.
+     * @throws IOException if there is a problem when writing to the stream.
+     */
+    public void compress(BufferedImage image, float quality,
+            OutputStream outputStream) throws IOException {
+        Timer.Context timer = compress.time();
+        Encoder encoder = acquire();
+        boolean reusable = false;
+        try {
+            encoder.write(image, quality, outputStream);
+            reusable = true;
+        } finally {
+            if (reusable) {
+                release(encoder);
+            } else {
+                // The writer may be left in an unknown state
+                encoder.writer.dispose();
+            }
+            timer.stop();
+        }
+    }
+
+    /**
+     * Returns the number of encoders currently idle.
+     *
+     * @return See above.
+     */
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    private Encoder acquire() {
+        synchronized (this) {
+            Encoder encoder = idle.pollFirst();
+            if (encoder != null) {
+                return encoder;
+            }
+        }
+        created.inc();
+        return new Encoder();
+    }
+
+    private void release(Encoder encoder) {
+        synchronized (this) {
+            if (idle.size() < maxIdle) {
+                idle.addFirst(encoder);
+                return;
+            }
+        }
+        encoder.writer.dispose();
+    }
+
+}
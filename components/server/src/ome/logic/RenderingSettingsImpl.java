@@ -12,6 +12,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -32,6 +33,7 @@ import ome.api.ServiceInterface;
 import ome.conditions.ConcurrencyException;
 import ome.conditions.ResourceError;
 import ome.conditions.ValidationException;
+import ome.io.nio.IntensityHistogram;
 import ome.io.nio.PixelBuffer;
 import ome.io.nio.PixelsService;
 import ome.model.IObject;
@@ -96,6 +98,12 @@ public class RenderingSettingsImpl extends AbstractLevel2Service implements
 
     /** Reference to the service used to retrieve the pixels metadata. */
     protected transient IPixels pixelsMetadata;
+
+    /**
+     * The number of Pixels sets whose rendering settings are reset and
+     * saved together by the methods acting on containers.
+     */
+    private int batchSize = 50;
  
     /**
      * Returns the min/max depending on the pixels type if the values
@@ -388,6 +396,91 @@ public class RenderingSettingsImpl extends AbstractLevel2Service implements
         return lc;
     }
 
+    /**
+     * Loads, as {@link #loadLogicalChannel(Long)} does, the logical channels
+     * of a batch of Pixels sets along with the statistics of their channels
+     * so that resetting their settings does not query them one at a time.
+     *
+     * @param pixels The Pixels sets whose channels to load.
+     * @return A map of &lt;LogicalChannel.Id,LogicalChannel&gt;.
+     */
+    private Map<Long, LogicalChannel> loadLogicalChannels(List<Pixels> pixels)
+    {
+        StopWatch s1 = new Slf4JStopWatch("omero.loadLogicalChannels");
+        Set<Long> channelIds = new HashSet<Long>();
+        Set<Long> logicalChannelIds = new HashSet<Long>();
+        for (Pixels pix : pixels)
+        {
+            for (Channel channel : pix.<Channel>collectChannels(null))
+            {
+                channelIds.add(channel.getId());
+                if (channel.getLogicalChannel() != null)
+                {
+                    logicalChannelIds.add(channel.getLogicalChannel().getId());
+                }
+            }
+        }
+        Map<Long, LogicalChannel> channels =
+            new HashMap<Long, LogicalChannel>();
+        if (channelIds.size() == 0)
+        {
+            s1.stop();
+            return channels;
+        }
+        Parameters p = new Parameters();
+        p.addIds(channelIds);
+        iQuery.findAllByQuery("select c from Channel as c " +
+                "left outer join fetch c.statsInfo " +
+                "where c.id in (:ids)", p);
+        if (logicalChannelIds.size() > 0)
+        {
+            p = new Parameters();
+            p.addIds(logicalChannelIds);
+            String sql =
+                "select distinct channel from LogicalChannel as channel " +
+                "left outer join fetch channel.filterSet as filter " +
+                "left outer join fetch channel.lightPath as lp " +
+                "left outer join fetch lp.emissionFilterLink as em_link " +
+                "left outer join fetch em_link.child as emFilter " +
+                "left outer join fetch emFilter.transmittanceRange " +
+                "left outer join fetch lp.excitationFilterLink as ex_link " +
+                "left outer join fetch ex_link.child as exFilter " +
+                "left outer join fetch exFilter.transmittanceRange " +
+                "left outer join fetch channel.lightSourceSettings as lss " +
+                "left outer join fetch lss.lightSource as ls " +
+                "where channel.id in (:ids)";
+            List<LogicalChannel> list = iQuery.findAllByQuery(sql, p);
+            for (LogicalChannel lc : list)
+            {
+                channels.put(lc.getId(), lc);
+            }
+        }
+        s1.stop();
+        return channels;
+    }
+
+    /**
+     * Returns <code>true</code> if the statistics of every channel of the
+     * Pixels set have been persisted, in which case the location statistics
+     * are derived from them and no pixel buffer needs to be opened.
+     *
+     * @param pixels The Pixels set to check.
+     * @return See above.
+     */
+    private boolean hasStatsInfo(Pixels pixels)
+    {
+        for (int w = 0; w < pixels.sizeOfChannels(); w++)
+        {
+            StatsInfo stats = pixels.getChannel(w).getStatsInfo();
+            if (stats == null || stats.getGlobalMin() == null
+                    || stats.getGlobalMax() == null)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Retrieves all rendering settings associated with a given set of Pixels.
      * @param pixels List of Pixels to retrieve settings for.
@@ -496,7 +589,7 @@ public class RenderingSettingsImpl extends AbstractLevel2Service implements
         try
         {
         	PixelBuffer buffer = null;
-        	if (computeStats)
+        	if (computeStats && !hasStatsInfo(pixels))
         	{
 	        buffer = pixelsData.getPixelBuffer(pixels, false);
         	}
@@ -504,7 +597,7 @@ public class RenderingSettingsImpl extends AbstractLevel2Service implements
             try
             {
                 resetDefaults(settings, pixels, quantumFactory,
-                        renderingModels, buffer, computeStats);
+                        renderingModels, buffer, computeStats, null);
             }
             finally
             {
@@ -547,10 +640,14 @@ public class RenderingSettingsImpl extends AbstractLevel2Service implements
      * @param buffer A pixel buffer which maps to the <i>planeDef</i>.
      * @param computeStats Pass <code>true</code> to compute the stats,
      * 			           <code>false</code> otherwise
+     * @param logicalChannels The logical channels already loaded by
+     *                        {@link #loadLogicalChannels(List)} or
+     *                        <code>null</code> to load them one at a time.
      */
     private void resetDefaults(RenderingDef def, Pixels pixels,
             QuantumFactory quantumFactory, List<RenderingModel> renderingModels,
-            PixelBuffer buffer, boolean computeStats) {
+            PixelBuffer buffer, boolean computeStats,
+            Map<Long, LogicalChannel> logicalChannels) {
         // The default rendering definition settings
         def.setDefaultZ(pixels.getSizeZ() / 2);
         def.setDefaultT(0);
@@ -587,7 +684,8 @@ public class RenderingSettingsImpl extends AbstractLevel2Service implements
         def.setQuantization(quantumDef);
     
         // Reset the channel bindings
-        resetChannelBindings(def, pixels, quantumFactory, buffer, computeStats);
+        resetChannelBindings(def, pixels, quantumFactory, buffer, computeStats,
+                logicalChannels);
     }
     
     /**
@@ -615,46 +713,142 @@ public class RenderingSettingsImpl extends AbstractLevel2Service implements
     	List<Family> families = pixelsMetadata.getAllEnumerations(Family.class);
         List<RenderingModel> renderingModels = 
             pixelsMetadata.getAllEnumerations(RenderingModel.class);
-        
-    	List<RenderingDef> toSave = new ArrayList<RenderingDef>(pixels.size());
-    	Map<Long, RenderingDef> settingsMap = loadRenderingSettings(pixels);
-    	RenderingDef settings;
-    	for (Pixels p : pixels)
+        QuantumFactory quantumFactory = new QuantumFactory(families);
+
+    	List<Long> pixelsIds = distinctIds(pixels);
+    	for (int from = 0; from < pixelsIds.size(); from += batchSize)
     	{
-    		settings = settingsMap.get(p.getId());
-    		if (settings == null)
-    		{
-    			settings = createNewRenderingDef(p);
+    		int to = Math.min(pixelsIds.size(), from + batchSize);
+    		List<Pixels> batch = loadPixelsBatch(pixelsIds.subList(from, to));
+    		List<RenderingDef> toSave = resetDefaultsInBatch(batch,
+    				loadRenderingSettings(batch), computeStats, quantumFactory,
+    				renderingModels, imageIds);
+    		StopWatch s2 = new Slf4JStopWatch(
+    				"omero.resetDefaultsInSet.saveAndReturn");
+    		if (toSave.size() > 0) {
+    			RenderingDef[] toSaveArray =
+    				toSave.toArray(new RenderingDef[toSave.size()]);
+    			iUpdate.saveAndReturnArray(toSaveArray);
     		}
-    		try {
-    			RenderingDef newSettings =
-    				resetDefaults(settings, p, false, computeStats,
-    						families, renderingModels);
-    			if (newSettings != null) {
-    				toSave.add(newSettings);
-    			}
-    			imageIds.add(p.getImage().getId());
-			} catch (ResourceError e) {
-				//Exception has already been written to log file.
+    		clearBatch();
+    		s2.stop();
+    		log.info(String.format("Reset rendering settings of %d/%d " +
+    				"Pixels sets", to, pixelsIds.size()));
+    	}
+        s1.stop();
+    	return imageIds;
+    }
+
+    /**
+     * Resets the rendering settings of a batch of Pixels sets. The logical
+     * channels of the batch are loaded at once and pixel buffers are only
+     * opened for the Pixels sets whose channel statistics have not been
+     * persisted.
+     *
+     * @param pixels The batch of Pixels sets.
+     * @param settingsMap The existing settings of the Pixels sets.
+     * @param computeStats Pass <code>true</code> to compute the stats
+     *                     determining the input interval, <code>false</code>
+     *                     otherwise.
+     * @param quantumFactory A populated quantum factory.
+     * @param renderingModels The valid rendering model enumerations.
+     * @param imageIds The set to which the IDs of the images whose settings
+     *                 were reset are added.
+     * @return The settings to save.
+     */
+    private List<RenderingDef> resetDefaultsInBatch(List<Pixels> pixels,
+            Map<Long, RenderingDef> settingsMap, boolean computeStats,
+            QuantumFactory quantumFactory,
+            List<RenderingModel> renderingModels, Set<Long> imageIds)
+    {
+        Map<Long, LogicalChannel> logicalChannels =
+            loadLogicalChannels(pixels);
+        List<RenderingDef> toSave = new ArrayList<RenderingDef>(pixels.size());
+        RenderingDef settings;
+        for (Pixels p : pixels)
+        {
+            settings = settingsMap.get(p.getId());
+            if (settings == null)
+            {
+                settings = createNewRenderingDef(p);
+            }
+            try {
+                PixelBuffer buffer = null;
+                if (computeStats && !hasStatsInfo(p))
+                {
+                    buffer = pixelsData.getPixelBuffer(p, false);
+                }
+                try
+                {
+                    resetDefaults(settings, p, quantumFactory,
+                            renderingModels, buffer, computeStats,
+                            logicalChannels);
+                }
+                finally
+                {
+                    if (buffer != null) {
+                        buffer.close();
+                    }
+                }
+                // Increment the version of the rendering settings so that
+                // we can have some notification that the settings have
+                // been updated. See resetDefaults().
+                settings.setVersion(settings.getVersion() + 1);
+                toSave.add(settings);
+                imageIds.add(p.getImage().getId());
+            } catch (ResourceError e) {
+                //Exception has already been written to log file.
             } catch (ConcurrencyException e) {
                 log.warn(e.getClass().getSimpleName() + ", " +
-                		"not resetting settings for Image:"
-                         + p.getImage().getId());
+                        "not resetting settings for Image:"
+                        + p.getImage().getId());
             } catch (Exception e) {
                 log.warn("Exception while resetting settings for Image:"
-                         + p.getImage().getId(), e);
+                        + p.getImage().getId(), e);
             }
-    	}
-        StopWatch s2 = new Slf4JStopWatch(
-			"omero.resetDefaultsInSet.saveAndReturn");
-        if (toSave.size() > 0) {
-        	RenderingDef[] toSaveArray = 
-        		toSave.toArray(new RenderingDef[toSave.size()]);
-        	iUpdate.saveAndReturnArray(toSaveArray);
         }
-        s2.stop();
-        s1.stop();
-    	return imageIds;
+        return toSave;
+    }
+
+    /**
+     * Returns the IDs of Pixels sets in the order in which they were loaded,
+     * each ID once.
+     *
+     * @param pixels The Pixels sets.
+     * @return See above.
+     */
+    private List<Long> distinctIds(List<Pixels> pixels)
+    {
+        Set<Long> ids = new LinkedHashSet<Long>();
+        for (Pixels p : pixels)
+        {
+            ids.add(p.getId());
+        }
+        return new ArrayList<Long>(ids);
+    }
+
+    /**
+     * Loads, as {@link #loadPixels(Set)} does, a batch of the Pixels sets of
+     * the containers whose settings are being reset, each of them once.
+     *
+     * @param pixelsIds The IDs of the Pixels sets of the batch.
+     * @return See above.
+     */
+    private List<Pixels> loadPixelsBatch(List<Long> pixelsIds)
+    {
+        List<Pixels> pixels = loadPixels(new HashSet<Long>(pixelsIds));
+        return new ArrayList<Pixels>(new LinkedHashSet<Pixels>(pixels));
+    }
+
+    /**
+     * Flushes the settings saved for a batch of Pixels sets and clears the
+     * session so that the objects loaded for the batch do not accumulate
+     * while the next ones are reset.
+     */
+    private void clearBatch()
+    {
+        iUpdate.flush();
+        iQuery.clear();
     }
     
     /**
@@ -742,10 +936,13 @@ public class RenderingSettingsImpl extends AbstractLevel2Service implements
      * @param computeStats 
      * 			  Pass <code>true</code> to compute the stats,
      * 			  <code>false</code> otherwise
+     * @param logicalChannels
+     *            the logical channels already loaded or <code>null</code>
+     *            to load them one at a time.
      */
     private void resetChannelBindings(RenderingDef def, Pixels pixels,
             QuantumFactory quantumFactory, PixelBuffer buffer, boolean
-            computeStats) {
+            computeStats, Map<Long, LogicalChannel> logicalChannels) {
         // The actual channel bindings we are returning
         List<ChannelBinding> 
         	channelBindings = def.<ChannelBinding>collectWaveRendering(null);
@@ -780,7 +977,11 @@ public class RenderingSettingsImpl extends AbstractLevel2Service implements
             defaultColor = hasOriginalColor(channel);
             if (defaultColor == null) {
             	lc = channel.getLogicalChannel();
-                if (lc != null) lc = loadLogicalChannel(lc.getId());
+                if (lc != null) {
+                    LogicalChannel loaded = logicalChannels == null ? null
+                            : logicalChannels.get(lc.getId());
+                    lc = loaded != null ? loaded : loadLogicalChannel(lc.getId());
+                }
                 
                 //Update the name of the channel if no name, to be moved.
                 /*
@@ -876,7 +1077,8 @@ public class RenderingSettingsImpl extends AbstractLevel2Service implements
         }
     }
     /**
-     * Computes the location statistics for a set of rendering settings.
+     * Computes the location statistics for a set of rendering settings, from
+     * the persisted intensity histograms of the channels if any.
      * 
      * @param pixels	The pixels set.
      * @param cbs		The collection of settings corresponding to channel.
@@ -891,6 +1093,8 @@ public class RenderingSettingsImpl extends AbstractLevel2Service implements
         if (planeDef == null) {
             throw new NullPointerException("No plane definition.");
         }
+        IntensityHistogram[] histograms =
+            pixelsData.getHistograms(pixels.getId());
         StatsFactory sf = new StatsFactory();
         ChannelBinding cb;
         double min, max;
@@ -903,7 +1107,11 @@ public class RenderingSettingsImpl extends AbstractLevel2Service implements
             // of the channels linked to the pixels set.
         	
             cb = cbs.get(w);
-            sf.computeLocationStats(pixels, buf, planeDef, w);
+            if (histograms != null && w < histograms.length) {
+                sf.computeLocationStats(pixels, histograms[w], w);
+            } else {
+                sf.computeLocationStats(pixels, buf, planeDef, w);
+            }
             cb.setNoiseReduction(sf.isNoiseReduction());
             min = sf.getInputStart();
             max = sf.getInputEnd();
@@ -1104,6 +1312,20 @@ public class RenderingSettingsImpl extends AbstractLevel2Service implements
         pixelsData = dataService;
     }
 
+    /**
+     * Sets the number of Pixels sets whose rendering settings are reset and
+     * saved together by the methods acting on containers.
+     *
+     * @param batchSize The size of the batches, at least <code>1</code>.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException(
+                    "Batch size must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
     /**
      * Returns the interface this implementation is for.
      * @see AbstractLevel2Service#getServiceInterface()
@@ -1460,64 +1682,71 @@ public class RenderingSettingsImpl extends AbstractLevel2Service implements
         Set<Long> toReturn = new HashSet<Long>();
         if (pixelsList.size() == 0) return toReturn;
         
-        Map<Long, RenderingDef> mySettings =
-            loadRenderingSettings(pixelsList);
+        List<Long> pixelsIds = distinctIds(pixelsList);
         Set<IObject> toSave = new HashSet<IObject>();
-       
-        
 
         RenderingDef settings;
         ChannelBinding cb;
         StatsInfo stats;
         double[] range;
         double min, max;
-        for (Pixels pixels : pixelsList)
+        for (int from = 0; from < pixelsIds.size(); from += batchSize)
         {
-            settings = mySettings.get(pixels.getId());
-            if (settings == null)
+            int to = Math.min(pixelsIds.size(), from + batchSize);
+            List<Pixels> batch = loadPixelsBatch(pixelsIds.subList(from, to));
+            Map<Long, RenderingDef> mySettings = loadRenderingSettings(batch);
+            for (Pixels pixels : batch)
             {
-                try
+                settings = mySettings.get(pixels.getId());
+                if (settings == null)
                 {
-                    settings = resetDefaults(settings, pixels, false, false,
-                    		families, renderingModels);
-                    if (settings != null) {
-                    	toReturn.add(pixels.getId());
-                    	toSave.add(settings);
+                    try
+                    {
+                        settings = resetDefaults(settings, pixels, false,
+                                false, families, renderingModels);
+                        if (settings != null) {
+                        	toReturn.add(pixels.getId());
+                        	toSave.add(settings);
+                        }
+                    }
+                    catch (Exception e)
+                    {
+                        log.warn("Exception while resetting settings.", e);
                     }
                 }
-                catch (Exception e)
-                {
-                    log.warn("Exception while resetting settings.", e);
-                }
-            }
-            else
-            {
-                for (int i = 0; i < pixels.sizeOfChannels(); i++)
+                else
                 {
-                    cb = settings.getChannelBinding(i);
-                    stats = pixels.getChannel(i).getStatsInfo();
-                    if (stats == null) {
-                    	range = initPixelsRange(pixels.getPixelsType());
-                    	min = range[0];
-                    	max = range[1];
-                    } else {
-                    	min = stats.getGlobalMin();
-                    	max = stats.getGlobalMax();
+                    for (int i = 0; i < pixels.sizeOfChannels(); i++)
+                    {
+                        cb = settings.getChannelBinding(i);
+                        stats = pixels.getChannel(i).getStatsInfo();
+                        if (stats == null) {
+                        	range = initPixelsRange(pixels.getPixelsType());
+                        	min = range[0];
+                        	max = range[1];
+                        } else {
+                        	min = stats.getGlobalMin();
+                        	max = stats.getGlobalMax();
+                        }
+                        cb.setInputStart(min);
+                        cb.setInputEnd(max);
                     }
-                    cb.setInputStart(min);
-                    cb.setInputEnd(max);
+                    toReturn.add(pixels.getId());
+                    toSave.add(settings);
                 }
-                toReturn.add(pixels.getId());
-                toSave.add(settings);
+                // Increment the version of the rendering settings so that we 
+                // can have some notification that either the RenderingDef 
+                // object itself or one of its children in the object graph
+                // has been updated. FIXME: This should be implemented using 
+                // IUpdate.touch() or similar once that functionality exists.
+                settings.setVersion(settings.getVersion() + 1);
             }
-            // Increment the version of the rendering settings so that we 
-            // can have some notification that either the RenderingDef 
-            // object itself or one of its children in the object graph has 
-            // been updated. FIXME: This should be implemented using 
-            // IUpdate.touch() or similar once that functionality exists.
-            settings.setVersion(settings.getVersion() + 1);
+            if (toSave.size() > 0) iUpdate.saveCollection(toSave);
+            toSave.clear();
+            clearBatch();
+            log.info(String.format("Reset minimum and maximum of %d/%d " +
+                    "Pixels sets", to, pixelsIds.size()));
         }
-        if (toSave.size() > 0) iUpdate.saveCollection(toSave);
         s1.stop();
         return toReturn;
     }
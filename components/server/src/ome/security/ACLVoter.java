@@ -51,6 +51,11 @@ public interface ACLVoter {
      * The {@link SecuritySystem} implementors will usually call
      * {@link #throwLoadViolation(IObject)} if this method returns false.
      * 
+     * Called once per object as Hibernate loads it, including for each
+     * object of a result list, since Hibernate offers no hook for a whole
+     * list. Implementations may instead reuse, for the rest of the call, the
+     * decision made for an object with the same trusted details.
+     * 
      * @param klass
      *            a non-null class to test for loading
      * @param d
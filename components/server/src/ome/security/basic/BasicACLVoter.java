@@ -31,6 +31,7 @@ import ome.security.SecuritySystem;
 import ome.security.SystemTypes;
 import ome.system.EventContext;
 import ome.system.Roles;
+import ome.util.Utils;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -111,6 +112,10 @@ public class BasicACLVoter implements ACLVoter {
      * Though we pass in whether or not a share is active for completeness, a
      * different {@link ACLVoter} implementation will almost certainly be active
      * for share use.
+     * 
+     * The decision is cached in the current {@link BasicEventContext} by
+     * group, owner and permissions, so the objects of a result list are only
+     * filtered once per distinct set of details.
      */
     public boolean allowLoad(Session session, Class<? extends IObject> klass, Details d, long id) {
         Assert.notNull(klass);
@@ -124,6 +129,17 @@ public class BasicACLVoter implements ACLVoter {
             return true; // EARLY EXIT!
         }
 
+        // Objects with the same group, owner and permissions get the same
+        // decision, and their group's permissions have already been noted.
+        final BasicEventContext ec = currentUser.current();
+        final LoadKey key = LoadKey.of(d);
+        if (key != null) {
+            final Boolean decision = ec.getLoadDecision(key);
+            if (decision != null) {
+                return decision; // EARLY EXIT!
+            }
+        }
+
         boolean rv = false;
         if (sysTypes.isInSystemGroup(d) ||
                 sysTypes.isInUserGroup(d)) {
@@ -155,9 +171,67 @@ public class BasicACLVoter implements ACLVoter {
             }
         }
 
+        if (key != null) {
+            ec.setLoadDecision(key, rv);
+        }
         return rv;
     }
 
+    /**
+     * Key of the decisions cached by
+     * {@link #allowLoad(Session, Class, Details, long)} in the
+     * {@link BasicEventContext} for the current call: the group, the owner
+     * and the permissions of the object being loaded. Everything else which
+     * the decision depends on is held by the context itself.
+     */
+    private static final class LoadKey {
+
+        final long group;
+
+        final long owner;
+
+        final Object perms;
+
+        private LoadKey(long group, long owner, Object perms) {
+            this.group = group;
+            this.owner = owner;
+            this.perms = perms;
+        }
+
+        /**
+         * Returns null if either the group or the owner is not known.
+         */
+        static LoadKey of(Details d) {
+            final ExperimenterGroup g = d.getGroup();
+            final Experimenter o = d.getOwner();
+            if (g == null || g.getId() == null || o == null
+                    || o.getId() == null) {
+                return null;
+            }
+            final Permissions p = d.getPermissions();
+            return new LoadKey(g.getId(), o.getId(),
+                    p == null ? null : Utils.internalForm(p));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof LoadKey)) {
+                return false;
+            }
+            final LoadKey other = (LoadKey) obj;
+            return group == other.group && owner == other.owner
+                && (perms == null ? other.perms == null
+                        : perms.equals(other.perms));
+        }
+
+        @Override
+        public int hashCode() {
+            int h = (int) (group ^ (group >>> 32));
+            h = 31 * h + (int) (owner ^ (owner >>> 32));
+            return 31 * h + (perms == null ? 0 : perms.hashCode());
+        }
+    }
+
     public void throwLoadViolation(IObject iObject) throws SecurityViolation {
         Assert.notNull(iObject);
         throw new SecurityViolation("Cannot read " + iObject);
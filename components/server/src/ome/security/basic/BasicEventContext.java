@@ -72,6 +72,13 @@ public class BasicEventContext extends SimpleEventContext {
 
     private Map<Long, Permissions> groupPermissionsMap;
 
+    /**
+     * Decisions of {@link BasicACLVoter#allowLoad(org.hibernate.Session, Class, ome.model.internal.Details, long)}
+     * made for this context. Cleared whenever state which they depend on
+     * changes.
+     */
+    private transient Map<Object, Boolean> loadDecisions;
+
     public BasicEventContext(Principal p, SessionStats stats) {
         if (p == null || stats == null) {
             throw new RuntimeException("Principal and stats canot be null.");
@@ -206,6 +213,7 @@ public class BasicEventContext extends SimpleEventContext {
 
     public void setAdmin(boolean admin) {
         this.isAdmin = admin;
+        this.loadDecisions = null;
     }
 
     public void setReadOnly(boolean readOnly) {
@@ -214,6 +222,7 @@ public class BasicEventContext extends SimpleEventContext {
 
     public void setShareId(Long id) {
         this.shareId = id;
+        this.loadDecisions = null;
     }
 
     // ~ Accessors for other state
@@ -247,6 +256,7 @@ public class BasicEventContext extends SimpleEventContext {
 
     public void setOwner(Experimenter owner) {
         this.owner = owner;
+        this.loadDecisions = null;
         this.cuId = owner.getId();
         if (owner.isLoaded()) {
             this.cuName = owner.getOmeName();
@@ -259,6 +269,7 @@ public class BasicEventContext extends SimpleEventContext {
 
     public void setGroup(ExperimenterGroup group, Permissions p) {
         this.group = group;
+        this.loadDecisions = null;
         setGroupPermissions(p);
         if (this.cgId.equals(group.getId())) {
             // Do nothing.
@@ -320,10 +331,12 @@ public class BasicEventContext extends SimpleEventContext {
 
     public void setMemberOfGroups(List<Long> groupIds) {
         this.memberOfGroups = groupIds;
+        this.loadDecisions = null;
     }
 
     public void setLeaderOfGroups(List<Long> groupIds) {
         this.leaderOfGroups = groupIds;
+        this.loadDecisions = null;
     }
 
     // Other
@@ -355,6 +368,28 @@ public class BasicEventContext extends SimpleEventContext {
         return groupPermissionsMap.put(group, perms);
     }
 
+    /**
+     * Returns the decision stored by {@link #setLoadDecision(Object, boolean)}
+     * or null if there is none.
+     */
+    Boolean getLoadDecision(Object key) {
+        if (loadDecisions == null) {
+            return null;
+        }
+        return loadDecisions.get(key);
+    }
+
+    /**
+     * Stores whether objects matching the key, as defined by
+     * {@link BasicACLVoter}, can be loaded in this context.
+     */
+    void setLoadDecision(Object key, boolean allowed) {
+        if (loadDecisions == null) {
+            loadDecisions = new HashMap<Object, Boolean>();
+        }
+        loadDecisions.put(key, allowed);
+    }
+
     public void loadPermissions(org.hibernate.Session session) {
         if (groupPermissionsMap != null) {
             for (Map.Entry<Long, Permissions> entry :
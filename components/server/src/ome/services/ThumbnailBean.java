@@ -22,6 +22,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import ome.annotations.RolesAllowed;
@@ -50,6 +51,8 @@ import ome.model.enums.RenderingModel;
 import ome.model.meta.Session;
 import ome.parameters.Parameters;
 import ome.services.ThumbnailCtx.NoThumbnail;
+import ome.services.util.BoundedTaskRunner;
+import ome.services.util.ResourceTask;
 import ome.system.EventContext;
 import ome.system.SimpleEventContext;
 import ome.util.ImageUtil;
@@ -113,6 +116,19 @@ public class ThumbnailBean extends AbstractLevel2Service
     /** The rendering settings service. */
     private transient IRenderingSettings settingsService;
 
+    /**
+     * The executor rendering and compressing thumbnails missing from the
+     * cache for {@link #retrieveThumbnailSet(Set)}. If <code>null</code>
+     * thumbnails are rendered on the calling thread.
+     */
+    private transient Executor thumbnailExecutor;
+
+    /**
+     * Maximum number of thumbnails rendered concurrently on behalf of a
+     * single call to {@link #retrieveThumbnailSet(Set)}.
+     */
+    private transient int thumbnailConcurrency = 1;
+
     /** The list of all families supported by the {@link Renderer}. */
     private transient List<Family> families;
 
@@ -161,6 +177,18 @@ public class ThumbnailBean extends AbstractLevel2Service
     /** The default MIME type. */
     public static final String DEFAULT_MIME_TYPE = "image/jpeg";
 
+    /**
+     * Executor used when no thumbnail executor has been configured; runs
+     * each task on the calling thread.
+     */
+    private static final Executor CALLER_RUNS = new Executor()
+    {
+        public void execute(Runnable command)
+        {
+            command.run();
+        }
+    };
+
     /**
      * read-write lock to prevent READ-calls during WRITE operations.
      *
@@ -447,6 +475,30 @@ public class ThumbnailBean extends AbstractLevel2Service
         this.settingsService = settingsService;
     }
 
+    /**
+     * Thumbnail executor Bean injector.
+     *
+     * @param thumbnailExecutor
+     *            the executor rendering thumbnails missing from the cache.
+     */
+    public void setThumbnailExecutor(Executor thumbnailExecutor) {
+        getBeanHelper().throwIfAlreadySet(this.thumbnailExecutor,
+                thumbnailExecutor);
+        this.thumbnailExecutor = thumbnailExecutor;
+    }
+
+    /**
+     * Sets the maximum number of thumbnails rendered concurrently by a
+     * single thumbnail set request.
+     *
+     * @param thumbnailConcurrency
+     *            the number of thumbnails, values lower than <code>1</code>
+     *            are treated as <code>1</code>.
+     */
+    public void setThumbnailConcurrency(int thumbnailConcurrency) {
+        this.thumbnailConcurrency = Math.max(1, thumbnailConcurrency);
+    }
+
     /**
      * Compresses a buffered image thumbnail to disk.
      *
@@ -565,7 +617,32 @@ public class ThumbnailBean extends AbstractLevel2Service
         {
             return null;
         }
+        return createScaledImage(renderer, pixels, settings,
+                thumbnailMetadata, theZ, theT);
+    }
 
+    /**
+     * Creates a scaled buffered image using the specified renderer. This
+     * method does not access the database or any state of the service other
+     * than the stateless scaling service so that it may be called from the
+     * thumbnail executor.
+     *
+     * @param renderer the renderer to use for the active pixels set.
+     * @param pixels the pixels set the renderer has been created for.
+     * @param settings the rendering settings the renderer has been created
+     * for.
+     * @param thumbnailMetadata the thumbnail metadata specifying the size
+     * of the thumbnail.
+     * @param theZ the optical section (offset across the Z-axis) requested.
+     * <pre>null</pre> signifies the rendering engine default.
+     * @param theT the timepoint (offset across the T-axis) requested.
+     * <pre>null</pre> signifies the rendering engine default.
+     * @return a scaled buffered image.
+     */
+    private BufferedImage createScaledImage(Renderer renderer, Pixels pixels,
+            RenderingDef settings, Thumbnail thumbnailMetadata,
+            Integer theZ, Integer theT)
+    {
         // Retrieve our rendered data
         if (theZ == null)
             theZ = settings.getDefaultZ();
@@ -798,6 +875,25 @@ public class ThumbnailBean extends AbstractLevel2Service
     /** Actually does the work specified by {@link createThumbnail()}.*/
     private Thumbnail _createThumbnail() {
         StopWatch s1 = new Slf4JStopWatch("omero._createThumbnail");
+        prepareThumbnailMetadata();
+
+        BufferedImage image = createScaledImage(null, null);
+        try {
+            compressThumbnailToDisk(thumbnailMetadata, image);
+            s1.stop();
+            return thumbnailMetadata;
+        } catch (IOException e) {
+            log.error("Thumbnail could not be compressed.", e);
+            throw new ResourceError(e.getMessage());
+        }
+    }
+
+    /**
+     * Prepares the thumbnail metadata for the creation of a thumbnail,
+     * incrementing its version or creating new metadata for the owner of
+     * the rendering settings if the rendering settings have changed.
+     */
+    private void prepareThumbnailMetadata() {
         if (thumbnailMetadata == null) {
             throw new ValidationException("Missing thumbnail metadata.");
         } else if (ctx.dirtyMetadata(pixels.getId())) {
@@ -827,16 +923,6 @@ public class ThumbnailBean extends AbstractLevel2Service
         // dirtyMetadata is left false here because we may be creating a
         // thumbnail for the first time and the Thumbnail object has just been
         // created upstream of us.
-
-        BufferedImage image = createScaledImage(null, null);
-        try {
-            compressThumbnailToDisk(thumbnailMetadata, image);
-            s1.stop();
-            return thumbnailMetadata;
-        } catch (IOException e) {
-            log.error("Thumbnail could not be compressed.", e);
-            throw new ResourceError(e.getMessage());
-        }
     }
 
     /*
@@ -895,8 +981,16 @@ public class ThumbnailBean extends AbstractLevel2Service
         newContext();
         ctx.loadAndPrepareRenderingSettings(pixelsIds);
         ctx.createAndPrepareMissingRenderingSettings(pixelsIds);
-        ctx.loadAndPrepareMetadata(pixelsIds, checkedDimensions);
-        Map<Long, byte[]> values = retrieveThumbnailSet(pixelsIds);
+        // Only load the metadata of the thumbnails missing from memory
+        Map<Long, byte[]> values =
+            ctx.getCachedThumbnails(pixelsIds, checkedDimensions);
+        Set<Long> missing = new HashSet<Long>(pixelsIds);
+        missing.removeAll(values.keySet());
+        if (!missing.isEmpty())
+        {
+            ctx.loadAndPrepareMetadata(missing, checkedDimensions);
+            values.putAll(retrieveThumbnailSet(missing));
+        }
         iQuery.clear();
         return values;
     }
@@ -914,14 +1008,25 @@ public class ThumbnailBean extends AbstractLevel2Service
         newContext();
         ctx.loadAndPrepareRenderingSettings(pixelsIds);
         ctx.createAndPrepareMissingRenderingSettings(pixelsIds);
-        ctx.loadAndPrepareMetadata(pixelsIds, size);
-        Map<Long, byte[]> values = retrieveThumbnailSet(pixelsIds);
+        // Only load the metadata of the thumbnails missing from memory
+        Map<Long, byte[]> values = ctx.getCachedThumbnails(pixelsIds, size);
+        Set<Long> missing = new HashSet<Long>(pixelsIds);
+        missing.removeAll(values.keySet());
+        if (!missing.isEmpty())
+        {
+            ctx.loadAndPrepareMetadata(missing, size);
+            values.putAll(retrieveThumbnailSet(missing));
+        }
         iQuery.clear();
         return values;
     }
 
     /**
-     * Performs the logic of retrieving a set of thumbnails.
+     * Performs the logic of retrieving a set of thumbnails. Thumbnails which
+     * are missing from the cache are rendered and compressed by the
+     * thumbnail executor, at most {@link #thumbnailConcurrency} at a time,
+     * while the database work for the following Pixels sets continues on the
+     * calling thread.
      * @param pixelsIds The Pixels IDs to retrieve thumbnails for.
      * @return Map of Pixels ID vs. thumbnail bytes.
      */
@@ -931,53 +1036,103 @@ public class ThumbnailBean extends AbstractLevel2Service
         Map<Long, byte[]> toReturn = new HashMap<Long, byte[]>();
 
         List<Thumbnail> toSave = new ArrayList<Thumbnail>();
-        for (Long pixelsId : pixelsIds)
+        Executor executor = thumbnailExecutor;
+        if (executor == null)
         {
-            // Ensure that the renderer has been made dirty otherwise the
-            // same renderer will be used to return all thumbnails with dirty
-            // metadata. (See #2075).
-            resetMetadata();
-            try
+            executor = CALLER_RUNS;
+        }
+        BoundedTaskRunner<byte[], ThumbnailTask> runner =
+            new BoundedTaskRunner<byte[], ThumbnailTask>(executor,
+                    thumbnailConcurrency);
+        ThumbnailCollector collector = new ThumbnailCollector(toReturn, toSave);
+        try
+        {
+            for (Long pixelsId : pixelsIds)
             {
-                if (!ctx.hasSettings(pixelsId))
+                if (runner.isFull())
                 {
-                    try
+                    runner.collect(collector);
+                }
+                // Ensure that the renderer has been made dirty otherwise the
+                // same renderer will be used to return all thumbnails with
+                // dirty metadata. (See #2075).
+                resetMetadata();
+                try
+                {
+                    if (!ctx.hasSettings(pixelsId))
                     {
-                        pixelDataService.getPixelBuffer(
-                                ctx.getPixels(pixelsId), false);
-                        continue;  // No exception, not an in progress image
+                        try
+                        {
+                            pixelDataService.getPixelBuffer(
+                                    ctx.getPixels(pixelsId), false);
+                            continue;  // No exception, not an in progress image
+                        }
+                        catch (ConcurrencyException e)
+                        {
+                            log.info("ConcurrencyException on " +
+                                     "retrieveThumbnailSet.ctx.hasSettings");
+                            inProgress = true;
+                        }
                     }
-                    catch (ConcurrencyException e)
+                    pixels = ctx.getPixels(pixelsId);
+                    pixelsId = pixels.getId();
+                    settings = ctx.getSettings(pixelsId);
+                    thumbnailMetadata = ctx.getMetadata(pixelsId);
+                    try
                     {
-                        log.info("ConcurrencyException on " +
-                                 "retrieveThumbnailSet.ctx.hasSettings");
-                        inProgress = true;
+                        byte[] thumbnail;
+                        if (inProgress)
+                        {
+                            thumbnail = retrieveThumbnail();
+                        }
+                        else if (ctx.isThumbnailCached(pixelsId))
+                        {
+                            thumbnail = ioService.getThumbnail(
+                                    thumbnailMetadata);
+                            ctx.setRenderedWithSettings(pixelsId);
+                        }
+                        else
+                        {
+                            ThumbnailTask task = prepareThumbnailTask();
+                            if (task != null)
+                            {
+                                runner.submit(task);
+                                continue;
+                            }
+                            thumbnail = ioService.getThumbnail(
+                                    thumbnailMetadata);
+                        }
+                        toReturn.put(pixelsId, thumbnail);
+                        if (dirtyMetadata)
+                        {
+                            toSave.add(thumbnailMetadata);
+                        }
                     }
-                }
-                pixels = ctx.getPixels(pixelsId);
-                pixelsId = pixels.getId();
-                settings = ctx.getSettings(pixelsId);
-                thumbnailMetadata = ctx.getMetadata(pixelsId);
-                try
-                {
-                    byte[] thumbnail = retrieveThumbnail();
-                    toReturn.put(pixelsId, thumbnail);
-                    if (dirtyMetadata)
+                    finally
                     {
-                        toSave.add(thumbnailMetadata);
+                        dirtyMetadata = false;
                     }
                 }
-                finally
+                catch (Throwable t)
                 {
-                    dirtyMetadata = false;
+                    log.warn("Retrieving thumbnail in set for " +
+                            "Pixels ID " + pixelsId + " failed.", t);
+                    toReturn.put(pixelsId, null);
                 }
             }
-            catch (Throwable t)
-            {
-                log.warn("Retrieving thumbnail in set for " +
-                        "Pixels ID " + pixelsId + " failed.", t);
-                toReturn.put(pixelsId, null);
-            }
+            runner.collectAll(collector);
+        }
+        catch (InterruptedException e)
+        {
+            InternalException ie = new InternalException(
+                    "Interrupted while retrieving thumbnail set.");
+            ie.initCause(e);
+            throw ie;
+        }
+        finally
+        {
+            // Tasks which never ran still own their renderer.
+            runner.close();
         }
         // We're doing the update or creation and save as a two step
         // process due to the possible unloaded Pixels. If we do not,
@@ -991,6 +1146,135 @@ public class ThumbnailBean extends AbstractLevel2Service
         return toReturn;
     }
 
+    /**
+     * Prepares the metadata and the renderer required to create the
+     * thumbnail of the active pixels set and hands them over to a task which
+     * can be run by the thumbnail executor. The renderer is detached from the
+     * service and closed by the task once it has run.
+     * @return See above or <code>null</code> if the pixels set turned out to
+     * be in progress, in which case the <i>in progress</i> image has been
+     * compressed to disk.
+     * @throws IOException if the in progress image could not be compressed
+     * to disk.
+     */
+    private ThumbnailTask prepareThumbnailTask() throws IOException
+    {
+        prepareThumbnailMetadata();
+        errorIfInvalidState();
+        if (inProgress)
+        {
+            compressThumbnailToDisk(thumbnailMetadata, null);
+            return null;
+        }
+        if (diskSpaceChecking) {
+            iRepositoryInfo.sanityCheckRepository();
+        }
+        ThumbnailTask task = new ThumbnailTask(renderer, pixels, settings,
+                thumbnailMetadata, dirtyMetadata);
+        renderer = null;
+        dirty = true;
+        return task;
+    }
+
+    /**
+     * Records the results of completed thumbnail tasks.
+     */
+    private static class ThumbnailCollector
+        implements BoundedTaskRunner.Collector<byte[], ThumbnailTask>
+    {
+        /** Map of Pixels ID vs. thumbnail bytes to populate. */
+        private final Map<Long, byte[]> toReturn;
+
+        /** The thumbnail metadata to save. */
+        private final List<Thumbnail> toSave;
+
+        ThumbnailCollector(Map<Long, byte[]> toReturn, List<Thumbnail> toSave)
+        {
+            this.toReturn = toReturn;
+            this.toSave = toSave;
+        }
+
+        public void completed(ThumbnailTask task, byte[] thumbnail)
+        {
+            toReturn.put(task.pixels.getId(), thumbnail);
+            if (task.dirtyMetadata)
+            {
+                toSave.add(task.thumbnailMetadata);
+            }
+        }
+
+        public void failed(ThumbnailTask task, Throwable cause)
+        {
+            Long id = task.pixels.getId();
+            log.warn("Retrieving thumbnail in set for " +
+                    "Pixels ID " + id + " failed.", cause);
+            toReturn.put(id, null);
+        }
+    }
+
+    /**
+     * Renders, compresses and caches the thumbnail of a single pixels set.
+     * Holds everything it requires so that it does not depend on the state
+     * of the service, which moves on to the next pixels set while the task
+     * is running.
+     */
+    private class ThumbnailTask extends ResourceTask<byte[]>
+    {
+        /** The renderer, owned and closed by this task. */
+        private final Renderer renderer;
+
+        /** The pixels set the renderer has been created for. */
+        private final Pixels pixels;
+
+        /** The rendering settings the renderer has been created for. */
+        private final RenderingDef settings;
+
+        /** The thumbnail metadata. */
+        private final Thumbnail thumbnailMetadata;
+
+        /** If the thumbnail metadata has to be saved. */
+        private final boolean dirtyMetadata;
+
+        ThumbnailTask(Renderer renderer, Pixels pixels, RenderingDef settings,
+                Thumbnail thumbnailMetadata, boolean dirtyMetadata)
+        {
+            this.renderer = renderer;
+            this.pixels = pixels;
+            this.settings = settings;
+            this.thumbnailMetadata = thumbnailMetadata;
+            this.dirtyMetadata = dirtyMetadata;
+        }
+
+        @Override
+        protected byte[] run() throws IOException
+        {
+            StopWatch s1 = new Slf4JStopWatch("omero._createThumbnail");
+            BufferedImage image = createScaledImage(renderer, pixels,
+                    settings, thumbnailMetadata, null, null);
+            ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+            compressionService.compressToStream(image, byteStream);
+            byte[] thumbnail = byteStream.toByteArray();
+            FileOutputStream stream =
+                ioService.getThumbnailOutputStream(thumbnailMetadata);
+            try
+            {
+                stream.write(thumbnail);
+            }
+            finally
+            {
+                stream.close();
+            }
+            s1.stop();
+            return thumbnail;
+        }
+
+        @Override
+        protected void release()
+        {
+            renderer.close();
+        }
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -1003,11 +1287,14 @@ public class ThumbnailBean extends AbstractLevel2Service
     public byte[] getThumbnail(Integer sizeX, Integer sizeY) {
         errorIfNullPixelsAndRenderingDef();
         Dimension dimensions = sanityCheckThumbnailSizes(sizeX, sizeY);
+        byte[] value = ctx.getCachedThumbnail(pixelsId, dimensions);
+        if (value != null) {
+            return value;
+        }
         // Reloading thumbnail metadata because we don't know what may have
         // happened in the database since our last method call.
         Set<Long> pixelsIds = new HashSet<Long>();
         pixelsIds.add(pixelsId);
-        byte[] value = null;
         try {
             ctx.loadAndPrepareMetadata(pixelsIds, dimensions);
             thumbnailMetadata = ctx.getMetadata(pixelsId);
@@ -1074,6 +1361,10 @@ public class ThumbnailBean extends AbstractLevel2Service
                 _createThumbnail();
             }
             byte[] thumbnail = ioService.getThumbnail(thumbnailMetadata);
+            if (cached)
+            {
+                ctx.setRenderedWithSettings(pixels.getId());
+            }
             return thumbnail;
         }
         catch (IOException e)
@@ -1096,11 +1387,15 @@ public class ThumbnailBean extends AbstractLevel2Service
         // Set defaults and sanity check thumbnail sizes
         Dimension dimensions = sanityCheckThumbnailSizes(size, size);
         size = (int) dimensions.getWidth();
+        byte[] value = ctx.getCachedThumbnail(
+                pixelsId, ctx.calculateXYWidths(pixels, size));
+        if (value != null) {
+            return value;
+        }
         // Resetting thumbnail metadata because we don't know what may have
         // happened in the database since or if sizeX and sizeY have changed.
         Set<Long> pixelsIds = new HashSet<Long>();
         pixelsIds.add(pixelsId);
-        byte[] value = null;
         try {
             ctx.loadAndPrepareMetadata(pixelsIds, size);
             thumbnailMetadata = ctx.getMetadata(pixelsId);
@@ -1247,6 +1542,10 @@ public class ThumbnailBean extends AbstractLevel2Service
         }
 
         Dimension dimensions = sanityCheckThumbnailSizes(sizeX, sizeY);
+        if (ctx.getCachedThumbnail(pixelsId, dimensions) != null)
+        {
+            return true;
+        }
 
         Set<Long> pixelsIds = new HashSet<Long>();
         pixelsIds.add(pixelsId);
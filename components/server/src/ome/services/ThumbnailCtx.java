@@ -301,7 +301,7 @@ public class ThumbnailCtx
         // time later we're also going to pre-create thumbnail metadata where
         // it is missing.
         Map<Dimension, Set<Long>> dimensionPools =
-            createDimensionPools(longestSide);
+            createDimensionPools(pixelsIds, longestSide);
         loadMetadataByDimensionPool(dimensionPools);
         createMissingThumbnailMetadata(dimensionPools);
     }
@@ -509,6 +509,102 @@ public class ThumbnailCtx
         return settingsLastUpdated.after(metadataLastUpdated);
     }
 
+    /**
+     * Returns the thumbnails held by the in-memory thumbnail cache for the
+     * current rendering settings of a group of Pixels sets. Only the
+     * rendering settings must have been loaded, so that the thumbnail
+     * metadata need only be loaded from the database for the Pixels sets
+     * which are missing from the result.
+     * @param pixelsIds Pixels IDs to look up.
+     * @param dimensions X-Y dimensions of the thumbnails requested.
+     * @return Map of Pixels ID vs. thumbnail bytes for the cache hits.
+     */
+    public Map<Long, byte[]> getCachedThumbnails(Set<Long> pixelsIds,
+                                                 Dimension dimensions)
+    {
+        Map<Long, byte[]> toReturn = new HashMap<Long, byte[]>();
+        for (Long pixelsId : pixelsIds)
+        {
+            byte[] thumbnail = getCachedThumbnail(pixelsId, dimensions);
+            if (thumbnail != null)
+            {
+                toReturn.put(pixelsId, thumbnail);
+            }
+        }
+        return toReturn;
+    }
+
+    /**
+     * Returns the thumbnails held by the in-memory thumbnail cache for the
+     * current rendering settings of a group of Pixels sets.
+     * @param pixelsIds Pixels IDs to look up.
+     * @param longestSide The longest side of the thumbnails requested.
+     * @return Map of Pixels ID vs. thumbnail bytes for the cache hits.
+     * @see #getCachedThumbnails(Set, Dimension)
+     */
+    public Map<Long, byte[]> getCachedThumbnails(Set<Long> pixelsIds,
+                                                 int longestSide)
+    {
+        Map<Long, byte[]> toReturn = new HashMap<Long, byte[]>();
+        for (Long pixelsId : pixelsIds)
+        {
+            Pixels pixels = pixelsIdPixelsMap.get(pixelsId);
+            if (pixels == null)
+            {
+                continue;
+            }
+            byte[] thumbnail = getCachedThumbnail(
+                    pixelsId, calculateXYWidths(pixels, longestSide));
+            if (thumbnail != null)
+            {
+                toReturn.put(pixelsId, thumbnail);
+            }
+        }
+        return toReturn;
+    }
+
+    /**
+     * Returns the thumbnail held by the in-memory thumbnail cache for the
+     * current rendering settings of a Pixels set.
+     * @param pixelsId Pixels ID to look up.
+     * @param dimensions X-Y dimensions of the thumbnail requested.
+     * @return See above or <code>null</code> on a cache miss.
+     */
+    public byte[] getCachedThumbnail(long pixelsId, Dimension dimensions)
+    {
+        RenderingDef settings = pixelsIdSettingsMap.get(pixelsId);
+        if (settings == null)
+        {
+            return null;
+        }
+        return thumbnailService.getCachedThumbnail(pixelsId, settings,
+                (int) dimensions.getWidth(), (int) dimensions.getHeight());
+    }
+
+    /**
+     * Records in the in-memory thumbnail cache that the thumbnail of a
+     * Pixels set, which has just been read, is up to date with the current
+     * rendering settings so that {@link #getCachedThumbnail(long, Dimension)}
+     * finds it. Nothing is recorded if the thumbnail metadata is dirty or
+     * does not belong to the owner of the rendering settings.
+     * @param pixelsId Pixels ID whose thumbnail has been read.
+     */
+    public void setRenderedWithSettings(long pixelsId)
+    {
+        Thumbnail metadata = pixelsIdMetadataMap.get(pixelsId);
+        RenderingDef settings = pixelsIdSettingsMap.get(pixelsId);
+        if (metadata == null || settings == null || dirtyMetadata(pixelsId))
+        {
+            return;
+        }
+        Long metadataOwnerId = metadata.getDetails().getOwner().getId();
+        Long settingsOwnerId = settings.getDetails().getOwner().getId();
+        if (metadataOwnerId.equals(settingsOwnerId))
+        {
+            thumbnailService.setRenderedWith(metadata, settings);
+        }
+    }
+
     /**
      * Checks to see if a thumbnail is in the on disk cache or not.
      *
@@ -709,12 +805,18 @@ public class ThumbnailCtx
      * @param longestSide Requested longest side of the thumbnail.
      * @return Map of X-Y dimension vs. Pixels ID (a set of dimension pools).
      */
-    private Map<Dimension, Set<Long>> createDimensionPools(int longestSide)
+    private Map<Dimension, Set<Long>> createDimensionPools(
+            Set<Long> pixelsIds, int longestSide)
     {
         Map<Dimension, Set<Long>> dimensionPools =
             new HashMap<Dimension, Set<Long>>();
-        for (Pixels pixels : pixelsIdPixelsMap.values())
+        for (Long pixelsId : pixelsIds)
         {
+            Pixels pixels = pixelsIdPixelsMap.get(pixelsId);
+            if (pixels == null)
+            {
+                continue;
+            }
             // Calculate the XY widths we would use for a thumbnail of Pixels
             Dimension dimensions = calculateXYWidths(pixels, longestSide);
             addToDimensionPool(dimensionPools, pixels, dimensions);
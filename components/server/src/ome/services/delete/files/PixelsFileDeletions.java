@@ -54,6 +54,8 @@ public class PixelsFileDeletions extends AbstractFileDeletions {
             addLocalFile(file, id);
             // Try to remove a _pyramid file if it exists
             addLocalFile(pyrFile, id);
+            // And the histograms computed along with it
+            addLocalFile(new File(filePath + PixelsService.HISTOGRAM_SUFFIX), id);
             // Now any lock file
             addLocalFile(lockFile, id);
 
@@ -18,13 +18,10 @@
 
 package ome.services.eventlogs;
 
-import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.NoSuchElementException;
 
 import ome.model.IObject;
@@ -53,246 +50,436 @@ import org.springframework.context.ApplicationEvent;
  * loading data if necessary, while {@link #next()} simply returns an object. In
  * some cases, nulls may be returned, which consumers must contend with.
  *
+ * Queued entries are held in primitive arrays rather than as objects so that
+ * a full partition of {@link #DEFAULT_MAX} rows stays within a predictable
+ * amount of memory. {@link EventLog} instances are only created for the
+ * entries which are returned from {@link #next()}.
+ *
  * @author Josh Moore, josh at glencoesoftware.com
  * @since 5.0.3
  */
 public class EventLogQueue extends PersistentEventLogLoader {
 
     /**
-     * Basic states which an {@link Entry} can be in.
-     *
-     * @since 5.0.3
+     * Approximate number of bytes used by each queued entry, including the
+     * free space of the tables holding it.
      */
-    enum State {
-
-        /**
-         * Newly created and still unprocessed.
-         */
-        OPEN,
-
-        /**
-         * Marked on the <em>previous</em> {@link Entry} when
-         * {@link EventLogQueue#next} is about to return.
-         */
-        PASS,
+    final static int BYTES_PER_ENTRY = 64;
 
-        /**
-         * Marked when {@link EventLogQueue#onApplicationEvent(ApplicationEvent)}
-         * is called with a {@link EventLogFailure}.
-         */
-        FAIL;
-    }
+    /**
+     * Initial number of entries for which space is allocated.
+     */
+    final static int INITIAL_CAPACITY = 1024;
 
     /**
-     * Simple container for the data returned from
-     * {@link SqlAction#getEventLogPartitions(java.util.Collection, java.util.Collection, long, long)}
-     * . State is mutable so that subsequent data for the same IObject can be
-     * merged into a single representation.
+     * Open-addressing hash table from object ids to entry slots using linear
+     * probing. Removals shift the following entries back rather than leaving
+     * tombstones so that lookups never degrade.
      *
-     * @since 5.0.3
+     * @since 5.1
      */
-    private static class Entry implements Serializable {
+    private static class LongIntMap {
 
-        private static final long serialVersionUID = 1L;
+        private static final int NONE = -1;
 
-        /**
-         * Id of {@link EventLog} for this entry. If less than 0, then this
-         * represents a backlog item.
-         * @see EventLog#getId()
-         */
-        long eventLog;
+        private long[] keys;
 
-        /**
-         * Class name for this {@link EventLog}.
-         * @see EventLog#getEntityType()
-         */
-        final String objType;
+        private int[] values;
+
+        private int mask;
+
+        private int size;
+
+        LongIntMap(int capacity) {
+            allocate(Integer.highestOneBit(Math.max(capacity, 8) - 1) << 1);
+        }
+
+        private void allocate(int length) {
+            keys = new long[length];
+            values = new int[length];
+            Arrays.fill(values, NONE);
+            mask = length - 1;
+        }
+
+        private int index(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
 
         /**
-         * Id of object for this {@link EventLog}.
-         * @see EventLog#getEntityId()
+         * Returns the value for the key or {@link #NONE}.
          */
-        final long objId;
+        int get(long key) {
+            int i = index(key);
+            while (values[i] != NONE) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return NONE;
+        }
+
+        void put(long key, int value) {
+            if ((size + 1) * 2 > values.length) {
+                rehash(values.length * 2);
+            }
+            int i = index(key);
+            while (values[i] != NONE) {
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+        }
 
         /**
-         * Action for this {@link EventLog}.
-         * @see EventLog#getAction()
+         * Removes the key, returning its value or {@link #NONE}.
          */
-        String action;
+        int remove(long key) {
+            int i = index(key);
+            while (values[i] != NONE) {
+                if (keys[i] == key) {
+                    int rv = values[i];
+                    shiftBack(i);
+                    size--;
+                    return rv;
+                }
+                i = (i + 1) & mask;
+            }
+            return NONE;
+        }
 
         /**
-         * Number of rows that were skipped by the {@link SqlAction}
-         * windowing function.
+         * Fills the emptied position {@code i} with any later entry of the
+         * same probe sequence.
          */
-        int skipped;
-
-        State state = State.OPEN;
+        private void shiftBack(int i) {
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (values[j] == NONE) {
+                    break;
+                }
+                int k = index(keys[j]);
+                boolean between = i <= j ? (i < k && k <= j) : (i < k || k <= j);
+                if (!between) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    i = j;
+                }
+            }
+            values[i] = NONE;
+        }
 
-        Entry(long log, String type, long id, String action, int skipped) {
-            this.eventLog = log;
-            this.objType = type;
-            this.objId = id;
-            this.action = action;
-            this.skipped = skipped;
+        private void rehash(int length) {
+            final long[] oldKeys = keys;
+            final int[] oldValues = values;
+            allocate(length);
+            size = 0;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != NONE) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
         }
+    }
 
-        public void update(long eventLogId, String action, int skipped) {
-            this.eventLog = eventLogId;
-            this.action = action;
-            this.skipped = skipped;
+    /**
+     * Growable first-in-first-out ring buffer of entry slots.
+     *
+     * @since 5.1
+     */
+    private static class IntRing {
+
+        private int[] slots;
+
+        private int head;
+
+        private int size;
+
+        IntRing(int capacity) {
+            slots = new int[Integer.highestOneBit(Math.max(capacity, 8) - 1) << 1];
         }
 
-        public void pass() {
-            state = State.PASS;
+        boolean isEmpty() {
+            return size == 0;
         }
 
-        public void fail() {
-            state = State.FAIL;
+        void add(int slot) {
+            if (size == slots.length) {
+                final int[] grown = new int[slots.length * 2];
+                for (int i = 0; i < size; i++) {
+                    grown[i] = slots[(head + i) & (slots.length - 1)];
+                }
+                slots = grown;
+                head = 0;
+            }
+            slots[(head + size) & (slots.length - 1)] = slot;
+            size++;
         }
 
-        public String toString() {
-            final StringBuilder sb = new StringBuilder();
-            sb.append("Entry[");
-            sb.append(eventLog);
-            sb.append("]");
-            sb.append("<");
-            sb.append(objType);
-            sb.append(":");
-            sb.append(objId);
-            sb.append("=");
-            sb.append(action);
-            sb.append(">");
-            return sb.toString();
+        int remove() {
+            if (size == 0) {
+                throw new NoSuchElementException();
+            }
+            final int slot = slots[head];
+            head = (head + 1) & (slots.length - 1);
+            size--;
+            return slot;
         }
     }
 
     /**
-     * Wrapper to combine {@link EventLog} and {@link Entry} instances for
-     * consumption by the FullTextIndexer.
+     * Wrapper to combine the data of an entry and the timing of its
+     * processing for consumption by the FullTextIndexer.
      *
      * @since 5.0.3
-     * @TODO Unfortunately this {@link EventLog} subclass needlessly creates a
-     *       Details object.
      */
     private static class WrappedEventLog extends EventLog {
 
         private static final long serialVersionUID = 1L;
 
-        private final Entry entry;
+        /**
+         * Number of rows that were skipped by the {@link SqlAction}
+         * windowing function.
+         */
+        private final int skipped;
 
         private final Timer.Context timer;
 
-        WrappedEventLog(Entry e, Timer.Context timer) {
+        WrappedEventLog(long eventLog, String type, long objId, String action,
+                int skipped, Timer.Context timer) {
+            this.skipped = skipped;
             this.timer = timer;
-            this.entry = e;
-            setId(e.eventLog);
-            setAction(e.action);
-            setEntityType(e.objType);
-            setEntityId(e.objId);
+            setId(eventLog);
+            setAction(action);
+            setEntityType(type);
+            setEntityId(objId);
+        }
+
+        public String toString() {
+            return describe(getId(), getEntityType(), getEntityId(),
+                    getAction());
         }
     }
 
+    static String describe(long eventLog, String type, long objId,
+            String action) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("Entry[");
+        sb.append(eventLog);
+        sb.append("]");
+        sb.append("<");
+        sb.append(type);
+        sb.append(":");
+        sb.append(objId);
+        sb.append("=");
+        sb.append(action);
+        sb.append(">");
+        return sb.toString();
+    }
+
     /**
-     * Collection of collections which must be kept in sync during additions
-     * and removals. Three queues are available from which {@link Entry}
-     * instances will be "popped": {@link #priorityQ}, {@link #regularQ},
-     * and {@link #failureQ}. At the same time, an index is maintained per
-     * each {@link EventLog#getEntityType() entityType} so that later log
-     * items are not repeated.
+     * Collection of arrays which must be kept in sync during additions and
+     * removals. Each entry occupies one slot of the parallel arrays holding
+     * the data returned from
+     * {@link SqlAction#getEventLogPartitions(java.util.Collection, java.util.Collection, long, long)}
+     * . Two queues of slots are available from which entries will be
+     * "popped": {@link #priorityQ} and {@link #regularQ}. At the same time, an
+     * index is maintained per each {@link EventLog#getEntityType()
+     * entityType} so that later log items are not repeated but merged into
+     * the queued entry.
      *
      * @since 5.0.3
      */
-    private static class Data implements Serializable {
+    private static class Data {
 
         private static final Logger log = LoggerFactory.getLogger(Data.class);
 
-        private static final long serialVersionUID = 1L;
+        /**
+         * Id of the {@link EventLog} of each entry. If less than 0, then the
+         * entry represents a backlog item.
+         */
+        private long[] eventLogs;
 
         /**
-         * Intended to hide access to much of the {@link Map} interface in order
-         * to simplify keeping the various collections in sync.
-         *
-         * @since 5.0.3
+         * Id of the object of each entry.
          */
-        private class Entries implements Serializable {
+        private long[] objIds;
 
-            private static final long serialVersionUID = 1L;
+        /**
+         * Index into {@link #types} of the type of each entry.
+         */
+        private byte[] typeIdx;
 
-            private final Map<Long, Entry> entries;
+        /**
+         * Index into {@link #actionNames} of the action of each entry.
+         */
+        private byte[] actionIdx;
 
-            public Entries(Map<Long, Entry> entries) {
-                this.entries = entries;
-            }
+        /**
+         * Number of rows that were skipped by the {@link SqlAction}
+         * windowing function for each entry.
+         */
+        private int[] skipped;
 
-            public Entry get(Long objId) {
-                return this.entries.get(objId);
-            }
+        /**
+         * Slots released since the queues were last empty.
+         */
+        private int[] freeSlots;
 
-            private void addRegular(Entry entry) {
-                entries.put(entry.objId, entry);
-                regularQ.add(entry);
-                regularCount.inc();
-            }
+        private int freeCount;
 
-            public void addPriority(Entry entry) {
-                entries.put(entry.objId, entry);
-                priorityQ.add(entry);
-                priorityCount.inc();
-            }
-        }
+        /**
+         * Number of slots which have ever been used since the queues were last
+         * empty.
+         */
+        private int usedSlots;
 
         /**
-         * A weak-valued map of all the entries to be found elsewhere in the
-         * queues.
+         * Index of the queued entries per type, from object id to slot.
          */
-        final private Entries[] entriesArray;
+        final private LongIntMap[] entriesArray;
 
         /**
          * Priority queue, essentially the backlog from other implementations,
          * which should be handled first.
          */
-        final private LinkedList<Entry> priorityQ = new LinkedList<Entry>();
+        final private IntRing priorityQ = new IntRing(INITIAL_CAPACITY);
 
         /**
-         * Ordered list of {@link Entry} items which should be processed next if
-         * there is nothing in the priority queue.
+         * Ordered slots which should be processed next if there is nothing in
+         * the priority queue.
          */
-        final private LinkedList<Entry> regularQ = new LinkedList<Entry>();
+        final private IntRing regularQ = new IntRing(INITIAL_CAPACITY);
 
         /**
-         * List of failed items. They may be retried when no other processing is
-         * necessary.
+         * @see EventLogQueue#types
          */
-        final private LinkedList<WrappedEventLog> failureQ = new LinkedList<WrappedEventLog>();
+        final private List<String> types;
 
         /**
-         * @see EventLogQueue#types
+         * Distinct actions seen so far.
          */
-        final private List<String> types;
+        final private List<String> actionNames = new ArrayList<String>();
 
-        final transient private Counter priorityCount, regularCount, failureCount;
+        final private Counter priorityCount, regularCount, capacityCount;
 
-        public Data(Counter priority, Counter regular, Counter failure,
+        public Data(Counter priority, Counter regular, Counter capacity,
                 List<String> types) {
+            if (types.size() > Byte.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many types: "
+                        + types.size());
+            }
             this.priorityCount = priority;
             this.regularCount = regular;
-            this.failureCount = failure;
+            this.capacityCount = capacity;
             this.types = types;
-            this.entriesArray = new Entries[types.size()];
+            this.entriesArray = new LongIntMap[types.size()];
             for (int i = 0; i < types.size(); i++) {
-                this.entriesArray[i] = new Entries(new HashMap<Long, Entry>());
+                this.entriesArray[i] = new LongIntMap(INITIAL_CAPACITY);
+            }
+            allocate(INITIAL_CAPACITY);
+        }
+
+        private void allocate(int capacity) {
+            final int old = eventLogs == null ? 0 : eventLogs.length;
+            if (old == 0) {
+                eventLogs = new long[capacity];
+                objIds = new long[capacity];
+                typeIdx = new byte[capacity];
+                actionIdx = new byte[capacity];
+                skipped = new int[capacity];
+                freeSlots = new int[capacity];
+            } else {
+                eventLogs = Arrays.copyOf(eventLogs, capacity);
+                objIds = Arrays.copyOf(objIds, capacity);
+                typeIdx = Arrays.copyOf(typeIdx, capacity);
+                actionIdx = Arrays.copyOf(actionIdx, capacity);
+                skipped = Arrays.copyOf(skipped, capacity);
+                freeSlots = Arrays.copyOf(freeSlots, capacity);
+            }
+            for (int i = old; i < capacity; i++) {
+                capacityCount.inc();
             }
         }
 
         /**
-         * Return the {@link Entry} map which matches the given type.
+         * Return the index of the given type or -1 if it is not queued.
          */
-        protected Entries entries(String type) {
-            int idx = types.indexOf(type);
-            if (idx >= 0) {
-                return entriesArray[idx];
+        protected int type(String type) {
+            return types.indexOf(type);
+        }
+
+        private int action(String action) {
+            int idx = actionNames.indexOf(action);
+            if (idx < 0) {
+                if (actionNames.size() > Byte.MAX_VALUE) {
+                    throw new IllegalArgumentException("Too many actions: "
+                            + action);
+                }
+                actionNames.add(action);
+                idx = actionNames.size() - 1;
             }
-            return null;
+            return idx;
+        }
+
+        /**
+         * Return the slot of the queued entry for the object or -1.
+         */
+        public int get(int type, long objId) {
+            return entriesArray[type].get(objId);
+        }
+
+        private int add(int type, long objId, long eventLog, String action,
+                int skips) {
+            final int slot;
+            if (freeCount > 0) {
+                slot = freeSlots[--freeCount];
+            } else {
+                if (usedSlots == eventLogs.length) {
+                    allocate(eventLogs.length * 2);
+                }
+                slot = usedSlots++;
+            }
+            objIds[slot] = objId;
+            typeIdx[slot] = (byte) type;
+            update(slot, eventLog, action, skips);
+            entriesArray[type].put(objId, slot);
+            return slot;
+        }
+
+        public void addRegular(int type, long objId, long eventLog,
+                String action, int skips) {
+            regularQ.add(add(type, objId, eventLog, action, skips));
+            regularCount.inc();
+        }
+
+        public void addPriority(int type, long objId, long eventLog,
+                String action, int skips) {
+            priorityQ.add(add(type, objId, eventLog, action, skips));
+            priorityCount.inc();
+        }
+
+        public void update(int slot, long eventLog, String action, int skips) {
+            eventLogs[slot] = eventLog;
+            actionIdx[slot] = (byte) action(action);
+            skipped[slot] = skips;
+        }
+
+        public void skip(int slot) {
+            skipped[slot]++;
+        }
+
+        public String describe(int slot) {
+            return EventLogQueue.describe(eventLogs[slot],
+                    types.get(typeIdx[slot]), objIds[slot],
+                    actionNames.get(actionIdx[slot]));
         }
 
         public boolean hasNext() {
@@ -305,32 +492,35 @@ public class EventLogQueue extends PersistentEventLogLoader {
             return false;
         }
 
-        public Entry next() {
-            String which = null;
-            Entry entry = null;
+        public WrappedEventLog next(Timer.Context timer) {
+            int slot;
             if (!priorityQ.isEmpty()) {
-                entry = priorityQ.remove(0);
+                slot = priorityQ.remove();
                 priorityCount.dec();
-                which = "priority";
             } else if (!regularQ.isEmpty()) {
-                entry = regularQ.remove(0);
+                slot = regularQ.remove();
                 regularCount.dec();
-                which = "regular";
             } else {
                 throw new NoSuchElementException();
             }
-            entries(entry.objType).entries.remove(entry.objId);
+            entriesArray[typeIdx[slot]].remove(objIds[slot]);
+            final WrappedEventLog wrapped = new WrappedEventLog(
+                    eventLogs[slot], types.get(typeIdx[slot]), objIds[slot],
+                    actionNames.get(actionIdx[slot]), skipped[slot], timer);
+            release(slot);
             log.debug("Returning {}. Remaining: priority={}, regular={}",
-                    entry, priorityCount.getCount(), regularCount.getCount());
-            return entry;
+                    wrapped, priorityCount.getCount(), regularCount.getCount());
+            return wrapped;
         }
 
-        public void fail(EventLogFailure failure) {
-            WrappedEventLog wrapped = (WrappedEventLog) failure.log;
-            failureQ.add(wrapped);
-            wrapped.entry.fail();
-            failureCount.inc();
-            // Note: this will stay in the hash map to prevent future access.
+        private void release(int slot) {
+            if (!hasNext()) {
+                // All slots are free again.
+                freeCount = 0;
+                usedSlots = 0;
+            } else {
+                freeSlots[freeCount++] = slot;
+            }
         }
 
     }
@@ -377,12 +567,18 @@ public class EventLogQueue extends PersistentEventLogLoader {
 
     final private Counter priorityCount, regularCount, failureCount;
 
+    /**
+     * Number of entries for which space is allocated. Multiplied by
+     * {@link #BYTES_PER_ENTRY}, this approximates the memory used.
+     */
+    final private Counter capacityCount;
+
     final private Counter nextCount;
 
     private int batchCount;
 
     /**
-     * Last {@link Entry} which was returned by the {@link #next()} method. If a
+     * Last entry which was returned by the {@link #next()} method. If a
      * {@link EventLogFailure} is received, then this should be marked as such.
      * If {@link #next()} is called again without a failure, it can be assumed
      * that the processing was successful.
@@ -406,13 +602,14 @@ public class EventLogQueue extends PersistentEventLogLoader {
         this.priorityCount = metrics.counter(this, "priorityCount");
         this.regularCount = metrics.counter(this, "regularCount");
         this.failureCount = metrics.counter(this, "failureCount");
+        this.capacityCount = metrics.counter(this, "capacityCount");
 
-        // Rough testing shows each entry in the queue to take up about
-        // 100 bytes of storage. If the max would use "too much memory",
-        // then scale it down by 10%. E.g. the default would use ~100MB,
+        // Each entry in the queue takes up about BYTES_PER_ENTRY bytes
+        // of storage. If the max would use "too much memory", then
+        // scale it down by 10%. E.g. the default would use ~64MB,
         // if this is more than 25% of memory, scale down.
         long memory = Runtime.getRuntime().maxMemory();
-        long queueBytes = max * 100;
+        long queueBytes = (long) max * BYTES_PER_ENTRY;
         if (queueBytes >  (.25 * memory)) {
             this.max = max/10;
             log.warn("max_partition_size set to more than 25% of "
@@ -422,7 +619,7 @@ public class EventLogQueue extends PersistentEventLogLoader {
         }
         this.types = Arrays.asList(types);
         this.actions = Arrays.asList(actions);
-        this.data = new Data(priorityCount, regularCount, failureCount,
+        this.data = new Data(priorityCount, regularCount, capacityCount,
                 this.types);
     }
 
@@ -470,30 +667,40 @@ public class EventLogQueue extends PersistentEventLogLoader {
     protected boolean load(Long eventLogId, String type,
             Long objId, String action,
             Integer skipped) {
-        boolean added = false;
-        final Data.Entries entries = data.entries(type);
-        Entry entry = entries.get(objId);
-        if (entry == null) {
-            entry = new Entry(eventLogId, type, objId, action, skipped);
-            entries.addRegular(entry);
-            added = true;
+        final int idx = data.type(type);
+        if (idx < 0) {
+            log.error("Type not available for queue: " + type);
+            return false;
+        }
+        final int slot = data.get(idx, objId);
+        if (slot < 0) {
+            data.addRegular(idx, objId, eventLogId, action, skipped);
+            return true;
         } else {
-            entry.update(eventLogId, action,  skipped);
+            data.update(slot, eventLogId, action, skipped);
+            return false;
         }
-        return added;
     }
 
+    /**
+     * Records an {@link EventLogFailure} for an entry returned by
+     * {@link #next()}. If it is the last entry returned, it will not be
+     * marked as successfully handled. Failures of earlier entries, e.g. from
+     * consumers which process entries in batches, are only counted since
+     * those entries were already passed.
+     */
     @Override
     public void onApplicationEvent(ApplicationEvent arg0) {
         if (arg0 instanceof EventLogFailure) {
             EventLogFailure failure = (EventLogFailure) arg0;
             if (failure.wasSource(this)) {
-                if (lastReturned != failure.log) {
-                    log.error("lastReturned is not failure item!");
+                if (lastReturned != null && lastReturned == failure.log) {
+                    lastReturned.timer.stop(); // In case of fail
+                    lastReturned = null; // Prevent success later
+                } else {
+                    log.debug("Failure of earlier entry: {}", failure.log);
                 }
-                lastReturned.timer.stop(); // In case of fail
-                lastReturned = null; // Prevent success later
-                data.fail(failure);
+                failureCount.inc();
             }
         } else {
             super.onApplicationEvent(arg0);
@@ -501,28 +708,19 @@ public class EventLogQueue extends PersistentEventLogLoader {
     }
 
     /**
-     * Handles cleanup of the previously offered {@link Entry} and prepares the
-     * new {@link Entry} for processing.
+     * Handles cleanup of the previously returned entry.
      */
-    private EventLog offer(Entry entry) {
-        // First handle the previously returned
+    private void pass() {
         if (this.lastReturned != null) {
             this.lastReturned.timer.stop(); // In case of success
-            Entry last = this.lastReturned.entry;
-            last.pass();
-            if (last.eventLog >= 0) {
-                setCurrentId(last.eventLog);
+            WrappedEventLog last = this.lastReturned;
+            if (last.getId() >= 0) {
+                setCurrentId(last.getId());
             }
             log.debug(String.format("Successfully handled %s. Skipped: %s",
                     last, last.skipped));
             this.lastReturned = null;
         }
-
-        if (entry.state != State.OPEN) {
-            return null;
-        }
-        this.lastReturned = new WrappedEventLog(entry, processTime.time());
-        return this.lastReturned;
     }
 
     //
@@ -530,7 +728,7 @@ public class EventLogQueue extends PersistentEventLogLoader {
     //
 
     /**
-     * Checks if either any {@link Entry} instances are available or tries
+     * Checks if either any entries are available or tries
      * to load them if not. Conditions which will lead this to return false
      * include: "stop" being set, the batch size being met, the current
      * id in the database being equivalent to the newest event log.
@@ -554,12 +752,14 @@ public class EventLogQueue extends PersistentEventLogLoader {
     }
 
     /**
-     * Return a wrapped version of {@link Data#next()} which could possibly be
-     * null.
+     * Return the next entry, wrapped as an {@link EventLog}, marking the
+     * previously returned one as successfully handled.
      */
     public EventLog next() {
         nextCount.inc();
-        return offer(data.next());
+        pass();
+        this.lastReturned = data.next(processTime.time());
+        return this.lastReturned;
     }
 
     //
@@ -596,26 +796,26 @@ public class EventLogQueue extends PersistentEventLogLoader {
     public boolean addEventLog(Class<? extends IObject> cls, long id) {
         final boolean debug = log.isDebugEnabled();
         final String type = cls.getName();
-        final Data.Entries entries = data.entries(type);
-        if (entries == null) {
+        final int idx = data.type(type);
+        if (idx < 0) {
             if (debug) {
                 log.debug("Type not available for backlog:" + type);
             }
             return false;
         }
 
-        Entry entry = entries.get(id);
-        if (entry != null) {
+        final int slot = data.get(idx, id);
+        if (slot >= 0) {
             if (debug) {
-                log.debug("Entry already scheduled:" + entry);
+                log.debug("Entry already scheduled:" + data.describe(slot));
             }
-            entry.skipped++;
-           return false;
+            data.skip(slot);
+            return false;
         } else {
-            entry = new Entry(-1, type, id, "REINDEX", 0);
-            entries.addPriority(entry);
+            data.addPriority(idx, id, -1, "REINDEX", 0);
             if (debug) {
-                log.debug("New backlog entry:" + entry);
+                log.debug("New backlog entry:" + describe(-1, type, id,
+                        "REINDEX"));
             }
             return true;
         }
@@ -7,9 +7,20 @@
 
 package ome.services.fulltext;
 
+import java.io.IOException;
 import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import ome.io.nio.OriginalFilesService;
 import ome.model.IAnnotated;
@@ -53,10 +64,24 @@ import org.hibernate.search.bridge.builtin.DateBridge;
  */
 public class FullTextBridge extends BridgeHelper {
 
+    /**
+     * Files larger than this many bytes are not parsed by
+     * {@link #prefetch(Collection, ExecutorService)} but left to be streamed
+     * into the index when their document is built.
+     */
+    public final static long MAX_PREFETCH_SIZE = 16 * 1024 * 1024L;
+
     final protected OriginalFilesService files;
     final protected Map<String, FileParser> parsers;
     final protected Class<FieldBridge>[] classes;
 
+    /**
+     * Contents of the files parsed by
+     * {@link #prefetch(Collection, ExecutorService)}, by file id.
+     */
+    final protected Map<Long, String> prefetched =
+        new ConcurrentHashMap<Long, String>();
+
     /**
      * Since this constructor provides the instance with no way of parsing
      * {@link OriginalFile} binaries, all files will be assumed to have blank
@@ -327,6 +352,114 @@ public class FullTextBridge extends BridgeHelper {
 
     }
 
+    /**
+     * Parses the given files on the threads of the executor and holds their
+     * contents until {@link #clearPrefetched()} is called, so that building
+     * the documents which contain the files does not wait on the
+     * {@link FileParser parsers}. Blocks until all files have been parsed.
+     * Files which cannot be parsed here are parsed as usual when their
+     * document is built.
+     *
+     * @param toParse
+     *            the files to parse. Their properties are read on the calling
+     *            thread since they may be lazily loaded.
+     * @param executor
+     *            the executor on which to parse the files.
+     */
+    public void prefetch(Collection<OriginalFile> toParse,
+            ExecutorService executor) {
+        final Set<Long> ids = new HashSet<Long>();
+        final List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (final OriginalFile file : toParse) {
+            if (file == null || file.getId() == null
+                    || file.getMimetype() == null
+                    || !ids.add(file.getId())
+                    || prefetched.containsKey(file.getId())) {
+                continue;
+            }
+            final Long size = file.getSize();
+            if (size == null || size > MAX_PREFETCH_SIZE) {
+                continue;
+            }
+            futures.add(executor.submit(new Runnable() {
+                public void run() {
+                    String contents = read(file);
+                    if (contents != null) {
+                        prefetched.put(file.getId(), contents);
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                logger().warn("Error prefetching file contents", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Releases the contents held by
+     * {@link #prefetch(Collection, ExecutorService)}.
+     */
+    public void clearPrefetched() {
+        prefetched.clear();
+    }
+
+    /**
+     * Uses the prefetched contents of the file if available, otherwise
+     * delegates to {@link BridgeHelper#parse(OriginalFile, OriginalFilesService, Map)}.
+     */
+    @Override
+    protected Iterable<Reader> parse(final OriginalFile file,
+            final OriginalFilesService files,
+            final Map<String, FileParser> parsers) {
+        if (file != null && file.getId() != null) {
+            String contents = prefetched.get(file.getId());
+            if (contents != null) {
+                return Collections.<Reader>singletonList(
+                        new StringReader(contents));
+            }
+        }
+        return super.parse(file, files, parsers);
+    }
+
+    /**
+     * Reads all the chunks returned by the parser of the file into a single
+     * string. The readers are closed as soon as they have been read.
+     *
+     * @return the contents or <code>null</code> if reading failed.
+     */
+    private String read(OriginalFile file) {
+        final StringBuilder sb = new StringBuilder();
+        final char[] buf = new char[8192];
+        boolean failed = false;
+        // Iterate through all the readers so that each is closed.
+        for (Reader reader : super.parse(file, files, parsers)) {
+            try {
+                int rv;
+                while (!failed && (rv = reader.read(buf)) != -1) {
+                    sb.append(buf, 0, rv);
+                }
+                sb.append(' ');
+            } catch (IOException e) {
+                logger().warn("Error reading contents of file " + file.getId(), e);
+                failed = true;
+            } finally {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    logger().debug("Error closing reader " + reader, e);
+                }
+            }
+        }
+        return failed ? null : sb.toString();
+    }
+
     /**
      * Creates {@link Field} instances for {@link FileAnnotation} objects.
      * 
@@ -19,11 +19,21 @@
 
 package ome.services.fulltext;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import ome.model.IAnnotated;
 import ome.model.IGlobal;
 import ome.model.IMutable;
 import ome.model.IObject;
+import ome.model.annotations.Annotation;
+import ome.model.annotations.FileAnnotation;
+import ome.model.core.OriginalFile;
 import ome.model.meta.EventLog;
 import ome.services.eventlogs.EventLogFailure;
 import ome.services.eventlogs.EventLogLoader;
@@ -55,6 +65,12 @@ import org.springframework.transaction.annotation.Transactional;
  * Hibernate entities. Attempts to index each {@link EventLog} passed from the
  * {@link EventLogLoader} multiple times on failure. Eventually
  *
+ * The {@link EventLog} instances are handled in batches of
+ * {@link #setIndexBatch(int) configurable} size: the contents of the files
+ * attached to the objects of a batch are parsed on a pool of
+ * {@link #setParserThreads(int) parser threads} and the documents of the
+ * whole batch are then written to the index at once.
+ *
  * @author Josh Moore, josh at glencoesoftware.com
  * @since 3.0-Beta3
  */
@@ -67,6 +83,12 @@ public class FullTextIndexer extends SimpleWork implements ApplicationContextAwa
      */
     public final static int DEFAULT_REPORTING_LOOPS = 100;
 
+    /**
+     * Default number of {@link EventLog} instances whose objects are written
+     * to the index at once if no external value is set.
+     */
+    public final static int DEFAULT_INDEX_BATCH = 100;
+
     abstract class Action {
         Class type;
         long id;
@@ -86,7 +108,6 @@ public class FullTextIndexer extends SimpleWork implements ApplicationContextAwa
         @Override
         void go(FullTextSession session) {
             session.purge(type, id);
-            session.flushToIndexes();
         }
 
         @Override
@@ -106,7 +127,6 @@ public class FullTextIndexer extends SimpleWork implements ApplicationContextAwa
         @Override
         void go(FullTextSession session) {
             session.index(obj);
-            session.flushToIndexes();
         }
 
         @Override
@@ -123,6 +143,8 @@ public class FullTextIndexer extends SimpleWork implements ApplicationContextAwa
 
     final protected Timer batchTimer;
 
+    final protected Timer parseTimer;
+
     final protected Histogram completeSlow, completeFast;
 
     protected int reps = 5;
@@ -138,6 +160,22 @@ public class FullTextIndexer extends SimpleWork implements ApplicationContextAwa
 
     protected OmeroContext context = null;
 
+    /**
+     * Bridge whose file contents are prefetched. If null, files are parsed
+     * on the indexing thread.
+     */
+    protected FullTextBridge bridge = null;
+
+    /**
+     * Number of threads parsing files. If less than 1, files are parsed on
+     * the indexing thread.
+     */
+    protected int parserThreads = 0;
+
+    protected int indexBatch = DEFAULT_INDEX_BATCH;
+
+    private ExecutorService parserExecutor = null;
+
     /**
      * Spring injector. Sets the number of indexing runs will be made if there
      * is a substantial backlog.
@@ -154,6 +192,22 @@ public class FullTextIndexer extends SimpleWork implements ApplicationContextAwa
         this.dryRun = dryRun;
     }
 
+    public void setBridge(FullTextBridge bridge) {
+        this.bridge = bridge;
+    }
+
+    public void setParserThreads(int threads) {
+        this.parserThreads = threads;
+    }
+
+    /**
+     * Spring injector. Sets the number of {@link EventLog} instances whose
+     * objects are written to the index at once.
+     */
+    public void setIndexBatch(int indexBatch) {
+        this.indexBatch = Math.max(1, indexBatch);
+    }
+
     public void setApplicationContext(ApplicationContext ctx) {
         this.context = (OmeroContext) ctx;
     }
@@ -168,6 +222,8 @@ public class FullTextIndexer extends SimpleWork implements ApplicationContextAwa
         this.parserSession = new ParserSession();
         this.batchTimer =
                 metrics.timer(this, "batch");
+        this.parseTimer =
+                metrics.timer(this, "parse");
         this.completeSlow=
                 metrics.histogram(this, "percentCompleteSlow");
         this.completeFast =
@@ -261,6 +317,7 @@ public class FullTextIndexer extends SimpleWork implements ApplicationContextAwa
     public int doIndexing(FullTextSession session) {
 
         int count = 0;
+        final List<EventLog> batch = new ArrayList<EventLog>(indexBatch);
 
         for (EventLog eventLog : loader) {
 
@@ -269,62 +326,235 @@ public class FullTextIndexer extends SimpleWork implements ApplicationContextAwa
             }
 
             if (eventLog != null) {
-                handleEventLog(session, eventLog);
+                batch.add(eventLog);
                 count++;
             }
-            session.flush();
-            parserSession.closeParsedFiles();
+
+            if (batch.size() >= indexBatch) {
+                handleEventLogs(session, batch);
+                batch.clear();
+            }
 
         }
+
+        if (!batch.isEmpty()) {
+            handleEventLogs(session, batch);
+        }
         return count;
     }
 
+    /**
+     * Writes the objects of a batch of {@link EventLog} instances to the
+     * index with a single flush, after having prefetched the contents of
+     * their files. If writing the batch fails, each log is retried on its
+     * own so that only the failing ones are reported as
+     * {@link EventLogFailure failures}.
+     *
+     * Hibernate Search takes the queued work off its queue before writing it,
+     * so none of the work of a failed flush is left to be written again, and
+     * {@link FullTextSession#index(Object)} and
+     * {@link FullTextSession#purge(Class, java.io.Serializable)} only queue
+     * work once they have succeeded. The session is cleared before each retry
+     * so that every log is indexed from a freshly loaded object rather than
+     * from the one which the failed batch may have left half initialized.
+     */
+    protected void handleEventLogs(FullTextSession session,
+            List<EventLog> eventLogs) {
+
+        final List<EventLog> logs = new ArrayList<EventLog>(eventLogs.size());
+        final List<Action> actions = new ArrayList<Action>(eventLogs.size());
+        for (EventLog eventLog : eventLogs) {
+            Action action = createAction(session, eventLog);
+            if (action != null) {
+                logs.add(eventLog);
+                actions.add(action);
+            }
+        }
+
+        try {
+            prefetch(actions);
+            final List<EventLog> queuedLogs =
+                new ArrayList<EventLog>(logs.size());
+            final List<Action> queued = new ArrayList<Action>(actions.size());
+            for (int i = 0; i < actions.size(); i++) {
+                final Action action = actions.get(i);
+                try {
+                    action.go(session);
+                    queuedLogs.add(logs.get(i));
+                    queued.add(action);
+                } catch (Exception e) {
+                    publishFailure(logs.get(i), e);
+                    action.log(log);
+                }
+            }
+            boolean batched = false;
+            try {
+                session.flushToIndexes();
+                batched = true;
+            } catch (Exception e) {
+                log.warn(String.format("Failed to index batch of %s objects;"
+                        + " retrying individually", queued.size()), e);
+            }
+            if (batched) {
+                for (Action action : queued) {
+                    action.log(log);
+                }
+            } else {
+                for (EventLog eventLog : queuedLogs) {
+                    session.clear();
+                    handleEventLog(session, eventLog);
+                }
+            }
+            session.flush();
+        } finally {
+            if (bridge != null) {
+                bridge.clearPrefetched();
+            }
+            parserSession.closeParsedFiles();
+        }
+    }
+
     protected void handleEventLog(FullTextSession session, EventLog eventLog) {
+        Action action = createAction(session, eventLog);
+        if (action != null) {
+            perform(session, eventLog, action);
+        }
+    }
+
+    /**
+     * Writes the object of a single {@link EventLog} to the index, publishing
+     * an {@link EventLogFailure} on error.
+     */
+    private void perform(FullTextSession session, EventLog eventLog,
+            Action action) {
+        try {
+            action.go(session);
+            session.flushToIndexes();
+        } catch (Exception e) {
+            publishFailure(eventLog, e);
+        }
+        action.log(log);
+    }
+
+    private void publishFailure(EventLog eventLog, Exception e) {
+        try {
+            this.context.publishMessage(new EventLogFailure(loader, eventLog, e));
+        } catch (RuntimeException re) {
+            throw re;
+        } catch (Throwable e1) {
+            throw new RuntimeException(e1);
+        }
+    }
+
+    protected Action createAction(FullTextSession session, EventLog eventLog) {
         String act = eventLog.getAction();
         Class type = asClassOrNull(eventLog.getEntityType());
-        if (type != null) {
-            long id = eventLog.getEntityId();
-
-            Action action = null;
-            if ("DELETE".equals(act)) {
+        if (type == null) {
+            return null;
+        }
+        long id = eventLog.getEntityId();
+
+        Action action = null;
+        if ("DELETE".equals(act)) {
+            action = new Purge(type, id);
+        } else if ("REINDEX".equals(act) || "UPDATE".equals(act) || "INSERT".equals(act)) {
+            IObject obj = get(session, type, id);
+            if (obj == null) {
+                // This object was deleted before the indexer caught up with
+                // the INSERT/UDPDATE log. Though this isn't a problem itself,
+                // this does mean that the indexer is likely going too slow.
+                log.debug(String.format("Null returned! Purging "
+                        + "since cannot index %s:Id_%s for %s", type
+                        .getName(), id, eventLog));
                 action = new Purge(type, id);
-            } else if ("REINDEX".equals(act) || "UPDATE".equals(act) || "INSERT".equals(act)) {
-                IObject obj = get(session, type, id);
-                if (obj == null) {
-                    // This object was deleted before the indexer caught up with
-                    // the INSERT/UDPDATE log. Though this isn't a problem itself,
-                    // this does mean that the indexer is likely going too slow.
-                    log.debug(String.format("Null returned! Purging "
-                            + "since cannot index %s:Id_%s for %s", type
-                            .getName(), id, eventLog));
-                    action = new Purge(type, id);
-                } else {
-                    action = new Index(obj);
-                }
             } else {
-                // Likely CHGRP-VALIDATION, PIXELDATA or similar.
-                if (log.isDebugEnabled()) {
-                    log.debug("Unknown action type: " + act);
-                }
+                action = new Index(obj);
             }
+        } else {
+            // Likely CHGRP-VALIDATION, PIXELDATA or similar.
+            if (log.isDebugEnabled()) {
+                log.debug("Unknown action type: " + act);
+            }
+        }
+        return action;
+    }
 
-            if (action != null) {
-                try {
-                    action.go(session);
-                } catch (Exception e) {
-                    try {
-                        this.context.publishMessage(new EventLogFailure(loader, eventLog, e));
-                    } catch (RuntimeException re) {
-                        throw re;
-                    } catch (Throwable e1) {
-                        throw new RuntimeException(e1);
-                    }
+    /**
+     * Parses the files which will be indexed with the objects of the given
+     * actions on the parser threads, if any.
+     */
+    protected void prefetch(List<Action> actions) {
+        if (bridge == null || parserThreads < 1) {
+            return;
+        }
+        final List<OriginalFile> files = new ArrayList<OriginalFile>();
+        for (Action action : actions) {
+            if (action.obj != null) {
+                collectFiles(action.obj, files);
+            }
+        }
+        if (files.isEmpty()) {
+            return;
+        }
+        final Timer.Context timer = parseTimer.time();
+        try {
+            bridge.prefetch(files, getParserExecutor());
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Adds the files whose contents {@link FullTextBridge} indexes for the
+     * given object.
+     */
+    protected void collectFiles(IObject obj, List<OriginalFile> files) {
+        if (obj instanceof OriginalFile) {
+            files.add((OriginalFile) obj);
+        }
+        if (obj instanceof FileAnnotation) {
+            files.add(((FileAnnotation) obj).getFile());
+        }
+        if (obj instanceof IAnnotated) {
+            for (Annotation annotation : ((IAnnotated) obj).linkedAnnotationList()) {
+                if (annotation instanceof FileAnnotation) {
+                    files.add(((FileAnnotation) annotation).getFile());
                 }
-                action.log(log);
             }
         }
     }
 
+    private synchronized ExecutorService getParserExecutor() {
+        if (parserExecutor == null) {
+            final AtomicInteger count = new AtomicInteger();
+            parserExecutor = Executors.newFixedThreadPool(parserThreads,
+                    new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "FullTextParser-"
+                                    + count.incrementAndGet());
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        }
+        return parserExecutor;
+    }
+
+    /**
+     * Called by Spring on destruction. Stops the parser threads.
+     */
+    public synchronized void close() {
+        if (parserExecutor != null) {
+            parserExecutor.shutdownNow();
+            try {
+                parserExecutor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                log.warn("Interrupted while stopping parser threads");
+            }
+            parserExecutor = null;
+        }
+    }
+
     /**
      * Default implementation suggests doing more if fewer than {@link #reps}
      * runs have been made and if there are still more than
@@ -137,6 +137,15 @@ public class Main {
         final FullTextIndexer fti = new FullTextIndexer(loader, metrics);
         fti.setApplicationContext(context);
         fti.setDryRun(dryRun);
+        fti.setBridge(bridge);
+        String threads = context.getProperty("omero.search.parser_threads");
+        if (threads != null) {
+            fti.setParserThreads(Integer.parseInt(threads));
+        }
+        String indexBatch = context.getProperty("omero.search.index_batch");
+        if (indexBatch != null) {
+            fti.setIndexBatch(Integer.parseInt(indexBatch));
+        }
         final FullTextThread ftt = new FullTextThread(manager, executor, fti,
                 bridge);
         return ftt;
@@ -9,7 +9,12 @@ package ome.services.projection;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,6 +24,7 @@ import ome.annotations.RolesAllowed;
 import ome.api.IPixels;
 import ome.api.IProjection;
 import ome.api.ServiceInterface;
+import ome.conditions.InternalException;
 import ome.conditions.ResourceError;
 import ome.conditions.ValidationException;
 import ome.io.nio.DimensionsOutOfBoundsException;
@@ -51,6 +57,16 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
     
     /** Reference to the service used to retrieve the pixels data. */
     protected transient PixelsService pixelsService;
+
+    /**
+     * The executor projecting stacks of separate channels and timepoints and
+     * bands of the planes of a single stack. If <code>null</code>
+     * projections are computed on the calling thread.
+     */
+    protected transient ExecutorService projectionExecutor;
+
+    /** The number of threads of {@link #projectionExecutor}. */
+    protected transient int projectionThreads = 1;
     
     /**
      * Returns the interface this implementation is for.
@@ -81,6 +97,28 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
         this.pixelsService = pixelsService;
     }
     
+    /**
+     * Projection executor Bean injector. For use during configuration. Can
+     * only be called once.
+     */
+    public void setProjectionExecutor(ExecutorService projectionExecutor)
+    {
+        getBeanHelper().throwIfAlreadySet(this.projectionExecutor,
+                projectionExecutor);
+        this.projectionExecutor = projectionExecutor;
+    }
+
+    /**
+     * Sets the number of threads of the projection executor, which is also
+     * the number of bands the planes of a single stack are split into.
+     * @param projectionThreads the number of threads, values lower than
+     * <code>1</code> are treated as <code>1</code>.
+     */
+    public void setProjectionThreads(int projectionThreads)
+    {
+        this.projectionThreads = Math.max(1, projectionThreads);
+    }
+
     /* (non-Javadoc)
      * @see ome.api.IProjection#projectStack(long, ome.model.enums.PixelsType, int, int, int, int, int, int)
      */
@@ -89,18 +127,16 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
                                int algorithm, int timepoint, int channelIndex, 
                                int stepping, int start, int end)
     {
-        ProjectionContext ctx = new ProjectionContext();
-        ctx.pixels = iQuery.get(Pixels.class, pixelsId);
-        PixelBuffer pixelBuffer = pixelsService.getPixelBuffer(
-                ctx.pixels, false);
-        zIntervalBoundsCheck(start, end, ctx.pixels.getSizeZ());
+        Pixels pixels = iQuery.get(Pixels.class, pixelsId);
+        PixelBuffer pixelBuffer = pixelsService.getPixelBuffer(pixels, false);
+        zIntervalBoundsCheck(start, end, pixels.getSizeZ());
         outOfBoundsStepping(stepping);
         outOfBoundsCheck(channelIndex, "channel");
         outOfBoundsCheck(timepoint, "timepoint");
-        Integer v = ctx.pixels.getSizeT();
+        Integer v = pixels.getSizeT();
         if (timepoint >= v)
             throw new ValidationException("timepoint must be <"+v);
-        v = ctx.pixels.getSizeC();
+        v = pixels.getSizeC();
         if (channelIndex >= v)
             throw new ValidationException("channel index must be <"+v);
         try
@@ -108,62 +144,23 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
 
             if (pixelsType == null)
             {
-                pixelsType = ctx.pixels.getPixelsType();
+                pixelsType = pixels.getPixelsType();
             }
             else
             {
                 pixelsType = iQuery.get(PixelsType.class, pixelsType.getId());
             }
 
-            ctx.planeSizeInPixels = 
-                ctx.pixels.getSizeX() * ctx.pixels.getSizeY();
-            int planeSize = 
-                ctx.planeSizeInPixels * (iPixels.getBitDepth(pixelsType) / 8);
+            int planeSize = pixels.getSizeX() * pixels.getSizeY()
+                * (iPixels.getBitDepth(pixelsType) / 8);
             byte[] buf = new byte[planeSize];
-            ctx.from = pixelBuffer.getStack(channelIndex, timepoint);
-            ctx.to = new PixelData(pixelsType.getValue(), ByteBuffer.wrap(buf));
-
-            switch (algorithm)
-            {
-                case IProjection.MAXIMUM_INTENSITY:
-                {
-                    projectStackMax(ctx, stepping, start, end, false);
-                    break;
-                }
-                case IProjection.MEAN_INTENSITY:
-                {
-                    projectStackMean(ctx, stepping, start, end, false);
-                    break;
-                }
-                case IProjection.SUM_INTENSITY:
-                {
-                    projectStackSum(ctx, stepping, start, end, false);
-                    break;
-                }
-                default:
-                {
-                    throw new IllegalArgumentException(
-                            "Unknown algorithm: " + algorithm);
-                }
-            }
+            StackProjection projection = new StackProjection(algorithm,
+                    pixels.getSizeX(), pixels.getSizeY(), stepping, start, end,
+                    projectionExecutor, projectionThreads);
+            project(projection, pixelBuffer, channelIndex, timepoint, pixelsId,
+                    new PixelData(pixelsType.getValue(), ByteBuffer.wrap(buf)));
             return buf;
         }
-        catch (IOException e)
-        {
-            String error = String.format(
-                    "I/O error retrieving stack C=%d T=%d: %s",
-                    channelIndex, timepoint, e.getMessage());
-            log.error(error, e);
-            throw new ResourceError(error);
-        }
-        catch (DimensionsOutOfBoundsException e)
-        {
-            String error = String.format(
-                    "C=%d or T=%d out of range for Pixels Id %d: %s",
-                    channelIndex, timepoint, ctx.pixels.getId(), e.getMessage());
-            log.error(error, e);
-            throw new ValidationException(error);
-        }
         finally
         {
             try
@@ -176,9 +173,6 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
                 throw new ResourceError(
                         e.getMessage() + " Please check server log.");
             }
-            if (ctx.from != null) {
-                ctx.from.dispose();
-            }
         }
     }
 
@@ -193,13 +187,12 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
                               int zStart, int zEnd, String name)
     {
         // First, copy and resize our image with sizeZ = 1.
-        ProjectionContext ctx = new ProjectionContext();
-        ctx.pixels = iQuery.get(Pixels.class, pixelsId);
-        Image image = ctx.pixels.getImage();
+        final Pixels pixels = iQuery.get(Pixels.class, pixelsId);
+        Image image = pixels.getImage();
         name = name == null? image.getName() + " Projection" : name;
         //size of the new buffer.
         //Add control for z
-        zIntervalBoundsCheck(zStart, zEnd, ctx.pixels.getSizeZ());
+        zIntervalBoundsCheck(zStart, zEnd, pixels.getSizeZ());
         outOfBoundsStepping(stepping);
 
         Integer sizeT = tEnd-tStart+1;
@@ -215,94 +208,85 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
         Pixels newPixels = newImage.getPixels(0);
         if (pixelsType == null)
         {
-            pixelsType = ctx.pixels.getPixelsType();
+            pixelsType = pixels.getPixelsType();
         }
         else
         {
             pixelsType = iQuery.get(PixelsType.class, pixelsType.getId());
         }
         newPixels.setPixelsType(pixelsType);
+        final String type = pixelsType.getValue();
+        final int sizeX = pixels.getSizeX();
+        final int sizeY = pixels.getSizeY();
+        final int planeSize =
+            sizeX * sizeY * (iPixels.getBitDepth(pixelsType) / 8);
+        // Validates the algorithm before anything is read.
+        new StackProjection(algorithm, 1, 1, stepping, zStart, zEnd, null, 1);
         
         // Project each stack for each channel and each timepoint in the
         // entire image, copying into the pixel buffer the projected pixels.
-        PixelBuffer sourceBuffer = pixelsService.getPixelBuffer(
-                ctx.pixels, false);
+        final PixelBuffer sourceBuffer =
+            pixelsService.getPixelBuffer(pixels, false);
         try {
-            PixelBuffer destinationBuffer = pixelsService.getPixelBuffer(
+            final PixelBuffer destinationBuffer = pixelsService.getPixelBuffer(
                     newPixels, true);
             try
             {
-                ctx.planeSizeInPixels = ctx.pixels.getSizeX() * ctx.pixels.getSizeY();
-                int planeSize =
-                    ctx.planeSizeInPixels * (iPixels.getBitDepth(pixelsType) / 8);
-                byte[] buf = new byte[planeSize];
-                ctx.to = new PixelData(pixelsType.getValue(), ByteBuffer.wrap(buf));
+                // With several stacks to project, the stacks are projected
+                // concurrently rather than the bands of their planes.
+                final int stacks = channels.size() * (tEnd - tStart + 1);
+                final ExecutorService bandExecutor =
+                    stacks > 1? null : projectionExecutor;
+                final List<Callable<double[]>> tasks =
+                    new ArrayList<Callable<double[]>>();
                 int newC = 0;
-                for (Integer c : channels)
+                for (final Integer c : channels)
                 {
-                    ctx.minimum = Double.MAX_VALUE;
-                    ctx.maximum = Double.MIN_VALUE;
+                    final int destinationC = newC++;
                     for (int t = tStart; t <= tEnd; t++)
                     {
-                        try
-                        {
-                            ctx.from = sourceBuffer.getStack(c, t);
-                            switch (algorithm)
+                        final int timepoint = t;
+                        tasks.add(new Callable<double[]>() {
+                            public double[] call()
                             {
-                                case IProjection.MAXIMUM_INTENSITY:
-                                {
-                                    projectStackMax(ctx, stepping, zStart, zEnd, true);
-                                    break;
-                                }
-                                case IProjection.MEAN_INTENSITY:
-                                {
-                                    projectStackMean(ctx, stepping, zStart, zEnd, true);
-                                    break;
-                                }
-                                case IProjection.SUM_INTENSITY:
-                                {
-                                    projectStackSum(ctx, stepping, zStart, zEnd, true);
-                                    break;
-                                }
-                                default:
-                                {
-                                    throw new IllegalArgumentException(
-                                            "Unknown algorithm: " + algorithm);
-                                }
-                            }
-                            destinationBuffer.setPlane(buf, 0, newC, t);
-                        }
-                        catch (IOException e)
-                        {
-                            String error = String.format(
-                                    "I/O error retrieving stack C=%d T=%d: %s",
-                                    c, t, e.getMessage());
-                            log.error(error, e);
-                            throw new ResourceError(error);
-                        }
-                        catch (DimensionsOutOfBoundsException e)
-                        {
-                            String error = String.format(
-                                    "C=%d or T=%d out of range for Pixels Id %d: %s",
-                                    c, t, ctx.pixels.getId(), e.getMessage());
-                            log.error(error, e);
-                            throw new ValidationException(error);
-                        } finally {
-                            if (ctx.from != null) {
-                                ctx.from.dispose();
+                                byte[] buf = new byte[planeSize];
+                                StackProjection projection =
+                                    new StackProjection(algorithm, sizeX,
+                                            sizeY, stepping, zStart, zEnd,
+                                            bandExecutor, projectionThreads);
+                                project(projection, sourceBuffer, c,
+                                        timepoint, pixelsId, new PixelData(
+                                                type, ByteBuffer.wrap(buf)));
+                                setPlane(destinationBuffer, buf, destinationC,
+                                        timepoint);
+                                return new double[] {
+                                        projection.getMinimum(),
+                                        projection.getMaximum() };
                             }
-                        }
+                        });
+                    }
+                }
+                List<double[]> minMax = invokeAll(tasks);
+                int task = 0;
+                for (newC = 0; newC < channels.size(); newC++)
+                {
+                    double minimum = Double.MAX_VALUE;
+                    double maximum = Double.MIN_VALUE;
+                    for (int t = tStart; t <= tEnd; t++)
+                    {
+                        double[] rv = minMax.get(task++);
+                        minimum = rv[0] < minimum? rv[0] : minimum;
+                        maximum = rv[1] > maximum? rv[1] : maximum;
                     }
                     // Handle the change of minimum and maximum for this channel.
                     Channel channel = newPixels.getChannel(newC);
                     StatsInfo si = new StatsInfo();
-                    si.setGlobalMin(ctx.minimum);
-                    si.setGlobalMax(ctx.maximum);
+                    si.setGlobalMin(minimum);
+                    si.setGlobalMax(maximum);
                     channel.setStatsInfo(si);
                     // Set our methodology
                     newPixels.setMethodology(
                             IProjection.METHODOLOGY_STRINGS[algorithm]);
-                    newC++;
                 }
             }
             finally
@@ -379,176 +363,148 @@ public class ProjectionBean extends AbstractLevel2Service implements IProjection
     }
     
     /**
-     * Projects a stack based on the maximum intensity at each XY coordinate.
-     * @param ctx The context of our projection.
-     * @param stepping Stepping value to use while calculating the projection.
-     * For example, <code>stepping=1</code> will use every optical section from
-     * <code>start</code> to <code>end</code> where <code>stepping=2</code> will
-     * use every other section from <code>start</code> to <code>end</code> to
-     * perform the projection.
-     * @param start Optical section to start projecting from.
-     * @param end Optical section to finish projecting.
-     * @param doMinMax Whether or not to calculate the minimum and maximum of
-     * the projected pixel data.
+     * Reads the optical sections of a stack one plane at a time into a
+     * projection and writes the projected plane.
+     * @param projection The projection to compute.
+     * @param buffer The pixel buffer to read from. Reads are synchronized on
+     * the buffer since stacks of the same buffer may be projected
+     * concurrently.
+     * @param c The channel of the stack.
+     * @param t The timepoint of the stack.
+     * @param pixelsId The id of the Pixels set, for error reporting.
+     * @param to The pixel data to write the projected plane into.
      */
-    private void projectStackMax(ProjectionContext ctx, int stepping,
-                                 int start, int end, boolean doMinMax)
+    private void project(StackProjection projection, PixelBuffer buffer,
+                         int c, int t, long pixelsId, PixelData to)
     {
-        int currentPlaneStart;
-        double projectedValue, stackValue;
-        double minimum = ctx.minimum;
-        double maximum = ctx.maximum;
-        for (int i = 0; i < ctx.planeSizeInPixels; i++)
+        for (int z : projection.getSections())
         {
-            projectedValue = 0;
-            for (int z = start; z <= end; z += stepping)
+            PixelData plane = null;
+            try
             {
-                currentPlaneStart = ctx.planeSizeInPixels * z;
-                stackValue = ctx.from.getPixelValue(currentPlaneStart + i);
-                if (stackValue > projectedValue)
+                synchronized (buffer)
                 {
-                    projectedValue = stackValue;
+                    plane = buffer.getPlane(z, c, t);
                 }
+                projection.add(plane);
             }
-            ctx.to.setPixelValue(i, projectedValue);
-            if (doMinMax)
+            catch (IOException e)
             {
-                minimum = projectedValue < minimum? projectedValue : minimum;
-                maximum = projectedValue > maximum? projectedValue : maximum;
+                String error = String.format(
+                        "I/O error retrieving stack C=%d T=%d: %s",
+                        c, t, e.getMessage());
+                log.error(error, e);
+                throw new ResourceError(error);
+            }
+            catch (DimensionsOutOfBoundsException e)
+            {
+                String error = String.format(
+                        "C=%d or T=%d out of range for Pixels Id %d: %s",
+                        c, t, pixelsId, e.getMessage());
+                log.error(error, e);
+                throw new ValidationException(error);
+            }
+            finally
+            {
+                if (plane != null)
+                {
+                    plane.dispose();
+                }
             }
         }
-        ctx.minimum = minimum;
-        ctx.maximum = maximum;
+        projection.write(to);
     }
-    
-    /**
-     * Projects a stack based on the mean intensity at each XY coordinate.
-     * @param from The raw pixel data from the stack to project from.
-     * @param ctx The context of our projection.
-     * source Pixels set pixels type will be used.
-     * @param stepping Stepping value to use while calculating the projection.
-     * For example, <code>stepping=1</code> will use every optical section from
-     * <code>start</code> to <code>end</code> where <code>stepping=2</code> will
-     * use every other section from <code>start</code> to <code>end</code> to
-     * perform the projection.
-     * @param start Optical section to start projecting from.
-     * @param end Optical section to finish projecting.
-     * @param doMinMax Whether or not to calculate the minimum and maximum of
-     * the projected pixel data.
-     */
-    private void projectStackMean(ProjectionContext ctx, int stepping, 
-                                  int start, int end, boolean doMinMax)
-    {
-        projectStackMeanOrSum(ctx, stepping, start, end, true, doMinMax);
-    }
-    
+
     /**
-     * Projects a stack based on the sum intensity at each XY coordinate.
-     * @param ctx The context of our projection.
-     * @param pixelsType The destination Pixels type. If <code>null</code>, the
-     * source Pixels set pixels type will be used.
-     * @param stepping Stepping value to use while calculating the projection.
-     * For example, <code>stepping=1</code> will use every optical section from
-     * <code>start</code> to <code>end</code> where <code>stepping=2</code> will
-     * use every other section from <code>start</code> to <code>end</code> to
-     * perform the projection.
-     * @param start Optical section to start projecting from.
-     * @param end Optical section to finish projecting.
-     * @param doMinMax Whether or not to calculate the minimum and maximum of
-     * the projected pixel data.
+     * Writes a projected plane, synchronized on the destination buffer.
      */
-    private void projectStackSum(ProjectionContext ctx, int stepping, 
-                                 int start, int end, boolean doMinMax)
+    private void setPlane(PixelBuffer buffer, byte[] buf, int c, int t)
     {
-        projectStackMeanOrSum(ctx, stepping, start, end, false, doMinMax);
+        try
+        {
+            synchronized (buffer)
+            {
+                buffer.setPlane(buf, 0, c, t);
+            }
+        }
+        catch (IOException e)
+        {
+            String error = String.format(
+                    "I/O error writing projection C=%d T=%d: %s",
+                    c, t, e.getMessage());
+            log.error(error, e);
+            throw new ResourceError(error);
+        }
+        catch (DimensionsOutOfBoundsException e)
+        {
+            String error = String.format(
+                    "C=%d or T=%d out of range for projection: %s",
+                    c, t, e.getMessage());
+            log.error(error, e);
+            throw new ValidationException(error);
+        }
     }
-    
+
     /**
-     * Projects a stack based on the sum intensity at each XY coordinate with
-     * the option to also average the sum intensity.
-     * @param ctx The context of our projection.
-     * @param pixelsType The destination Pixels type. If <code>null</code>, the
-     * source Pixels set pixels type will be used.
-     * @param stepping Stepping value to use while calculating the projection.
-     * For example, <code>stepping=1</code> will use every optical section from
-     * <code>start</code> to <code>end</code> where <code>stepping=2</code> will
-     * use every other section from <code>start</code> to <code>end</code> to
-     * perform the projection.
-     * @param start Optical section to start projecting from.
-     * @param end Optical section to finish projecting.
-     * @param mean Whether or not we're performing an average post sum
-     * intensity projection.
-     * @param doMinMax Whether or not to calculate the minimum and maximum of
-     * the projected pixel data.
+     * Runs the tasks on {@link #projectionExecutor}, or on the calling thread
+     * if there is none, returning their results in order. The first failure
+     * cancels the remaining tasks and is rethrown.
      */
-    private void projectStackMeanOrSum(ProjectionContext ctx, int stepping,
-                                       int start, int end, 
-                                       boolean mean, boolean doMinMax)
+    private <T> List<T> invokeAll(List<Callable<T>> tasks)
     {
-        double planeMaximum = ctx.to.getMaximum();
-
-        int currentPlaneStart;
-        double projectedValue, stackValue;
-        double minimum = ctx.minimum;
-        double maximum = ctx.maximum;
-        for (int i = 0; i < ctx.planeSizeInPixels; i++)
+        List<T> results = new ArrayList<T>(tasks.size());
+        if (projectionExecutor == null || tasks.size() == 1)
+        {
+            for (Callable<T> task : tasks)
+            {
+                try
+                {
+                    results.add(task.call());
+                }
+                catch (RuntimeException e)
+                {
+                    throw e;
+                }
+                catch (Exception e)
+                {
+                    throw new InternalException("Error projecting: " + e);
+                }
+            }
+            return results;
+        }
+        List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        try
         {
-            projectedValue = 0;
-            int projectedPlaneCount = 0;
-            for (int z = start; z < end; z += stepping)
+            for (Callable<T> task : tasks)
             {
-                currentPlaneStart = ctx.planeSizeInPixels * z;
-                stackValue = ctx.from.getPixelValue(currentPlaneStart + i);
-                projectedValue += stackValue;
-                projectedPlaneCount++;
+                futures.add(projectionExecutor.submit(task));
             }
-            if (mean)
+            for (Future<T> future : futures)
             {
-                projectedValue = projectedValue / projectedPlaneCount;
+                results.add(future.get());
             }
-            if (projectedValue > planeMaximum)
+            return results;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InternalException("Interrupted while projecting");
+        }
+        catch (ExecutionException e)
+        {
+            Throwable t = e.getCause();
+            if (t instanceof RuntimeException)
             {
-                projectedValue = planeMaximum;
+                throw (RuntimeException) t;
             }
-            ctx.to.setPixelValue(i, projectedValue);
-            if (doMinMax)
+            throw new InternalException("Error projecting: " + t);
+        }
+        finally
+        {
+            for (Future<T> future : futures)
             {
-                minimum = projectedValue < minimum? projectedValue : minimum;
-                maximum = projectedValue > maximum? projectedValue : maximum;
+                future.cancel(true);
             }
         }
-        ctx.minimum = minimum;
-        ctx.maximum = maximum;
-    }
-    
-    /**
-     * Stores the context of a projection operation.
-     * 
-     * Class is static to prevent any instances from holding onto
-     * {@link ProjectionBean} instances.
-     *
-     * @author Chris Allan &nbsp;&nbsp;&nbsp;&nbsp; <a
-     *         href="mailto:callan@blackcat.ca">callan@blackcat.ca</a>
-     * @since OMERO-Beta3.1
-     */
-    private static class ProjectionContext
-    {
-        /** The Pixels set we're currently working on. */
-        public Pixels pixels;
-        
-        /** Count of the number of pixels per plane for <code>pixels</code>. */
-        public int planeSizeInPixels;
-        
-        /** Current minimum for the projected pixel data. */
-        public double minimum = Double.MAX_VALUE;
-        
-        /** Current maximum for the projected pixel data. */
-        public double maximum = Double.MIN_VALUE;
-        
-        /** The raw pixel data from the stack to project from. */
-        public PixelData from;
-        
-        /** The raw pixel data buffer to project into. */
-        public PixelData to;
     }
 }
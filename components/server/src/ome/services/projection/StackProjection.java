@@ -0,0 +1,441 @@
+/*
+ *   Copyright 2014 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.projection;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import ome.api.IProjection;
+import ome.conditions.InternalException;
+import ome.util.PixelData;
+
+/**
+ * Projection of the optical sections of a single channel and timepoint.
+ * The sections are {@link #add(PixelData) added} one plane at a time and
+ * accumulated into a primitive array matching the type of the source
+ * pixels, <code>long</code> values for integer pixel types and
+ * <code>double</code> values for floating point pixel types. Given an
+ * executor, each plane is split into bands of rows which are accumulated
+ * concurrently.
+ *
+ * Instances are not thread safe; separate projections may however be
+ * computed on separate threads.
+ *
+ * @since 5.1
+ */
+public class StackProjection
+{
+    /** One of the algorithms declared by {@link IProjection}. */
+    private final int algorithm;
+
+    /** The width of the planes. */
+    private final int sizeX;
+
+    /** The number of pixels per plane. */
+    private final int planeSizeInPixels;
+
+    /** The optical sections making up the projection. */
+    private final int[] sections;
+
+    /** The executor accumulating bands, or <code>null</code>. */
+    private final ExecutorService executor;
+
+    /** The number of bands each plane is split into. */
+    private final int bands;
+
+    /** Accumulated values for integer source pixel types. */
+    private long[] integers;
+
+    /** Accumulated values for floating point source pixel types. */
+    private double[] reals;
+
+    /** Minimum of the projected pixel data. */
+    private double minimum = Double.MAX_VALUE;
+
+    /** Maximum of the projected pixel data. */
+    private double maximum = Double.MIN_VALUE;
+
+    /**
+     * Creates a new projection.
+     * @param algorithm One of the algorithms declared by
+     * {@link IProjection}.
+     * @param sizeX The width of the planes.
+     * @param sizeY The height of the planes.
+     * @param stepping Stepping value to use while calculating the projection.
+     * @param start Optical section to start projecting from.
+     * @param end Optical section to finish projecting.
+     * @param executor The executor on which bands of a plane are accumulated.
+     * If <code>null</code> planes are accumulated on the calling thread.
+     * @param bands The number of bands each plane is split into.
+     * @throws IllegalArgumentException If the algorithm is unknown.
+     */
+    public StackProjection(int algorithm, int sizeX, int sizeY, int stepping,
+                           int start, int end, ExecutorService executor,
+                           int bands)
+    {
+        this.algorithm = algorithm;
+        this.sizeX = sizeX;
+        this.planeSizeInPixels = sizeX * sizeY;
+        this.executor = executor;
+        this.bands = executor == null? 1 : Math.max(1, Math.min(bands, sizeY));
+        // The mean and sum intensity projections have always excluded the
+        // end section.
+        int last;
+        switch (algorithm)
+        {
+            case IProjection.MAXIMUM_INTENSITY:
+                last = end;
+                break;
+            case IProjection.MEAN_INTENSITY:
+            case IProjection.SUM_INTENSITY:
+                last = end - 1;
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "Unknown algorithm: " + algorithm);
+        }
+        List<Integer> list = new ArrayList<Integer>();
+        for (int z = start; z <= last; z += stepping)
+        {
+            list.add(z);
+        }
+        sections = new int[list.size()];
+        for (int i = 0; i < sections.length; i++)
+        {
+            sections[i] = list.get(i);
+        }
+    }
+
+    /**
+     * Returns the optical sections which must be {@link #add(PixelData)
+     * added} to compute the projection.
+     * @return See above.
+     */
+    public int[] getSections()
+    {
+        return sections;
+    }
+
+    /**
+     * Returns the minimum of the pixel data written by the last call to
+     * {@link #write(PixelData)}.
+     * @return See above.
+     */
+    public double getMinimum()
+    {
+        return minimum;
+    }
+
+    /**
+     * Returns the maximum of the pixel data written by the last call to
+     * {@link #write(PixelData)}.
+     * @return See above.
+     */
+    public double getMaximum()
+    {
+        return maximum;
+    }
+
+    /**
+     * Accumulates an optical section into the projection.
+     * @param plane The pixel data of the section.
+     */
+    public void add(final PixelData plane)
+    {
+        if (integers == null && reals == null)
+        {
+            if (plane.isFloat())
+            {
+                reals = new double[planeSizeInPixels];
+            }
+            else
+            {
+                integers = new long[planeSizeInPixels];
+            }
+        }
+        run(new Band() {
+            public void run(int from, int to)
+            {
+                accumulate(plane, from, to);
+            }
+        });
+    }
+
+    /**
+     * Writes the projected plane, updating the minimum and maximum.
+     * @param to The pixel data to write into. Sum and mean intensity
+     * projections are clipped to the maximum of its type.
+     */
+    public void write(final PixelData to)
+    {
+        final double[][] minMax = new double[bands][];
+        final int[] band = new int[1];
+        run(new Band() {
+            public void run(int from, int end)
+            {
+                double[] rv = write(to, from, end);
+                synchronized (minMax)
+                {
+                    minMax[band[0]++] = rv;
+                }
+            }
+        });
+        for (double[] rv : minMax)
+        {
+            if (rv != null)
+            {
+                minimum = rv[0] < minimum? rv[0] : minimum;
+                maximum = rv[1] > maximum? rv[1] : maximum;
+            }
+        }
+    }
+
+    /**
+     * Range of pixels of a plane processed by one task.
+     */
+    private interface Band
+    {
+        void run(int from, int to);
+    }
+
+    /**
+     * Runs the task over the bands of a plane, on the executor if there is
+     * more than one band. Band boundaries are whole rows falling on byte
+     * boundaries so that bit pixels of separate bands never share a byte.
+     */
+    private void run(final Band task)
+    {
+        if (bands == 1)
+        {
+            task.run(0, planeSizeInPixels);
+            return;
+        }
+        int rows = planeSizeInPixels / sizeX;
+        int rowsPerBand = (rows + bands - 1) / bands;
+        List<Future<Object>> futures = new ArrayList<Future<Object>>(bands);
+        for (int row = 0; row < rows; row += rowsPerBand)
+        {
+            final int from = align(row * sizeX);
+            final int to = align(Math.min(rows, row + rowsPerBand) * sizeX);
+            if (from >= to)
+            {
+                continue;
+            }
+            futures.add(executor.submit(new Callable<Object>() {
+                public Object call()
+                {
+                    task.run(from, to);
+                    return null;
+                }
+            }));
+        }
+        try
+        {
+            for (Future<Object> future : futures)
+            {
+                future.get();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InternalException("Interrupted while projecting");
+        }
+        catch (ExecutionException e)
+        {
+            Throwable t = e.getCause();
+            if (t instanceof RuntimeException)
+            {
+                throw (RuntimeException) t;
+            }
+            throw new InternalException("Error projecting: " + t);
+        }
+        finally
+        {
+            for (Future<Object> future : futures)
+            {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private int align(int pixel)
+    {
+        return Math.min(planeSizeInPixels, (pixel + 7) & ~7);
+    }
+
+    /**
+     * Accumulates the pixels <code>[from, to)</code> of a plane.
+     */
+    private void accumulate(PixelData plane, int from, int to)
+    {
+        final boolean max = algorithm == IProjection.MAXIMUM_INTENSITY;
+        final boolean signed = plane.isSigned();
+        final ByteBuffer buf = plane.getData().duplicate();
+        buf.order(plane.getOrder());
+        buf.clear();
+        final long[] integers = this.integers;
+        final double[] reals = this.reals;
+        // Projections start from 0, so maximum intensity projections are
+        // never negative.
+        switch (plane.javaType())
+        {
+            case PixelData.BYTE:
+            {
+                final int mask = signed? -1 : 0xFF;
+                for (int i = from; i < to; i++)
+                {
+                    long v = buf.get(i) & mask;
+                    if (!max)
+                    {
+                        integers[i] += v;
+                    }
+                    else if (v > integers[i])
+                    {
+                        integers[i] = v;
+                    }
+                }
+                break;
+            }
+            case PixelData.SHORT:
+            {
+                final ShortBuffer shorts = buf.asShortBuffer();
+                final int mask = signed? -1 : 0xFFFF;
+                for (int i = from; i < to; i++)
+                {
+                    long v = shorts.get(i) & mask;
+                    if (!max)
+                    {
+                        integers[i] += v;
+                    }
+                    else if (v > integers[i])
+                    {
+                        integers[i] = v;
+                    }
+                }
+                break;
+            }
+            case PixelData.INT:
+            {
+                final IntBuffer ints = buf.asIntBuffer();
+                final long mask = signed? -1L : 0xFFFFFFFFL;
+                for (int i = from; i < to; i++)
+                {
+                    long v = ints.get(i) & mask;
+                    if (!max)
+                    {
+                        integers[i] += v;
+                    }
+                    else if (v > integers[i])
+                    {
+                        integers[i] = v;
+                    }
+                }
+                break;
+            }
+            case PixelData.FLOAT:
+            {
+                final FloatBuffer floats = buf.asFloatBuffer();
+                for (int i = from; i < to; i++)
+                {
+                    double v = floats.get(i);
+                    if (!max)
+                    {
+                        reals[i] += v;
+                    }
+                    else if (v > reals[i])
+                    {
+                        reals[i] = v;
+                    }
+                }
+                break;
+            }
+            case PixelData.DOUBLE:
+            {
+                final DoubleBuffer doubles = buf.asDoubleBuffer();
+                for (int i = from; i < to; i++)
+                {
+                    double v = doubles.get(i);
+                    if (!max)
+                    {
+                        reals[i] += v;
+                    }
+                    else if (v > reals[i])
+                    {
+                        reals[i] = v;
+                    }
+                }
+                break;
+            }
+            default:
+            {
+                for (int i = from; i < to; i++)
+                {
+                    long v = (long) plane.getPixelValue(i);
+                    if (!max)
+                    {
+                        integers[i] += v;
+                    }
+                    else if (v > integers[i])
+                    {
+                        integers[i] = v;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the pixels <code>[from, end)</code> of the projected plane.
+     * @return The minimum and maximum of the written pixels.
+     */
+    private double[] write(PixelData to, int from, int end)
+    {
+        final boolean mean = algorithm == IProjection.MEAN_INTENSITY;
+        final boolean clip = algorithm != IProjection.MAXIMUM_INTENSITY;
+        final double planeMaximum = to.getMaximum();
+        final int count = sections.length;
+        double minimum = Double.MAX_VALUE;
+        double maximum = Double.MIN_VALUE;
+        double projectedValue;
+        for (int i = from; i < end; i++)
+        {
+            if (integers != null)
+            {
+                projectedValue = integers[i];
+            }
+            else if (reals != null)
+            {
+                projectedValue = reals[i];
+            }
+            else
+            {
+                projectedValue = 0;
+            }
+            if (mean)
+            {
+                projectedValue = projectedValue / count;
+            }
+            if (clip && projectedValue > planeMaximum)
+            {
+                projectedValue = planeMaximum;
+            }
+            to.setPixelValue(i, projectedValue);
+            minimum = projectedValue < minimum? projectedValue : minimum;
+            maximum = projectedValue > maximum? projectedValue : maximum;
+        }
+        return new double[] { minimum, maximum };
+    }
+}
@@ -7,12 +7,13 @@
 package ome.services.sessions.state;
 
 import java.sql.Timestamp;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.Collections;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import net.sf.ehcache.CacheManager;
@@ -45,6 +46,9 @@ import org.springframework.context.ApplicationContextAware;
  *
  * Uses {@link ConcurrentHashMap} and various implementations from
  * java.util.concurrent.atomic to provide a lock-free implementation.
+ * Lookups only read the map: the access time and hit count of a session are
+ * atomics of its entry, and {@link #doUpdate()} only reloads the sessions
+ * which are due, swapping each entry in on its own.
  *
  * 
  * @author Josh Moore, josh at glencoesoftware.com
@@ -93,55 +97,71 @@ public class SessionCache implements ApplicationContextAware {
         final AtomicInteger error = new AtomicInteger(0);
 
         final SessionContext sessionContext;
-        final long lastAccessTime;
-        final long hitCount;
 
         /**
-         * Initial creation of a Data instance when a new session is
-         * added to the cache.
+         * Updated in place on every lookup so that reading a session never
+         * writes to the map.
          */
-        Data(SessionContext sc) {
-            this(sc, System.currentTimeMillis(), 1);
-        }
+        final AtomicLong lastAccessTime;
+
+        final AtomicLong hitCount;
 
         /**
-         * Copy constructor which uses the current time for {@link #lastAccessTime} and
-         * increments {@link #hitCount} by one. Used when updating the access
-         * time for a session.
+         * Time at which {@link #sessionContext} was loaded. Used by
+         * {@link SessionCache#doUpdate()} to find the sessions due a reload.
          */
-        Data(Data old) {
-            this(old, true);
-        }
+        final long loaded;
 
         /**
-         * Copy constructor which uses either the current time for {@link #lastAccessTime}
-         * (if reset is true) or the previous lastAccessTime (if reset is false); and
-         * increments {@link #hitCount} by one. Used when reloading the session.
+         * Initial creation of a Data instance when a new session is
+         * added to the cache.
          */
-        Data(Data old, boolean reset) {
-            this(old, old.sessionContext, reset);
+        Data(SessionContext sc) {
+            this(sc, System.currentTimeMillis(), 1);
         }
 
         /**
-         * Like {@link Data#Data(Data, boolean)} but allows setting the
-         * {@link SessionContext} which should be stored in the new instance.
-         * This is used on reload. See {@link SessionCache#doUpdate()}.
-         * @param old
-         * @param ctx
-         * @param reset
+         * Copy constructor which keeps the previous {@link #lastAccessTime}
+         * and increments {@link #hitCount} by one, but stores the given
+         * {@link SessionContext}. This is used on reload. See
+         * {@link SessionCache#doUpdate()}.
          */
-        Data(Data old, SessionContext ctx, boolean reset) {
-            this(ctx, reset ? System.currentTimeMillis() : old.lastAccessTime, old.hitCount+1);
+        Data(Data old, SessionContext ctx) {
+            this(ctx, old.lastAccessTime.get(), old.hitCount.get() + 1);
         }
 
         Data(SessionContext sc, long last, long count) {
             this.sessionContext = sc;
-            this.lastAccessTime = last;
-            this.hitCount = count;
+            this.lastAccessTime = new AtomicLong(last);
+            this.hitCount = new AtomicLong(count);
+            this.loaded = System.currentTimeMillis();
             // clear context
             sc.getSession().getDetails().setContexts(null);
         }
 
+        /**
+         * Ups the access information. Only the first access within a given
+         * millisecond writes the time.
+         */
+        void touch() {
+            hitCount.incrementAndGet();
+            accessed(System.currentTimeMillis());
+        }
+
+        /**
+         * Moves {@link #lastAccessTime} forward to the given time unless a
+         * later access has already been recorded.
+         */
+        void accessed(long time) {
+            long last;
+            do {
+                last = lastAccessTime.get();
+                if (last >= time) {
+                    return;
+                }
+            } while (!lastAccessTime.compareAndSet(last, time));
+        }
+
     }
 
     /**
@@ -170,45 +190,30 @@ public class SessionCache implements ApplicationContextAware {
          * Initial creation of State, used on cache creation.
          */
         State() {
-            this.lastUpdateRun = System.currentTimeMillis();
-            this.lastUpdateRequest = this.lastUpdateRun - 1;
+            this(System.currentTimeMillis());
+        }
+
+        private State(long run) {
+            this(run, run - 1);
         }
 
         /**
-         * Update constructor for State, which is used when a new update request
-         * is received by the cache.
-         *
-         * Specifies that a new request has occurred, but the old run
-         * is kept.
+         * Update constructor for State, which is used when a new update
+         * request is received by the cache or an update has run.
          */
-        State(State old, long request) {
-            this.lastUpdateRun = old.lastUpdateRun;
+        State(long run, long request) {
+            this.lastUpdateRun = run;
             this.lastUpdateRequest = request;
         }
 
-
         /**
-         * Whether or not {@link #doUpdate()} should run. Returns immediately
-         * if {@link #active} contains true.
+         * Whether or not the given session was loaded before the last update
+         * request or more than <code>forceUpdateInterval</code> milliseconds
+         * before <code>now</code>.
          */
-        boolean checkNeedsUpdate(long forceUpdateInterval) {
-
-            // Check whether entry is required.
-            if (lastUpdateRun < 0) {
-                // Then we are currently running
-                return false;
-            }
-
-            if (lastUpdateRun <= lastUpdateRequest) {
-                return true;
-            }
-
-            long timed = System.currentTimeMillis() - forceUpdateInterval;
-            if (lastUpdateRun <= timed) {
-                return true;
-            }
-
-            return false;
+        boolean needsReload(Data data, long now, long forceUpdateInterval) {
+            return data.loaded <= lastUpdateRequest
+                || data.loaded <= now - forceUpdateInterval;
         }
 
     }
@@ -216,7 +221,7 @@ public class SessionCache implements ApplicationContextAware {
     /**
      *
      */
-    private final Map<String, Data> sessions = new ConcurrentHashMap<String, Data>();
+    private final ConcurrentMap<String, Data> sessions = new ConcurrentHashMap<String, Data>();
 
     /**
      *
@@ -284,14 +289,16 @@ public class SessionCache implements ApplicationContextAware {
     }
 
     public boolean addSessionCallback(String session, SessionCallback cb) {
-        synchronized (sessionCallbackMap) {
-            Set<SessionCallback> set = sessionCallbackMap.get(session);
+        Set<SessionCallback> set = sessionCallbackMap.get(session);
+        if (set == null) {
+            Set<SessionCallback> created = Collections.newSetFromMap(
+                    new ConcurrentHashMap<SessionCallback, Boolean>());
+            set = sessionCallbackMap.putIfAbsent(session, created);
             if (set == null) {
-                set = new HashSet<SessionCallback>();
-                sessionCallbackMap.put(session, set);
+                set = created;
             }
-            return set.add(cb);
         }
+        return set.add(cb);
     }
 
     public boolean removeSessionCallback(String session, SessionCallback cb) {
@@ -325,20 +332,29 @@ public class SessionCache implements ApplicationContextAware {
      * @param replacement
      */
     public void refresh(String uuid, SessionContext replacement) {
-        Data data = getDataNullOrThrowOnTimeout(uuid, true);
-        refresh(uuid, data, replacement);
+        Data data;
+        do {
+            data = getDataNullOrThrowOnTimeout(uuid, true);
+        } while (!refresh(uuid, data, replacement));
     }
 
     /**
+     * Replaces <code>data</code> unless it has been removed or replaced
+     * concurrently, in which case false is returned.
      *
      * @param uuid
      * @param data
      * @param replacement
      */
-    private void refresh(String uuid, Data data, SessionContext replacement) {
+    private boolean refresh(String uuid, Data data, SessionContext replacement) {
         // Adding and upping hit information.
-        Data fresh = new Data(data, replacement, false);
-        this.sessions.put(uuid, fresh);
+        Data fresh = new Data(data, replacement);
+        if (!this.sessions.replace(uuid, data, fresh)) {
+            return false;
+        }
+        // Lookups may still have touched the old instance.
+        fresh.accessed(data.lastAccessTime.get());
+        return true;
     }
 
     /**
@@ -354,7 +370,7 @@ public class SessionCache implements ApplicationContextAware {
         Data data = getDataNullOrThrowOnTimeout(uuid, true);
 
         // Up'ing access time
-        this.sessions.put(uuid, new Data(data));
+        data.touch();
         return data.sessionContext;
     }
 
@@ -390,8 +406,8 @@ public class SessionCache implements ApplicationContextAware {
             }
         }
 
-        long lastAccess = data.lastAccessTime;
-        long hits = data.hitCount;
+        long lastAccess = data.lastAccessTime.get();
+        long hits = data.hitCount.get();
 
         // Get session info
         SessionContext ctx = data.sessionContext;
@@ -451,7 +467,7 @@ public class SessionCache implements ApplicationContextAware {
         log.info("Destroying session " + uuid + " due to : " + reason);
 
         // Announce to all callbacks.
-        Set<SessionCallback> cbs = sessionCallbackMap.get(uuid);
+        Set<SessionCallback> cbs = sessionCallbackMap.remove(uuid);
         if (cbs != null) {
             for (SessionCallback cb : cbs) {
                 try {
@@ -550,23 +566,26 @@ public class SessionCache implements ApplicationContextAware {
             time = ugue.getTimestamp();
         }
 
-        State old = state.get();
-        state.set(new State(old, time));
+        State old;
+        do {
+            old = state.get();
+            if (old.lastUpdateRequest >= time) {
+                return;
+            }
+        } while (!state.compareAndSet(old, new State(old.lastUpdateRun, time)));
     }
 
     /**
-     * Will only ever be accessed by a single thread. Rechecks the target update
-     * time again in case a second write thread was blocking the current one.
-     * {@link #lastUpdateRun} gets set to a negative value to specify that this
-     * method is currently running.
+     * Will only ever be accessed by a single thread. Removes the sessions
+     * which have timed out and reloads those which were loaded before the
+     * last update request or more than {@link #forceUpdateInterval}
+     * milliseconds ago. Since sessions are loaded at different times, the
+     * periodic reloads are spread over the runs rather than all sessions
+     * being reloaded at once. Each session is reloaded and swapped in on its
+     * own so that lookups never wait on this method.
      */
     public void doUpdate() {
 
-        // Check whether entry is required.
-        if (!state.get().checkNeedsUpdate(forceUpdateInterval)) {
-            return;
-        }
-
         // Prevent recursion!
         // ------------------
         // To prevent another call from entering this block it's
@@ -576,16 +595,38 @@ public class SessionCache implements ApplicationContextAware {
         }
 
         try {
-            final Set<String> ids = sessions.keySet();
-            log.info("Synchronizing session cache. Count = " + ids.size());
+            final long now = System.currentTimeMillis();
+            final State current = state.get();
             final StopWatch sw = new Slf4JStopWatch();
-            for (String id : ids) {
-                reload(id);
+            int count = 0, reloaded = 0, removed = 0;
+            for (String id : sessions.keySet()) {
+                count++;
+                final Data data = sessions.get(id);
+                if (data == null) {
+                    continue; // Removed concurrently
+                }
+                if (getDataNullOrThrowOnTimeout(id, false) == null) {
+                    internalRemove(id, "Timeout");
+                    removed++;
+                } else if (current.needsReload(data, now,
+                        forceUpdateInterval)) {
+                    reload(id);
+                    reloaded++;
+                }
             }
 
             sw.stop("omero.sessions.synchronization");
-            log.info(String.format("Synchronization took %s ms.",
-                    sw.getElapsedTime()));
+            if (reloaded > 0 || removed > 0) {
+                log.info(String.format("Synchronized session cache. Count = "
+                        + "%s, reloaded = %s, timed out = %s in %s ms.",
+                        count, reloaded, removed, sw.getElapsedTime()));
+            }
+
+            State old;
+            do {
+                old = state.get();
+            } while (!state.compareAndSet(old,
+                    new State(now, old.lastUpdateRequest)));
 
         } catch (Exception e) {
             log.error("Error synchronizing cache", e);
@@ -623,6 +664,7 @@ public class SessionCache implements ApplicationContextAware {
             // made. Therefore the instance will be removed.
             log.warn("Removing session on get error of " + id, e);
             internalRemove(id, "Get error");
+            return;
         }
 
         try {
@@ -631,8 +673,8 @@ public class SessionCache implements ApplicationContextAware {
             SessionContext replacement = listener.reload(ctx);
             if (replacement == null) {
                 internalRemove(id, "Replacement null");
-            } else {
-                refresh(id, data, replacement);
+            } else if (!refresh(id, data, replacement)) {
+                log.debug("Session changed during reload of " + id);
             }
         } catch (Exception e) {
             // If an exception occurs it MAY be transient, therefore
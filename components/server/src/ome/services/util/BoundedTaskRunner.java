@@ -0,0 +1,134 @@
+/*
+ *   Copyright 2014 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs {@link ResourceTask}s on an executor on behalf of a single caller,
+ * keeping at most a given number in flight, and hands each completed task
+ * back to a {@link Collector} on the calling thread. Not thread safe.
+ * {@link #close()} must be called once done so that the tasks which never
+ * got to run release their resources.
+ *
+ * @since 5.1
+ */
+public class BoundedTaskRunner<V, T extends ResourceTask<V>> {
+
+    /**
+     * Receives the outcome of each task, on the thread which submitted it.
+     */
+    public interface Collector<V, T> {
+
+        /**
+         * The task completed.
+         * @param task the task
+         * @param result its result
+         */
+        void completed(T task, V result);
+
+        /**
+         * The task failed.
+         * @param task the task
+         * @param cause why it failed
+         */
+        void failed(T task, Throwable cause);
+    }
+
+    private final CompletionService<V> completionService;
+
+    private final int limit;
+
+    private final Map<Future<V>, T> inFlight = new HashMap<Future<V>, T>();
+
+    /**
+     * @param executor the executor to run the tasks
+     * @param limit the maximum number of tasks in flight
+     */
+    public BoundedTaskRunner(Executor executor, int limit) {
+        this.completionService = new ExecutorCompletionService<V>(executor);
+        this.limit = Math.max(1, limit);
+    }
+
+    /**
+     * @return if the next task should not be submitted until a task in flight
+     * has been {@link #collect(Collector) collected}
+     */
+    public boolean isFull() {
+        return inFlight.size() >= limit;
+    }
+
+    /**
+     * @return if no tasks are in flight
+     */
+    public boolean isEmpty() {
+        return inFlight.isEmpty();
+    }
+
+    /**
+     * Submits a task to the executor. If the executor rejects it, the task
+     * is discarded before the exception is thrown.
+     * @param task the task
+     */
+    public void submit(T task) {
+        try {
+            inFlight.put(completionService.submit(task), task);
+        } catch (RuntimeException e) {
+            task.discard();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for a task in flight to complete and hands it to the collector.
+     * @param collector the collector
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void collect(Collector<V, ? super T> collector)
+            throws InterruptedException {
+        final Future<V> future = completionService.take();
+        final T task = inFlight.remove(future);
+        final V result;
+        try {
+            result = future.get();
+        } catch (ExecutionException e) {
+            collector.failed(task, e.getCause());
+            return;
+        }
+        collector.completed(task, result);
+    }
+
+    /**
+     * Waits for every task in flight and hands each to the collector.
+     * @param collector the collector
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void collectAll(Collector<V, ? super T> collector)
+            throws InterruptedException {
+        while (!isEmpty()) {
+            collect(collector);
+        }
+    }
+
+    /**
+     * Cancels the tasks still in flight. Those which have not started are
+     * discarded so that they release their resources; those which are running
+     * release their own.
+     */
+    public void close() {
+        for (final Map.Entry<Future<V>, T> entry : inFlight.entrySet()) {
+            entry.getKey().cancel(true);
+            entry.getValue().discard();
+        }
+        inFlight.clear();
+    }
+}
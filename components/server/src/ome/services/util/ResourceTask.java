@@ -0,0 +1,64 @@
+/*
+ *   Copyright 2014 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+
+package ome.services.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A task which owns resources, such as a renderer or a pixel buffer, that
+ * were handed to it before it was submitted to an executor. The resources are
+ * released exactly once: by the task once it has run or, if it never gets to
+ * run because it was cancelled or rejected, by {@link #discard()}.
+ *
+ * @since 5.1
+ */
+public abstract class ResourceTask<V> implements Callable<V> {
+
+    /** Set by whichever of {@link #call()} and {@link #discard()} is first. */
+    private final AtomicBoolean claimed = new AtomicBoolean();
+
+    /**
+     * Does the work of the task. The resources are released afterwards.
+     * @return the result of the task
+     * @throws Exception if the work failed
+     */
+    protected abstract V run() throws Exception;
+
+    /**
+     * Releases the resources owned by the task.
+     */
+    protected abstract void release();
+
+    /**
+     * Runs the task then releases its resources.
+     * @throws CancellationException if the task has already been discarded
+     */
+    public final V call() throws Exception {
+        if (!claimed.compareAndSet(false, true)) {
+            throw new CancellationException("Task discarded before it ran.");
+        }
+        try {
+            return run();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Releases the resources of the task if it has not started running, and
+     * prevents it from doing so.
+     * @return if the task had not started and is now discarded
+     */
+    public final boolean discard() {
+        if (!claimed.compareAndSet(false, true)) {
+            return false;
+        }
+        release();
+        return true;
+    }
+}
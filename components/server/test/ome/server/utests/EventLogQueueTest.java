@@ -26,6 +26,7 @@ import java.util.Map;
 import ome.model.containers.Dataset;
 import ome.model.containers.Project;
 import ome.model.meta.EventLog;
+import ome.services.eventlogs.EventLogFailure;
 import ome.services.eventlogs.EventLogQueue;
 import ome.util.SqlAction;
 
@@ -181,4 +182,47 @@ public class EventLogQueueTest extends MockObjectTestCase {
         q.setStop(false);
         assertTrue(q.hasNext());
     }
+
+    @Test
+    public void testManyEntriesAcrossGrowth() {
+        q.setBatchSize(100000);
+        for (long i = 0; i < 5000; i++) {
+            results.add(project(i, "INSERT", 0));
+            results.add(dataset(i * 7, "UPDATE", 0));
+        }
+        results.add(project(42, "DELETE", 0));
+        assertTrue(q.hasNext());
+        for (long i = 0; i < 5000; i++) {
+            EventLog log = q.next();
+            assertEquals(i, log.getEntityId().longValue());
+            assertEquals(i == 42 ? "DELETE" : "INSERT", log.getAction());
+            assertTrue(q.hasNext());
+            match(fields("objType", Dataset.class.getName(), "objId", i * 7));
+            assertEquals(i < 4999, q.hasNext());
+        }
+    }
+
+    @Test
+    public void testRequeueAfterNext() {
+        results.add(project(1, "INSERT", 0));
+        assertTrue(q.hasNext());
+        match(fields("objId", 1L));
+        results.add(project(1, "UPDATE", 0));
+        assertTrue(q.hasNext());
+        match(fields("objId", 1L, "action", "UPDATE"));
+        assertFalse(q.hasNext());
+    }
+
+    @Test
+    public void testFailureOfEarlierEntry() {
+        results.add(project(1, "INSERT", 0));
+        results.add(project(2, "INSERT", 0));
+        assertTrue(q.hasNext());
+        EventLog first = q.next();
+        assertTrue(q.hasNext());
+        EventLog second = q.next();
+        q.onApplicationEvent(new EventLogFailure(q, first, new Exception()));
+        q.onApplicationEvent(new EventLogFailure(q, second, new Exception()));
+        assertFalse(q.hasNext());
+    }
 }
@@ -0,0 +1,121 @@
+/*
+ *   Copyright 2014 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+package ome.server.utests.fileparsers;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import ome.io.nio.OriginalFilesService;
+import ome.model.core.OriginalFile;
+import ome.services.fulltext.FileParser;
+import ome.services.fulltext.FullTextBridge;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class FullTextBridgePrefetchUnitTest extends TestCase {
+
+    File root;
+
+    ExecutorService executor;
+
+    CountingParser parser;
+
+    TestBridge bridge;
+
+    static class CountingParser extends FileParser {
+
+        final AtomicInteger calls = new AtomicInteger();
+
+        volatile Thread thread;
+
+        @Override
+        public Iterable<Reader> doParse(File file) throws Exception {
+            calls.incrementAndGet();
+            thread = Thread.currentThread();
+            return wrap(new StringReader(FileUtils.readFileToString(file)));
+        }
+    }
+
+    static class TestBridge extends FullTextBridge {
+
+        TestBridge(OriginalFilesService files, Map<String, FileParser> parsers) {
+            super(files, parsers);
+        }
+
+        String contents(OriginalFile file) throws Exception {
+            StringBuilder sb = new StringBuilder();
+            for (Reader reader : parse(file, files, parsers)) {
+                sb.append(new BufferedReader(reader).readLine());
+            }
+            return sb.toString().trim();
+        }
+    }
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        root = File.createTempFile("prefetch", "");
+        root.delete();
+        root.mkdirs();
+        OriginalFilesService files = new OriginalFilesService(
+                root.getAbsolutePath());
+        for (long id = 1; id <= 2; id++) {
+            FileUtils.writeStringToFile(new File(files.getFilesPath(id)),
+                    "contents of " + id);
+        }
+        parser = new CountingParser();
+        Map<String, FileParser> parsers = new HashMap<String, FileParser>();
+        parsers.put("text/plain", parser);
+        bridge = new TestBridge(files, parsers);
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterMethod
+    public void teardown() throws Exception {
+        executor.shutdownNow();
+        FileUtils.deleteDirectory(root);
+    }
+
+    OriginalFile file(long id, long size) {
+        OriginalFile file = new OriginalFile(id, true);
+        file.setMimetype("text/plain");
+        file.setSize(size);
+        return file;
+    }
+
+    @Test
+    public void testPrefetchParsesEachFileOnce() throws Exception {
+        bridge.prefetch(Arrays.asList(file(1, 13), file(1, 13), file(2, 13)),
+                executor);
+        assertEquals(2, parser.calls.get());
+        assertNotSame(Thread.currentThread(), parser.thread);
+        assertEquals("contents of 1", bridge.contents(file(1, 13)));
+        assertEquals("contents of 2", bridge.contents(file(2, 13)));
+        assertEquals(2, parser.calls.get());
+        bridge.clearPrefetched();
+        assertEquals("contents of 1", bridge.contents(file(1, 13)));
+        assertEquals(3, parser.calls.get());
+    }
+
+    @Test
+    public void testLargeFilesAreNotPrefetched() throws Exception {
+        bridge.prefetch(Arrays.asList(
+                file(1, FullTextBridge.MAX_PREFETCH_SIZE + 1)), executor);
+        assertEquals(0, parser.calls.get());
+        assertEquals("contents of 1", bridge.contents(file(1, 13)));
+        assertEquals(1, parser.calls.get());
+    }
+}
@@ -10,6 +10,7 @@ import static ome.model.internal.Permissions.Right.READ;
 import static ome.model.internal.Permissions.Role.GROUP;
 import static ome.model.internal.Permissions.Role.WORLD;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.hibernate.Filter;
@@ -35,7 +36,10 @@ import ome.model.meta.ExperimenterGroup;
 import ome.security.AdminAction;
 import ome.security.SecureAction;
 import ome.security.SecurityFilter;
+import ome.security.SystemTypes;
+import ome.security.basic.BasicACLVoter;
 import ome.security.basic.OneGroupSecurityFilter;
+import ome.security.basic.TokenHolder;
 
 @Test
 public class SecuritySystemTest extends AbstractBasicSecuritySystemTest {
@@ -531,6 +535,57 @@ public class SecuritySystemTest extends AbstractBasicSecuritySystemTest {
 
     }
 
+    public void testAllowLoadDecidesOncePerGroupOwnerAndPermissions() {
+        final int[] calls = new int[1];
+        final BasicACLVoter counting = new BasicACLVoter(cd,
+                new SystemTypes(), new TokenHolder(),
+                new OneGroupSecurityFilter() {
+                    @Override
+                    public boolean passesFilter(Session s, Details d,
+                            ome.system.EventContext c) {
+                        calls[0]++;
+                        return super.passesFilter(s, d, c);
+                    }
+                });
+
+        prepareMocksWithUserDetails(false, Permissions.PRIVATE);
+        sec.loadEventContext(false);
+
+        List<Image> images = new ArrayList<Image>();
+        for (long id = 1; id <= 6; id++) {
+            Image i = new Image(id, true);
+            i.getDetails().setOwner(new Experimenter(id % 2 + 1, false));
+            i.getDetails().setGroup(new ExperimenterGroup(id < 5 ? 2L : 3L,
+                    false));
+            i.getDetails().setPermissions(new Permissions());
+            images.add(i);
+        }
+        boolean[] allowed = new boolean[images.size()];
+        for (int i = 0; i < allowed.length; i++) {
+            Image image = images.get(i);
+            allowed[i] = counting.allowLoad(null, Image.class,
+                    image.getDetails(), image.getId());
+        }
+        assertEquals(4, calls[0]); // 2 owners in 2 groups
+        for (int i = 0; i < allowed.length; i++) {
+            Image image = images.get(i);
+            assertEquals(aclVoter.allowLoad(null, Image.class,
+                    image.getDetails(), image.getId()), allowed[i]);
+        }
+
+        // A new call starts with a new context.
+        sec.invalidateEventContext();
+        prepareMocksWithUserDetails(false, Permissions.PRIVATE);
+        sec.loadEventContext(false);
+        for (Image image : images) {
+            counting.allowLoad(null, Image.class, image.getDetails(),
+                    image.getId());
+        }
+        assertEquals(8, calls[0]);
+
+        sec.invalidateEventContext();
+    }
+
     /*
      * Test method for 'ome.security.SecuritySystem.transientDetails(IObject)'
      */
@@ -7,6 +7,7 @@
 package ome.server.utests.sessions;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -359,6 +360,34 @@ public class SessionCacheTest extends TestCase {
         }
     }
 
+    @Test
+    public void testUpdateOnlyReloadsSessionsLoadedBeforeTheRequest()
+            throws Exception {
+        final Session s1 = sess();
+        final Session s2 = sess();
+        final List<String> reloaded = Collections
+                .synchronizedList(new ArrayList<String>());
+        cache.setStaleCacheListener(new StaleCacheListener() {
+            public SessionContext reload(SessionContext context) {
+                reloaded.add(context.getSession().getUuid());
+                return context;
+            }
+        });
+        cache.putSession(s1.getUuid(), sc(s1));
+        Thread.sleep(10L);
+        cache.updateEvent(new UserGroupUpdateEvent(this));
+        Thread.sleep(10L);
+        cache.putSession(s2.getUuid(), sc(s2));
+        cache.doUpdate();
+        assertEquals(Arrays.asList(s1.getUuid()), reloaded);
+
+        // Already reloaded since the request.
+        cache.doUpdate();
+        assertEquals(1, reloaded.size());
+        cache.getSessionContext(s1.getUuid());
+        cache.getSessionContext(s2.getUuid());
+    }
+
     /**
      * Note: the listener logic was removed from the cache. The new semantics
      * of when things should be cleaned up needs to be removed along with the
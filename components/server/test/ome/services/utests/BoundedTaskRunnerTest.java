@@ -0,0 +1,205 @@
+/*
+ *   Copyright 2014 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+package ome.services.utests;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import ome.services.util.BoundedTaskRunner;
+import ome.services.util.ResourceTask;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that {@link BoundedTaskRunner}, as used to render the thumbnails of
+ * a set, bounds the tasks in flight, hands back each result with its own
+ * task, reports failures and releases the resources of every task exactly
+ * once, whether or not it ran.
+ */
+public class BoundedTaskRunnerTest extends TestCase {
+
+    ExecutorService executor;
+
+    @BeforeClass
+    public void startExecutor() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    static class Task extends ResourceTask<Integer> {
+
+        final int id;
+
+        final CountDownLatch start;
+
+        final AtomicInteger running;
+
+        final AtomicInteger maxRunning;
+
+        final AtomicInteger released = new AtomicInteger();
+
+        boolean ran;
+
+        Task(int id, CountDownLatch start, AtomicInteger running,
+                AtomicInteger maxRunning) {
+            this.id = id;
+            this.start = start;
+            this.running = running;
+            this.maxRunning = maxRunning;
+        }
+
+        @Override
+        protected Integer run() throws Exception {
+            ran = true;
+            int now = running.incrementAndGet();
+            synchronized (maxRunning) {
+                maxRunning.set(Math.max(maxRunning.get(), now));
+            }
+            try {
+                start.await();
+                // later tasks finish first
+                Thread.sleep(20 - id);
+                if (id % 5 == 3) {
+                    throw new IllegalStateException("task " + id);
+                }
+                return id * id;
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        @Override
+        protected void release() {
+            released.incrementAndGet();
+        }
+    }
+
+    static class Collector implements
+            BoundedTaskRunner.Collector<Integer, Task> {
+
+        final Map<Integer, Integer> results = new HashMap<Integer, Integer>();
+
+        final Map<Integer, Throwable> failures =
+            new HashMap<Integer, Throwable>();
+
+        public void completed(Task task, Integer result) {
+            results.put(task.id, result);
+        }
+
+        public void failed(Task task, Throwable cause) {
+            failures.put(task.id, cause);
+        }
+    }
+
+    @Test
+    public void testResultsAndFailures() throws Exception {
+        final CountDownLatch start = new CountDownLatch(0);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final List<Task> tasks = new ArrayList<Task>();
+        final Collector collector = new Collector();
+        final BoundedTaskRunner<Integer, Task> runner =
+            new BoundedTaskRunner<Integer, Task>(executor, 3);
+        try {
+            for (int id = 0; id < 12; id++) {
+                if (runner.isFull()) {
+                    runner.collect(collector);
+                }
+                Task task = new Task(id, start, running, maxRunning);
+                tasks.add(task);
+                runner.submit(task);
+            }
+            runner.collectAll(collector);
+        } finally {
+            runner.close();
+        }
+        assertTrue(maxRunning.get() <= 3);
+        assertEquals(10, collector.results.size());
+        assertEquals(2, collector.failures.size());
+        for (Task task : tasks) {
+            if (task.id % 5 == 3) {
+                assertTrue(collector.failures.get(task.id)
+                        instanceof IllegalStateException);
+                assertEquals("task " + task.id,
+                        collector.failures.get(task.id).getMessage());
+            } else {
+                assertEquals(Integer.valueOf(task.id * task.id),
+                        collector.results.get(task.id));
+            }
+            assertTrue(task.ran);
+            assertEquals(1, task.released.get());
+        }
+    }
+
+    @Test
+    public void testCloseReleasesTasksNotRun() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final ExecutorService single = Executors.newSingleThreadExecutor();
+        final List<Task> tasks = new ArrayList<Task>();
+        final BoundedTaskRunner<Integer, Task> runner =
+            new BoundedTaskRunner<Integer, Task>(single, 4);
+        try {
+            for (int id = 0; id < 4; id++) {
+                Task task = new Task(id, start, running, maxRunning);
+                tasks.add(task);
+                runner.submit(task);
+            }
+            while (running.get() == 0) {
+                Thread.sleep(1);
+            }
+            runner.close();
+        } finally {
+            single.shutdown();
+        }
+        assertTrue(single.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(tasks.get(0).ran);
+        for (Task task : tasks) {
+            if (task != tasks.get(0)) {
+                assertFalse(task.ran);
+            }
+            assertEquals(1, task.released.get());
+        }
+    }
+
+    @Test
+    public void testRejectedTaskReleased() {
+        final Executor rejecting = new Executor() {
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        };
+        final BoundedTaskRunner<Integer, Task> runner =
+            new BoundedTaskRunner<Integer, Task>(rejecting, 2);
+        final Task task = new Task(0, new CountDownLatch(0),
+                new AtomicInteger(), new AtomicInteger());
+        try {
+            runner.submit(task);
+            fail("the task must be rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertTrue(runner.isEmpty());
+        assertFalse(task.ran);
+        assertEquals(1, task.released.get());
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *   Copyright 2014 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+package ome.services.utests;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import junit.framework.TestCase;
+import ome.logic.JpegEncoderPool;
+
+import org.testng.annotations.Test;
+
+/**
+ * Compares the output of {@link JpegEncoderPool} with a JPEG written by a
+ * newly created writer.
+ */
+public class JpegEncoderPoolTest extends TestCase {
+
+    BufferedImage image(int seed) {
+        BufferedImage image = new BufferedImage(64, 48,
+                BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, (x * 4 + seed) << 16 | (y * 5) << 8
+                        | ((x + y + seed) % 256));
+            }
+        }
+        return image;
+    }
+
+    byte[] expected(BufferedImage image, float quality) throws Exception {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam iwp = writer.getDefaultWriteParam();
+        iwp.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        iwp.setCompressionQuality(quality);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        ImageOutputStream ios = ImageIO.createImageOutputStream(stream);
+        writer.setOutput(ios);
+        writer.write(null, new IIOImage(image, null, null), iwp);
+        ios.close();
+        writer.dispose();
+        return stream.toByteArray();
+    }
+
+    byte[] compress(JpegEncoderPool pool, BufferedImage image, float quality)
+            throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        pool.compress(image, quality, stream);
+        return stream.toByteArray();
+    }
+
+    @Test
+    public void testSameOutputAcrossQualities() throws Exception {
+        JpegEncoderPool pool = new JpegEncoderPool(1);
+        float[] qualities = { 0.85f, 0.5f, 0.85f, 1.0f };
+        for (int i = 0; i < qualities.length; i++) {
+            BufferedImage image = image(i);
+            byte[] actual = compress(pool, image, qualities[i]);
+            assertTrue(Arrays.equals(
+                    expected(image, qualities[i]), actual));
+            BufferedImage decoded = ImageIO.read(
+                    new ByteArrayInputStream(actual));
+            assertEquals(image.getWidth(), decoded.getWidth());
+            assertEquals(image.getHeight(), decoded.getHeight());
+        }
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void testConcurrentCallsKeepAtMostMaxIdle() throws Exception {
+        final JpegEncoderPool pool = new JpegEncoderPool(2);
+        final BufferedImage image = image(7);
+        final byte[] expected = expected(image, 0.85f);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executor.submit(new Callable<byte[]>() {
+                    public byte[] call() throws Exception {
+                        return compress(pool, image, 0.85f);
+                    }
+                }));
+            }
+            for (Future<byte[]> future : futures) {
+                assertTrue(Arrays.equals(expected, future.get()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(pool.getIdleCount() <= 2);
+    }
+}
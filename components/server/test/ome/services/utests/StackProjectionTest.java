@@ -0,0 +1,148 @@
+/*
+ *   Copyright 2014 University of Dundee. All rights reserved.
+ *   Use is subject to license terms supplied in LICENSE.txt
+ */
+package ome.services.utests;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+import ome.api.IProjection;
+import ome.services.projection.StackProjection;
+import ome.util.PixelData;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Compares {@link StackProjection} with a pixel by pixel projection of the
+ * same stack.
+ */
+public class StackProjectionTest extends TestCase {
+
+    static final int SIZE_X = 13, SIZE_Y = 11, SIZE_Z = 6;
+
+    ExecutorService executor;
+
+    @BeforeClass
+    public void startExecutor() {
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @AfterClass
+    public void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    PixelData[] stack(String type) {
+        PixelData[] stack = new PixelData[SIZE_Z];
+        int planeSize = SIZE_X * SIZE_Y;
+        for (int z = 0; z < SIZE_Z; z++) {
+            stack[z] = new PixelData(type, ByteBuffer.wrap(
+                    new byte[planeSize * PixelData.getBitDepth(type) / 8]));
+            stack[z].setOrder(z % 2 == 0 ? ByteOrder.BIG_ENDIAN
+                    : ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < planeSize; i++) {
+                double v = ((i * 31 + z * 17) % 200) - 60;
+                if (stack[z].isFloat()) {
+                    v = v / 3;
+                } else if (!stack[z].isSigned()) {
+                    v = Math.abs(v);
+                }
+                stack[z].setPixelValue(i, v);
+            }
+        }
+        return stack;
+    }
+
+    double[] expected(PixelData[] stack, int algorithm, PixelData to,
+            int stepping, int start, int end) {
+        int planeSize = SIZE_X * SIZE_Y;
+        double[] rv = new double[planeSize];
+        for (int i = 0; i < planeSize; i++) {
+            double value = 0;
+            int count = 0;
+            if (algorithm == IProjection.MAXIMUM_INTENSITY) {
+                for (int z = start; z <= end; z += stepping) {
+                    value = Math.max(value, stack[z].getPixelValue(i));
+                }
+            } else {
+                for (int z = start; z < end; z += stepping) {
+                    value += stack[z].getPixelValue(i);
+                    count++;
+                }
+                if (algorithm == IProjection.MEAN_INTENSITY) {
+                    value = value / count;
+                }
+                value = Math.min(value, to.getMaximum());
+            }
+            rv[i] = value;
+        }
+        return rv;
+    }
+
+    void assertProjection(String type, String toType, int algorithm,
+            ExecutorService executor) {
+        PixelData[] stack = stack(type);
+        PixelData to = new PixelData(toType, ByteBuffer.wrap(new byte[
+                SIZE_X * SIZE_Y * PixelData.getBitDepth(toType) / 8]));
+        PixelData reference = new PixelData(toType, ByteBuffer.wrap(new byte[
+                SIZE_X * SIZE_Y * PixelData.getBitDepth(toType) / 8]));
+        StackProjection projection = new StackProjection(algorithm, SIZE_X,
+                SIZE_Y, 2, 1, 5, executor, 4);
+        for (int z : projection.getSections()) {
+            projection.add(stack[z]);
+        }
+        projection.write(to);
+        double[] expected = expected(stack, algorithm, to, 2, 1, 5);
+        double min = Double.MAX_VALUE, max = Double.MIN_VALUE;
+        for (int i = 0; i < expected.length; i++) {
+            reference.setPixelValue(i, expected[i]);
+            assertEquals(type + "/" + algorithm + "@" + i,
+                    reference.getPixelValue(i), to.getPixelValue(i));
+            min = Math.min(min, expected[i]);
+            max = Math.max(max, expected[i]);
+        }
+        assertEquals(min, projection.getMinimum(), 1e-9);
+        assertEquals(max, projection.getMaximum(), 1e-9);
+    }
+
+    @Test
+    public void testAllTypesAndAlgorithms() {
+        String[] types = { "int8", "uint8", "int16", "uint16", "int32",
+                "uint32", "float", "double" };
+        int[] algorithms = { IProjection.MAXIMUM_INTENSITY,
+                IProjection.MEAN_INTENSITY, IProjection.SUM_INTENSITY };
+        for (String type : types) {
+            for (int algorithm : algorithms) {
+                assertProjection(type, type, algorithm, null);
+                assertProjection(type, type, algorithm, executor);
+            }
+        }
+    }
+
+    @Test
+    public void testSumClippedToDestinationType() {
+        assertProjection("uint16", "uint8", IProjection.SUM_INTENSITY,
+                executor);
+    }
+
+    @Test
+    public void testSections() {
+        StackProjection max = new StackProjection(
+                IProjection.MAXIMUM_INTENSITY, 1, 1, 2, 0, 4, null, 1);
+        assertEquals(3, max.getSections().length);
+        StackProjection sum = new StackProjection(
+                IProjection.SUM_INTENSITY, 1, 1, 2, 0, 4, null, 1);
+        assertEquals(2, sum.getSections().length);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownAlgorithm() {
+        new StackProjection(-1, 1, 1, 1, 0, 0, null, 1);
+    }
+}
@@ -71,6 +71,19 @@ public class TestStandard16BitRendererLUTSizes extends BaseRenderingTest
 			stopWatch.stop();
 		}
 	}
+    @Test
+    public void testBulkQuantize() throws Exception
+    {
+        QuantumStrategy qs = quantumFactory.getStrategy(
+                settings.getQuantization(), pixels.getPixelsType());
+        int n = data.size();
+        byte[] out = new byte[n];
+        qs.quantize(data, 0, n, out, 0);
+        for (int i = 0; i < n; i++) {
+            assertEquals(qs.quantize(data.getPixelValue(i)), out[i] & 0xFF);
+        }
+    }
+
     @Test
     public void testPixelValuesRange() throws Exception
     {
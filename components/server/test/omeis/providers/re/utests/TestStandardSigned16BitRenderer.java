@@ -82,6 +82,19 @@ public class TestStandardSigned16BitRenderer extends BaseRenderingTest
         catch (IndexOutOfBoundsException e) { }
     }
 
+    @Test
+    public void testBulkQuantize() throws Exception
+    {
+        QuantumStrategy qs = quantumFactory.getStrategy(
+                settings.getQuantization(), pixels.getPixelsType());
+        int n = data.size();
+        byte[] out = new byte[n];
+        qs.quantize(data, 0, n, out, 0);
+        for (int i = 0; i < n; i++) {
+            assertEquals(qs.quantize(data.getPixelValue(i)), out[i] & 0xFF);
+        }
+    }
+
     @Test
     public void testPixelValuesRange() throws Exception
     {